@@ -0,0 +1,88 @@
+#!/usr/bin/env bash
+#
+# Compares the startup time and time-to-first-request of the regular jar with the fast-startup build
+# (Spring AOT + CDS archive). Both variants are built first, then started RUNS times each.
+#
+# Usage: scripts/startup-benchmark.sh [RUNS]
+# Set MVN to use another Maven command than the wrapper.
+
+set -euo pipefail
+
+RUNS=${1:-5}
+PORT=${SERVER_PORT:-18080}
+ROOT=$(cd "$(dirname "$0")/.." && pwd)
+TARGET="$ROOT/target"
+BASELINE_JAR="$TARGET/startup-benchmark/baseline.jar"
+FAST_DIR="$TARGET/fast-startup"
+JAR_NAME="spring-security-demo-1.0.0.jar"
+MVN=${MVN:-"sh ./mvnw"}
+
+export APP_PROFILE=prod
+export JWT_SIGNING_SECRET=${JWT_SIGNING_SECRET:-startup-benchmark-signing-secret-value}
+export SERVER_PORT=$PORT
+
+cd "$ROOT"
+
+echo "Building the regular jar..."
+$MVN -q -DskipTests package
+mkdir -p "$(dirname "$BASELINE_JAR")"
+cp "$TARGET/$JAR_NAME" "$BASELINE_JAR"
+
+echo "Building the fast-startup jar..."
+$MVN -q -DskipTests -Pfast-startup package
+
+now_ms() {
+  date +%s%3N
+}
+
+# Starts the application with the provided arguments, and prints the milliseconds until the JVM reported the
+# application as started, and until the first request was answered.
+measure() {
+  local log
+  log=$(mktemp)
+  local start
+  start=$(now_ms)
+
+  java "$@" > "$log" 2>&1 &
+  local pid=$!
+
+  # Any HTTP response counts as an answer, a rejected refresh token is the cheapest one.
+  until [ "$(curl -s -o /dev/null -w '%{http_code}' -X POST "http://localhost:$PORT/api/v1/auth/refresh")" != "000" ]; do
+    if ! kill -0 "$pid" 2> /dev/null; then
+      echo "Application exited during startup, see $log" >&2
+      exit 1
+    fi
+    sleep 0.01
+  done
+
+  local first_request=$(($(now_ms) - start))
+  local started
+  started=$(grep -oE 'Started [A-Za-z]+ in [0-9.]+ seconds' "$log" | grep -oE '[0-9.]+ seconds' | cut -d' ' -f1)
+
+  kill "$pid"
+  wait "$pid" 2> /dev/null || true
+  rm "$log"
+
+  echo "$started $first_request"
+}
+
+run_variant() {
+  local name=$1
+  shift
+  local total=0
+
+  echo
+  echo "$name"
+  for run in $(seq 1 "$RUNS"); do
+    read -r started first_request <<< "$(measure "$@")"
+    total=$((total + first_request))
+    printf "  run %d: started in %ss, first request after %dms\n" "$run" "${started:-?}" "$first_request"
+  done
+  printf "  average time to first request: %dms\n" $((total / RUNS))
+}
+
+run_variant "Regular jar" -jar "$BASELINE_JAR"
+run_variant "AOT + CDS" \
+  -XX:SharedArchiveFile="$FAST_DIR/application.jsa" \
+  -Dspring.aot.enabled=true \
+  -jar "$FAST_DIR/$JAR_NAME"
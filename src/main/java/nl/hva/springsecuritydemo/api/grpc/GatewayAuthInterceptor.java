@@ -0,0 +1,69 @@
+package nl.hva.springsecuritydemo.api.grpc;
+
+import io.grpc.Context;
+import io.grpc.Contexts;
+import io.grpc.Metadata;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import lombok.RequiredArgsConstructor;
+import nl.hva.springsecuritydemo.services.TokenIntrospectionService;
+import org.springframework.stereotype.Component;
+
+import java.util.UUID;
+
+import static nl.hva.springsecuritydemo.models.user.UserRole.ROLE_GATEWAY_NAME;
+import static nl.hva.springsecuritydemo.models.user.UserRole.ROLE_PREFIX;
+import static nl.hva.springsecuritydemo.utils.JWTUtil.JWT_CLAIM_KEY_TOKEN_TYPE_ACCESS;
+import static nl.hva.springsecuritydemo.utils.JWTUtil.JWT_TOKEN_PREFACE;
+
+
+/**
+ * Authenticates every gRPC call by the access token in its authorization metadata, which has to belong to a gateway,
+ * like the REST introspection endpoints require. The id of the caller is available as {@link #CALLER}.
+ */
+@Component
+@RequiredArgsConstructor
+public class GatewayAuthInterceptor implements ServerInterceptor {
+
+  static final Context.Key<UUID> CALLER = Context.key("caller");
+
+  private static final Metadata.Key<String> AUTHORIZATION =
+    Metadata.Key.of("authorization", Metadata.ASCII_STRING_MARSHALLER);
+
+  private final TokenIntrospectionService introspectionService;
+
+  @Override
+  public <Q, R> ServerCall.Listener<Q> interceptCall(
+    ServerCall<Q, R> call,
+    Metadata headers,
+    ServerCallHandler<Q, R> next
+  ) {
+    var authHeader = headers.get(AUTHORIZATION);
+
+    try {
+      var introspection = authHeader == null || !authHeader.startsWith(JWT_TOKEN_PREFACE)
+        ? null
+        : introspectionService.introspect(authHeader.substring(JWT_TOKEN_PREFACE.length()).trim());
+
+      if (introspection == null || !introspection.active() || !JWT_CLAIM_KEY_TOKEN_TYPE_ACCESS.equals(introspection.tokenType()))
+        return close(call, Status.UNAUTHENTICATED.withDescription("Invalid token.").asRuntimeException());
+      if (!introspection.roles().contains(ROLE_PREFIX + ROLE_GATEWAY_NAME))
+        return close(call, Status.PERMISSION_DENIED.withDescription("Gateways only.").asRuntimeException());
+
+      var context = Context.current().withValue(CALLER, UUID.fromString(introspection.sub()));
+      return Contexts.interceptCall(context, call, headers, next);
+    } catch (RuntimeException e) {
+      return close(call, GrpcStatuses.of(e));
+    }
+  }
+
+  private static <Q, R> ServerCall.Listener<Q> close(ServerCall<Q, R> call, StatusRuntimeException e) {
+    call.close(e.getStatus(), e.getTrailers() == null ? new Metadata() : e.getTrailers());
+    return new ServerCall.Listener<>() {
+    };
+  }
+
+}
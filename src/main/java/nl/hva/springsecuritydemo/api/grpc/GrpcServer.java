@@ -0,0 +1,92 @@
+package nl.hva.springsecuritydemo.api.grpc;
+
+import io.grpc.BindableService;
+import io.grpc.Server;
+import io.grpc.ServerInterceptors;
+import io.grpc.netty.shaded.io.grpc.netty.NettyServerBuilder;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.context.WebServerInitializedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Serves the gRPC services over HTTP/2 on {@code users.grpc.port}, next to the web server. It is started once the web
+ * server is, so tests against a mock web environment do not bind it.
+ * <p>
+ * Calls run on virtual threads, as they block on the database, and are authenticated by the
+ * {@link GatewayAuthInterceptor}.
+ */
+@Component
+public class GrpcServer {
+
+  private static final Logger log = LoggerFactory.getLogger(GrpcServer.class);
+
+  private final List<BindableService> services;
+  private final GatewayAuthInterceptor authInterceptor;
+  private final int port;
+  private final Duration shutdownGracePeriod;
+  private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+  private Server server;
+
+  public GrpcServer(
+    List<BindableService> services,
+    GatewayAuthInterceptor authInterceptor,
+    @Value("${users.grpc.port:9090}") int port,
+    @Value("${users.grpc.shutdown-grace-period:5s}") Duration shutdownGracePeriod
+  ) {
+    this.services = services;
+    this.authInterceptor = authInterceptor;
+    this.port = port;
+    this.shutdownGracePeriod = shutdownGracePeriod;
+  }
+
+  @EventListener
+  public synchronized void start(WebServerInitializedEvent event) {
+    if (server != null) return;
+
+    var builder = NettyServerBuilder.forPort(port).executor(executor);
+    services.forEach(service -> builder.addService(ServerInterceptors.intercept(service, authInterceptor)));
+
+    try {
+      server = builder.build().start();
+    } catch (IOException e) {
+      throw new UncheckedIOException("Could not start the gRPC server on port " + port, e);
+    }
+
+    log.info("gRPC server started on port {} with {} services", server.getPort(), services.size());
+  }
+
+  /**
+   * @return The port the server listens on, or -1 when it has not been started.
+   */
+  public synchronized int getPort() {
+    return server == null ? -1 : server.getPort();
+  }
+
+  /**
+   * Lets calls in flight complete within the grace period, then cancels the others.
+   */
+  @PreDestroy
+  public synchronized void stop() throws InterruptedException {
+    if (server != null) {
+      server.shutdown();
+      if (!server.awaitTermination(shutdownGracePeriod.toMillis(), TimeUnit.MILLISECONDS)) server.shutdownNow();
+    }
+
+    executor.close();
+  }
+
+}
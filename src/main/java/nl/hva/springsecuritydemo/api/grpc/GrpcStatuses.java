@@ -0,0 +1,59 @@
+package nl.hva.springsecuritydemo.api.grpc;
+
+import io.grpc.Metadata;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import nl.hva.springsecuritydemo.exceptions.BadRequest;
+import nl.hva.springsecuritydemo.exceptions.DomainException;
+import nl.hva.springsecuritydemo.exceptions.ForbiddenResourceAccessed;
+import nl.hva.springsecuritydemo.exceptions.ResourceNotFound;
+import nl.hva.springsecuritydemo.exceptions.ServiceUnavailable;
+import nl.hva.springsecuritydemo.exceptions.TooManyRequests;
+import nl.hva.springsecuritydemo.exceptions.UnauthorizedException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Translates exceptions into gRPC statuses, like the GlobalExceptionHandler does into HTTP statuses.
+ */
+final class GrpcStatuses {
+
+  /**
+   * The amount of seconds after which a call that was throttled or found the database unavailable may be retried.
+   */
+  static final Metadata.Key<String> RETRY_AFTER = Metadata.Key.of("retry-after", Metadata.ASCII_STRING_MARSHALLER);
+
+  private static final Logger log = LoggerFactory.getLogger(GrpcStatuses.class);
+
+  private GrpcStatuses() {
+  }
+
+  static StatusRuntimeException of(RuntimeException e) {
+    var trailers = new Metadata();
+
+    var status = switch (e) {
+      case ResourceNotFound ignored -> Status.NOT_FOUND;
+      case BadRequest ignored -> Status.INVALID_ARGUMENT;
+      case UnauthorizedException ignored -> Status.UNAUTHENTICATED;
+      case ForbiddenResourceAccessed ignored -> Status.PERMISSION_DENIED;
+      case TooManyRequests tooMany -> {
+        trailers.put(RETRY_AFTER, Long.toString(tooMany.getRetryAfterSeconds()));
+        yield Status.RESOURCE_EXHAUSTED;
+      }
+      case ServiceUnavailable unavailable -> {
+        trailers.put(RETRY_AFTER, Long.toString(unavailable.getRetryAfterSeconds()));
+        yield Status.UNAVAILABLE;
+      }
+      case DomainException ignored -> Status.FAILED_PRECONDITION;
+      default -> {
+        log.error("gRPC call failed", e);
+        yield Status.INTERNAL.withDescription("Internal error.");
+      }
+    };
+
+    if (status.getDescription() == null) status = status.withDescription(e.getMessage());
+    return status.asRuntimeException(trailers);
+  }
+
+}
@@ -0,0 +1,141 @@
+package nl.hva.springsecuritydemo.api.grpc;
+
+import com.google.protobuf.Timestamp;
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+import lombok.RequiredArgsConstructor;
+import nl.hva.springsecuritydemo.api.grpc.v1.BatchGetUsersRequest;
+import nl.hva.springsecuritydemo.api.grpc.v1.BatchGetUsersResponse;
+import nl.hva.springsecuritydemo.api.grpc.v1.GetUserRequest;
+import nl.hva.springsecuritydemo.api.grpc.v1.User;
+import nl.hva.springsecuritydemo.api.grpc.v1.UserDirectoryGrpc;
+import nl.hva.springsecuritydemo.api.grpc.v1.VerifyTokenRequest;
+import nl.hva.springsecuritydemo.api.grpc.v1.VerifyTokenResponse;
+import nl.hva.springsecuritydemo.dtos.token.TokenIntrospection;
+import nl.hva.springsecuritydemo.exceptions.BadRequest;
+import nl.hva.springsecuritydemo.services.TokenIntrospectionService;
+import nl.hva.springsecuritydemo.services.UserService;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+import static nl.hva.springsecuritydemo.api.grpc.GatewayAuthInterceptor.CALLER;
+
+
+/**
+ * Resolves tokens and users for internal services over gRPC, as the introspection and user endpoints do over REST.
+ */
+@Component
+@RequiredArgsConstructor
+public class UserDirectoryService extends UserDirectoryGrpc.UserDirectoryImplBase {
+
+  public static final int MAX_BATCH_SIZE = 1000;
+
+  private final TokenIntrospectionService introspectionService;
+  private final UserService userService;
+
+  @Override
+  public void verifyToken(VerifyTokenRequest request, StreamObserver<VerifyTokenResponse> responses) {
+    respond(responses, () -> toResponse(
+      introspectionService.introspectAll(CALLER.get(), List.of(request.getToken())).getFirst()
+    ));
+  }
+
+  @Override
+  public void getUser(GetUserRequest request, StreamObserver<User> responses) {
+    respond(responses, () -> toUser(userService.findById(parseId(request.getId()))));
+  }
+
+  /**
+   * Looks the users up one by one, so the first ones are streamed while the others are still being looked up. Stops
+   * once the caller cancels the call.
+   */
+  @Override
+  public void batchGetUsers(BatchGetUsersRequest request, StreamObserver<BatchGetUsersResponse> responses) {
+    var call = (ServerCallStreamObserver<BatchGetUsersResponse>) responses;
+    // Responses to a cancelled call are dropped instead of failing.
+    call.setOnCancelHandler(() -> {
+    });
+
+    try {
+      if (request.getIdsCount() > MAX_BATCH_SIZE)
+        throw new BadRequest("Provide at most " + MAX_BATCH_SIZE + " ids.");
+
+      var ids = request.getIdsList().stream().map(UserDirectoryService::parseId).toList();
+
+      for (var id : ids) {
+        if (call.isCancelled()) return;
+
+        var response = BatchGetUsersResponse.newBuilder().setId(id.toString());
+        userService.findOptionalById(id).map(UserDirectoryService::toUser).ifPresent(response::setUser);
+        responses.onNext(response.build());
+      }
+
+      responses.onCompleted();
+    } catch (RuntimeException e) {
+      responses.onError(GrpcStatuses.of(e));
+    }
+  }
+
+  private static <T> void respond(StreamObserver<T> responses, Supplier<T> response) {
+    T value;
+
+    try {
+      value = response.get();
+    } catch (RuntimeException e) {
+      responses.onError(GrpcStatuses.of(e));
+      return;
+    }
+
+    responses.onNext(value);
+    responses.onCompleted();
+  }
+
+  private static UUID parseId(String id) {
+    try {
+      return UUID.fromString(id);
+    } catch (IllegalArgumentException e) {
+      throw new BadRequest("Invalid user id: " + id);
+    }
+  }
+
+  private static VerifyTokenResponse toResponse(TokenIntrospection introspection) {
+    if (!introspection.active()) return VerifyTokenResponse.getDefaultInstance();
+
+    return VerifyTokenResponse.newBuilder()
+      .setActive(true)
+      .setSub(introspection.sub())
+      .addAllRoles(introspection.roles())
+      .setExp(introspection.exp())
+      .setIat(introspection.iat())
+      .setIss(introspection.iss() == null ? "" : introspection.iss())
+      .setTokenType(introspection.tokenType())
+      .build();
+  }
+
+  private static User toUser(nl.hva.springsecuritydemo.models.user.User user) {
+    var message = User.newBuilder()
+      .setId(user.getId().toString())
+      .setUsername(user.getUsername())
+      .setEmail(user.getEmail())
+      .setEnabled(user.isEnabled())
+      .setAccountNonLocked(user.isAccountNonLocked());
+
+    user.getAuthorities().stream().map(GrantedAuthority::getAuthority).forEach(message::addRoles);
+    if (user.getCreatedAt() != null) message.setCreatedAt(toTimestamp(user.getCreatedAt()));
+    if (user.getChangedAt() != null) message.setChangedAt(toTimestamp(user.getChangedAt()));
+
+    return message.build();
+  }
+
+  private static Timestamp toTimestamp(LocalDateTime dateTime) {
+    var instant = dateTime.atZone(ZoneId.systemDefault()).toInstant();
+    return Timestamp.newBuilder().setSeconds(instant.getEpochSecond()).setNanos(instant.getNano()).build();
+  }
+
+}
@@ -0,0 +1,158 @@
+package nl.hva.springsecuritydemo.api.rest;
+
+import io.swagger.v3.oas.annotations.security.SecurityRequirement;
+import jakarta.validation.Valid;
+import lombok.RequiredArgsConstructor;
+import nl.hva.springsecuritydemo.config.ConcurrencyLimitFilter;
+import nl.hva.springsecuritydemo.config.GlobalExceptionHandler;
+import nl.hva.springsecuritydemo.dtos.user.BulkMutationDto;
+import nl.hva.springsecuritydemo.dtos.user.BulkReport;
+import nl.hva.springsecuritydemo.dtos.user.ImportReport;
+import nl.hva.springsecuritydemo.dtos.user.UserSearchHit;
+import nl.hva.springsecuritydemo.exceptions.BadRequest;
+import nl.hva.springsecuritydemo.services.OutboxDispatcher;
+import nl.hva.springsecuritydemo.services.UserBulkService;
+import nl.hva.springsecuritydemo.services.UserImportService;
+import nl.hva.springsecuritydemo.services.UserSearchIndex;
+import nl.hva.springsecuritydemo.services.UserService;
+import nl.hva.springsecuritydemo.utils.CircuitBreaker;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.util.StringUtils;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+
+import static nl.hva.springsecuritydemo.api.rest.AdminController.ADMIN_API_BASE;
+
+
+/**
+ * Controller class for administrative operations, only accessible to admins.
+ */
+@RestController
+@RequestMapping(ADMIN_API_BASE)
+
+@RequiredArgsConstructor
+
+@SecurityRequirement(name = "Authorization")
+
+public class AdminController {
+
+  public final static String ADMIN_API_BASE = "/api/v1/admin";
+
+  private static final String TEXT_CSV_VALUE = "text/csv";
+
+  private final UserImportService userImportService;
+  private final UserBulkService userBulkService;
+  private final UserService userService;
+  private final ConcurrencyLimitFilter concurrencyLimitFilter;
+  private final OutboxDispatcher outboxDispatcher;
+  private final UserSearchIndex userSearchIndex;
+  private final GlobalExceptionHandler exceptionHandler;
+
+  /**
+   * @return The amount of users stored by every shard.
+   */
+  @GetMapping("/shards")
+  public Map<String, Long> getShards() {
+    return userService.countUsersByShard();
+  }
+
+  /**
+   * @return The state of the circuit breaker of every shard, which can be read while the database is unavailable.
+   */
+  @GetMapping("/shards/breakers")
+  public Map<String, CircuitBreaker.State> getBreakers() {
+    return userService.getBreakerStates();
+  }
+
+  /**
+   * @return The adaptive concurrency limit, requests in flight and average latency of every partition of the API.
+   */
+  @GetMapping("/limits")
+  public Map<String, Map<String, Number>> getLimits() {
+    return concurrencyLimitFilter.getMetrics();
+  }
+
+  /**
+   * @return The backlog of the outbox, and the amount and latency of the emails sent by this instance.
+   */
+  @GetMapping("/outbox")
+  public Map<String, Number> getOutbox() {
+    return outboxDispatcher.getMetrics();
+  }
+
+  /**
+   * @return The amount of exceptions handled by this instance, per exception type.
+   */
+  @GetMapping("/exceptions")
+  public Map<String, Long> getExceptions() {
+    return exceptionHandler.getExceptionCounts();
+  }
+
+  /**
+   * Finds users by a prefix of their username or email, for instance while an admin types, without querying the
+   * database.
+   *
+   * @param q     The prefix, matched case-sensitively.
+   * @param limit The maximum amount of users to return, at most {@value UserSearchIndex#MAX_LIMIT}.
+   * @return The ids of the users with their matching username or email, in ascending order of that value.
+   */
+  @GetMapping("/users/search")
+  public List<UserSearchHit> searchUsers(@RequestParam String q, @RequestParam(defaultValue = "10") int limit) {
+    if (!StringUtils.hasText(q)) throw new BadRequest("Provide a prefix to search for.");
+
+    return userSearchIndex.search(q, limit);
+  }
+
+  /**
+   * @return The amount of entries and the memory footprint of the user search index.
+   */
+  @GetMapping("/users/search/index")
+  public Map<String, Number> getSearchIndex() {
+    return userSearchIndex.getMetrics();
+  }
+
+  /**
+   * Enables, disables, locks or unlocks users, or grants or revokes a role, for every user selected by either a list of
+   * ids or a filter. Disabling, locking and revoking a role revoke the tokens of the changed users.
+   *
+   * @param mutation The action, the role to grant or revoke, and the ids or the filter that select the users.
+   * @return The amount of selected users, the amount of users that were changed and the duration.
+   */
+  @PostMapping("/users/bulk")
+  public BulkReport mutateUsers(@Valid @RequestBody BulkMutationDto mutation) {
+    return userBulkService.apply(mutation);
+  }
+
+  /**
+   * Imports users in bulk, streaming the request body. A CSV body starts with a header naming its columns, an NDJSON
+   * body contains one JSON object per line. Every row provides a username, an email and either a password or a
+   * passwordHash in Argon2 or BCrypt format.
+   *
+   * @param body        The rows to import.
+   * @param contentType Either text/csv or application/x-ndjson.
+   * @return A report of the amount of imported rows, the throughput and the rows that failed.
+   */
+  @PostMapping(value = "/users/import", consumes = {TEXT_CSV_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+  public ImportReport importUsers(
+    InputStream body,
+    @RequestHeader(HttpHeaders.CONTENT_TYPE) MediaType contentType
+  ) throws IOException {
+    var format = contentType.isCompatibleWith(MediaType.APPLICATION_NDJSON)
+      ? UserImportService.Format.NDJSON
+      : UserImportService.Format.CSV;
+
+    return userImportService.importUsers(body, format);
+  }
+
+}
@@ -1,28 +1,39 @@
 package nl.hva.springsecuritydemo.api.rest;
 
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
 import jakarta.validation.constraints.NotBlank;
 import lombok.RequiredArgsConstructor;
+import nl.hva.springsecuritydemo.config.sql.StatementBudget;
+import nl.hva.springsecuritydemo.dtos.user.Availability;
 import nl.hva.springsecuritydemo.dtos.user.LoginDto;
 import nl.hva.springsecuritydemo.dtos.user.RegisterDto;
 import nl.hva.springsecuritydemo.exceptions.BadRequest;
 import nl.hva.springsecuritydemo.exceptions.UnauthorizedException;
 import nl.hva.springsecuritydemo.models.user.User;
+import nl.hva.springsecuritydemo.services.AvailabilityIndex;
+import nl.hva.springsecuritydemo.services.LoginAttempts;
 import nl.hva.springsecuritydemo.services.UserService;
 import nl.hva.springsecuritydemo.utils.JWTUtil;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.BadCredentialsException;
 import org.springframework.security.authentication.DisabledException;
+import org.springframework.security.authentication.LockedException;
 import org.springframework.security.core.Authentication;
+import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import java.util.Map;
 
+import static org.springframework.util.StringUtils.hasText;
+
 
 /**
  * The central place for the authentication of outside-users. Upon a successful login or registration it also
@@ -38,42 +49,58 @@ public class AuthenticateController {
   private final AuthenticationManager authManager;
   private final UserService userService;
   private final JWTUtil jwtUtil;
+  private final AvailabilityIndex availabilityIndex;
+  private final LoginAttempts loginAttempts;
 
   /**
-   * Checks whether the provided loginDto are valid, and authenticates the user, by returning a JWT.
+   * Checks whether the provided loginDto are valid, and authenticates the user, by returning a JWT. Usernames that
+   * failed to log in too often are refused before their password is hashed.
    *
    * @param loginDto An object containing username and password attributes.
    * @return The user that belongs to the given loginDto and a JWT for use in authentication.
    */
+  @StatementBudget(2)
   @PostMapping("/login")
   public ResponseEntity<Map<String, String>> login(@RequestBody @Valid LoginDto loginDto) {
+    if (loginAttempts.isLockedOut(loginDto.getUsername())) return new ResponseEntity<>(HttpStatus.FORBIDDEN);
+
     Authentication authenticate;
 
     try {
       authenticate = authManager.authenticate(loginDto.toAuthToken());
     } catch (BadCredentialsException ex) {
-      throw new UnauthorizedException("Email and/or password is not valid.");
-    } catch (DisabledException ex) {
+      loginAttempts.onFailure(loginDto.getUsername());
+      throw UnauthorizedException.INVALID_CREDENTIALS;
+    } catch (DisabledException | LockedException ex) {
       return new ResponseEntity<>(HttpStatus.FORBIDDEN);
     }
 
     var user = (User) authenticate.getPrincipal();
+    loginAttempts.onSuccess(loginDto.getUsername());
 
     return new ResponseEntity<>(
       jwtUtil.generateTokensFor(user),
       HttpStatus.ACCEPTED);
   }
 
+  @StatementBudget(1)
   @PostMapping("/refresh")
   public ResponseEntity<Map<String, String>> refresh(
     @RequestBody
     @Valid @NotBlank(message = "refresh token not provided in body")
     String refreshToken
   ) {
-    if (!jwtUtil.validate(refreshToken) || !jwtUtil.isRefreshToken(refreshToken))
-      throw new BadRequest("The provided token is invalid");
+    // Verify the token once, and read every claim from the result.
+    var claims = jwtUtil.findClaimsOf(refreshToken);
+    if (claims == null || !jwtUtil.isRefreshToken(claims))
+      throw BadRequest.INVALID_TOKEN;
+
+    var user = userService.findById(jwtUtil.getUserIdOf(claims));
 
-    var user = userService.findById(jwtUtil.getUserIdOf(refreshToken));
+    // Disabling or locking a user, and revoking a role, raise its token version. Lockouts after failed logins keep the
+    // sessions of the user, as others may have caused them.
+    if (!user.isEnabled() || user.isLockedByAdmin() || jwtUtil.getTokenVersionOf(claims) < user.getTokenVersion())
+      throw BadRequest.INVALID_TOKEN;
 
     return new ResponseEntity<>(
       jwtUtil.generateTokensFor(user),
@@ -81,12 +108,52 @@ public class AuthenticateController {
     );
   }
 
+  /**
+   * Activates the account of a registered user, through the link emailed to it.
+   *
+   * @param token The activation token of the link.
+   */
+  @StatementBudget(4)
+  @GetMapping("/activate")
+  public ResponseEntity<Void> activate(@RequestParam String token) {
+    userService.activate(token);
+
+    return ResponseEntity.noContent().build();
+  }
+
+  /**
+   * Tells whether a username and email are still available, for instance while a sign-up form is being filled in.
+   * Most answers do not query the database, every client may ask a limited amount of times per interval.
+   *
+   * @param username The username to check, if any.
+   * @param email    The email to check, if any.
+   * @return The availability of the provided values.
+   */
+  @StatementBudget(2)
+  @GetMapping("/availability")
+  public ResponseEntity<Availability> availability(
+    @RequestParam(required = false) String username,
+    @RequestParam(required = false) String email,
+    HttpServletRequest request
+  ) {
+    if (!hasText(username) && !hasText(email)) throw new BadRequest("Provide a username or an email.");
+
+    var availability = availabilityIndex.check(
+      request.getRemoteAddr(),
+      hasText(username) ? username : null,
+      hasText(email) ? email : null
+    );
+
+    return ResponseEntity.ok().cacheControl(CacheControl.noStore()).body(availability);
+  }
+
   /**
    * Creates a user with given parameters, when all parameters are provided and valid, in the provided object.
    *
    * @param req An object containing the attributes of the to be created User.
    * @return The created User object and a JWT token.
    */
+  @StatementBudget(8)
   @PostMapping("/register")
   public ResponseEntity<Map<String, String>> register(@RequestBody @Valid RegisterDto req) {
     var user = userService.create(req);
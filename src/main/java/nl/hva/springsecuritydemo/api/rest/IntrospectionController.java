@@ -0,0 +1,73 @@
+package nl.hva.springsecuritydemo.api.rest;
+
+import io.swagger.v3.oas.annotations.security.SecurityRequirement;
+import jakarta.validation.Valid;
+import lombok.RequiredArgsConstructor;
+import nl.hva.springsecuritydemo.dtos.token.IntrospectDto;
+import nl.hva.springsecuritydemo.dtos.token.TokenIntrospection;
+import nl.hva.springsecuritydemo.services.TokenIntrospectionService;
+import nl.hva.springsecuritydemo.utils.SecurityContextUtil;
+import org.springframework.http.CacheControl;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+import static nl.hva.springsecuritydemo.api.rest.IntrospectionController.INTROSPECT_API_BASE;
+
+
+/**
+ * Controller class for RFC 7662 token introspection, only accessible to gateways.
+ * <p>
+ * Responses may be cached privately until the earliest expiry of the active tokens they describe, for at most
+ * {@code users.introspection.max-cache-age}. Tokens revoked in the meantime, by a password change or disabled account,
+ * are reported active by such cached responses.
+ */
+@RestController
+@RequestMapping(INTROSPECT_API_BASE)
+
+@RequiredArgsConstructor
+
+@SecurityRequirement(name = "Authorization")
+
+public class IntrospectionController {
+
+  public final static String INTROSPECT_API_BASE = "/api/v1/introspect";
+
+  private final TokenIntrospectionService introspectionService;
+
+  /**
+   * Introspects a single token, as a form parameter like RFC 7662 prescribes.
+   */
+  @PostMapping(consumes = MediaType.APPLICATION_FORM_URLENCODED_VALUE)
+  public ResponseEntity<TokenIntrospection> introspect(@RequestParam String token) {
+    var introspections = introspectionService.introspectAll(SecurityContextUtil.getUserId(false), List.of(token));
+
+    return withCacheControl(introspections).body(introspections.getFirst());
+  }
+
+  /**
+   * Introspects a batch of tokens.
+   *
+   * @return The introspection of every token, in the order of the tokens.
+   */
+  @PostMapping(value = "/batch", consumes = MediaType.APPLICATION_JSON_VALUE)
+  public ResponseEntity<List<TokenIntrospection>> introspectBatch(@Valid @RequestBody IntrospectDto introspectDto) {
+    var introspections = introspectionService.introspectAll(SecurityContextUtil.getUserId(false), introspectDto.getTokens());
+
+    return withCacheControl(introspections).body(introspections);
+  }
+
+  private ResponseEntity.BodyBuilder withCacheControl(List<TokenIntrospection> introspections) {
+    var maxAge = introspectionService.getCacheDurationOf(introspections);
+
+    return ResponseEntity.ok()
+      .cacheControl(maxAge.toSeconds() > 0 ? CacheControl.maxAge(maxAge).cachePrivate() : CacheControl.noStore());
+  }
+
+}
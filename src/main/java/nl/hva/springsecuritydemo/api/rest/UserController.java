@@ -5,8 +5,10 @@ import jakarta.validation.Valid;
 import jakarta.validation.constraints.NotBlank;
 import lombok.RequiredArgsConstructor;
 import lombok.SneakyThrows;
+import nl.hva.springsecuritydemo.config.sql.StatementBudget;
 import nl.hva.springsecuritydemo.dtos.user.UpdateDto;
 import nl.hva.springsecuritydemo.models.user.User;
+import nl.hva.springsecuritydemo.models.user.UserVersion;
 import nl.hva.springsecuritydemo.services.UserService;
 import nl.hva.springsecuritydemo.utils.JWTUtil;
 import nl.hva.springsecuritydemo.utils.SecurityContextUtil;
@@ -19,9 +21,11 @@ import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
 
 import java.util.Map;
 import java.util.UUID;
+import java.util.function.Supplier;
 
 import static nl.hva.springsecuritydemo.api.rest.UserController.USER_API_BASE;
 
@@ -49,44 +53,61 @@ public class UserController {
   /**
    * Easy method to return current user.
    *
-   * @return current user
+   * @param request The incoming request, used to answer conditional requests.
+   * @return current user, or nothing when it has not been modified.
    */
+  @StatementBudget(2)
   @GetMapping
-  public User getUser() {
-    return SecurityContextUtil.getUser();
+  public User getUser(WebRequest request) {
+    var id = SecurityContextUtil.getUserId(false);
+
+    return conditional(request, userService.findVersionById(id), () -> userService.findById(id));
   }
 
   /**
    * Finds a user by their unique id.
    *
-   * @param id The UUID of the user to find.
-   * @return The found user, or null if not found.
+   * @param id      The UUID of the user to find.
+   * @param request The incoming request, used to answer conditional requests.
+   * @return The found user, or null if not found or not modified.
    */
+  @StatementBudget(2)
   @GetMapping("/{id}")
-  public User findById(@PathVariable UUID id) {
-    return userService.findById(id);
+  public User findById(@PathVariable UUID id, WebRequest request) {
+    return conditional(request, userService.findVersionById(id), () -> userService.findById(id));
   }
 
   /**
    * Finds a user by their email address.
    *
-   * @param email The email address of the user to find.
-   * @return The found user, or null if not found.
+   * @param email   The email address of the user to find.
+   * @param request The incoming request, used to answer conditional requests.
+   * @return The found user, or null if not found or not modified.
    */
+  @StatementBudget(4)
   @GetMapping("/email/{email}")
-  public User findByEmail(@PathVariable @NotBlank(message = "is blank.") String email) {
-    return userService.findByEmail(email);
+  public User findByEmail(@PathVariable @NotBlank(message = "is blank.") String email, WebRequest request) {
+    return conditional(request, userService.findVersionByEmail(email), () -> userService.findByEmail(email));
   }
 
   /**
    * Finds a user by their username.
    *
    * @param username The username of the user to find.
-   * @return The found user, or null if not found.
+   * @param request  The incoming request, used to answer conditional requests.
+   * @return The found user, or null if not found or not modified.
    */
+  @StatementBudget(4)
   @GetMapping("/username/{username}")
-  public User findByUsername(@PathVariable() @NotBlank(message = "is blank.") String username) {
-    return userService.findByUserName(username);
+  public User findByUsername(
+    @PathVariable() @NotBlank(message = "is blank.") String username,
+    WebRequest request
+  ) {
+    return conditional(
+      request,
+      userService.findVersionByUserName(username),
+      () -> userService.findByUserName(username)
+    );
   }
 
   /**
@@ -97,6 +118,7 @@ public class UserController {
    */
   @Valid
   @SneakyThrows
+  @StatementBudget(7)
   @PutMapping
   public ResponseEntity<Map<String, String>> updateUserParam(@RequestBody UpdateDto updateDto) {
     var updatedUser = userService.update(updateDto);
@@ -110,9 +132,26 @@ public class UserController {
   /**
    * Deletes the current user.
    */
+  @StatementBudget(5)
   @PostMapping("/delete")
   public void deleteUser() {
-    userService.remove(SecurityContextUtil.getUser());
+    userService.remove(userService.findById(SecurityContextUtil.getUserId(false)));
+  }
+
+  /**
+   * Answers a conditional request from the version of a user, so the full user is only loaded when modified.
+   * The ETag and Last-Modified headers are set on the response either way.
+   *
+   * @param request The incoming request, containing the potential If-None-Match and If-Modified-Since headers.
+   * @param version The current version of the requested user, or null if there is none.
+   * @param loader  Loads the full user, when it has been modified.
+   * @return The loaded user, or null when the response is a 304 Not Modified.
+   */
+  private User conditional(WebRequest request, UserVersion version, Supplier<User> loader) {
+    if (version != null && request.checkNotModified(version.eTag(), version.lastModified()))
+      return null;
+
+    return loader.get();
   }
 
 }
@@ -0,0 +1,38 @@
+package nl.hva.springsecuritydemo.api.ws;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.List;
+
+
+/**
+ * A change to the account of the connected user, pushed over its WebSocket connections.
+ *
+ * @param type     What changed, one of the TYPE_ constants.
+ * @param username The username after a profile change.
+ * @param email    The email after a profile change.
+ * @param roles    The roles after a role change.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record AccountEvent(String type, String username, String email, List<String> roles) {
+
+  public static final String TYPE_PROFILE_CHANGED = "profile-changed";
+  public static final String TYPE_ROLES_CHANGED = "roles-changed";
+  /**
+   * The account was deleted or disabled, or its password changed. The connection is closed after this event.
+   */
+  public static final String TYPE_LOGOUT = "logout";
+
+  public static AccountEvent profileChanged(String username, String email) {
+    return new AccountEvent(TYPE_PROFILE_CHANGED, username, email, null);
+  }
+
+  public static AccountEvent rolesChanged(List<String> roles) {
+    return new AccountEvent(TYPE_ROLES_CHANGED, null, null, roles);
+  }
+
+  public static AccountEvent logout() {
+    return new AccountEvent(TYPE_LOGOUT, null, null, null);
+  }
+
+}
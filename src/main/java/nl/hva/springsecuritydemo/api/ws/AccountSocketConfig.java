@@ -0,0 +1,30 @@
+package nl.hva.springsecuritydemo.api.ws;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.socket.config.annotation.EnableWebSocket;
+import org.springframework.web.socket.config.annotation.WebSocketConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketHandlerRegistry;
+
+
+/**
+ * Registers the WebSocket endpoints of the application.
+ */
+@Configuration
+@EnableWebSocket
+@RequiredArgsConstructor
+public class AccountSocketConfig implements WebSocketConfigurer {
+
+  public final static String ACCOUNT_WS_PATH = "/api/v1/ws/account";
+
+  private final AccountSocketHandler accountSocketHandler;
+  private final TokenHandshakeInterceptor tokenHandshakeInterceptor;
+
+  @Override
+  public void registerWebSocketHandlers(WebSocketHandlerRegistry registry) {
+    registry.addHandler(accountSocketHandler, ACCOUNT_WS_PATH)
+      .addInterceptors(tokenHandshakeInterceptor)
+      .setAllowedOriginPatterns("*");
+  }
+
+}
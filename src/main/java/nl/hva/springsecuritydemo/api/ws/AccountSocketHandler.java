@@ -0,0 +1,225 @@
+package nl.hva.springsecuritydemo.api.ws;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import nl.hva.springsecuritydemo.config.authorities.AuthorityRegistry;
+import nl.hva.springsecuritydemo.models.user.User;
+import nl.hva.springsecuritydemo.models.user.UserAuthState;
+import nl.hva.springsecuritydemo.repositories.UserChangeListener;
+import nl.hva.springsecuritydemo.services.AuthSnapshot;
+import nl.hva.springsecuritydemo.services.UserService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator;
+import org.springframework.web.socket.handler.TextWebSocketHandler;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import static nl.hva.springsecuritydemo.api.ws.TokenHandshakeInterceptor.EXPIRES_AT_ATTRIBUTE;
+import static nl.hva.springsecuritydemo.api.ws.TokenHandshakeInterceptor.USER_ID_ATTRIBUTE;
+
+
+/**
+ * Pushes {@link AccountEvent}s to the WebSocket connections of a user, whenever the {@link UserChangeListener} reports
+ * a change to it.
+ * <p>
+ * A connection is authenticated once, by the {@link TokenHandshakeInterceptor}, and is closed when its token expires
+ * or the user is logged out. Messages on the connection are not verified again. Only changes made by this instance
+ * are reported, as those are the changes it is notified of.
+ */
+@Component
+public class AccountSocketHandler extends TextWebSocketHandler implements UserChangeListener {
+
+  public static final CloseStatus TOKEN_EXPIRED = new CloseStatus(4001, "Token expired.");
+  public static final CloseStatus LOGGED_OUT = new CloseStatus(4002, "Logged out.");
+
+  private static final Logger log = LoggerFactory.getLogger(AccountSocketHandler.class);
+
+  private static final String CONNECTION_ATTRIBUTE = "connection";
+  private static final int SEND_TIME_LIMIT_MS = 5_000;
+  private static final int SEND_BUFFER_SIZE = 64 * 1024;
+
+  private final UserService userService;
+  private final AuthorityRegistry authorities;
+  private final ObjectMapper objectMapper;
+  private final Map<UUID, Set<Connection>> connections = new ConcurrentHashMap<>();
+  private final ScheduledExecutorService expirations = Executors.newSingleThreadScheduledExecutor(
+    Thread.ofPlatform().name("account-socket-expirations").daemon().factory()
+  );
+
+  public AccountSocketHandler(UserService userService, AuthorityRegistry authorities, ObjectMapper objectMapper) {
+    this.userService = userService;
+    this.authorities = authorities;
+    this.objectMapper = objectMapper;
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    expirations.shutdownNow();
+  }
+
+  @Override
+  public void afterConnectionEstablished(WebSocketSession session) throws IOException {
+    var userId = (UUID) session.getAttributes().get(USER_ID_ATTRIBUTE);
+    var expiresAt = (Long) session.getAttributes().get(EXPIRES_AT_ATTRIBUTE);
+    var state = new AuthSnapshot.Entry();
+
+    // The user was deleted in between the handshake and now.
+    if (!userService.readAuthState(userId, state)) {
+      session.close(LOGGED_OUT);
+      return;
+    }
+
+    var connection = new Connection(
+      userId,
+      new ConcurrentWebSocketSessionDecorator(session, SEND_TIME_LIMIT_MS, SEND_BUFFER_SIZE),
+      state.getTokenVersion(),
+      state.getAuthorities()
+    );
+
+    connection.expiration = expirations.schedule(
+      () -> close(connection, TOKEN_EXPIRED),
+      expiresAt * 1000 - System.currentTimeMillis(),
+      TimeUnit.MILLISECONDS
+    );
+
+    session.getAttributes().put(CONNECTION_ATTRIBUTE, connection);
+    connections.computeIfAbsent(userId, id -> ConcurrentHashMap.newKeySet()).add(connection);
+  }
+
+  @Override
+  public void afterConnectionClosed(WebSocketSession session, CloseStatus status) {
+    if (!(session.getAttributes().get(CONNECTION_ATTRIBUTE) instanceof Connection connection)) return;
+
+    connection.expiration.cancel(false);
+    connections.computeIfPresent(connection.userId, (id, set) -> set.remove(connection) && set.isEmpty() ? null : set);
+  }
+
+  @Override
+  public void onSaved(User user) {
+    var userConnections = connections.get(user.getId());
+    if (userConnections == null) return;
+
+    notify(
+      userConnections,
+      user.isEnabled(),
+      user.getTokenVersion(),
+      authorities.maskOf(user.getAuthorities()),
+      AccountEvent.profileChanged(user.getUsername(), user.getEmail())
+    );
+  }
+
+  @Override
+  public void onAuthStatesChanged(List<UserAuthState> states) {
+    var masks = new HashMap<UUID, Long>();
+    for (var state : states)
+      if (connections.containsKey(state.id()))
+        masks.merge(state.id(), state.authority() == null ? 0 : authorities.maskOf(state.authority()), (a, b) -> a | b);
+
+    for (var state : states) {
+      var userConnections = connections.get(state.id());
+      var mask = masks.remove(state.id());
+      if (userConnections != null && mask != null)
+        notify(userConnections, state.enabled(), state.tokenVersion(), mask, null);
+    }
+  }
+
+  @Override
+  public void onDeleted(User user) {
+    var userConnections = connections.get(user.getId());
+    if (userConnections == null) return;
+
+    for (var connection : userConnections) {
+      send(connection, AccountEvent.logout());
+      close(connection, LOGGED_OUT);
+    }
+  }
+
+  /**
+   * @return Whether the user has a connection that is notified of changes.
+   */
+  boolean isConnected(UUID userId) {
+    return connections.containsKey(userId);
+  }
+
+  /**
+   * Logs the connections out when the user was disabled or its token version raised, otherwise tells them about
+   * changed roles, or sends the provided event if any.
+   */
+  private void notify(
+    Set<Connection> userConnections,
+    boolean enabled,
+    int tokenVersion,
+    long mask,
+    AccountEvent otherwise
+  ) {
+    for (var connection : userConnections) {
+      if (!enabled || tokenVersion > connection.tokenVersion) {
+        send(connection, AccountEvent.logout());
+        close(connection, LOGGED_OUT);
+      } else if (mask != connection.authorities) {
+        connection.authorities = mask;
+        send(connection, AccountEvent.rolesChanged(
+          authorities.toAuthoritySet(mask).stream().map(GrantedAuthority::getAuthority).toList()
+        ));
+      } else if (otherwise != null) {
+        send(connection, otherwise);
+      }
+    }
+  }
+
+  private void send(Connection connection, AccountEvent event) {
+    try {
+      connection.session.sendMessage(new TextMessage(objectMapper.writeValueAsString(event)));
+    } catch (JsonProcessingException e) {
+      throw new IllegalStateException(e);
+    } catch (IOException | RuntimeException e) {
+      log.debug("Could not send {} to user ID: {} - {}", event.type(), connection.userId, e.getMessage());
+    }
+  }
+
+  private static void close(Connection connection, CloseStatus status) {
+    try {
+      connection.session.close(status);
+    } catch (IOException e) {
+      log.debug("Could not close connection of user ID: {} - {}", connection.userId, e.getMessage());
+    }
+  }
+
+  /**
+   * A connection of a user, with the state of the user when it was last notified.
+   */
+  private static class Connection {
+
+    private final UUID userId;
+    private final WebSocketSession session;
+    private final int tokenVersion;
+    private volatile long authorities;
+    private volatile ScheduledFuture<?> expiration;
+
+    private Connection(UUID userId, WebSocketSession session, int tokenVersion, long authorities) {
+      this.userId = userId;
+      this.session = session;
+      this.tokenVersion = tokenVersion;
+      this.authorities = authorities;
+    }
+
+  }
+
+}
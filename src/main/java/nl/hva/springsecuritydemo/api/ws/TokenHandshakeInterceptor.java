@@ -0,0 +1,76 @@
+package nl.hva.springsecuritydemo.api.ws;
+
+import lombok.RequiredArgsConstructor;
+import nl.hva.springsecuritydemo.services.TokenIntrospectionService;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.server.HandshakeInterceptor;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.util.Map;
+import java.util.UUID;
+
+import static nl.hva.springsecuritydemo.utils.JWTUtil.JWT_CLAIM_KEY_TOKEN_TYPE_ACCESS;
+import static nl.hva.springsecuritydemo.utils.JWTUtil.JWT_TOKEN_PREFACE;
+
+
+/**
+ * Authenticates a WebSocket handshake by its access token, once for the whole connection.
+ * <p>
+ * Browsers cannot set headers on a handshake, so the token may also be provided as the {@value ACCESS_TOKEN_PARAM}
+ * query parameter (RFC 6750).
+ */
+@Component
+@RequiredArgsConstructor
+public class TokenHandshakeInterceptor implements HandshakeInterceptor {
+
+  public static final String ACCESS_TOKEN_PARAM = "access_token";
+
+  static final String USER_ID_ATTRIBUTE = "userId";
+  static final String EXPIRES_AT_ATTRIBUTE = "expiresAt";
+
+  private final TokenIntrospectionService introspectionService;
+
+  @Override
+  public boolean beforeHandshake(
+    ServerHttpRequest request,
+    ServerHttpResponse response,
+    WebSocketHandler wsHandler,
+    Map<String, Object> attributes
+  ) {
+    var token = getToken(request);
+    var introspection = token == null ? null : introspectionService.introspect(token);
+
+    // Refresh tokens only grant new access tokens.
+    if (introspection == null || !introspection.active() || !JWT_CLAIM_KEY_TOKEN_TYPE_ACCESS.equals(introspection.tokenType())) {
+      response.setStatusCode(HttpStatus.UNAUTHORIZED);
+      return false;
+    }
+
+    attributes.put(USER_ID_ATTRIBUTE, UUID.fromString(introspection.sub()));
+    attributes.put(EXPIRES_AT_ATTRIBUTE, introspection.exp());
+    return true;
+  }
+
+  @Override
+  public void afterHandshake(
+    ServerHttpRequest request,
+    ServerHttpResponse response,
+    WebSocketHandler wsHandler,
+    Exception exception
+  ) {
+  }
+
+  private static String getToken(ServerHttpRequest request) {
+    var authHeader = request.getHeaders().getFirst(HttpHeaders.AUTHORIZATION);
+    if (authHeader != null && authHeader.startsWith(JWT_TOKEN_PREFACE))
+      return authHeader.substring(JWT_TOKEN_PREFACE.length()).trim();
+
+    return UriComponentsBuilder.fromUri(request.getURI()).build().getQueryParams().getFirst(ACCESS_TOKEN_PARAM);
+  }
+
+}
@@ -0,0 +1,102 @@
+package nl.hva.springsecuritydemo.config;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import nl.hva.springsecuritydemo.config.limits.GradientConcurrencyLimit;
+import nl.hva.springsecuritydemo.config.matchers.PathTrieRequestMatcher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static nl.hva.springsecuritydemo.api.rest.AuthenticateController.AUTH_API_BASE;
+import static nl.hva.springsecuritydemo.api.rest.UserController.USER_API_BASE;
+
+
+/**
+ * A filter to shed load before the {@link JWTFilter}, with an adaptive concurrency limit per partition of the API.
+ * Expensive logins and cheap reads have separate limits, so a surge of one does not starve the other.
+ * <p>
+ * Rejected requests are answered with 503 and a Retry-After header, before their token is parsed or the database is
+ * queried. Requests outside the partitions are not limited.
+ */
+@Component
+public class ConcurrencyLimitFilter extends OncePerRequestFilter {
+
+  private static final Logger logger = LoggerFactory.getLogger(ConcurrencyLimitFilter.class);
+  private static final String RETRY_AFTER_SECONDS = "1";
+
+  private final PathTrieRequestMatcher matcher = new PathTrieRequestMatcher();
+  private final List<GradientConcurrencyLimit> limits;
+
+  public ConcurrencyLimitFilter(
+    @Value("${users.concurrency-limit.initial:20}") int initialLimit,
+    @Value("${users.concurrency-limit.min:4}") int minLimit,
+    @Value("${users.concurrency-limit.max:200}") int maxLimit
+  ) {
+    matcher.add(AUTH_API_BASE + "/**");
+    matcher.add(USER_API_BASE + "/**");
+
+    limits = List.of(
+      new GradientConcurrencyLimit("auth", initialLimit, minLimit, maxLimit),
+      new GradientConcurrencyLimit("user", initialLimit, minLimit, maxLimit)
+    );
+  }
+
+  @Override
+  protected void doFilterInternal(
+    HttpServletRequest req,
+    HttpServletResponse res,
+    FilterChain chain
+  ) throws ServletException, IOException {
+    var partition = matcher.firstMatch(req);
+
+    if (partition < 0) {
+      chain.doFilter(req, res);
+      return;
+    }
+
+    var limit = limits.get(partition);
+
+    if (!limit.tryAcquire()) {
+      logger.debug("Concurrency limit of {} reached, rejecting request to URI: {}", limit.getName(), req.getRequestURI());
+      res.setHeader(HttpHeaders.RETRY_AFTER, RETRY_AFTER_SECONDS);
+      res.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+      return;
+    }
+
+    var start = System.nanoTime();
+
+    try {
+      chain.doFilter(req, res);
+    } finally {
+      limit.release(start);
+    }
+  }
+
+  /**
+   * @return The limit, requests in flight and average latency of every partition.
+   */
+  public Map<String, Map<String, Number>> getMetrics() {
+    var metrics = new LinkedHashMap<String, Map<String, Number>>();
+
+    for (var limit : limits)
+      metrics.put(limit.getName(), Map.of(
+        "limit", limit.getLimit(),
+        "inflight", limit.getInflight(),
+        "averageRttMs", limit.getAverageRttMs()
+      ));
+
+    return metrics;
+  }
+
+}
@@ -1,5 +1,9 @@
 package nl.hva.springsecuritydemo.config;
 
+/**
+ * The input formats accepted by the application. Validation on requests is done by the single-pass validators in
+ * {@link nl.hva.springsecuritydemo.validators}, these regexes remain the specification they are tested against.
+ */
 public class GenericConfig {
 
   public static final String EMAIL_REGEX
@@ -1,66 +1,91 @@
 package nl.hva.springsecuritydemo.config;
 
 import jakarta.servlet.http.HttpServletRequest;
+import nl.hva.springsecuritydemo.config.jfr.HandledExceptionEvent;
 import nl.hva.springsecuritydemo.exceptions.BadRequest;
 import nl.hva.springsecuritydemo.exceptions.ConflictException;
+import nl.hva.springsecuritydemo.exceptions.DomainException;
 import nl.hva.springsecuritydemo.exceptions.ForbiddenResourceAccessed;
 import nl.hva.springsecuritydemo.exceptions.PreConditionFailed;
 import nl.hva.springsecuritydemo.exceptions.ResourceNotFound;
+import nl.hva.springsecuritydemo.exceptions.ServiceUnavailable;
 import nl.hva.springsecuritydemo.exceptions.TooBrokeException;
+import nl.hva.springsecuritydemo.exceptions.TooManyRequests;
 import nl.hva.springsecuritydemo.exceptions.UnauthorizedException;
-import org.slf4j.Logger;
+import nl.hva.springsecuritydemo.utils.SampledLogger;
 import org.slf4j.LoggerFactory;
 import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ProblemDetail;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.MethodArgumentNotValidException;
 import org.springframework.web.bind.annotation.ControllerAdvice;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.client.HttpClientErrorException;
 
+import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.Map;
 
 import static org.springframework.http.HttpStatus.BAD_REQUEST;
 import static org.springframework.http.HttpStatus.CONFLICT;
 
 
+/**
+ * Translates exceptions to RFC 7807 problem responses.
+ * <p>
+ * Logging is sampled per exception type, and only unexpected server errors are logged with a stack trace. Domain
+ * exceptions with a 5xx status, such as {@link ServiceUnavailable}, are expected outcomes and logged as warnings.
+ */
 @ControllerAdvice
 public class GlobalExceptionHandler {
 
-  private static final Logger logger = LoggerFactory.getLogger(GlobalExceptionHandler.class);
+  /**
+   * Amount of log entries per exception type within a single {@link #LOG_INTERVAL_MS}.
+   */
+  private static final int LOG_PERMITS_PER_INTERVAL = 10;
+  private static final long LOG_INTERVAL_MS = 10_000;
+
+  private static final SampledLogger logger = new SampledLogger(
+    LoggerFactory.getLogger(GlobalExceptionHandler.class),
+    LOG_PERMITS_PER_INTERVAL,
+    LOG_INTERVAL_MS
+  );
 
   @ExceptionHandler(MethodArgumentNotValidException.class)
-  public ResponseEntity<Object> handleValidationExceptions(
+  public ResponseEntity<ProblemDetail> handleValidationExceptions(
     MethodArgumentNotValidException e,
     HttpServletRequest request
   ) {
-    var exceptionMessage = getExceptionMessage(request, BAD_REQUEST, e.getMessage());
-    logger.warn(exceptionMessage, e);
-
-    return new ResponseEntity<>(
-      e.getBindingResult()
-        .getFieldErrors()
-        .stream()
-        .map(error -> error.getField() + ": " + error.getDefaultMessage())
-        .toList(),
-      BAD_REQUEST
+    log(request, BAD_REQUEST, e);
+
+    var problem = buildProblem(request, BAD_REQUEST, "Validation failed.");
+    problem.setProperty("errors", e.getBindingResult()
+      .getFieldErrors()
+      .stream()
+      .map(error -> error.getField() + ": " + error.getDefaultMessage())
+      .toList()
     );
+
+    return ResponseEntity.status(BAD_REQUEST).body(problem);
   }
 
   @ExceptionHandler(DataIntegrityViolationException.class)
-  public ResponseEntity<Object> handleDataIntegrityViolation(
+  public ResponseEntity<ProblemDetail> handleDataIntegrityViolation(
     DataIntegrityViolationException e,
     HttpServletRequest request
   ) {
-    var message = getExceptionMessage(request, CONFLICT, e.getMostSpecificCause().getMessage());
+    var message = e.getMostSpecificCause().getMessage();
 
-    logger.warn(message, e);
+    log(request, CONFLICT, e);
 
-    return new ResponseEntity<>(
-      message.contains("Duplicate entry") ? "'" + extractDuplicateValue(e.getMostSpecificCause().getMessage())
-        + "' is already taken. Please use a different value." : message,
-      CONFLICT
-    );
+    return ResponseEntity.status(CONFLICT).body(buildProblem(
+      request,
+      CONFLICT,
+      message.contains("Duplicate entry") ? "'" + extractDuplicateValue(message)
+        + "' is already taken. Please use a different value." : message
+    ));
   }
 
   private String extractDuplicateValue(String message) {
@@ -72,22 +97,22 @@ public class GlobalExceptionHandler {
   }
 
   @ExceptionHandler(ConflictException.class)
-  public ResponseEntity<String> handleConflictException(Exception e, HttpServletRequest request) {
+  public ResponseEntity<ProblemDetail> handleConflictException(Exception e, HttpServletRequest request) {
     return buildErrorResponse(request, CONFLICT, e);
   }
 
   @ExceptionHandler(PreConditionFailed.class)
-  public ResponseEntity<String> handlePreconditionError(Exception e, HttpServletRequest request) {
+  public ResponseEntity<ProblemDetail> handlePreconditionError(Exception e, HttpServletRequest request) {
     return buildErrorResponse(request, HttpStatus.PRECONDITION_FAILED, e);
   }
 
   @ExceptionHandler(ForbiddenResourceAccessed.class)
-  public ResponseEntity<String> handleForbiddenResourceAccess(Exception e, HttpServletRequest request) {
+  public ResponseEntity<ProblemDetail> handleForbiddenResourceAccess(Exception e, HttpServletRequest request) {
     return buildErrorResponse(request, HttpStatus.FORBIDDEN, e);
   }
 
   @ExceptionHandler(ResourceNotFound.class)
-  public ResponseEntity<String> handleNotFound(Exception e, HttpServletRequest request) {
+  public ResponseEntity<ProblemDetail> handleNotFound(Exception e, HttpServletRequest request) {
     return buildErrorResponse(request, HttpStatus.NOT_FOUND, e);
   }
 
@@ -95,7 +120,7 @@ public class GlobalExceptionHandler {
     UnauthorizedException.class,
     HttpClientErrorException.Unauthorized.class
   })
-  public ResponseEntity<String> handleUnauthorizedAcces(Exception e, HttpServletRequest request) {
+  public ResponseEntity<ProblemDetail> handleUnauthorizedAcces(Exception e, HttpServletRequest request) {
     return buildErrorResponse(request, HttpStatus.UNAUTHORIZED, e);
   }
 
@@ -104,47 +129,92 @@ public class GlobalExceptionHandler {
     BadRequest.class,
     URISyntaxException.class
   })
-  public ResponseEntity<String> handleBadRequest(Exception e, HttpServletRequest request) {
+  public ResponseEntity<ProblemDetail> handleBadRequest(Exception e, HttpServletRequest request) {
     return buildErrorResponse(request, BAD_REQUEST, e);
   }
 
+  @ExceptionHandler(TooManyRequests.class)
+  public ResponseEntity<ProblemDetail> handleTooManyRequests(TooManyRequests e, HttpServletRequest request) {
+    var response = buildErrorResponse(request, HttpStatus.TOO_MANY_REQUESTS, e);
+
+    return ResponseEntity.status(response.getStatusCode())
+      .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+      .body(response.getBody());
+  }
+
+  @ExceptionHandler(ServiceUnavailable.class)
+  public ResponseEntity<ProblemDetail> handleServiceUnavailable(ServiceUnavailable e, HttpServletRequest request) {
+    var response = buildErrorResponse(request, HttpStatus.SERVICE_UNAVAILABLE, e);
+
+    return ResponseEntity.status(response.getStatusCode())
+      .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+      .body(response.getBody());
+  }
+
   @ExceptionHandler(TooBrokeException.class)
-  public ResponseEntity<String> handleTooBrokeRequest(Exception e, HttpServletRequest request) {
+  public ResponseEntity<ProblemDetail> handleTooBrokeRequest(Exception e, HttpServletRequest request) {
     return buildErrorResponse(request, HttpStatus.I_AM_A_TEAPOT, e);
   }
 
   @ExceptionHandler(Exception.class)
-  public ResponseEntity<String> handleInternalServerError(Exception e, HttpServletRequest request) {
+  public ResponseEntity<ProblemDetail> handleInternalServerError(Exception e, HttpServletRequest request) {
     return buildErrorResponse(request, HttpStatus.INTERNAL_SERVER_ERROR, e);
   }
 
-  private ResponseEntity<String> buildErrorResponse(
+  /**
+   * @return The total amount of handled exceptions per exception type, since this instance started.
+   */
+  public Map<String, Long> getExceptionCounts() {
+    return logger.getCounts();
+  }
+
+  private ResponseEntity<ProblemDetail> buildErrorResponse(
     HttpServletRequest request,
     HttpStatus status,
     Throwable e
   ) {
-    var message = getExceptionMessage(request, status, e.getMessage());
-
-    if (status.is5xxServerError()) logger.error(message, e);
-    else logger.warn(message, e);
+    log(request, status, e);
 
-    return ResponseEntity.status(status).body(e.getMessage());
+    return ResponseEntity.status(status).body(buildProblem(request, status, e.getMessage()));
   }
 
-  private String getRequestURL(HttpServletRequest request) {
-    return request.getRequestURL() + (request.getQueryString() != null ? "?" + request.getQueryString() : "");
+  private ProblemDetail buildProblem(HttpServletRequest request, HttpStatus status, String detail) {
+    var problem = ProblemDetail.forStatusAndDetail(status, detail);
+    problem.setInstance(URI.create(request.getRequestURI()));
+
+    return problem;
   }
 
-  private String getExceptionMessage(
-    HttpServletRequest request,
-    HttpStatus status,
-    String exceptionMessage
-  ) {
-    return String.format("Request '%s' failed with status %s: '%s'",
-      getRequestURL(request),
+  private void log(HttpServletRequest request, HttpStatus status, Throwable e) {
+    var event = new HandledExceptionEvent();
+    if (event.shouldCommit()) {
+      event.exceptionClass = e.getClass();
+      event.status = status.value();
+      event.method = request.getMethod();
+      event.path = request.getRequestURI();
+      event.commit();
+    }
+
+    logger.log(
+      e,
+      status.is5xxServerError() && !(e instanceof DomainException),
+      "Request '{}' failed with status {}: '{}'",
+      new RequestURL(request),
       status,
-      exceptionMessage
+      e.getMessage()
     );
   }
 
+  /**
+   * Renders the full URL of a request, only when a log entry is actually written.
+   */
+  private record RequestURL(HttpServletRequest request) {
+
+    @Override
+    public String toString() {
+      return request.getRequestURL() + (request.getQueryString() != null ? "?" + request.getQueryString() : "");
+    }
+
+  }
+
 }
@@ -4,23 +4,28 @@ import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
-import lombok.RequiredArgsConstructor;
+import nl.hva.springsecuritydemo.config.authorities.AuthorityRegistry;
+import nl.hva.springsecuritydemo.config.authorities.AuthoritySet;
+import nl.hva.springsecuritydemo.config.authorities.MaskedAuthenticationToken;
+import nl.hva.springsecuritydemo.config.matchers.PathTrieRequestMatcher;
 import nl.hva.springsecuritydemo.exceptions.ConflictException;
-import nl.hva.springsecuritydemo.models.user.User;
+import nl.hva.springsecuritydemo.exceptions.ServiceUnavailable;
+import nl.hva.springsecuritydemo.services.AuthSnapshot;
 import nl.hva.springsecuritydemo.services.UserService;
 import nl.hva.springsecuritydemo.utils.JWTUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpHeaders;
-import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
-import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.context.SecurityContextHolderStrategy;
 import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
 
 import java.io.IOException;
 import java.util.List;
-import java.util.Objects;
+import java.util.UUID;
 
 import static nl.hva.springsecuritydemo.utils.JWTUtil.JWT_TOKEN_PREFACE;
 import static org.springframework.util.StringUtils.hasLength;
@@ -28,15 +33,48 @@ import static org.springframework.util.StringUtils.hasLength;
 
 /**
  * A filter to capture JWT tokens embedded in HTTP Authorizations header from incoming requests.
- * If a JWT is present it validates it and authenticates the user.
+ * If a JWT is present it validates it and authenticates the user, by the id of the user as principal.
+ * <p>
+ * The state of the user is read from the {@link AuthSnapshot}, so authenticating a request does not load the user.
+ * <p>
+ * When the user is not in the snapshot and the database is unavailable, the endpoints listed in
+ * {@code users.circuit-breaker.claims-only} authenticate by the claims of the token alone, as issued. Other requests
+ * are answered with 503 right away.
  */
 @Component
-@RequiredArgsConstructor
 public class JWTFilter extends OncePerRequestFilter {
 
   private static final Logger logger = LoggerFactory.getLogger(JWTFilter.class);
   private final UserService userService;
   private final JWTUtil jwtUtil;
+  private final AuthorityRegistry authorities;
+  private final SecurityContextHolderStrategy securityContextHolderStrategy;
+  private final PathTrieRequestMatcher claimsOnly = new PathTrieRequestMatcher();
+
+  /**
+   * @param claimsOnly Patterns of the endpoints that may authenticate by the claims of the token, optionally preceded
+   *                   by a method, such as {@code GET /api/v1/admin/limits}.
+   */
+  public JWTFilter(
+    UserService userService,
+    JWTUtil jwtUtil,
+    AuthorityRegistry authorities,
+    SecurityContextHolderStrategy securityContextHolderStrategy,
+    @Value("${users.circuit-breaker.claims-only:}") List<String> claimsOnly
+  ) {
+    this.userService = userService;
+    this.jwtUtil = jwtUtil;
+    this.authorities = authorities;
+    this.securityContextHolderStrategy = securityContextHolderStrategy;
+
+    for (var endpoint : claimsOnly) {
+      var parts = endpoint.trim().split("\\s+", 2);
+      if (parts[0].isEmpty()) continue;
+
+      if (parts.length == 1) this.claimsOnly.add(parts[0]);
+      else this.claimsOnly.add(HttpMethod.valueOf(parts[0]), parts[1]);
+    }
+  }
 
   @Override
   protected void doFilterInternal(
@@ -58,43 +96,75 @@ public class JWTFilter extends OncePerRequestFilter {
     var token = authHeader.replace(JWT_TOKEN_PREFACE, "").trim();
     logger.debug("Extracted token: {}", token);
 
-    // Check if the provided JWT token is invalid, and pass to the next filter.
-    if (!jwtUtil.validate(token)) {
+    // Verify the token once, and read every claim from the result. Activation tokens only activate.
+    var claims = jwtUtil.findClaimsOf(token);
+    if (claims == null || jwtUtil.isActivationToken(claims)) {
       logger.warn("JWT token validation failed.");
       chain.doFilter(req, res);
       return;
     }
 
     // Extract user ID from the token.
-    var userId = jwtUtil.getUserIdOf(token);
+    var userId = jwtUtil.getUserIdOf(claims);
     logger.debug("Extracted user ID from token: {}", userId);
 
-    User user = userService.findById(userId);
-
-    if (user == null) {
-      logger.warn("No user found for ID: {}. Skipping authentication.", userId);
+    var state = new AuthSnapshot.Entry();
+    boolean exists;
+
+    try {
+      exists = userService.readAuthState(userId, state);
+    } catch (ServiceUnavailable e) {
+      if (!claimsOnly.matches(req)) {
+        logger.warn("Database unavailable, rejecting request to URI: {}", req.getRequestURI());
+        res.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()));
+        res.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+        return;
+      }
+
+      // Without the database, changes of the user since the token was issued are not known.
+      logger.warn("Database unavailable, authenticating user ID: {} by the claims of its token.", userId);
+      var mask = 0L;
+      for (var authority : jwtUtil.getAuthoritiesOf(claims)) mask |= authorities.maskOf(authority);
+
+      authenticate(req, userId, authorities.toAuthoritySet(mask));
       chain.doFilter(req, res);
       return;
     }
 
-    if (!user.isEnabled()) {
+    // The token is valid, but its user no longer exists. Reject without further processing.
+    if (!exists) {
+      logger.debug("No user found for ID: {}. Rejecting request.", userId);
+      res.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
+      return;
+    }
+
+    // The password changed after the token was issued.
+    if (jwtUtil.getTokenVersionOf(claims) < state.getTokenVersion()) {
+      logger.debug("Token of user ID: {} has been revoked. Rejecting request.", userId);
+      res.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
+      return;
+    }
+
+    if (!state.isEnabled()) {
       logger.error("User account with ID: {} is disabled.", userId);
       throw new ConflictException("Your account is disabled. Check your email for the activation link.");
     }
 
     logger.info("User ID: {} authenticated successfully. Setting up security context.", userId);
 
-    var authToken = new UsernamePasswordAuthenticationToken(
-      user,
-      null,
-      Objects.requireNonNullElse(user.getAuthorities(), List.of())
-    );
+    authenticate(req, userId, authorities.toAuthoritySet(state.getAuthorities()));
+    chain.doFilter(req, res);
+  }
+
+  private void authenticate(HttpServletRequest req, UUID userId, AuthoritySet userAuthorities) {
+    var authToken = new MaskedAuthenticationToken(userId, userAuthorities);
 
     authToken.setDetails(new WebAuthenticationDetailsSource().buildDetails(req));
-    SecurityContextHolder.getContext().setAuthentication(authToken);
+    var context = securityContextHolderStrategy.createEmptyContext();
+    context.setAuthentication(authToken);
+    securityContextHolderStrategy.setContext(context);
 
     logger.debug("Security context set for user ID: {}", userId);
-    chain.doFilter(req, res);
   }
 
 }
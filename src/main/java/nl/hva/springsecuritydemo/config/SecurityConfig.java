@@ -4,6 +4,9 @@ import io.swagger.v3.oas.annotations.enums.SecuritySchemeIn;
 import io.swagger.v3.oas.annotations.enums.SecuritySchemeType;
 import io.swagger.v3.oas.annotations.security.SecurityScheme;
 import lombok.RequiredArgsConstructor;
+import nl.hva.springsecuritydemo.config.authorities.AuthorityRegistry;
+import nl.hva.springsecuritydemo.config.context.ScopedSecurityContextHolderStrategy;
+import nl.hva.springsecuritydemo.config.matchers.TrieAuthorizationManager;
 import nl.hva.springsecuritydemo.services.UserService;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
@@ -16,13 +19,18 @@ import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.config.annotation.web.configurers.AbstractHttpConfigurer;
 import org.springframework.security.config.annotation.web.configurers.HeadersConfigurer;
+import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.web.SecurityFilterChain;
 import org.springframework.security.web.access.intercept.AuthorizationFilter;
-import org.springframework.security.web.util.matcher.AntPathRequestMatcher;
 
+import static nl.hva.springsecuritydemo.api.rest.AdminController.ADMIN_API_BASE;
 import static nl.hva.springsecuritydemo.api.rest.AuthenticateController.AUTH_API_BASE;
+import static nl.hva.springsecuritydemo.api.rest.IntrospectionController.INTROSPECT_API_BASE;
 import static nl.hva.springsecuritydemo.api.rest.UserController.USER_API_BASE;
+import static nl.hva.springsecuritydemo.api.ws.AccountSocketConfig.ACCOUNT_WS_PATH;
+import static nl.hva.springsecuritydemo.models.user.UserRole.ROLE_ADMIN_NAME;
+import static nl.hva.springsecuritydemo.models.user.UserRole.ROLE_GATEWAY_NAME;
 import static nl.hva.springsecuritydemo.models.user.UserRole.ROLE_USER_NAME;
 import static org.springframework.security.config.http.SessionCreationPolicy.STATELESS;
 
@@ -47,10 +55,24 @@ public class SecurityConfig {
   private final PasswordEncoder passwordEncoder;
   private final UserService userService;
   private final JWTFilter tokenFilter;
+  private final ConcurrencyLimitFilter concurrencyLimitFilter;
+  private final AuthorityRegistry authorities;
 
   @Value("${spring.profiles.active}")
   private String activeProfile;
 
+  /**
+   * Binds security contexts to the scope of a request, also for the static {@link SecurityContextHolder}. Static, as
+   * the filters of this configuration depend on it.
+   */
+  @Bean
+  public static ScopedSecurityContextHolderStrategy securityContextHolderStrategy() {
+    var strategy = new ScopedSecurityContextHolderStrategy();
+    SecurityContextHolder.setContextHolderStrategy(strategy);
+
+    return strategy;
+  }
+
   @Bean
   public SecurityFilterChain securityFilterChain(HttpSecurity http) throws Exception {
     // No need for CSRF protection, given use of JWT with localstorage.
@@ -67,30 +89,35 @@ public class SecurityConfig {
         headers.frameOptions(HeadersConfigurer.FrameOptionsConfig::sameOrigin);
     });
 
-    http.authorizeHttpRequests(request -> {
-        if (activeProfile.equals("dev"))
-          request.requestMatchers(
-            AntPathRequestMatcher.antMatcher("/h2-console/**"),
-            AntPathRequestMatcher.antMatcher("/swagger-ui/**"),
-            AntPathRequestMatcher.antMatcher("/v3/api-docs/**")
-          ).permitAll();
-
-        // Open endpoints
-        request.requestMatchers(
-          AntPathRequestMatcher.antMatcher(AUTH_API_BASE + "/**"),
-          AntPathRequestMatcher.antMatcher("/favicon.ico/")
-        ).permitAll();
-
-        // User role endpoints
-        request.requestMatchers(
-          AntPathRequestMatcher.antMatcher(USER_API_BASE + "/**")
-        ).hasRole(ROLE_USER_NAME);
-      })
+    var rules = new TrieAuthorizationManager(authorities);
+
+    if (activeProfile.equals("dev"))
+      rules.permitAll("/h2-console/**", "/swagger-ui/**", "/v3/api-docs/**");
+
+    // Open endpoints
+    rules.permitAll(AUTH_API_BASE + "/**", "/favicon.ico/");
+
+    // WebSocket handshakes are authenticated by the TokenHandshakeInterceptor, which also accepts a query parameter.
+    rules.permitAll(ACCOUNT_WS_PATH);
+
+    // User role endpoints
+    rules.hasRole(ROLE_USER_NAME, USER_API_BASE + "/**");
+
+    // Admin role endpoints
+    rules.hasRole(ROLE_ADMIN_NAME, ADMIN_API_BASE + "/**");
+
+    // Gateway role endpoints
+    rules.hasRole(ROLE_GATEWAY_NAME, INTROSPECT_API_BASE, INTROSPECT_API_BASE + "/**");
+
+    // All rules are compiled into a single trie, that finds the first matching rule by the depth of the path.
+    http.authorizeHttpRequests(request -> request.anyRequest().access(rules))
       // Set session management to stateless (for JWT)
       .sessionManagement(manager -> manager.sessionCreationPolicy(STATELESS));
 
     // Add JWT token filter
     http.addFilterBefore(tokenFilter, AuthorizationFilter.class);
+    // Shed load before any token is parsed
+    http.addFilterBefore(concurrencyLimitFilter, JWTFilter.class);
 
     return http.build();
   }
@@ -0,0 +1,154 @@
+package nl.hva.springsecuritydemo.config.authorities;
+
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static nl.hva.springsecuritydemo.models.user.UserRole.ROLE_ADMIN_NAME;
+import static nl.hva.springsecuritydemo.models.user.UserRole.ROLE_GATEWAY_NAME;
+import static nl.hva.springsecuritydemo.models.user.UserRole.ROLE_PREFIX;
+import static nl.hva.springsecuritydemo.models.user.UserRole.ROLE_USER_NAME;
+
+
+/**
+ * Interns the authorities of the application, by assigning each of them a bit in a {@code long} mask.
+ * <p>
+ * The role hierarchy is resolved when an authority is registered: the mask of an authority includes the bits of all
+ * authorities it implies, directly or transitively. Checking whether a principal holds an authority, is then a
+ * single mask test.
+ */
+@Component
+public class AuthorityRegistry {
+
+  public static final int MAX_AUTHORITIES = Long.SIZE;
+
+  /**
+   * The authorities each authority directly implies.
+   */
+  private static final Map<String, List<String>> HIERARCHY = Map.of(
+    ROLE_PREFIX + ROLE_ADMIN_NAME, List.of(ROLE_PREFIX + ROLE_USER_NAME, ROLE_PREFIX + ROLE_GATEWAY_NAME)
+  );
+
+  private volatile Snapshot snapshot = new Snapshot(Map.of(), new GrantedAuthority[0], new long[0]);
+
+  public AuthorityRegistry() {
+    register(ROLE_PREFIX + ROLE_USER_NAME);
+    register(ROLE_PREFIX + ROLE_ADMIN_NAME);
+    register(ROLE_PREFIX + ROLE_GATEWAY_NAME);
+  }
+
+  /**
+   * Registers the authority, and those it implies, when not registered yet.
+   *
+   * @return The bit index of the authority.
+   */
+  public synchronized int register(String authority) {
+    var index = snapshot.indexes.get(authority);
+    if (index != null) return index;
+
+    var indexes = new HashMap<>(snapshot.indexes);
+    var authorities = Arrays.copyOf(snapshot.authorities, snapshot.authorities.length + 1);
+
+    if (authorities.length > MAX_AUTHORITIES)
+      throw new IllegalStateException("No more than " + MAX_AUTHORITIES + " authorities are supported.");
+
+    index = authorities.length - 1;
+    indexes.put(authority, index);
+    authorities[index] = new SimpleGrantedAuthority(authority);
+    snapshot = new Snapshot(Map.copyOf(indexes), authorities, snapshot.closures);
+
+    for (var implied : HIERARCHY.getOrDefault(authority, List.of())) register(implied);
+
+    snapshot = new Snapshot(snapshot.indexes, snapshot.authorities, computeClosures(snapshot));
+    return index;
+  }
+
+  /**
+   * @return The bit index of the authority, or -1 if it is not registered.
+   */
+  public int indexOf(String authority) {
+    var index = snapshot.indexes.get(authority);
+
+    return index == null ? -1 : index;
+  }
+
+  /**
+   * @return The mask of the authority including the authorities it implies, or 0 if it is not registered.
+   */
+  public long maskOf(String authority) {
+    var current = snapshot;
+    var index = current.indexes.get(authority);
+
+    return index == null ? 0 : current.closures[index];
+  }
+
+  /**
+   * @return The mask of all provided authorities including the authorities they imply. Authorities that are not
+   * registered are left out.
+   */
+  public long maskOf(Collection<? extends GrantedAuthority> authorities) {
+    var mask = 0L;
+    for (var authority : authorities) mask |= maskOf(authority.getAuthority());
+
+    return mask;
+  }
+
+  /**
+   * @return The authorities of the provided ones, extended with the authorities they imply.
+   */
+  public AuthoritySet toAuthoritySet(Collection<? extends GrantedAuthority> authorities) {
+    return toAuthoritySet(maskOf(authorities));
+  }
+
+  /**
+   * @return The authorities of a mask, as returned by {@link #maskOf(Collection)}.
+   */
+  public AuthoritySet toAuthoritySet(long mask) {
+    return new AuthoritySet(this, mask);
+  }
+
+  GrantedAuthority authorityAt(int index) {
+    return snapshot.authorities[index];
+  }
+
+  /**
+   * Computes the transitive closure of the hierarchy, by propagating implied masks until nothing changes.
+   */
+  private static long[] computeClosures(Snapshot snapshot) {
+    var closures = new long[snapshot.authorities.length];
+    for (var i = 0; i < closures.length; i++) closures[i] = 1L << i;
+
+    var changed = true;
+    while (changed) {
+      changed = false;
+
+      for (var i = 0; i < closures.length; i++) {
+        for (var implied : HIERARCHY.getOrDefault(snapshot.authorities[i].getAuthority(), List.of())) {
+          var index = snapshot.indexes.get(implied);
+          if (index == null) continue;
+
+          var closure = closures[i] | closures[index];
+          if (closure != closures[i]) {
+            closures[i] = closure;
+            changed = true;
+          }
+        }
+      }
+    }
+
+    return closures;
+  }
+
+  /**
+   * An immutable state of the registry, replaced as a whole when an authority is registered.
+   */
+  private record Snapshot(Map<String, Integer> indexes, GrantedAuthority[] authorities, long[] closures) {
+  }
+
+}
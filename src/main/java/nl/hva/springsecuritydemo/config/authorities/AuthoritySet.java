@@ -0,0 +1,71 @@
+package nl.hva.springsecuritydemo.config.authorities;
+
+import org.springframework.security.core.GrantedAuthority;
+
+import java.util.AbstractCollection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+
+/**
+ * An immutable collection of authorities, backed by a bit mask of an {@link AuthorityRegistry}.
+ */
+public final class AuthoritySet extends AbstractCollection<GrantedAuthority> {
+
+  private final AuthorityRegistry registry;
+  private final long mask;
+
+  AuthoritySet(AuthorityRegistry registry, long mask) {
+    this.registry = registry;
+    this.mask = mask;
+  }
+
+  public long getMask() {
+    return mask;
+  }
+
+  /**
+   * @return Whether the set contains at least one of the authorities of the provided mask.
+   */
+  public boolean containsAny(long authorities) {
+    return (mask & authorities) != 0;
+  }
+
+  @Override
+  public boolean contains(Object o) {
+    if (!(o instanceof GrantedAuthority authority)) return false;
+
+    var index = registry.indexOf(authority.getAuthority());
+    return index >= 0 && containsAny(1L << index);
+  }
+
+  @Override
+  public int size() {
+    return Long.bitCount(mask);
+  }
+
+  @Override
+  public Iterator<GrantedAuthority> iterator() {
+    return new Iterator<>() {
+
+      private long remaining = mask;
+
+      @Override
+      public boolean hasNext() {
+        return remaining != 0;
+      }
+
+      @Override
+      public GrantedAuthority next() {
+        if (remaining == 0) throw new NoSuchElementException();
+
+        var index = Long.numberOfTrailingZeros(remaining);
+        remaining &= remaining - 1;
+
+        return registry.authorityAt(index);
+      }
+
+    };
+  }
+
+}
@@ -0,0 +1,31 @@
+package nl.hva.springsecuritydemo.config.authorities;
+
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+
+import java.io.Serial;
+
+
+/**
+ * An authenticated token that keeps the mask of its authorities. The token copies the authorities it is given into a
+ * list of its own, so the mask is kept aside to check roles with a single mask test.
+ */
+public class MaskedAuthenticationToken extends UsernamePasswordAuthenticationToken {
+
+  @Serial
+  private static final long serialVersionUID = 1L;
+
+  private final long mask;
+
+  public MaskedAuthenticationToken(Object principal, AuthoritySet authorities) {
+    super(principal, null, authorities);
+    this.mask = authorities.getMask();
+  }
+
+  /**
+   * @return The mask of the authorities, including the authorities they imply.
+   */
+  public long getMask() {
+    return mask;
+  }
+
+}
@@ -1,14 +1,25 @@
 package nl.hva.springsecuritydemo.config.beans;
 
+import nl.hva.springsecuritydemo.config.jfr.InstrumentedPasswordEncoder;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.crypto.argon2.Argon2PasswordEncoder;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.DelegatingPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 
+import java.util.Map;
+
 
 @Configuration
 public class DefaultPasswordEncoder {
 
+  /**
+   * Prefix ids of the supported hash formats, as in {@code {argon2}$argon2id$...}.
+   */
+  public static final String ARGON2_ID = "argon2";
+  public static final String BCRYPT_ID = "bcrypt";
+
   /**
    * Length of the random salt in bytes (for better uniqueness of hashes)
    */
@@ -33,14 +44,39 @@ public class DefaultPasswordEncoder {
   private static final int ITERATIONS = 5;
 
   /**
-   * Creates a password encoder.
+   * Creates a password encoder, that hashes with Argon2. BCrypt hashes are accepted as well, for users imported from
+   * other systems.
    *
    * @return The created password encoder.
    */
   @Bean
   public PasswordEncoder passwordEncoder() {
-    // Creates and returns an Argon2 password encoder with the specified configuration
-    return new Argon2PasswordEncoder(SALT_LENGTH, HASH_LENGTH, PARALLELISM, MEMORY, ITERATIONS);
+    // Creates an Argon2 password encoder with the specified configuration
+    var argon2 = new Argon2PasswordEncoder(SALT_LENGTH, HASH_LENGTH, PARALLELISM, MEMORY, ITERATIONS);
+    var encoder = new DelegatingPasswordEncoder(ARGON2_ID, Map.of(
+      ARGON2_ID, argon2,
+      BCRYPT_ID, new BCryptPasswordEncoder()
+    ));
+
+    // Hashes stored without a format prefix are plain Argon2 hashes.
+    encoder.setDefaultPasswordEncoderForMatches(argon2);
+
+    // Hashing shows up in flight recordings as PasswordHash events, when enabled.
+    return new InstrumentedPasswordEncoder(encoder);
+  }
+
+  /**
+   * Prefixes an externally created hash with the id of its format, when the format is supported.
+   *
+   * @param hash A hash in Argon2 or BCrypt encoding, optionally already prefixed.
+   * @return The prefixed hash, or null if the format is not supported.
+   */
+  public static String toStoredFormat(String hash) {
+    if (hash.startsWith("{" + ARGON2_ID + "}") || hash.startsWith("{" + BCRYPT_ID + "}")) return hash;
+    if (hash.startsWith("$argon2")) return "{" + ARGON2_ID + "}" + hash;
+    if (hash.startsWith("$2a$") || hash.startsWith("$2b$") || hash.startsWith("$2y$")) return "{" + BCRYPT_ID + "}" + hash;
+
+    return null;
   }
 
 }
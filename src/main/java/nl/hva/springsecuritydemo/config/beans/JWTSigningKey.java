@@ -1,29 +1,54 @@
 package nl.hva.springsecuritydemo.config.beans;
 
 import io.jsonwebtoken.security.Keys;
+import io.jsonwebtoken.security.MacAlgorithm;
+import lombok.SneakyThrows;
+import nl.hva.springsecuritydemo.utils.PooledMacAlgorithm;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
 import javax.crypto.SecretKey;
 import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
 
 
 @Configuration
 public class JWTSigningKey {
 
+  /**
+   * The block size of SHA-512, the hash used by HMAC for keys of 64 bytes or more.
+   */
+  private static final int HMAC_SHA_512_BLOCK_SIZE = 128;
+
   @Value("${jwt.signing-secret}")
   private String passPhrase;
 
   /**
    * Generates a key based on secret and unique string.
+   * <p>
+   * HMAC hashes keys longer than its block size before use, so such keys are hashed once here. The resulting key
+   * produces the same signatures as the passphrase itself, so tokens issued before remain valid.
    *
    * @return A key that can be used to sign a JWT
    */
   @Bean
+  @SneakyThrows
   public SecretKey getKey() {
     byte[] hmacKey = passPhrase.getBytes(StandardCharsets.UTF_16);
+
+    if (hmacKey.length > HMAC_SHA_512_BLOCK_SIZE)
+      hmacKey = MessageDigest.getInstance("SHA-512").digest(hmacKey);
+
     return Keys.hmacShaKeyFor(hmacKey);
   }
 
+  /**
+   * @return The algorithm to sign and verify JWTs with, reusing Macs initialized with the key.
+   */
+  @Bean
+  public MacAlgorithm getSigningAlgorithm(SecretKey key) {
+    return new PooledMacAlgorithm(PooledMacAlgorithm.standardFor(key), key);
+  }
+
 }
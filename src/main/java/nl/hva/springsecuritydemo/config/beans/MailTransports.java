@@ -0,0 +1,38 @@
+package nl.hva.springsecuritydemo.config.beans;
+
+import nl.hva.springsecuritydemo.services.mail.LoggingMailTransport;
+import nl.hva.springsecuritydemo.services.mail.MailTransport;
+import nl.hva.springsecuritydemo.services.mail.SmtpMailTransport;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.mail.javamail.JavaMailSender;
+
+
+@Configuration
+public class MailTransports {
+
+  /**
+   * Sends emails by SMTP, when an SMTP server is configured with {@code spring.mail.host}.
+   */
+  @Bean
+  @ConditionalOnProperty("spring.mail.host")
+  public MailTransport smtpMailTransport(
+    JavaMailSender mailSender,
+    @Value("${users.mail.from:no-reply@localhost}") String from
+  ) {
+    return new SmtpMailTransport(mailSender, from);
+  }
+
+  /**
+   * Logs emails, when no other transport is configured.
+   */
+  @Bean
+  @ConditionalOnMissingBean
+  public MailTransport loggingMailTransport() {
+    return new LoggingMailTransport();
+  }
+
+}
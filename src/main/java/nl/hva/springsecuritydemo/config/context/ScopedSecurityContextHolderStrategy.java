@@ -0,0 +1,163 @@
+package nl.hva.springsecuritydemo.config.context;
+
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolderStrategy;
+import org.springframework.security.core.context.SecurityContextImpl;
+import org.springframework.util.Assert;
+
+import java.util.function.Supplier;
+
+
+/**
+ * Binds security contexts to scopes, such as the filter chain of a request, like a {@code ScopedValue} binds a value
+ * for the duration of a call. Once a scope is closed, its thread holds nothing: not the context, nor the entry of the
+ * binding, whether or not the context was cleared. Contexts are not inherited by threads started within a scope.
+ * <p>
+ * {@code ScopedValue} is a preview API in Java 21, so the binding is carried by a plain thread local instead. Outside
+ * a scope, contexts are bound to the thread until they are cleared, as by the default strategy. Reading the
+ * {@link #getAuthentication() authentication} never binds anything, unlike {@link #getContext()}.
+ */
+public final class ScopedSecurityContextHolderStrategy implements SecurityContextHolderStrategy {
+
+  private static final ThreadLocal<Binding> binding = new ThreadLocal<>();
+
+  /**
+   * Opens a scope on the current thread, in which no context is bound yet. Scopes have to be closed in the reverse
+   * order of opening, on the thread that opened them, which restores the binding of the enclosing scope.
+   */
+  public Scope openScope() {
+    var scope = new Scope(binding.get());
+    binding.set(scope);
+    return scope;
+  }
+
+  /**
+   * @return The authentication of the bound context, if any.
+   */
+  public Authentication getAuthentication() {
+    var current = binding.get();
+    if (current == null || current.context == null && current.deferred == null) return null;
+
+    return current.resolve().getAuthentication();
+  }
+
+  @Override
+  public void clearContext() {
+    var current = binding.get();
+
+    if (current instanceof Scope) current.clear();
+    else if (current != null) binding.remove();
+  }
+
+  @Override
+  public SecurityContext getContext() {
+    return bind().resolve();
+  }
+
+  /**
+   * @return The context bound at this moment, which filters may wrap in a context they defer in turn. When none is
+   * bound, an empty context is bound, as by the default strategy, so changes made to it are kept.
+   */
+  @Override
+  public Supplier<SecurityContext> getDeferredContext() {
+    var current = bind();
+    if (current.context == null && current.deferred == null) current.context = createEmptyContext();
+
+    var context = current.context;
+    var deferred = current.deferred;
+
+    if (context != null) return () -> context;
+
+    return () -> {
+      var resolved = deferred.get();
+      return resolved != null ? resolved : createEmptyContext();
+    };
+  }
+
+  @Override
+  public void setContext(SecurityContext context) {
+    Assert.notNull(context, "Only non-null SecurityContext instances are permitted");
+
+    var current = bind();
+    current.context = context;
+    current.deferred = null;
+  }
+
+  @Override
+  public void setDeferredContext(Supplier<SecurityContext> deferredContext) {
+    Assert.notNull(deferredContext, "Only non-null Supplier instances are permitted");
+
+    var current = bind();
+    current.context = null;
+    current.deferred = deferredContext;
+  }
+
+  @Override
+  public SecurityContext createEmptyContext() {
+    return new SecurityContextImpl();
+  }
+
+  private static Binding bind() {
+    var current = binding.get();
+
+    if (current == null) {
+      current = new Binding();
+      binding.set(current);
+    }
+
+    return current;
+  }
+
+  /**
+   * The context bound to a thread, which is resolved once when it was deferred.
+   */
+  private static class Binding {
+
+    private SecurityContext context;
+    private Supplier<SecurityContext> deferred;
+
+    private SecurityContext resolve() {
+      if (context == null) {
+        var resolved = deferred == null ? null : deferred.get();
+        context = resolved != null ? resolved : new SecurityContextImpl();
+        deferred = null;
+      }
+
+      return context;
+    }
+
+    void clear() {
+      context = null;
+      deferred = null;
+    }
+
+  }
+
+  /**
+   * A scope in which contexts are bound, until it is closed.
+   */
+  public static final class Scope extends Binding implements AutoCloseable {
+
+    private final Binding enclosing;
+
+    private Scope(Binding enclosing) {
+      this.enclosing = enclosing;
+    }
+
+    /**
+     * @throws IllegalStateException When a scope opened within this one has not been closed, or the scope was opened
+     *                               on another thread.
+     */
+    @Override
+    public void close() {
+      if (binding.get() != this) throw new IllegalStateException("The scope is not the innermost of this thread.");
+
+      clear();
+      if (enclosing == null) binding.remove();
+      else binding.set(enclosing);
+    }
+
+  }
+
+}
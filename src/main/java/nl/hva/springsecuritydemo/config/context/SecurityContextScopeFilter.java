@@ -0,0 +1,38 @@
+package nl.hva.springsecuritydemo.config.context;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+
+
+/**
+ * Opens a scope of the {@link ScopedSecurityContextHolderStrategy} around the filter chain of every request, before
+ * the security filters bind the context of the request.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+@RequiredArgsConstructor
+public class SecurityContextScopeFilter extends OncePerRequestFilter {
+
+  private final ScopedSecurityContextHolderStrategy strategy;
+
+  @Override
+  protected void doFilterInternal(
+    HttpServletRequest req,
+    HttpServletResponse res,
+    FilterChain chain
+  ) throws ServletException, IOException {
+    try (var ignored = strategy.openScope()) {
+      chain.doFilter(req, res);
+    }
+  }
+
+}
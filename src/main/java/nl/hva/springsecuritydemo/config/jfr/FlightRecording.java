@@ -0,0 +1,73 @@
+package nl.hva.springsecuritydemo.config.jfr;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.time.Duration;
+import java.util.HashMap;
+
+
+/**
+ * Records the application with the default profile of the JDK, together with the events of {@code jfr/security.jfc},
+ * when {@code users.jfr.enabled} is set. The recording keeps the last max-age worth of events, and is written to the
+ * file when the application stops.
+ */
+@Component
+@ConditionalOnProperty("users.jfr.enabled")
+public class FlightRecording {
+
+  private static final Logger logger = LoggerFactory.getLogger(FlightRecording.class);
+
+  public static final String SETTINGS = "jfr/security.jfc";
+
+  private final Path file;
+  private final Duration maxAge;
+  private Recording recording;
+
+  public FlightRecording(
+    @Value("${users.jfr.file:${java.io.tmpdir}/security.jfr}") Path file,
+    @Value("${users.jfr.max-age:1h}") Duration maxAge
+  ) {
+    this.file = file;
+    this.maxAge = maxAge;
+  }
+
+  @PostConstruct
+  public void start() throws IOException, ParseException {
+    var settings = new HashMap<>(Configuration.getConfiguration("default").getSettings());
+
+    try (var reader = new InputStreamReader(new ClassPathResource(SETTINGS).getInputStream(), StandardCharsets.UTF_8)) {
+      settings.putAll(Configuration.create(reader).getSettings());
+    }
+
+    recording = new Recording(settings);
+    recording.setName("security");
+    recording.setMaxAge(maxAge);
+    recording.setDestination(file);
+    recording.setToDisk(true);
+    recording.start();
+
+    logger.info("Started a flight recording, that is written to {} on shutdown", file);
+  }
+
+  @PreDestroy
+  public void stop() {
+    // Stopping writes the recording to its destination.
+    recording.stop();
+    recording.close();
+  }
+
+}
@@ -0,0 +1,36 @@
+package nl.hva.springsecuritydemo.config.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+
+/**
+ * Flight recorder event of an exception that was turned into an error response. Disabled unless enabled by a settings
+ * profile, such as {@code jfr/security.jfc}.
+ */
+@Name("nl.hva.springsecuritydemo.HandledException")
+@Label("Handled Exception")
+@Description("An exception answered with an error response by the GlobalExceptionHandler")
+@Category({"Spring Security Demo", "Errors"})
+@Enabled(false)
+@StackTrace(false)
+public class HandledExceptionEvent extends Event {
+
+  @Label("Exception Class")
+  public Class<?> exceptionClass;
+
+  @Label("Status")
+  public int status;
+
+  @Label("Method")
+  public String method;
+
+  @Label("Path")
+  public String path;
+
+}
@@ -0,0 +1,76 @@
+package nl.hva.springsecuritydemo.config.jfr;
+
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+
+/**
+ * Decorates a password encoder with a {@link PasswordHashEvent} for every hash and match, describing the algorithm and
+ * its cost parameters from the hash. Nothing is parsed while the event is disabled.
+ */
+public class InstrumentedPasswordEncoder implements PasswordEncoder {
+
+  private final PasswordEncoder delegate;
+
+  public InstrumentedPasswordEncoder(PasswordEncoder delegate) {
+    this.delegate = delegate;
+  }
+
+  @Override
+  public String encode(CharSequence rawPassword) {
+    var event = new PasswordHashEvent();
+    event.begin();
+
+    var hash = delegate.encode(rawPassword);
+
+    if (event.shouldCommit()) {
+      event.operation = PasswordHashEvent.ENCODE;
+      describe(event, hash);
+      event.commit();
+    }
+
+    return hash;
+  }
+
+  @Override
+  public boolean matches(CharSequence rawPassword, String encodedPassword) {
+    var event = new PasswordHashEvent();
+    event.begin();
+
+    var matched = delegate.matches(rawPassword, encodedPassword);
+
+    if (event.shouldCommit()) {
+      event.operation = PasswordHashEvent.MATCH;
+      event.matched = matched;
+      describe(event, encodedPassword);
+      event.commit();
+    }
+
+    return matched;
+  }
+
+  @Override
+  public boolean upgradeEncoding(String encodedPassword) {
+    return delegate.upgradeEncoding(encodedPassword);
+  }
+
+  /**
+   * Reads the algorithm and parameters from a hash such as {@code {argon2}$argon2id$v=19$m=16384,t=5,p=1$...} or
+   * {@code {bcrypt}$2a$10$...}.
+   */
+  private static void describe(PasswordHashEvent event, String hash) {
+    if (hash == null) return;
+
+    var start = hash.startsWith("{") ? hash.indexOf('}') + 1 : 0;
+    var fields = hash.substring(start).split("\\$");
+    if (fields.length < 3) return;
+
+    if (fields[1].startsWith("argon2") && fields.length > 3) {
+      event.algorithm = fields[1];
+      event.parameters = fields[3];
+    } else if (fields[1].startsWith("2")) {
+      event.algorithm = "bcrypt";
+      event.parameters = "cost=" + fields[2];
+    }
+  }
+
+}
@@ -0,0 +1,40 @@
+package nl.hva.springsecuritydemo.config.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+
+/**
+ * Flight recorder event of hashing a password, or matching one against a stored hash. Disabled unless enabled by a
+ * settings profile, such as {@code jfr/security.jfc}.
+ */
+@Name("nl.hva.springsecuritydemo.PasswordHash")
+@Label("Password Hash")
+@Description("Hashing a password, or matching it against a stored hash")
+@Category({"Spring Security Demo", "Passwords"})
+@Enabled(false)
+@StackTrace(false)
+public class PasswordHashEvent extends Event {
+
+  public static final String ENCODE = "encode";
+  public static final String MATCH = "match";
+
+  @Label("Operation")
+  public String operation;
+
+  @Label("Algorithm")
+  public String algorithm;
+
+  @Label("Parameters")
+  @Description("The cost parameters of the hash, such as m=16384,t=5,p=1 for Argon2 or cost=10 for BCrypt")
+  public String parameters;
+
+  @Label("Matched")
+  public boolean matched;
+
+}
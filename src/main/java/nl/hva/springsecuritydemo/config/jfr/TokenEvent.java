@@ -0,0 +1,52 @@
+package nl.hva.springsecuritydemo.config.jfr;
+
+import io.jsonwebtoken.ExpiredJwtException;
+import io.jsonwebtoken.MalformedJwtException;
+import io.jsonwebtoken.UnsupportedJwtException;
+import io.jsonwebtoken.security.SecurityException;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+
+/**
+ * Flight recorder event of signing or verifying a JWT. Disabled unless enabled by a settings profile, such as
+ * {@code jfr/security.jfc}.
+ */
+@Name("nl.hva.springsecuritydemo.Token")
+@Label("Token")
+@Description("Signing or verifying a JWT")
+@Category({"Spring Security Demo", "Tokens"})
+@Enabled(false)
+@StackTrace(false)
+public class TokenEvent extends Event {
+
+  public static final String SIGN = "sign";
+  public static final String VERIFY = "verify";
+
+  @Label("Operation")
+  public String operation;
+
+  @Label("Token Type")
+  public String tokenType;
+
+  @Label("Outcome")
+  @Description("Either valid, expired, bad-signature, malformed, unsupported or invalid")
+  public String outcome;
+
+  /**
+   * @return The outcome of a verification that failed with the exception.
+   */
+  public static String outcomeOf(RuntimeException e) {
+    if (e instanceof ExpiredJwtException) return "expired";
+    if (e instanceof SecurityException) return "bad-signature";
+    if (e instanceof MalformedJwtException) return "malformed";
+    if (e instanceof UnsupportedJwtException) return "unsupported";
+    return "invalid";
+  }
+
+}
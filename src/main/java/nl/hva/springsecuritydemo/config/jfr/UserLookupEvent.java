@@ -0,0 +1,43 @@
+package nl.hva.springsecuritydemo.config.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+
+/**
+ * Flight recorder event of looking up a user, from a cache or the database. Disabled unless enabled by a settings
+ * profile, such as {@code jfr/security.jfc}.
+ */
+@Name("nl.hva.springsecuritydemo.UserLookup")
+@Label("User Lookup")
+@Description("Looking up a user, or the state that authenticates it")
+@Category({"Spring Security Demo", "Users"})
+@Enabled(false)
+@StackTrace(false)
+public class UserLookupEvent extends Event {
+
+  public static final String AUTH_STATE = "auth-state";
+  public static final String BY_ID = "by-id";
+  public static final String BY_USERNAME = "by-username";
+
+  @Label("Lookup")
+  public String lookup;
+
+  @Label("Cache Hit")
+  @Description("Whether the lookup was answered without querying the database")
+  public boolean cacheHit;
+
+  @Label("Found")
+  public boolean found;
+
+  @Label("Database Time")
+  @Timespan(Timespan.NANOSECONDS)
+  public long databaseTime;
+
+}
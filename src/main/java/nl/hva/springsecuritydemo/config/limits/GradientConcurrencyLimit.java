@@ -0,0 +1,101 @@
+package nl.hva.springsecuritydemo.config.limits;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * Limits the amount of requests in flight, to a limit that adapts to the observed latency.
+ * <p>
+ * A long-term average of the round-trip time serves as the latency without queueing. The gradient between that
+ * average and the latest sample shrinks the limit when requests start to queue, while a headroom of the square root
+ * of the limit lets it grow while they do not. The limit only grows while it is being used, so a quiet period does
+ * not inflate it.
+ */
+public class GradientConcurrencyLimit {
+
+  /**
+   * The latency a sample may have, relative to the long-term average, before the limit shrinks.
+   */
+  private static final double TOLERANCE = 1.5;
+  /**
+   * The weight of a new limit relative to the current one.
+   */
+  private static final double SMOOTHING = 0.2;
+  /**
+   * The amount of samples the long-term average roughly spans.
+   */
+  private static final int LONG_WINDOW = 600;
+
+  private final String name;
+  private final int minLimit;
+  private final int maxLimit;
+  private final AtomicInteger inflight = new AtomicInteger();
+  private volatile double limit;
+  private double longRttNanos;
+
+  public GradientConcurrencyLimit(String name, int initialLimit, int minLimit, int maxLimit) {
+    this.name = name;
+    this.minLimit = minLimit;
+    this.maxLimit = maxLimit;
+    this.limit = initialLimit;
+  }
+
+  /**
+   * Admits a request when fewer requests than the limit are in flight. An admitted request must be released with
+   * {@link #release(long)}.
+   *
+   * @return Whether the request was admitted.
+   */
+  public boolean tryAcquire() {
+    while (true) {
+      var current = inflight.get();
+      if (current >= (int) limit) return false;
+      if (inflight.compareAndSet(current, current + 1)) return true;
+    }
+  }
+
+  /**
+   * Releases an admitted request, adapting the limit to its latency.
+   *
+   * @param startNanos The {@link System#nanoTime()} at which the request was admitted.
+   */
+  public void release(long startNanos) {
+    var rtt = Math.max(1, System.nanoTime() - startNanos);
+    var current = inflight.getAndDecrement();
+
+    synchronized (this) {
+      longRttNanos = longRttNanos == 0 ? rtt : longRttNanos + (rtt - longRttNanos) / LONG_WINDOW;
+
+      // Latency recovered well below the average, so the average still holds a period of queueing.
+      if (longRttNanos / rtt > 2) longRttNanos = longRttNanos * 0.95;
+
+      // The limit is not reached, so the latency says nothing about it.
+      if (current < limit / 2) return;
+
+      var gradient = Math.max(0.5, Math.min(1.0, TOLERANCE * longRttNanos / rtt));
+      var newLimit = limit * gradient + Math.sqrt(limit);
+
+      limit = Math.max(minLimit, Math.min(maxLimit, limit * (1 - SMOOTHING) + newLimit * SMOOTHING));
+    }
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public int getLimit() {
+    return (int) limit;
+  }
+
+  public int getInflight() {
+    return inflight.get();
+  }
+
+  /**
+   * @return The long-term average latency, in milliseconds.
+   */
+  public synchronized double getAverageRttMs() {
+    return longRttNanos / 1_000_000;
+  }
+
+}
@@ -0,0 +1,213 @@
+package nl.hva.springsecuritydemo.config.matchers;
+
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.http.HttpMethod;
+import org.springframework.security.web.util.matcher.RequestMatcher;
+import org.springframework.util.AntPathMatcher;
+import org.springframework.util.StringUtils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * Matches requests against a set of Ant-style patterns, with the semantics of
+ * {@link org.springframework.security.web.util.matcher.AntPathRequestMatcher} (case-sensitive).
+ * <p>
+ * The patterns are compiled into a trie of path segments, so finding the first declared pattern that matches a
+ * request takes time proportional to the depth of its path, rather than to the amount of patterns. Literal segments
+ * are looked up by hash, {@code *} and {@code **} segments have their own branch, and segments containing other
+ * wildcards are matched one by one.
+ * <p>
+ * Paths with empty segments, such as {@code //}, are rejected by the StrictHttpFirewall before they are matched.
+ */
+public class PathTrieRequestMatcher implements RequestMatcher {
+
+  private static final String SEPARATOR = "/";
+  private static final String SINGLE_STAR = "*";
+  private static final String DOUBLE_STAR = "**";
+
+  private static final AntPathMatcher segmentMatcher = new AntPathMatcher(SEPARATOR);
+
+  private final Node root = new Node();
+  private int size;
+
+  /**
+   * Adds a pattern, that matches requests of any method.
+   *
+   * @return The index of the pattern, in order of addition.
+   */
+  public int add(String pattern) {
+    return add(null, pattern);
+  }
+
+  /**
+   * Adds a pattern, that only matches requests of the provided method when not null.
+   *
+   * @return The index of the pattern, in order of addition.
+   */
+  public int add(HttpMethod method, String pattern) {
+    if (pattern.equals(DOUBLE_STAR)) pattern = SEPARATOR + DOUBLE_STAR;
+
+    var tokens = StringUtils.tokenizeToStringArray(pattern, SEPARATOR, false, true);
+    var node = root;
+
+    for (var token : tokens) {
+      if (token.equals(DOUBLE_STAR)) node = node.doubleStar == null ? node.doubleStar = new Node() : node.doubleStar;
+      else if (token.equals(SINGLE_STAR)) node = node.singleStar == null ? node.singleStar = new Node() : node.singleStar;
+      else if (isLiteral(token)) node = node.literals.computeIfAbsent(token, key -> new Node());
+      else node = node.globs.computeIfAbsent(token, key -> new Node());
+    }
+
+    node.rules.add(new Rule(
+      size,
+      method == null ? null : method.name(),
+      pattern.startsWith(SEPARATOR),
+      pattern.endsWith(SEPARATOR),
+      List.of(tokens).contains(DOUBLE_STAR),
+      tokens.length > 0 && tokens[tokens.length - 1].equals(DOUBLE_STAR),
+      tokens.length > 0 && tokens[tokens.length - 1].equals(SINGLE_STAR)
+    ));
+
+    return size++;
+  }
+
+  @Override
+  public boolean matches(HttpServletRequest request) {
+    return firstMatch(request) >= 0;
+  }
+
+  /**
+   * @return The index of the first added pattern that matches the request, or -1 if none does.
+   */
+  public int firstMatch(HttpServletRequest request) {
+    return firstMatch(request.getMethod(), getRequestPath(request));
+  }
+
+  /**
+   * @return The index of the first added pattern that matches the method and path, or -1 if none does.
+   */
+  public int firstMatch(String method, String path) {
+    var search = new Search(
+      method,
+      StringUtils.tokenizeToStringArray(path, SEPARATOR, false, true),
+      path.startsWith(SEPARATOR),
+      path.endsWith(SEPARATOR)
+    );
+
+    search.visit(root, 0, false);
+    return search.best == Integer.MAX_VALUE ? -1 : search.best;
+  }
+
+  /**
+   * @return The path within the application, as matched by AntPathRequestMatcher.
+   */
+  private static String getRequestPath(HttpServletRequest request) {
+    var url = request.getServletPath();
+    var pathInfo = request.getPathInfo();
+
+    if (pathInfo != null) url = StringUtils.hasLength(url) ? url + pathInfo : pathInfo;
+    return url;
+  }
+
+  private static boolean isLiteral(String token) {
+    return token.indexOf('*') < 0 && token.indexOf('?') < 0 && token.indexOf('{') < 0;
+  }
+
+  private static class Node {
+
+    private final Map<String, Node> literals = new HashMap<>();
+    private final Map<String, Node> globs = new HashMap<>();
+    private final List<Rule> rules = new ArrayList<>(1);
+    private Node singleStar;
+    private Node doubleStar;
+
+  }
+
+  /**
+   * A pattern ending at a node of the trie.
+   *
+   * @param index              The order in which the pattern was added.
+   * @param method             The method the pattern is limited to, or null for any.
+   * @param startsWithSlash    Whether the pattern starts with a separator.
+   * @param endsWithSlash      Whether the pattern ends with a separator.
+   * @param hasDoubleStar      Whether the pattern contains a {@code **} segment.
+   * @param endsWithDoubleStar Whether the last segment of the pattern is {@code **}, which makes a trailing
+   *                           separator of the path irrelevant.
+   * @param endsWithSingleStar Whether the last segment of the pattern is {@code *}.
+   */
+  private record Rule(
+    int index,
+    String method,
+    boolean startsWithSlash,
+    boolean endsWithSlash,
+    boolean hasDoubleStar,
+    boolean endsWithDoubleStar,
+    boolean endsWithSingleStar
+  ) {
+  }
+
+  /**
+   * A depth-first search for the matching pattern with the lowest index.
+   */
+  private static class Search {
+
+    private final String method;
+    private final String[] segments;
+    private final boolean startsWithSlash;
+    private final boolean endsWithSlash;
+    private int best = Integer.MAX_VALUE;
+
+    private Search(String method, String[] segments, boolean startsWithSlash, boolean endsWithSlash) {
+      this.method = method;
+      this.segments = segments;
+      this.startsWithSlash = startsWithSlash;
+      this.endsWithSlash = endsWithSlash;
+    }
+
+    /**
+     * @param node       The node reached by the segments before index i.
+     * @param i          The index of the next segment to match.
+     * @param doubleStar Whether the node was reached by a {@code **} segment, that may consume more segments.
+     */
+    private void visit(Node node, int i, boolean doubleStar) {
+      if (i == segments.length) {
+        for (var rule : node.rules)
+          if (rule.endsWithDoubleStar || rule.endsWithSlash == endsWithSlash) accept(rule);
+
+        if (node.doubleStar != null) visit(node.doubleStar, i, true);
+
+        // A trailing '*' also matches the empty segment after a trailing separator, unless preceded by '**'.
+        if (node.singleStar != null && endsWithSlash)
+          for (var rule : node.singleStar.rules)
+            if (!rule.hasDoubleStar && rule.endsWithSingleStar) accept(rule);
+
+        return;
+      }
+
+      var segment = segments[i];
+
+      if (doubleStar) visit(node, i + 1, true);
+
+      var literal = node.literals.get(segment);
+      if (literal != null) visit(literal, i + 1, false);
+
+      if (node.singleStar != null) visit(node.singleStar, i + 1, false);
+      if (node.doubleStar != null) visit(node.doubleStar, i, true);
+
+      for (var glob : node.globs.entrySet())
+        if (segmentMatcher.match(glob.getKey(), segment)) visit(glob.getValue(), i + 1, false);
+    }
+
+    private void accept(Rule rule) {
+      if (rule.index >= best || rule.startsWithSlash != startsWithSlash) return;
+      if (rule.method != null && !rule.method.equals(method)) return;
+
+      best = rule.index;
+    }
+
+  }
+
+}
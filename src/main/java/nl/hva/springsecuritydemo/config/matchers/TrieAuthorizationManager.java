@@ -0,0 +1,89 @@
+package nl.hva.springsecuritydemo.config.matchers;
+
+import nl.hva.springsecuritydemo.config.authorities.AuthorityRegistry;
+import nl.hva.springsecuritydemo.config.authorities.MaskedAuthenticationToken;
+import org.springframework.http.HttpMethod;
+import org.springframework.security.authorization.AuthorizationDecision;
+import org.springframework.security.authorization.AuthorizationManager;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.web.access.intercept.RequestAuthorizationContext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static nl.hva.springsecuritydemo.models.user.UserRole.ROLE_PREFIX;
+
+
+/**
+ * Authorizes requests by the first declared rule whose pattern matches, like the rules registered with
+ * {@code authorizeHttpRequests}, but found through a single {@link PathTrieRequestMatcher} lookup instead of
+ * evaluating every rule in order. Requests without a matching rule are denied.
+ */
+public class TrieAuthorizationManager implements AuthorizationManager<RequestAuthorizationContext> {
+
+  private static final AuthorizationDecision GRANTED = new AuthorizationDecision(true);
+  private static final AuthorizationDecision DENIED = new AuthorizationDecision(false);
+
+  private final PathTrieRequestMatcher matcher = new PathTrieRequestMatcher();
+  private final List<AuthorizationManager<RequestAuthorizationContext>> managers = new ArrayList<>();
+  private final AuthorityRegistry authorities;
+
+  public TrieAuthorizationManager(AuthorityRegistry authorities) {
+    this.authorities = authorities;
+  }
+
+  /**
+   * Allows anyone to access the paths matching the patterns.
+   */
+  public TrieAuthorizationManager permitAll(String... patterns) {
+    return add(null, (authentication, context) -> GRANTED, patterns);
+  }
+
+  /**
+   * Only allows users with the role, or a role implying it, to access the paths matching the patterns.
+   *
+   * @param role The role, without the ROLE_ prefix.
+   */
+  public TrieAuthorizationManager hasRole(String role, String... patterns) {
+    var required = 1L << authorities.register(ROLE_PREFIX + role);
+
+    return add(null, (authentication, context) -> {
+      var granted = authentication.get();
+      if (granted == null) return DENIED;
+
+      // Principals authenticated by the JWTFilter carry a precomputed mask, others are converted.
+      var mask = granted instanceof MaskedAuthenticationToken token
+        ? token.getMask()
+        : authorities.maskOf(granted.getAuthorities());
+
+      return (mask & required) != 0 ? GRANTED : DENIED;
+    }, patterns);
+  }
+
+  /**
+   * Delegates the decision for requests matching the method and patterns to the provided manager.
+   *
+   * @param method The method to limit the rule to, or null for any method.
+   */
+  public TrieAuthorizationManager add(
+    HttpMethod method,
+    AuthorizationManager<RequestAuthorizationContext> manager,
+    String... patterns
+  ) {
+    for (var pattern : patterns) {
+      matcher.add(method, pattern);
+      managers.add(manager);
+    }
+
+    return this;
+  }
+
+  @Override
+  public AuthorizationDecision check(Supplier<Authentication> authentication, RequestAuthorizationContext context) {
+    var index = matcher.firstMatch(context.getRequest());
+
+    return index < 0 ? DENIED : managers.get(index).check(authentication, context);
+  }
+
+}
@@ -0,0 +1,73 @@
+package nl.hva.springsecuritydemo.config.sharding;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.UUID;
+
+
+/**
+ * An immutable ring of shards, that assigns every id to a shard by consistent hashing.
+ * <p>
+ * Every shard is placed on the ring at several virtual points, and an id belongs to the first shard at or after its
+ * own hash. Adding a shard therefore only moves the ids that land just before its points, about 1/n of all ids,
+ * rather than reassigning nearly every id like a plain modulo would.
+ */
+public final class ConsistentHashRing {
+
+  private final List<String> shards;
+  private final int virtualNodes;
+  private final NavigableMap<Long, String> points = new TreeMap<>();
+
+  public ConsistentHashRing(Collection<String> shards, int virtualNodes) {
+    if (shards.isEmpty()) throw new IllegalArgumentException("A ring requires at least one shard.");
+
+    this.shards = List.copyOf(shards);
+    this.virtualNodes = virtualNodes;
+
+    for (var shard : this.shards)
+      for (var i = 0; i < virtualNodes; i++)
+        points.putIfAbsent(mix(shard.hashCode() * 0x9E3779B97F4A7C15L + i), shard);
+  }
+
+  /**
+   * @return A ring with the provided shard added to the shards of this one.
+   */
+  public ConsistentHashRing with(String shard) {
+    if (shards.contains(shard)) return this;
+
+    var extended = new ArrayList<>(shards);
+    extended.add(shard);
+
+    return new ConsistentHashRing(extended, virtualNodes);
+  }
+
+  /**
+   * @return The name of the shard that stores the id.
+   */
+  public String shardOf(UUID id) {
+    var point = points.ceilingEntry(mix(id.getMostSignificantBits() ^ Long.rotateLeft(id.getLeastSignificantBits(), 32)));
+
+    return (point == null ? points.firstEntry() : point).getValue();
+  }
+
+  public List<String> getShards() {
+    return shards;
+  }
+
+  /**
+   * The finalizer of MurmurHash3, spreading every input bit over the whole output.
+   */
+  private static long mix(long value) {
+    value ^= value >>> 33;
+    value *= 0xFF51AFD7ED558CCDL;
+    value ^= value >>> 33;
+    value *= 0xC4CEB9FE1A85EC53L;
+    value ^= value >>> 33;
+
+    return value;
+  }
+
+}
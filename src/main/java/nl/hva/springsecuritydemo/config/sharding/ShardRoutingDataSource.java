@@ -0,0 +1,88 @@
+package nl.hva.springsecuritydemo.config.sharding;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+import javax.sql.DataSource;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+
+/**
+ * A datasource that hands out connections of the shard selected for the current thread, or of the primary shard
+ * when none is selected. The primary shard also holds the data that is not partitioned, such as roles and the
+ * username and email lookup index.
+ * <p>
+ * A connection is bound to a transaction when it begins, so a shard has to be selected before a transaction starts.
+ */
+public class ShardRoutingDataSource extends AbstractRoutingDataSource implements AutoCloseable {
+
+  public static final String PRIMARY = "shard-0";
+
+  private final ThreadLocal<String> current = new ThreadLocal<>();
+  private final Map<String, DataSource> shards = new LinkedHashMap<>();
+
+  /**
+   * @param primary The datasource of the primary shard.
+   * @param others  The datasources of the other shards, in order.
+   */
+  public ShardRoutingDataSource(DataSource primary, List<? extends DataSource> others) {
+    shards.put(PRIMARY, primary);
+    for (var other : others) shards.put("shard-" + shards.size(), other);
+
+    setDefaultTargetDataSource(primary);
+    setTargetDataSources(new HashMap<>(shards));
+    setLenientFallback(false);
+  }
+
+  /**
+   * Adds a shard, that can be selected right away.
+   */
+  public synchronized void addShard(String name, DataSource dataSource) {
+    if (shards.containsKey(name)) throw new IllegalArgumentException("Shard " + name + " already exists.");
+
+    shards.put(name, dataSource);
+    setTargetDataSources(new HashMap<>(shards));
+    initialize();
+  }
+
+  /**
+   * @return The names of all shards, starting with the primary one.
+   */
+  public synchronized List<String> getShards() {
+    return List.copyOf(shards.keySet());
+  }
+
+  public synchronized DataSource getShard(String name) {
+    return shards.get(name);
+  }
+
+  /**
+   * Performs the action with connections of the provided shard, restoring the previous selection afterwards.
+   */
+  public <T> T callOn(String shard, Supplier<T> action) {
+    var previous = current.get();
+    current.set(shard);
+
+    try {
+      return action.get();
+    } finally {
+      if (previous == null) current.remove();
+      else current.set(previous);
+    }
+  }
+
+  @Override
+  protected Object determineCurrentLookupKey() {
+    return current.get();
+  }
+
+  @Override
+  public synchronized void close() throws Exception {
+    for (var shard : shards.values())
+      if (shard instanceof AutoCloseable closeable) closeable.close();
+  }
+
+}
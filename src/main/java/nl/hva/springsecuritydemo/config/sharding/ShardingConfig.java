@@ -0,0 +1,70 @@
+package nl.hva.springsecuritydemo.config.sharding;
+
+import com.zaxxer.hikari.HikariDataSource;
+import nl.hva.springsecuritydemo.config.sql.StatementCountingDataSource;
+import nl.hva.springsecuritydemo.config.sql.StatementStats;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.List;
+import java.util.function.BiFunction;
+import java.util.stream.IntStream;
+
+
+/**
+ * Partitions users across the primary datasource and the extra databases listed in {@code users.sharding.urls}.
+ * Without extra databases, all users are stored by the primary datasource.
+ */
+@Configuration
+public class ShardingConfig {
+
+  /**
+   * Every shard gets a pool of its own, configured by {@code spring.datasource.hikari}.
+   *
+   * @param sqlStats  Whether to count the statements of every shard in the {@link StatementStats} of the request.
+   * @param slowQuery The duration after which a statement is logged as slow, when counting statements.
+   */
+  @Bean
+  public ShardRoutingDataSource dataSource(
+    DataSourceProperties properties,
+    Environment environment,
+    @Value("${users.sharding.urls:}") List<String> urls,
+    @Value("${users.sql-stats.enabled:false}") boolean sqlStats,
+    @Value("${users.sql-stats.slow-query:100ms}") Duration slowQuery
+  ) {
+    var binder = Binder.get(environment);
+    BiFunction<String, Integer, DataSource> pool = (url, index) -> {
+      var dataSource = properties.initializeDataSourceBuilder().type(HikariDataSource.class).url(url).build();
+      binder.bind("spring.datasource.hikari", Bindable.ofInstance(dataSource));
+      if (dataSource.getPoolName() != null) dataSource.setPoolName(dataSource.getPoolName() + "-" + index);
+
+      return sqlStats ? new StatementCountingDataSource(dataSource, slowQuery) : dataSource;
+    };
+
+    var others = urls.stream()
+      .map(String::trim)
+      .filter(url -> !url.isEmpty())
+      .toList();
+
+    return new ShardRoutingDataSource(
+      pool.apply(properties.determineUrl(), 0),
+      IntStream.range(0, others.size()).mapToObj(i -> pool.apply(others.get(i), i + 1)).toList()
+    );
+  }
+
+  @Bean
+  public ConsistentHashRing shardRing(
+    ShardRoutingDataSource dataSource,
+    @Value("${users.sharding.virtual-nodes:128}") int virtualNodes
+  ) {
+    return new ConsistentHashRing(dataSource.getShards(), virtualNodes);
+  }
+
+}
@@ -0,0 +1,21 @@
+package nl.hva.springsecuritydemo.config.sql;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+
+/**
+ * Declares the amount of JDBC statements a request to an endpoint may execute, including those of the filters it
+ * passes. Exceeding it is logged by the {@link StatementStatsFilter}, and fails the statement budget tests.
+ */
+@Documented
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface StatementBudget {
+
+  int value();
+
+}
@@ -0,0 +1,96 @@
+package nl.hva.springsecuritydemo.config.sql;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+
+
+/**
+ * A datasource that counts the statements executed on its connections in the current {@link StatementStats}, and
+ * logs those slower than a threshold.
+ */
+public class StatementCountingDataSource extends DelegatingDataSource implements AutoCloseable {
+
+  private static final Logger log = LoggerFactory.getLogger(StatementCountingDataSource.class);
+
+  private final long slowQueryNanos;
+
+  public StatementCountingDataSource(DataSource target, Duration slowQuery) {
+    super(target);
+    this.slowQueryNanos = slowQuery.toNanos();
+  }
+
+  @Override
+  public Connection getConnection() throws SQLException {
+    return wrap(super.getConnection());
+  }
+
+  @Override
+  public Connection getConnection(String username, String password) throws SQLException {
+    return wrap(super.getConnection(username, password));
+  }
+
+  @Override
+  public void close() throws Exception {
+    if (getTargetDataSource() instanceof AutoCloseable closeable) closeable.close();
+  }
+
+  private Connection wrap(Connection connection) {
+    return (Connection) Proxy.newProxyInstance(
+      Connection.class.getClassLoader(),
+      new Class<?>[]{Connection.class},
+      (proxy, method, args) -> {
+        var result = invoke(connection, method, args);
+
+        // Statements are prepared with their SQL, plain statements receive it when executed.
+        if (result instanceof Statement statement)
+          return wrap(statement, method.getReturnType(), args != null && args[0] instanceof String sql ? sql : null);
+
+        return result;
+      }
+    );
+  }
+
+  private Statement wrap(Statement statement, Class<?> type, String preparedSql) {
+    return (Statement) Proxy.newProxyInstance(
+      Statement.class.getClassLoader(),
+      new Class<?>[]{type},
+      (proxy, method, args) -> {
+        if (!method.getName().startsWith("execute")) return invoke(statement, method, args);
+
+        var start = System.nanoTime();
+
+        try {
+          return invoke(statement, method, args);
+        } finally {
+          var nanos = System.nanoTime() - start;
+          StatementStats.record(nanos);
+
+          if (nanos >= slowQueryNanos) log.warn(
+            "Slow query of {} ms: {}",
+            nanos / 1_000_000,
+            preparedSql != null ? preparedSql : args != null && args.length > 0 ? args[0] : method.getName()
+          );
+        }
+      }
+    );
+  }
+
+  private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+    try {
+      return method.invoke(target, args);
+    } catch (InvocationTargetException e) {
+      throw e.getCause();
+    }
+  }
+
+}
@@ -0,0 +1,59 @@
+package nl.hva.springsecuritydemo.config.sql;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * The JDBC statements executed within a scope, such as a request, as counted by the
+ * {@link StatementCountingDataSource}.
+ * <p>
+ * The scope is bound to the thread that started it, and inherited by the threads it starts, such as the virtual
+ * threads that query every shard.
+ */
+public class StatementStats {
+
+  private static final InheritableThreadLocal<StatementStats> current = new InheritableThreadLocal<>();
+
+  private final AtomicInteger statements = new AtomicInteger();
+  private final AtomicLong nanos = new AtomicLong();
+  private StatementStats previous;
+
+  /**
+   * Starts counting the statements of the current thread, until {@link #stop()}.
+   */
+  public static StatementStats start() {
+    var stats = new StatementStats();
+    stats.previous = current.get();
+    current.set(stats);
+
+    return stats;
+  }
+
+  /**
+   * Stops counting, restoring the scope that was current when this one started.
+   */
+  public void stop() {
+    if (previous == null) current.remove();
+    else current.set(previous);
+  }
+
+  /**
+   * Counts a statement in the current scope, and the scopes it is nested in.
+   */
+  static void record(long nanos) {
+    for (var stats = current.get(); stats != null; stats = stats.previous) {
+      stats.statements.incrementAndGet();
+      stats.nanos.addAndGet(nanos);
+    }
+  }
+
+  public int getStatements() {
+    return statements.get();
+  }
+
+  public double getMillis() {
+    return nanos.get() / 1_000_000.0;
+  }
+
+}
@@ -0,0 +1,72 @@
+package nl.hva.springsecuritydemo.config.sql;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.io.IOException;
+
+
+/**
+ * A filter that counts the JDBC statements of every request, including those of the security filters, and logs them
+ * per endpoint. Requests exceeding the {@link StatementBudget} of their endpoint are logged as a warning.
+ * <p>
+ * Only active with {@code users.sql-stats.enabled}, which also makes the datasources count their statements.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+@ConditionalOnProperty("users.sql-stats.enabled")
+public class StatementStatsFilter extends OncePerRequestFilter {
+
+  /**
+   * The request attribute holding the {@link StatementStats} of the request, once it has been handled.
+   */
+  public static final String STATS_ATTRIBUTE = StatementStats.class.getName();
+
+  private static final Logger logger = LoggerFactory.getLogger(StatementStatsFilter.class);
+
+  @Override
+  protected void doFilterInternal(
+    HttpServletRequest req,
+    HttpServletResponse res,
+    FilterChain chain
+  ) throws ServletException, IOException {
+    var stats = StatementStats.start();
+
+    try {
+      chain.doFilter(req, res);
+    } finally {
+      stats.stop();
+      req.setAttribute(STATS_ATTRIBUTE, stats);
+
+      var pattern = req.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+      var endpoint = req.getMethod() + " " + (pattern != null ? pattern : req.getRequestURI());
+      var budget = getBudget(req);
+
+      if (budget != null && stats.getStatements() > budget.value())
+        logger.warn("{}: {} statements exceed the budget of {}", endpoint, stats.getStatements(), budget.value());
+      else
+        logger.info("{}: {} statements in {} ms", endpoint, stats.getStatements(), "%.2f".formatted(stats.getMillis()));
+    }
+  }
+
+  /**
+   * @return The budget of the endpoint that handled the request, or null if it has none.
+   */
+  public static StatementBudget getBudget(HttpServletRequest req) {
+    return req.getAttribute(HandlerMapping.BEST_MATCHING_HANDLER_ATTRIBUTE) instanceof HandlerMethod handler
+      ? handler.getMethodAnnotation(StatementBudget.class)
+      : null;
+  }
+
+}
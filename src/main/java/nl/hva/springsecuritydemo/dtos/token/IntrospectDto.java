@@ -0,0 +1,26 @@
+package nl.hva.springsecuritydemo.dtos.token;
+
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+
+/**
+ * DTO for a batch of tokens to introspect, of at most {@value MAX_TOKENS} tokens.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class IntrospectDto {
+
+  public static final int MAX_TOKENS = 100;
+
+  @NotEmpty(message = "Not provided.")
+  @Size(max = MAX_TOKENS, message = "Contains more than " + MAX_TOKENS + " tokens.")
+  List<String> tokens;
+
+}
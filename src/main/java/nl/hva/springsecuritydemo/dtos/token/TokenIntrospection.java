@@ -0,0 +1,34 @@
+package nl.hva.springsecuritydemo.dtos.token;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.List;
+
+
+/**
+ * DTO describing a token, with the members of an RFC 7662 introspection response. Inactive tokens are only described
+ * as such, to not reveal anything about them.
+ *
+ * @param active    Whether the token is valid, and its user exists, is enabled and did not revoke it.
+ * @param sub       The id of the user the token was issued for.
+ * @param roles     The current roles of the user.
+ * @param exp       The moment the token expires, in seconds since the epoch.
+ * @param iat       The moment the token was issued, in seconds since the epoch.
+ * @param iss       The issuer of the token.
+ * @param tokenType Either access or refresh.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record TokenIntrospection(
+  boolean active,
+  String sub,
+  List<String> roles,
+  Long exp,
+  Long iat,
+  String iss,
+  @JsonProperty("token_type") String tokenType
+) {
+
+  public static final TokenIntrospection INACTIVE = new TokenIntrospection(false, null, null, null, null, null, null);
+
+}
@@ -0,0 +1,14 @@
+package nl.hva.springsecuritydemo.dtos.user;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+
+/**
+ * DTO telling whether a username and email are still available. Values that were not asked for are left out.
+ *
+ * @param username Whether no user has the username.
+ * @param email    Whether no user has the email.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record Availability(Boolean username, Boolean email) {
+}
@@ -0,0 +1,68 @@
+package nl.hva.springsecuritydemo.dtos.user;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+import static org.springframework.util.StringUtils.hasText;
+
+
+/**
+ * DTO for a change applied by an admin to a set of users, selected either by their ids, of at most {@value MAX_IDS},
+ * or by a filter.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BulkMutationDto {
+
+  public static final int MAX_IDS = 10_000;
+
+  /**
+   * Disabling, locking and revoking a role revoke the tokens of the affected users.
+   */
+  public enum Action { ENABLE, DISABLE, LOCK, UNLOCK, GRANT, REVOKE }
+
+  @NotNull(message = "Not provided.")
+  private Action action;
+
+  /**
+   * The name of the role to grant or revoke, such as ADMIN.
+   */
+  private String role;
+
+  @Size(max = MAX_IDS, message = "Contains more than " + MAX_IDS + " ids.")
+  private List<UUID> ids;
+
+  @Valid
+  private Filter filter;
+
+  /**
+   * Selects the users matching all provided criteria, of which there has to be at least one.
+   *
+   * @param enabled       Whether the users are enabled.
+   * @param role          The name of a role the users have.
+   * @param createdBefore The moment before which the users were created.
+   * @param createdAfter  The moment from which the users were created.
+   */
+  public record Filter(Boolean enabled, String role, LocalDateTime createdBefore, LocalDateTime createdAfter) {
+
+    /**
+     * @return Whether no criteria are provided, which would select every user.
+     */
+    @JsonIgnore
+    public boolean isEmpty() {
+      return enabled == null && !hasText(role) && createdBefore == null && createdAfter == null;
+    }
+
+  }
+
+}
@@ -0,0 +1,11 @@
+package nl.hva.springsecuritydemo.dtos.user;
+
+/**
+ * DTO reporting the outcome of a bulk mutation.
+ *
+ * @param selected   The amount of existing users that were selected.
+ * @param affected   The amount of selected users that were changed, leaving out those already in the desired state.
+ * @param durationMs How long applying the mutation took.
+ */
+public record BulkReport(long selected, long affected, long durationMs) {
+}
@@ -0,0 +1,54 @@
+package nl.hva.springsecuritydemo.dtos.user;
+
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * DTO reporting the outcome of a bulk user import. Only the first {@value MAX_REPORTED_ERRORS} row errors are listed,
+ * all of them are counted.
+ */
+@Getter
+public class ImportReport {
+
+  public static final int MAX_REPORTED_ERRORS = 1000;
+
+  private long imported;
+  private long failed;
+  private long durationMs;
+  private double rowsPerSecond;
+  private final List<RowError> errors = new ArrayList<>();
+
+  public void addImported(long count) {
+    imported += count;
+  }
+
+  public void addError(long line, String message) {
+    failed++;
+    if (errors.size() < MAX_REPORTED_ERRORS) errors.add(new RowError(line, message));
+  }
+
+  public long getProcessed() {
+    return imported + failed;
+  }
+
+  /**
+   * Updates the duration and throughput, based on the moment the import started.
+   */
+  public void updateTiming(long startedNanos) {
+    durationMs = (System.nanoTime() - startedNanos) / 1_000_000;
+    rowsPerSecond = durationMs == 0 ? 0 : getProcessed() * 1000.0 / durationMs;
+  }
+
+  /**
+   * An input row that could not be imported.
+   *
+   * @param line    The line number of the row in the input.
+   * @param message Why the row could not be imported.
+   */
+  public record RowError(long line, String message) {
+  }
+
+}
@@ -1,14 +1,12 @@
 package nl.hva.springsecuritydemo.dtos.user;
 
 import jakarta.validation.constraints.NotBlank;
-import jakarta.validation.constraints.Pattern;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import nl.hva.springsecuritydemo.validators.ValidPassword;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 
-import static nl.hva.springsecuritydemo.config.GenericConfig.PASSWORD_REGEX;
-
 
 /**
  * DTO for user login data, encapsulating username and password.
@@ -22,7 +20,7 @@ public class LoginDto {
   String username;
 
   @NotBlank(message = "Not provided.")
-  @Pattern(message = "Is invalid.", regexp = PASSWORD_REGEX)
+  @ValidPassword(message = "Is invalid.")
   String password;
 
   public UsernamePasswordAuthenticationToken toAuthToken() {
@@ -1,14 +1,12 @@
 package nl.hva.springsecuritydemo.dtos.user;
 
-import jakarta.validation.constraints.Email;
 import jakarta.validation.constraints.NotBlank;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
 import nl.hva.springsecuritydemo.models.user.User;
+import nl.hva.springsecuritydemo.validators.ValidEmail;
 import org.springframework.security.crypto.password.PasswordEncoder;
 
-import static nl.hva.springsecuritydemo.config.GenericConfig.EMAIL_REGEX;
-
 
 /**
  * DTO for registering a new user, extending from LoginDto and including an email field.
@@ -18,7 +16,7 @@ import static nl.hva.springsecuritydemo.config.GenericConfig.EMAIL_REGEX;
 public class RegisterDto extends LoginDto {
 
   @NotBlank(message = "Not provided.")
-  @Email(message = "Is invalid.", regexp = EMAIL_REGEX)
+  @ValidEmail(message = "Is invalid.")
   private String email;
 
   public RegisterDto(String username, String password, String email) {
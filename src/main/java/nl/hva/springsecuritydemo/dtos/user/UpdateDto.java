@@ -1,11 +1,8 @@
 package nl.hva.springsecuritydemo.dtos.user;
 
-import jakarta.validation.constraints.Email;
-import jakarta.validation.constraints.Pattern;
 import lombok.Data;
-
-import static nl.hva.springsecuritydemo.config.GenericConfig.EMAIL_REGEX;
-import static nl.hva.springsecuritydemo.config.GenericConfig.PASSWORD_REGEX;
+import nl.hva.springsecuritydemo.validators.ValidEmail;
+import nl.hva.springsecuritydemo.validators.ValidPassword;
 
 
 /**
@@ -14,9 +11,9 @@ import static nl.hva.springsecuritydemo.config.GenericConfig.PASSWORD_REGEX;
 @Data
 public class UpdateDto {
 
-  @Email(regexp = EMAIL_REGEX, message = "Is invalid.")
+  @ValidEmail(message = "Is invalid.")
   private String email;
-  @Pattern(regexp = PASSWORD_REGEX, message = "Is invalid.")
+  @ValidPassword(message = "Is invalid.")
   private String password;
   private String username;
 
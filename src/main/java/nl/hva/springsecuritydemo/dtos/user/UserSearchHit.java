@@ -0,0 +1,25 @@
+package nl.hva.springsecuritydemo.dtos.user;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.UUID;
+
+
+/**
+ * DTO of a user found by a prefix of its username or email. Only the value that matched is included.
+ *
+ * @param id       The id of the user.
+ * @param username The username starting with the prefix, if it matched.
+ * @param email    The email starting with the prefix, if it matched.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record UserSearchHit(UUID id, String username, String email) {
+
+  /**
+   * @return The value that matched the prefix.
+   */
+  public String value() {
+    return username != null ? username : email;
+  }
+
+}
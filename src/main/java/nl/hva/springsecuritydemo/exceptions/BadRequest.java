@@ -1,6 +1,8 @@
 package nl.hva.springsecuritydemo.exceptions;
 
-public class BadRequest extends RuntimeException {
+public class BadRequest extends DomainException {
+
+  public static final BadRequest INVALID_TOKEN = new BadRequest("The provided token is invalid");
 
   public BadRequest(String message) {
     super(message);
@@ -1,6 +1,6 @@
 package nl.hva.springsecuritydemo.exceptions;
 
-public class ConflictException extends RuntimeException {
+public class ConflictException extends DomainException {
 
   public ConflictException(String message) {
     super(message);
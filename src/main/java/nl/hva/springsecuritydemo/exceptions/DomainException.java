@@ -0,0 +1,15 @@
+package nl.hva.springsecuritydemo.exceptions;
+
+/**
+ * Base of the exceptions that signal an expected outcome, such as a missing resource or invalid credentials.
+ * <p>
+ * These are thrown for every rejected request, so they neither capture a stack trace nor track suppressed
+ * exceptions. Without mutable state they are safe to preallocate and reuse when the message is fixed.
+ */
+public abstract class DomainException extends RuntimeException {
+
+  protected DomainException(String message) {
+    super(message, null, false, false);
+  }
+
+}
@@ -1,6 +1,6 @@
 package nl.hva.springsecuritydemo.exceptions;
 
-public class EmailIncompleteException extends RuntimeException {
+public class EmailIncompleteException extends DomainException {
 
   public EmailIncompleteException(String message) {
     super(message);
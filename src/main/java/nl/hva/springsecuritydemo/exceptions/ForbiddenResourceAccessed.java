@@ -1,6 +1,6 @@
 package nl.hva.springsecuritydemo.exceptions;
 
-public class ForbiddenResourceAccessed extends RuntimeException {
+public class ForbiddenResourceAccessed extends DomainException {
 
   public ForbiddenResourceAccessed(String message) {
     super(message);
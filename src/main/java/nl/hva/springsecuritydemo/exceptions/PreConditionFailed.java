@@ -1,6 +1,6 @@
 package nl.hva.springsecuritydemo.exceptions;
 
-public class PreConditionFailed extends RuntimeException {
+public class PreConditionFailed extends DomainException {
 
   public PreConditionFailed(String message) {
     super(message);
@@ -1,6 +1,6 @@
 package nl.hva.springsecuritydemo.exceptions;
 
-public class ResourceNotFound extends RuntimeException {
+public class ResourceNotFound extends DomainException {
 
   public ResourceNotFound(String message) {
     super(message);
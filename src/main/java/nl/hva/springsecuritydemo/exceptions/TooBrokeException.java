@@ -1,6 +1,6 @@
 package nl.hva.springsecuritydemo.exceptions;
 
-public class TooBrokeException extends RuntimeException {
+public class TooBrokeException extends DomainException {
 
   public TooBrokeException(String message) {
     super(message);
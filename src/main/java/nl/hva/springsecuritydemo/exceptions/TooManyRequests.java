@@ -0,0 +1,19 @@
+package nl.hva.springsecuritydemo.exceptions;
+
+import lombok.Getter;
+
+
+@Getter
+public class TooManyRequests extends DomainException {
+
+  /**
+   * The amount of seconds after which the request may be retried.
+   */
+  private final long retryAfterSeconds;
+
+  public TooManyRequests(String message, long retryAfterSeconds) {
+    super(message);
+    this.retryAfterSeconds = retryAfterSeconds;
+  }
+
+}
@@ -1,6 +1,9 @@
 package nl.hva.springsecuritydemo.exceptions;
 
-public class UnauthorizedException extends RuntimeException {
+public class UnauthorizedException extends DomainException {
+
+  public static final UnauthorizedException INVALID_CREDENTIALS
+    = new UnauthorizedException("Email and/or password is not valid.");
 
   public UnauthorizedException(String message) {
     super(message);
@@ -0,0 +1,63 @@
+package nl.hva.springsecuritydemo.models.outbox;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.Instant;
+import java.util.UUID;
+
+
+/**
+ * An email waiting to be sent, stored on the shard of its user in the same transaction as the change that caused it.
+ * It is deleted once sent.
+ */
+@Entity
+@Table(indexes = @Index(columnList = "nextAttemptAt"))
+
+@AllArgsConstructor
+@NoArgsConstructor
+@Getter
+@Setter
+@Builder
+public class OutboxMessage {
+
+  @Id
+  @Builder.Default
+  private UUID id = UUID.randomUUID();
+
+  private UUID userId;
+
+  private String recipient;
+  private String subject;
+  @Column(length = 4000)
+  private String body;
+
+  @Builder.Default
+  private Instant createdAt = Instant.now();
+
+  private int attempts;
+
+  /**
+   * The moment the message may be sent (again), or null when it was abandoned after too many attempts.
+   */
+  @Builder.Default
+  private Instant nextAttemptAt = Instant.now();
+
+  /**
+   * The dispatcher run that claimed the message, which owns it until {@link #claimedUntil}.
+   */
+  private UUID claimedBy;
+  private Instant claimedUntil;
+
+  @Column(length = 1000)
+  private String lastError;
+
+}
@@ -5,8 +5,6 @@ import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.ObjectIdGenerators;
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
-import jakarta.persistence.GeneratedValue;
-import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
 import jakarta.persistence.ManyToMany;
 import jakarta.persistence.Table;
@@ -47,9 +45,12 @@ public class User implements UserDetails {
 
   // TODO: Only include ID, authorities.
 
+  /**
+   * Assigned on creation instead of by the database, as it determines the shard that stores the user.
+   */
   @Id
-  @GeneratedValue(strategy = GenerationType.UUID)
-  private UUID id;
+  @Builder.Default
+  private UUID id = UUID.randomUUID();
   @Column(unique = true)
   private String username;
   @Column(unique = true)
@@ -68,15 +69,31 @@ public class User implements UserDetails {
   @Setter(value = AccessLevel.NONE)
   private LocalDateTime changedAt;
 
+  /**
+   * Raised when the password changes, which revokes the tokens issued before.
+   */
+  @JsonIgnore
+  @Builder.Default()
+  private int tokenVersion = 0;
+
   @Builder.Default()
   private boolean enabled = true;
   @Builder.Default()
   private boolean accountNonExpired = true;
+  /**
+   * Cleared when an admin locks the account.
+   */
   @Builder.Default()
   private boolean accountNonLocked = true;
   @Builder.Default()
   private boolean credentialsNonExpired = true;
 
+  /**
+   * The moment until which the account is locked out after too many failed logins, if any.
+   */
+  @JsonIgnore
+  private LocalDateTime lockedOutUntil;
+
   @Builder.Default()
   @ManyToMany(fetch = EAGER)
   private Set<UserRole> authorities = new HashSet<>();
@@ -94,11 +111,39 @@ public class User implements UserDetails {
     return getId().hashCode();
   }
 
+  /**
+   * @return Whether the account is neither locked by an admin nor locked out after failed logins.
+   */
+  @Override
+  public boolean isAccountNonLocked() {
+    return accountNonLocked && !isLockedOut();
+  }
+
+  /**
+   * @return Whether an admin locked the account.
+   */
+  @JsonIgnore
+  public boolean isLockedByAdmin() {
+    return !accountNonLocked;
+  }
+
+  /**
+   * @return Whether the account is locked out after failed logins, which expires by itself.
+   */
+  @JsonIgnore
+  public boolean isLockedOut() {
+    return lockedOutUntil != null && lockedOutUntil.isAfter(LocalDateTime.now());
+  }
+
+  /**
+   * Adds the role, and marks the user as changed if it did not have it yet. The roles are stored apart from the user,
+   * so its change time would not be updated otherwise.
+   */
   public void addRole(UserRole role) {
     if (getAuthorities() == null || !(getAuthorities() instanceof HashSet))
       setAuthorities(new HashSet<>(Objects.requireNonNullElse(getAuthorities(), new HashSet<>())));
 
-    getAuthorities().add(role);
+    if (getAuthorities().add(role)) changedAt = LocalDateTime.now();
   }
 
 }
\ No newline at end of file
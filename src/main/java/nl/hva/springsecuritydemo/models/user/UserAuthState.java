@@ -0,0 +1,25 @@
+package nl.hva.springsecuritydemo.models.user;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+
+/**
+ * The state of a user that authenticating a request depends on, with one of its authorities.
+ *
+ * @param id             The id of the user.
+ * @param enabled        Whether the user is enabled.
+ * @param nonLocked      Whether an admin did not lock the account of the user.
+ * @param lockedOutUntil The moment until which the account is locked out after failed logins, if any.
+ * @param tokenVersion   The version of the credentials of the user.
+ * @param authority      One of the authorities of the user, or null if it has none.
+ */
+public record UserAuthState(
+  UUID id,
+  boolean enabled,
+  boolean nonLocked,
+  LocalDateTime lockedOutUntil,
+  int tokenVersion,
+  String authority
+) {
+}
@@ -0,0 +1,67 @@
+package nl.hva.springsecuritydemo.models.user;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.CreationTimestamp;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+
+/**
+ * An entry of the global index, that resolves a username or email to the id of its user. The id determines the
+ * shard that stores the user itself.
+ */
+@Entity
+@Table(indexes = @Index(columnList = "createdAt"))
+
+@Getter
+@NoArgsConstructor
+public class UserLookup {
+
+  private static final String USERNAME_PREFIX = "u:";
+  private static final String EMAIL_PREFIX = "e:";
+
+  /**
+   * The username or email, prefixed by its kind.
+   */
+  @Id
+  private String lookupKey;
+
+  private UUID userId;
+
+  /**
+   * When the entry was created, so instances can follow the entries created by others.
+   */
+  @CreationTimestamp
+  private LocalDateTime createdAt;
+
+  public UserLookup(String lookupKey, UUID userId) {
+    this.lookupKey = lookupKey;
+    this.userId = userId;
+  }
+
+  public static String usernameKey(String username) {
+    return USERNAME_PREFIX + username;
+  }
+
+  public static String emailKey(String email) {
+    return EMAIL_PREFIX + email;
+  }
+
+  public static boolean isUsernameKey(String key) {
+    return key.startsWith(USERNAME_PREFIX);
+  }
+
+  /**
+   * @return The username or email of the key, without its prefix.
+   */
+  public static String valueOf(String key) {
+    return key.substring(USERNAME_PREFIX.length());
+  }
+
+}
@@ -29,6 +29,7 @@ public class UserRole implements GrantedAuthority {
 
   public static final String ROLE_ADMIN_NAME = "ADMIN";
   public static final String ROLE_USER_NAME = "USER";
+  public static final String ROLE_GATEWAY_NAME = "GATEWAY";
 
   @Id
   @GeneratedValue(strategy = GenerationType.UUID)
@@ -0,0 +1,34 @@
+package nl.hva.springsecuritydemo.models.user;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.UUID;
+
+
+/**
+ * A lightweight projection of a {@link User}, holding only what is needed to answer conditional requests.
+ *
+ * @param id        The id of the user.
+ * @param changedAt The moment the user was last changed.
+ */
+public record UserVersion(UUID id, LocalDateTime changedAt) {
+
+  public static UserVersion of(User user) {
+    return new UserVersion(user.getId(), user.getChangedAt());
+  }
+
+  /**
+   * @return A weak ETag derived from the id and the last change of the user.
+   */
+  public String eTag() {
+    return "W/\"" + id + "-" + Math.max(lastModified(), 0) + "\"";
+  }
+
+  /**
+   * @return The last change of the user in epoch milliseconds, or -1 when unknown.
+   */
+  public long lastModified() {
+    return changedAt == null ? -1 : changedAt.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+  }
+
+}
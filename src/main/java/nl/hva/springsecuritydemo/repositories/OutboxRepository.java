@@ -0,0 +1,45 @@
+package nl.hva.springsecuritydemo.repositories;
+
+import nl.hva.springsecuritydemo.models.outbox.OutboxMessage;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+
+/**
+ * The outbox of a single shard, to be used within a transaction on that shard.
+ */
+@Repository
+public interface OutboxRepository extends JpaRepository<OutboxMessage, UUID> {
+
+  @Query("SELECT m.id FROM OutboxMessage m WHERE m.nextAttemptAt <= ?1 AND (m.claimedUntil IS NULL OR m.claimedUntil < ?1) ORDER BY m.nextAttemptAt")
+  List<UUID> findDueIds(Instant now, Limit limit);
+
+  /**
+   * Claims the messages that are not claimed by another run yet.
+   */
+  @Modifying
+  @Query("UPDATE OutboxMessage m SET m.claimedBy = ?2, m.claimedUntil = ?3 WHERE m.id IN ?1 AND (m.claimedUntil IS NULL OR m.claimedUntil < ?4)")
+  int claim(Collection<UUID> ids, UUID claim, Instant claimedUntil, Instant now);
+
+  @Query("SELECT m FROM OutboxMessage m WHERE m.claimedBy = ?1")
+  List<OutboxMessage> findClaimed(UUID claim);
+
+  @Query("SELECT COUNT(m) FROM OutboxMessage m WHERE m.nextAttemptAt IS NOT NULL")
+  long countPending();
+
+  @Query("SELECT COUNT(m) FROM OutboxMessage m WHERE m.nextAttemptAt IS NULL")
+  long countAbandoned();
+
+  @Query("SELECT MIN(m.createdAt) FROM OutboxMessage m WHERE m.nextAttemptAt IS NOT NULL")
+  Optional<Instant> findOldestPending();
+
+}
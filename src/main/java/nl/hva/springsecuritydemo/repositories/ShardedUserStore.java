@@ -0,0 +1,807 @@
+package nl.hva.springsecuritydemo.repositories;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.PersistenceException;
+import nl.hva.springsecuritydemo.config.sharding.ConsistentHashRing;
+import nl.hva.springsecuritydemo.config.sharding.ShardRoutingDataSource;
+import nl.hva.springsecuritydemo.exceptions.ConflictException;
+import nl.hva.springsecuritydemo.exceptions.DomainException;
+import nl.hva.springsecuritydemo.exceptions.ResourceNotFound;
+import nl.hva.springsecuritydemo.exceptions.ServiceUnavailable;
+import nl.hva.springsecuritydemo.models.user.User;
+import nl.hva.springsecuritydemo.models.user.UserAuthState;
+import nl.hva.springsecuritydemo.models.user.UserLookup;
+import nl.hva.springsecuritydemo.models.user.UserRole;
+import nl.hva.springsecuritydemo.models.user.UserVersion;
+import nl.hva.springsecuritydemo.utils.CircuitBreaker;
+import org.hibernate.Session;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.persister.collection.AbstractCollectionPersister;
+import org.hibernate.persister.entity.AbstractEntityPersister;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.IntSupplier;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import static nl.hva.springsecuritydemo.config.sharding.ShardRoutingDataSource.PRIMARY;
+import static nl.hva.springsecuritydemo.models.user.UserLookup.emailKey;
+import static nl.hva.springsecuritydemo.models.user.UserLookup.usernameKey;
+
+
+/**
+ * Stores users partitioned across the shards of the {@link ShardRoutingDataSource}, by consistent hashing of their
+ * id. Usernames and emails are resolved to ids through the {@link UserLookup} index on the primary shard.
+ * <p>
+ * Every operation runs in its own transaction on a single shard. Operations that span the index and a shard claim
+ * the index entries first, and release them again when storing the user fails. Committed changes are passed on to
+ * every {@link UserChangeListener}.
+ * <p>
+ * Every shard has a {@link CircuitBreaker}, that opens when too many operations on the shard fail or are slow. While
+ * it is open, operations on the shard fail fast with a {@link ServiceUnavailable}, rather than waiting on a database
+ * that is down or overloaded.
+ */
+@Repository
+public class ShardedUserStore {
+
+  private static final Logger logger = LoggerFactory.getLogger(ShardedUserStore.class);
+
+  private static final int MOVE_BATCH_SIZE = 500;
+
+  private final ShardRoutingDataSource shards;
+  private final UserRepository users;
+  private final UserLookupRepository lookups;
+  private final EntityManager entityManager;
+  private final SessionFactoryImplementor sessionFactory;
+  private final TransactionTemplate transactionTemplate;
+  private final ObjectProvider<UserChangeListener> listeners;
+  private final ExecutorService shardExecutor = Executors.newVirtualThreadPerTaskExecutor();
+  private final Map<String, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+  private final Function<String, CircuitBreaker> breakerFactory;
+
+  private volatile ConsistentHashRing ring;
+  private Table userTable;
+  private Table authoritiesTable;
+  private Table roleTable;
+  // The column of the authorities table that refers to the role.
+  private String roleColumn;
+
+  public ShardedUserStore(
+    ShardRoutingDataSource shards,
+    ConsistentHashRing ring,
+    UserRepository users,
+    UserLookupRepository lookups,
+    EntityManager entityManager,
+    EntityManagerFactory entityManagerFactory,
+    PlatformTransactionManager transactionManager,
+    ObjectProvider<UserChangeListener> listeners,
+    @Value("${users.circuit-breaker.window:20}") int breakerWindow,
+    @Value("${users.circuit-breaker.failure-rate:0.5}") double breakerFailureRate,
+    @Value("${users.circuit-breaker.slow-call:1s}") Duration breakerSlowCall,
+    @Value("${users.circuit-breaker.open-duration:10s}") Duration breakerOpenDuration
+  ) {
+    this.shards = shards;
+    this.ring = ring;
+    this.users = users;
+    this.lookups = lookups;
+    this.entityManager = entityManager;
+    this.sessionFactory = entityManagerFactory.unwrap(SessionFactoryImplementor.class);
+    this.transactionTemplate = new TransactionTemplate(transactionManager);
+    this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    this.listeners = listeners;
+    this.breakerFactory = shard -> new CircuitBreaker(
+      breakerWindow, breakerFailureRate, breakerSlowCall, breakerOpenDuration,
+      (from, to) -> logger.warn("Circuit breaker of {} changed from {} to {}", shard, from, to)
+    );
+  }
+
+  @PostConstruct
+  public void init() {
+    var metamodel = sessionFactory.getMappingMetamodel();
+    var user = (AbstractEntityPersister) metamodel.getEntityDescriptor(User.class);
+    var role = (AbstractEntityPersister) metamodel.getEntityDescriptor(UserRole.class);
+    var authorities = (AbstractCollectionPersister) metamodel.getCollectionDescriptor(User.class.getName() + ".authorities");
+
+    userTable = new Table(user.getTableName(), user.getIdentifierColumnNames()[0]);
+    roleTable = new Table(role.getTableName(), role.getIdentifierColumnNames()[0]);
+    authoritiesTable = new Table(authorities.getTableName(), authorities.getKeyColumnNames()[0]);
+    roleColumn = authorities.getElementColumnNames()[0];
+
+    // The schema of the primary shard is managed by Hibernate, the other shards get the same one when missing.
+    for (var shard : ring.getShards())
+      if (!shard.equals(PRIMARY)) createSchema(shard);
+
+    backfillLookups();
+  }
+
+  /**
+   * Adds the missing entries of the lookup index, such as those of users stored before the index existed, so they can
+   * be found by their username and email. The users are only read when the index holds fewer entries than they have
+   * usernames and emails.
+   *
+   * @return The amount of entries added.
+   */
+  public long backfillLookups() {
+    var expected = onEachShard(UserRepository::countLookupKeys).values().stream().mapToLong(Long::longValue).sum();
+    if (onShard(PRIMARY, lookups::count) >= expected) return 0;
+
+    var added = 0L;
+
+    for (var shard : ring.getShards()) {
+      List<UUID> ids;
+      UUID after = null;
+
+      do {
+        var from = after;
+        ids = onShard(shard, () -> users.findIdsMatching(from, null, null, null, null, Limit.of(MOVE_BATCH_SIZE)));
+        if (ids.isEmpty()) break;
+
+        var batch = ids;
+        var keys = new LinkedHashMap<String, UUID>();
+        onShard(shard, () -> users.findAllById(batch)).forEach(user -> keys.putAll(keysOf(user)));
+
+        added += onShard(PRIMARY, () -> {
+          keys.keySet().removeAll(lookups.findExistingKeys(keys.keySet()));
+          keys.forEach((key, id) -> entityManager.persist(new UserLookup(key, id)));
+          return keys.size();
+        });
+        after = ids.getLast();
+      } while (ids.size() == MOVE_BATCH_SIZE);
+    }
+
+    logger.info("Added {} missing entries to the username and email lookup index", added);
+    return added;
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    shardExecutor.shutdownNow();
+  }
+
+  /**
+   * @return The name of the shard that stores the user with the id.
+   */
+  public String shardOf(UUID id) {
+    return ring.shardOf(id);
+  }
+
+  public Optional<User> findById(UUID id) {
+    return onShard(shardOf(id), () -> users.findById(id));
+  }
+
+  public Optional<User> findByUsername(String username) {
+    return findIdByKey(usernameKey(username)).flatMap(this::findById);
+  }
+
+  public Optional<User> findByEmail(String email) {
+    return findIdByKey(emailKey(email)).flatMap(this::findById);
+  }
+
+  /**
+   * @return The authentication state of the user, with a state for each of its authorities, or none if it does not
+   * exist.
+   */
+  public List<UserAuthState> findAuthStates(UUID id) {
+    return onShard(shardOf(id), () -> users.findAuthStates(List.of(id)));
+  }
+
+  /**
+   * @return The authentication states of the users that exist, looked up with a query per shard, in parallel.
+   */
+  public List<UserAuthState> findAuthStates(Collection<UUID> ids) {
+    var idsByShard = ids.stream().distinct().collect(Collectors.groupingBy(this::shardOf));
+
+    return parallel(idsByShard.keySet(), shard -> onShard(shard, () -> users.findAuthStates(idsByShard.get(shard))))
+      .values().stream()
+      .flatMap(List::stream)
+      .toList();
+  }
+
+  public Optional<UserVersion> findVersionById(UUID id) {
+    return onShard(shardOf(id), () -> users.findVersionById(id));
+  }
+
+  public Optional<UserVersion> findVersionByUsername(String username) {
+    return findIdByKey(usernameKey(username)).flatMap(this::findVersionById);
+  }
+
+  public Optional<UserVersion> findVersionByEmail(String email) {
+    return findIdByKey(emailKey(email)).flatMap(this::findVersionById);
+  }
+
+  /**
+   * @return The provided usernames that already belong to a user.
+   */
+  public Set<String> findExistingUsernames(Collection<String> usernames) {
+    return findExistingValues(usernames.stream().map(UserLookup::usernameKey).toList());
+  }
+
+  /**
+   * @return The provided emails that already belong to a user.
+   */
+  public Set<String> findExistingEmails(Collection<String> emails) {
+    return findExistingValues(emails.stream().map(UserLookup::emailKey).toList());
+  }
+
+  /**
+   * @return The ids of the users with the provided usernames, by username, leaving out those that do not exist.
+   */
+  public Map<String, UUID> findIdsByUsernames(Collection<String> usernames) {
+    if (usernames.isEmpty()) return Map.of();
+
+    var keys = usernames.stream().map(UserLookup::usernameKey).toList();
+    return onShard(PRIMARY, () -> lookups.findAllByKeys(keys)).stream()
+      .collect(Collectors.toMap(lookup -> UserLookup.valueOf(lookup.getLookupKey()), UserLookup::getUserId));
+  }
+
+  /**
+   * Streams the entries of the global username and email index to the action, without loading them all at once.
+   */
+  public void forEachLookup(Consumer<UserLookup> action) {
+    onShard(PRIMARY, () -> {
+      try (var entries = lookups.streamAll()) {
+        entries.forEach(action);
+      }
+      return null;
+    });
+  }
+
+  /**
+   * @return The keys of the global index that were created after the moment, by any instance.
+   */
+  public List<String> findLookupKeysCreatedAfter(LocalDateTime after) {
+    return onShard(PRIMARY, () -> lookups.findKeysCreatedAfter(after));
+  }
+
+  /**
+   * Stores a new user on its shard.
+   *
+   * @throws ConflictException When its username or email already belongs to another user.
+   */
+  public User create(User user) {
+    return create(user, List.of());
+  }
+
+  /**
+   * Stores a new user on its shard, together with entities that belong to it, such as outbox messages, in the same
+   * transaction.
+   *
+   * @throws ConflictException When its username or email already belongs to another user.
+   */
+  public User create(User user, Collection<?> companions) {
+    var keys = keysOf(user);
+    claim(keys);
+
+    try {
+      onShard(shardOf(user.getId()), () -> {
+        entityManager.persist(user);
+        companions.forEach(entityManager::persist);
+        return null;
+      });
+    } catch (RuntimeException e) {
+      release(keys);
+      throw e;
+    }
+
+    listeners.forEach(listener -> listener.onSaved(user));
+    return user;
+  }
+
+  /**
+   * Stores new users, persisting those of the same shard in a single JDBC batched transaction.
+   *
+   * @return The users that could not be stored, as their shard failed.
+   * @throws ConflictException When a username or email already belongs to another user, before any user is stored.
+   */
+  public List<User> createAll(List<User> batch, int batchSize) {
+    var keys = new LinkedHashMap<String, UUID>();
+    batch.forEach(user -> keys.putAll(keysOf(user)));
+    claim(keys);
+
+    var failed = new ArrayList<User>();
+    var byShard = batch.stream().collect(Collectors.groupingBy(user -> shardOf(user.getId())));
+
+    for (var group : byShard.entrySet()) {
+      try {
+        onShard(group.getKey(), () -> {
+          entityManager.unwrap(Session.class).setJdbcBatchSize(batchSize);
+          group.getValue().forEach(entityManager::persist);
+          entityManager.flush();
+          entityManager.clear();
+          return null;
+        });
+
+        group.getValue().forEach(user -> listeners.forEach(listener -> listener.onSaved(user)));
+      } catch (RuntimeException e) {
+        logger.warn("Could not store {} users on {}: {}", group.getValue().size(), group.getKey(), e.getMessage());
+
+        var groupKeys = new LinkedHashMap<String, UUID>();
+        group.getValue().forEach(user -> groupKeys.putAll(keysOf(user)));
+        release(groupKeys);
+        failed.addAll(group.getValue());
+      }
+    }
+
+    return failed;
+  }
+
+  /**
+   * Stores the changes of an existing user, moving its index entries along with a changed username or email.
+   */
+  public User save(User user) {
+    var stored = findById(user.getId())
+      .orElseThrow(() -> new ResourceNotFound(User.class.getSimpleName(), "id", user.getId().toString()));
+
+    var added = new LinkedHashMap<>(keysOf(user));
+    var removed = new LinkedHashMap<>(keysOf(stored));
+    added.keySet().removeAll(keysOf(stored).keySet());
+    removed.keySet().removeAll(keysOf(user).keySet());
+
+    claim(added);
+
+    User saved;
+    try {
+      saved = onShard(shardOf(user.getId()), () -> entityManager.merge(user));
+    } catch (RuntimeException e) {
+      release(added);
+      throw e;
+    }
+
+    release(removed);
+    listeners.forEach(listener -> listener.onChanged(stored, saved));
+
+    return saved;
+  }
+
+  /**
+   * Removes the user from its shard and the index, if it still exists.
+   */
+  public void delete(User user) {
+    var stored = onShard(shardOf(user.getId()), () -> {
+      var found = users.findById(user.getId());
+      found.ifPresent(users::delete);
+
+      return found;
+    });
+
+    stored.ifPresent(found -> {
+      release(keysOf(found));
+      listeners.forEach(listener -> listener.onDeleted(found));
+    });
+  }
+
+  /**
+   * The outcome of a set-based update of users.
+   *
+   * @param selected The amount of provided ids that belong to a user.
+   * @param updated  The amount of users that were changed.
+   */
+  public record BulkUpdate(int selected, int updated) {
+  }
+
+  /**
+   * Applies a set-based update to the users with the ids on the shard, in one transaction, and passes their resulting
+   * authentication state on to every listener. The update does not load the users.
+   *
+   * @param update Executes the update statements, returning the amount of users changed.
+   */
+  public BulkUpdate updateAll(String shard, Collection<UUID> ids, IntSupplier update) {
+    if (ids.isEmpty()) return new BulkUpdate(0, 0);
+
+    var states = new ArrayList<UserAuthState>();
+    var updated = onShard(shard, () -> {
+      var count = update.getAsInt();
+      states.addAll(users.findAuthStates(ids));
+      return count;
+    });
+
+    if (updated > 0) listeners.forEach(listener -> listener.onAuthStatesChanged(states));
+
+    return new BulkUpdate((int) states.stream().map(UserAuthState::id).distinct().count(), updated);
+  }
+
+  /**
+   * Grants the role to the users with the ids that do not have it yet, without loading them. JPQL cannot insert into
+   * the authorities of a user, so the statement is native, on the tables and columns as mapped. Run it in an
+   * {@link #updateAll update} on the shard of the users.
+   *
+   * @return The amount of users granted the role.
+   */
+  public int grantRole(Collection<UUID> ids, UUID roleId) {
+    var sql = "INSERT INTO " + authoritiesTable.name + " (" + authoritiesTable.keyColumn + ", " + roleColumn + ")"
+      + " SELECT u." + userTable.keyColumn + ", :roleId FROM " + userTable.name + " u"
+      + " WHERE u." + userTable.keyColumn + " IN (:ids) AND NOT EXISTS (SELECT 1 FROM " + authoritiesTable.name + " a"
+      + " WHERE a." + authoritiesTable.keyColumn + " = u." + userTable.keyColumn + " AND a." + roleColumn + " = :roleId)";
+
+    return entityManager.createNativeQuery(sql)
+      .setParameter("ids", ids)
+      .setParameter("roleId", roleId)
+      .executeUpdate();
+  }
+
+  /**
+   * Takes the role away from the users with the ids, like {@link #grantRole} grants it.
+   *
+   * @return The amount of users the role was taken away from.
+   */
+  public int revokeRole(Collection<UUID> ids, UUID roleId) {
+    var sql = "DELETE FROM " + authoritiesTable.name
+      + " WHERE " + authoritiesTable.keyColumn + " IN (:ids) AND " + roleColumn + " = :roleId";
+
+    return entityManager.createNativeQuery(sql)
+      .setParameter("ids", ids)
+      .setParameter("roleId", roleId)
+      .executeUpdate();
+  }
+
+  /**
+   * Runs the query on every shard in parallel.
+   *
+   * @return The result of every shard, by the name of the shard.
+   */
+  public <R> Map<String, R> onEachShard(Function<UserRepository, R> query) {
+    return parallel(ring.getShards(), shard -> onShard(shard, () -> query.apply(users)));
+  }
+
+  /**
+   * @return The names of all shards, starting with the primary one.
+   */
+  public List<String> getShards() {
+    return ring.getShards();
+  }
+
+  /**
+   * @return The state of the circuit breaker of every shard that has been used.
+   */
+  public Map<String, CircuitBreaker.State> getBreakerStates() {
+    var states = new LinkedHashMap<String, CircuitBreaker.State>();
+    for (var shard : ring.getShards()) states.put(shard, breakerOf(shard).getState());
+
+    return states;
+  }
+
+  /**
+   * @return Whether the circuit breaker of the shard rejects operations.
+   */
+  public boolean isUnavailable(String shard) {
+    return breakerOf(shard).getState() != CircuitBreaker.State.CLOSED;
+  }
+
+  /**
+   * Performs the action in a new transaction on the shard, for data stored next to the users of the shard.
+   *
+   * @throws ServiceUnavailable When the circuit breaker of the shard is open.
+   */
+  public <T> T onShard(String shard, Supplier<T> action) {
+    var breaker = breakerOf(shard);
+    var waitNanos = breaker.tryAcquire();
+    if (waitNanos > 0) throw new ServiceUnavailable(
+      "The database is unavailable.",
+      Math.max(1, TimeUnit.NANOSECONDS.toSeconds(waitNanos))
+    );
+
+    var start = System.nanoTime();
+
+    try {
+      var result = shards.callOn(shard, () -> transactionTemplate.execute(status -> action.get()));
+      breaker.onSuccess(System.nanoTime() - start);
+
+      return result;
+    } catch (RuntimeException e) {
+      // Rejections and conflicts are answered by a healthy database.
+      if (e instanceof DomainException
+        || e instanceof DataIntegrityViolationException
+        || e instanceof OptimisticLockingFailureException) breaker.onSuccess(System.nanoTime() - start);
+      else breaker.onFailure();
+
+      throw e;
+    }
+  }
+
+  private CircuitBreaker breakerOf(String shard) {
+    return breakers.computeIfAbsent(shard, breakerFactory);
+  }
+
+  /**
+   * Copies the roles of the primary shard to all other shards, that refer to them by the same ids.
+   */
+  public void replicateRoles() {
+    for (var shard : ring.getShards())
+      if (!shard.equals(PRIMARY)) replicateRoles(shard);
+  }
+
+  /**
+   * Adds a shard and moves the users it now owns from the other shards. Their rows are copied first, after which
+   * the shard starts serving them, and only then they are deleted from their previous shards. Changes made to moved
+   * users while they are copied may be lost, so shards are best added while the application is quiet.
+   *
+   * @return The amount of users moved to the new shard.
+   */
+  public synchronized long addShard(String name, DataSource dataSource) {
+    shards.addShard(name, dataSource);
+    createSchema(name);
+    replicateRoles(name);
+
+    var previous = ring;
+    var next = previous.with(name);
+
+    var copied = parallel(previous.getShards(), shard -> {
+      var ids = findIdsOwnedBy(shard, name, next);
+      copyUsers(shard, name, ids);
+      return new HashSet<>(ids);
+    });
+
+    ring = next;
+
+    // Users created on the previous shards while copying, are copied before all moved users are deleted.
+    var moved = parallel(previous.getShards(), shard -> {
+      var ids = findIdsOwnedBy(shard, name, next);
+      copyUsers(shard, name, ids.stream().filter(id -> !copied.get(shard).contains(id)).toList());
+      deleteUsers(shard, ids);
+      return ids.size();
+    });
+
+    var total = moved.values().stream().mapToLong(Integer::longValue).sum();
+    logger.info("Added {}, moving {} users from {}", name, total, moved);
+
+    return total;
+  }
+
+  private <R> Map<String, R> parallel(Collection<String> targets, Function<String, R> action) {
+    var futures = new LinkedHashMap<String, CompletableFuture<R>>();
+    for (var shard : targets) futures.put(shard, CompletableFuture.supplyAsync(() -> action.apply(shard), shardExecutor));
+
+    var results = new LinkedHashMap<String, R>();
+    try {
+      futures.forEach((shard, future) -> results.put(shard, future.join()));
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof RuntimeException cause) throw cause;
+      throw e;
+    }
+
+    return results;
+  }
+
+  private Optional<UUID> findIdByKey(String key) {
+    return onShard(PRIMARY, () -> lookups.findUserIdByKey(key));
+  }
+
+  private Set<String> findExistingValues(Collection<String> keys) {
+    if (keys.isEmpty()) return Set.of();
+
+    return onShard(PRIMARY, () -> lookups.findExistingKeys(keys)).stream()
+      .map(UserLookup::valueOf)
+      .collect(Collectors.toSet());
+  }
+
+  private static Map<String, UUID> keysOf(User user) {
+    var keys = new LinkedHashMap<String, UUID>();
+    if (user.getUsername() != null) keys.put(usernameKey(user.getUsername()), user.getId());
+    if (user.getEmail() != null) keys.put(emailKey(user.getEmail()), user.getId());
+
+    return keys;
+  }
+
+  /**
+   * Adds the index entries, unless any of their keys is taken already.
+   */
+  private void claim(Map<String, UUID> keys) {
+    if (keys.isEmpty()) return;
+
+    onShard(PRIMARY, () -> {
+      var taken = lookups.findExistingKeys(keys.keySet());
+
+      if (!taken.isEmpty()) {
+        var key = taken.iterator().next();
+        throw new ConflictException((UserLookup.isUsernameKey(key) ? "Username" : "Email") + " already exists.");
+      }
+
+      try {
+        keys.forEach((key, id) -> entityManager.persist(new UserLookup(key, id)));
+        entityManager.flush();
+      } catch (PersistenceException e) {
+        throw new ConflictException("Username or email already exists.");
+      }
+
+      return null;
+    });
+  }
+
+  private void release(Map<String, UUID> keys) {
+    if (keys.isEmpty()) return;
+
+    var byUser = keys.entrySet().stream()
+      .collect(Collectors.groupingBy(Map.Entry::getValue, Collectors.mapping(Map.Entry::getKey, Collectors.toList())));
+
+    onShard(PRIMARY, () -> {
+      byUser.forEach((id, userKeys) -> lookups.deleteByKeys(userKeys, id));
+      return null;
+    });
+  }
+
+  /**
+   * @return The ids stored by the shard, that belong to the owner according to the ring.
+   */
+  private List<UUID> findIdsOwnedBy(String shard, String owner, ConsistentHashRing ring) {
+    return onShard(shard, users::findAllIds).stream()
+      .filter(id -> ring.shardOf(id).equals(owner))
+      .toList();
+  }
+
+  private void createSchema(String shard) {
+    try (var connection = shards.getShard(shard).getConnection(); var statement = connection.createStatement()) {
+      statement.executeQuery("SELECT 1 FROM " + userTable.name + " WHERE 1 = 0").close();
+      return;
+    } catch (SQLException e) {
+      logger.info("Creating the schema of {}", shard);
+    }
+
+    shards.callOn(shard, () -> {
+      sessionFactory.getSchemaManager().exportMappedObjects(true);
+      return null;
+    });
+  }
+
+  private void replicateRoles(String shard) {
+    withConnections(PRIMARY, shard, (source, target) -> {
+      var missing = new ArrayList<>(findIds(source, roleTable));
+      missing.removeAll(findIds(target, roleTable));
+
+      if (!missing.isEmpty()) copyRows(source, target, roleTable, missing);
+    });
+  }
+
+  private void copyUsers(String from, String to, List<UUID> ids) {
+    withConnections(from, to, (source, target) -> {
+      for (var i = 0; i < ids.size(); i += MOVE_BATCH_SIZE) {
+        var batch = ids.subList(i, Math.min(ids.size(), i + MOVE_BATCH_SIZE));
+
+        copyRows(source, target, userTable, batch);
+        copyRows(source, target, authoritiesTable, batch);
+      }
+    });
+  }
+
+  private void deleteUsers(String shard, List<UUID> ids) {
+    withConnections(shard, shard, (connection, ignored) -> {
+      for (var i = 0; i < ids.size(); i += MOVE_BATCH_SIZE) {
+        var batch = ids.subList(i, Math.min(ids.size(), i + MOVE_BATCH_SIZE));
+
+        deleteRows(connection, authoritiesTable, batch);
+        deleteRows(connection, userTable, batch);
+      }
+    });
+  }
+
+  /**
+   * Runs the work with a connection to each shard, committing both when it completes.
+   */
+  private void withConnections(String from, String to, ConnectionWork work) {
+    try (var source = shards.getShard(from).getConnection()) {
+      source.setAutoCommit(false);
+
+      if (from.equals(to)) {
+        work.run(source, source);
+      } else {
+        try (var target = shards.getShard(to).getConnection()) {
+          target.setAutoCommit(false);
+          work.run(source, target);
+          target.commit();
+        }
+      }
+
+      source.commit();
+    } catch (SQLException e) {
+      throw new IllegalStateException("Could not move rows from " + from + " to " + to, e);
+    }
+  }
+
+  private static List<UUID> findIds(Connection connection, Table table) throws SQLException {
+    var ids = new ArrayList<UUID>();
+
+    try (var statement = connection.createStatement();
+         var rows = statement.executeQuery("SELECT " + table.keyColumn + " FROM " + table.name)) {
+      while (rows.next()) ids.add(rows.getObject(1, UUID.class));
+    }
+
+    return ids;
+  }
+
+  /**
+   * Copies all columns of the rows whose key is one of the ids, so the copy does not depend on the mapping.
+   */
+  private static void copyRows(Connection source, Connection target, Table table, List<UUID> ids) throws SQLException {
+    if (ids.isEmpty()) return;
+
+    try (var select = source.prepareStatement("SELECT * FROM " + table.name + " WHERE " + table.inClause(ids.size()))) {
+      bind(select, ids);
+
+      try (var rows = select.executeQuery()) {
+        var metadata = rows.getMetaData();
+        var columns = new ArrayList<String>(metadata.getColumnCount());
+        for (var i = 1; i <= metadata.getColumnCount(); i++) columns.add('"' + metadata.getColumnName(i) + '"');
+
+        var insertSql = "INSERT INTO " + table.name + " (" + String.join(", ", columns) + ") VALUES ("
+          + String.join(", ", Collections.nCopies(columns.size(), "?")) + ")";
+
+        try (var insert = target.prepareStatement(insertSql)) {
+          while (rows.next()) {
+            for (var i = 1; i <= columns.size(); i++) insert.setObject(i, rows.getObject(i));
+            insert.addBatch();
+          }
+
+          insert.executeBatch();
+        }
+      }
+    }
+  }
+
+  private static void deleteRows(Connection connection, Table table, List<UUID> ids) throws SQLException {
+    if (ids.isEmpty()) return;
+
+    try (var delete = connection.prepareStatement("DELETE FROM " + table.name + " WHERE " + table.inClause(ids.size()))) {
+      bind(delete, ids);
+      delete.executeUpdate();
+    }
+  }
+
+  private static void bind(PreparedStatement statement, List<UUID> ids) throws SQLException {
+    for (var i = 0; i < ids.size(); i++) statement.setObject(i + 1, ids.get(i));
+  }
+
+  /**
+   * A table as named in SQL, with the column that refers to the id of its rows or their user.
+   */
+  private record Table(String name, String keyColumn) {
+
+    private String inClause(int size) {
+      return keyColumn + " IN (" + String.join(", ", Collections.nCopies(size, "?")) + ")";
+    }
+
+  }
+
+  @FunctionalInterface
+  private interface ConnectionWork {
+
+    void run(Connection source, Connection target) throws SQLException;
+
+  }
+
+}
@@ -0,0 +1,40 @@
+package nl.hva.springsecuritydemo.repositories;
+
+import nl.hva.springsecuritydemo.models.user.User;
+import nl.hva.springsecuritydemo.models.user.UserAuthState;
+
+import java.util.List;
+
+
+/**
+ * Notified by the {@link ShardedUserStore} after a change to a user has been committed, so derived structures can
+ * follow along incrementally.
+ */
+public interface UserChangeListener {
+
+  /**
+   * The user has been created or changed.
+   */
+  void onSaved(User user);
+
+  /**
+   * The existing user has been changed, from the previous state. Defaults to {@link #onSaved(User)}, for listeners that
+   * only need the current state.
+   */
+  default void onChanged(User previous, User user) {
+    onSaved(user);
+  }
+
+  /**
+   * The user has been deleted.
+   */
+  void onDeleted(User user);
+
+  /**
+   * Whether users are enabled or locked, their token version or their authorities have been changed in bulk, without loading
+   * them. A user with several authorities has a state for each of them.
+   */
+  default void onAuthStatesChanged(List<UserAuthState> states) {
+  }
+
+}
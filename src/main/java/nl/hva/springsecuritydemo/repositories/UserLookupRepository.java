@@ -0,0 +1,46 @@
+package nl.hva.springsecuritydemo.repositories;
+
+import nl.hva.springsecuritydemo.models.user.UserLookup;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+
+@Repository
+public interface UserLookupRepository extends JpaRepository<UserLookup, String> {
+
+  @Query("SELECT l.userId FROM UserLookup l WHERE l.lookupKey = ?1")
+  Optional<UUID> findUserIdByKey(String key);
+
+  @Query("SELECT l.lookupKey FROM UserLookup l WHERE l.lookupKey IN ?1")
+  Set<String> findExistingKeys(Collection<String> keys);
+
+  @Query("SELECT l FROM UserLookup l WHERE l.lookupKey IN ?1")
+  List<UserLookup> findAllByKeys(Collection<String> keys);
+
+  /**
+   * Streams all entries, as instances that are not managed by the persistence context.
+   */
+  @Query("SELECT new nl.hva.springsecuritydemo.models.user.UserLookup(l.lookupKey, l.userId) FROM UserLookup l")
+  Stream<UserLookup> streamAll();
+
+  @Query("SELECT l.lookupKey FROM UserLookup l WHERE l.createdAt > ?1")
+  List<String> findKeysCreatedAfter(LocalDateTime after);
+
+  /**
+   * Removes the entries of the keys, as far as they still belong to the user.
+   */
+  @Modifying
+  @Query("DELETE FROM UserLookup l WHERE l.lookupKey IN ?1 AND l.userId = ?2")
+  int deleteByKeys(Collection<String> keys, UUID userId);
+
+}
@@ -1,10 +1,17 @@
 package nl.hva.springsecuritydemo.repositories;
 
 import nl.hva.springsecuritydemo.models.user.User;
+import nl.hva.springsecuritydemo.models.user.UserAuthState;
+import nl.hva.springsecuritydemo.models.user.UserVersion;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
@@ -18,4 +25,97 @@ public interface UserRepository extends JpaRepository<User, UUID> {
   @Query("SELECT u FROM User u WHERE u.email = ?1")
   Optional<User> findByEmail(String email);
 
+  @Query("SELECT new nl.hva.springsecuritydemo.models.user.UserVersion(u.id, u.changedAt) FROM User u WHERE u.id = ?1")
+  Optional<UserVersion> findVersionById(UUID id);
+
+  @Query("SELECT new nl.hva.springsecuritydemo.models.user.UserAuthState(u.id, u.enabled, u.accountNonLocked, u.lockedOutUntil, u.tokenVersion, a.authority) FROM User u LEFT JOIN u.authorities a")
+  List<UserAuthState> findAllAuthStates();
+
+  @Query("SELECT new nl.hva.springsecuritydemo.models.user.UserAuthState(u.id, u.enabled, u.accountNonLocked, u.lockedOutUntil, u.tokenVersion, a.authority) FROM User u LEFT JOIN u.authorities a WHERE u.id IN ?1")
+  List<UserAuthState> findAuthStates(Collection<UUID> ids);
+
+  @Query("SELECT u.id FROM User u")
+  List<UUID> findAllIds();
+
+  /**
+   * @return The amount of usernames and emails of the users, which each have an entry in the lookup index.
+   */
+  @Query("SELECT COUNT(u.username) + COUNT(u.email) FROM User u")
+  long countLookupKeys();
+
+  /**
+   * Finds the ids of the users matching the filter in ascending order, starting after the provided id. Criteria that
+   * are null are left out.
+   *
+   * @param after         The last id of the previous page, or null for the first page.
+   * @param enabled       Whether the users are enabled.
+   * @param createdBefore The moment before which the users were created.
+   * @param createdAfter  The moment from which the users were created.
+   * @param authority     An authority the users have.
+   */
+  @Query("""
+    SELECT u.id FROM User u
+    WHERE (?1 IS NULL OR u.id > ?1)
+      AND (?2 IS NULL OR u.enabled = ?2)
+      AND (?3 IS NULL OR u.createdAt < ?3)
+      AND (?4 IS NULL OR u.createdAt >= ?4)
+      AND (?5 IS NULL OR EXISTS (SELECT a FROM u.authorities a WHERE a.authority = ?5))
+    ORDER BY u.id
+    """)
+  List<UUID> findIdsMatching(
+    UUID after,
+    Boolean enabled,
+    LocalDateTime createdBefore,
+    LocalDateTime createdAfter,
+    String authority,
+    Limit limit
+  );
+
+  @Modifying
+  @Query("UPDATE User u SET u.enabled = true, u.changedAt = ?2 WHERE u.id IN ?1 AND u.enabled = false")
+  int enableAll(Collection<UUID> ids, LocalDateTime now);
+
+  /**
+   * Disables the users, revoking their tokens.
+   */
+  @Modifying
+  @Query("UPDATE User u SET u.enabled = false, u.tokenVersion = u.tokenVersion + 1, u.changedAt = ?2 WHERE u.id IN ?1 AND u.enabled = true")
+  int disableAll(Collection<UUID> ids, LocalDateTime now);
+
+  /**
+   * Locks the users, revoking their tokens.
+   */
+  @Modifying
+  @Query("UPDATE User u SET u.accountNonLocked = false, u.tokenVersion = u.tokenVersion + 1, u.changedAt = ?2 WHERE u.id IN ?1 AND u.accountNonLocked = true")
+  int lockAll(Collection<UUID> ids, LocalDateTime now);
+
+  /**
+   * Locks the users out after too many failed logins, until the provided moment. Their tokens stay valid, as others
+   * may have caused the failures.
+   */
+  @Modifying
+  @Query("UPDATE User u SET u.lockedOutUntil = ?2, u.changedAt = ?3 WHERE u.id IN ?1 AND (u.lockedOutUntil IS NULL OR u.lockedOutUntil < ?2)")
+  int lockOutAll(Collection<UUID> ids, LocalDateTime until, LocalDateTime now);
+
+  /**
+   * Unlocks the users, whether an admin locked them or they were locked out after failed logins.
+   */
+  @Modifying
+  @Query("UPDATE User u SET u.accountNonLocked = true, u.lockedOutUntil = NULL, u.changedAt = ?2 WHERE u.id IN ?1 AND (u.accountNonLocked = false OR u.lockedOutUntil IS NOT NULL)")
+  int unlockAll(Collection<UUID> ids, LocalDateTime now);
+
+  /**
+   * Marks the users that do not have the role yet as changed, before {@link ShardedUserStore#grantRole} grants it.
+   */
+  @Modifying
+  @Query("UPDATE User u SET u.changedAt = ?3 WHERE u.id IN ?1 AND NOT EXISTS (SELECT a FROM u.authorities a WHERE a.id = ?2)")
+  int touchAllWithoutRole(Collection<UUID> ids, UUID roleId, LocalDateTime now);
+
+  /**
+   * Revokes the tokens of the users that have the role, before {@link ShardedUserStore#revokeRole} takes it away.
+   */
+  @Modifying
+  @Query("UPDATE User u SET u.tokenVersion = u.tokenVersion + 1, u.changedAt = ?3 WHERE u.id IN ?1 AND EXISTS (SELECT a FROM u.authorities a WHERE a.id = ?2)")
+  int revokeTokensOfAllWithRole(Collection<UUID> ids, UUID roleId, LocalDateTime now);
+
 }
@@ -0,0 +1,93 @@
+package nl.hva.springsecuritydemo.services;
+
+import nl.hva.springsecuritydemo.exceptions.BadRequest;
+import nl.hva.springsecuritydemo.models.outbox.OutboxMessage;
+import nl.hva.springsecuritydemo.models.user.User;
+import nl.hva.springsecuritydemo.utils.JWTUtil;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.UUID;
+
+import static nl.hva.springsecuritydemo.utils.JWTUtil.JWT_CLAIM_KEY_EMAIL;
+import static nl.hva.springsecuritydemo.utils.JWTUtil.JWT_CLAIM_KEY_TOKEN_TYPE;
+import static nl.hva.springsecuritydemo.utils.JWTUtil.JWT_CLAIM_KEY_TOKEN_TYPE_ACTIVATION;
+import static nl.hva.springsecuritydemo.utils.JWTUtil.JWT_CLAIM_KEY_TOKEN_VERSION;
+import static nl.hva.springsecuritydemo.utils.JWTUtil.JWT_CLAIM_KEY_USER_ID;
+
+
+/**
+ * Issues and verifies the links that activate the accounts of registered users.
+ * <p>
+ * A link carries a signed activation token, so verifying it requires no stored state.
+ */
+@Component
+public class AccountActivation {
+
+  private static final String SUBJECT = "Activate your account";
+
+  private final JWTUtil jwtUtil;
+  private final boolean required;
+  private final String url;
+
+  public AccountActivation(
+    JWTUtil jwtUtil,
+    @Value("${users.activation.required:true}") boolean required,
+    @Value("${users.activation.url:http://localhost:8080/api/v1/auth/activate?token=}") String url
+  ) {
+    this.jwtUtil = jwtUtil;
+    this.required = required;
+    this.url = url;
+  }
+
+  /**
+   * Disables a new user until it is activated, when activation is required.
+   *
+   * @return The activation email to store in the outbox along with the user, if any.
+   */
+  public List<OutboxMessage> prepare(User user) {
+    if (!required) return List.of();
+
+    user.setEnabled(false);
+
+    return List.of(OutboxMessage.builder()
+      .userId(user.getId())
+      .recipient(user.getEmail())
+      .subject(SUBJECT)
+      .body("Hi " + user.getUsername() + ",\n\nActivate your account within 48 hours through the link below.\n\n"
+        + url + jwtUtil.generateActivationTokenFor(user) + "\n")
+      .build());
+  }
+
+  /**
+   * @return The user, email and token version the activation token was issued for.
+   * @throws BadRequest When the token is not a valid activation token.
+   */
+  public Activation verify(String token) {
+    var claims = token == null ? null : jwtUtil.findClaimsOf(token);
+
+    if (claims == null || !JWT_CLAIM_KEY_TOKEN_TYPE_ACTIVATION.equals(claims.get(JWT_CLAIM_KEY_TOKEN_TYPE)))
+      throw BadRequest.INVALID_TOKEN;
+
+    try {
+      return new Activation(
+        UUID.fromString(claims.get(JWT_CLAIM_KEY_USER_ID, String.class)),
+        claims.get(JWT_CLAIM_KEY_EMAIL, String.class),
+        Objects.requireNonNullElse(claims.get(JWT_CLAIM_KEY_TOKEN_VERSION, Integer.class), 0)
+      );
+    } catch (RuntimeException e) {
+      throw BadRequest.INVALID_TOKEN;
+    }
+  }
+
+  /**
+   * @param userId       The id of the user to activate.
+   * @param email        The email the activation was sent to.
+   * @param tokenVersion The token version of the user when the activation was sent, which disabling it raises.
+   */
+  public record Activation(UUID userId, String email, int tokenVersion) {
+  }
+
+}
@@ -0,0 +1,429 @@
+package nl.hva.springsecuritydemo.services;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import nl.hva.springsecuritydemo.config.authorities.AuthorityRegistry;
+import nl.hva.springsecuritydemo.models.user.User;
+import nl.hva.springsecuritydemo.models.user.UserAuthState;
+import nl.hva.springsecuritydemo.repositories.ShardedUserStore;
+import nl.hva.springsecuritydemo.repositories.UserChangeListener;
+import nl.hva.springsecuritydemo.repositories.UserRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+
+/**
+ * An off-heap snapshot of what authenticating a request needs to know about every user: whether it is enabled, the
+ * mask of its authorities and the version of its credentials.
+ * <p>
+ * The snapshot is a memory-mapped file of fixed-width records, indexed by open addressing on the user id. It is
+ * built from all shards on startup and kept up to date by the changes of the {@link ShardedUserStore}. Reading a
+ * record does not allocate and does not touch the persistence context.
+ * <p>
+ * Other instances change users without notifying this one, so a record is only trusted for
+ * {@code users.auth-snapshot.ttl} after it was last read from or written to the database. Older records are
+ * {@link #refresh refreshed} by their reader.
+ * <p>
+ * Writes are serialized, reads are lock-free: every record carries a stamp that is odd while it is being written, so
+ * readers retry instead of seeing a half-written record. A table that is half full is copied into a larger file, which
+ * replaces the previous one at once.
+ */
+@Component
+public class AuthSnapshot implements UserChangeListener {
+
+  private static final Logger logger = LoggerFactory.getLogger(AuthSnapshot.class);
+
+  private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+  private static final VarHandle INTS = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.nativeOrder());
+
+  // The layout of a record.
+  private static final int RECORD_SIZE = 40;
+  private static final int MOST_SIGNIFICANT_BITS = 0;
+  private static final int LEAST_SIGNIFICANT_BITS = 8;
+  private static final int AUTHORITIES = 16;
+  private static final int TOKEN_VERSION = 24;
+  private static final int STAMP = 28;
+  private static final int VERIFIED_AT = 32;
+
+  // The lower bits of a stamp hold the state of the record, the upper ones count its writes.
+  private static final int STATE = 0b011;
+  private static final int EMPTY = 0b000;
+  private static final int LIVE = 0b001;
+  private static final int DELETED = 0b010;
+  private static final int ENABLED = 0b100;
+  private static final int WRITE_UNIT = 0b1000;
+
+  private static final int MIN_CAPACITY = 1024;
+
+  private final ShardedUserStore userStore;
+  private final AuthorityRegistry authorities;
+  private final Path directory;
+  private final long ttlNanos;
+
+  private volatile Table table;
+
+  /**
+   * The state of a user, as read from the snapshot. Readers can reuse an entry for every read.
+   */
+  public static final class Entry {
+
+    private boolean enabled;
+    private long authorities;
+    private int tokenVersion;
+    private long verifiedAt;
+
+    public boolean isEnabled() {
+      return enabled;
+    }
+
+    /**
+     * @return The mask of the authorities in the {@link AuthorityRegistry}, including those they imply.
+     */
+    public long getAuthorities() {
+      return authorities;
+    }
+
+    public int getTokenVersion() {
+      return tokenVersion;
+    }
+
+  }
+
+  public AuthSnapshot(
+    ShardedUserStore userStore,
+    AuthorityRegistry authorities,
+    @Value("${users.auth-snapshot.directory:${java.io.tmpdir}}") Path directory,
+    @Value("${users.auth-snapshot.ttl:30s}") Duration ttl
+  ) {
+    this.userStore = userStore;
+    this.authorities = authorities;
+    this.directory = directory;
+    this.ttlNanos = ttl.toNanos();
+  }
+
+  /**
+   * Builds the snapshot from the users of all shards.
+   */
+  @PostConstruct
+  public synchronized void init() {
+    var states = new HashMap<UUID, Entry>();
+    userStore.onEachShard(UserRepository::findAllAuthStates).values().forEach(shard -> merge(shard, states));
+
+    var built = Table.create(directory, capacityFor(states.size()));
+    var now = System.nanoTime();
+    states.forEach((id, entry) -> built.write(id, entry.enabled, entry.authorities, entry.tokenVersion, LIVE, now));
+    table = built;
+
+    logger.info("Built the authentication snapshot of {} users in {}", states.size(), built.file);
+  }
+
+  @PreDestroy
+  public synchronized void close() {
+    table.delete();
+  }
+
+  /**
+   * Reads the state of the user into the entry, without allocating.
+   *
+   * @return Whether the snapshot contains the user, otherwise the entry is left untouched.
+   */
+  public boolean read(UUID id, Entry into) {
+    return table.read(id.getMostSignificantBits(), id.getLeastSignificantBits(), into);
+  }
+
+  /**
+   * @return Whether the entry was read from or written to the database within the time to live.
+   */
+  public boolean isFresh(Entry entry) {
+    return System.nanoTime() - entry.verifiedAt < ttlNanos;
+  }
+
+  /**
+   * Replaces the record of the user by its states, as read from the database. A user without states has been deleted.
+   * Records written after the states were read are newer, and are kept.
+   *
+   * @param readSince The {@link System#nanoTime()} from before the states were read.
+   */
+  public synchronized void refresh(UUID id, List<UserAuthState> states, long readSince) {
+    var slot = table.slotOf(id);
+    if (slot >= 0 && table.verifiedAt(slot) - readSince > 0) return;
+
+    if (states.isEmpty()) {
+      if (slot >= 0) table.write(id, false, 0, 0, DELETED, readSince);
+      return;
+    }
+
+    var entries = new HashMap<UUID, Entry>();
+    merge(states, entries);
+
+    var entry = entries.get(id);
+    tableFor(id).write(id, entry.enabled, entry.authorities, entry.tokenVersion, LIVE, readSince);
+  }
+
+  @Override
+  public synchronized void onSaved(User user) {
+    tableFor(user.getId()).write(
+      user.getId(), user.isEnabled(), authorities.maskOf(user.getAuthorities()), user.getTokenVersion(), LIVE,
+      System.nanoTime()
+    );
+  }
+
+  @Override
+  public synchronized void onAuthStatesChanged(List<UserAuthState> states) {
+    var entries = new HashMap<UUID, Entry>();
+    merge(states, entries);
+
+    var now = System.nanoTime();
+    entries.forEach((id, entry) ->
+      tableFor(id).write(id, entry.enabled, entry.authorities, entry.tokenVersion, LIVE, now));
+  }
+
+  @Override
+  public synchronized void onDeleted(User user) {
+    if (table.slotOf(user.getId()) >= 0) table.write(user.getId(), false, 0, 0, DELETED, System.nanoTime());
+  }
+
+  /**
+   * @return The table to write the record of the user to, copied into a larger one first if it is half full.
+   */
+  private Table tableFor(UUID id) {
+    var current = table;
+
+    if (current.used >= current.capacity / 2 && current.slotOf(id) < 0) {
+      current = current.copy(directory, capacityFor(current.live + 1));
+      table.delete();
+      table = current;
+    }
+
+    return current;
+  }
+
+  /**
+   * Merges the states, of one authority each, into an entry per user.
+   */
+  private void merge(List<UserAuthState> states, Map<UUID, Entry> into) {
+    for (var state : states) {
+      var entry = into.computeIfAbsent(state.id(), id -> new Entry());
+      entry.enabled = state.enabled();
+      entry.tokenVersion = state.tokenVersion();
+      if (state.authority() != null) entry.authorities |= authorities.maskOf(state.authority());
+    }
+  }
+
+  /**
+   * @return A power of two, that keeps the table at most a quarter full for the provided amount of users.
+   */
+  private static int capacityFor(int users) {
+    return Math.max(MIN_CAPACITY, Integer.highestOneBit(Math.max(1, users) * 4 - 1) << 1);
+  }
+
+  private static int hash(long mostSignificantBits, long leastSignificantBits) {
+    var hash = mostSignificantBits ^ leastSignificantBits;
+    hash ^= hash >>> 33;
+    hash *= 0xFF51AFD7ED558CCDL;
+    hash ^= hash >>> 33;
+
+    return (int) hash;
+  }
+
+  /**
+   * A mapped file of records. Slots are never reused for another id, deleted records remain as tombstones until the
+   * table is copied.
+   */
+  private static final class Table {
+
+    private final Path file;
+    private final ByteBuffer buffer;
+    private final int capacity;
+
+    // Only accessed by writers.
+    private int used;
+    private int live;
+
+    private Table(Path file, ByteBuffer buffer, int capacity) {
+      this.file = file;
+      this.buffer = buffer;
+      this.capacity = capacity;
+    }
+
+    private static Table create(Path directory, int capacity) {
+      try {
+        var file = Files.createTempFile(directory, "auth-snapshot", ".bin");
+        file.toFile().deleteOnExit();
+
+        try (var channel = FileChannel.open(file, READ, WRITE)) {
+          var buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, (long) capacity * RECORD_SIZE);
+          return new Table(file, buffer, capacity);
+        }
+      } catch (IOException e) {
+        throw new UncheckedIOException("Could not map the authentication snapshot", e);
+      }
+    }
+
+    private boolean read(long mostSignificantBits, long leastSignificantBits, Entry into) {
+      var mask = capacity - 1;
+
+      for (var slot = hash(mostSignificantBits, leastSignificantBits) & mask; ; slot = (slot + 1) & mask) {
+        var offset = slot * RECORD_SIZE;
+        var stamp = (int) INTS.getAcquire(buffer, offset + STAMP);
+
+        if ((stamp & STATE) == EMPTY) return false;
+        if ((long) LONGS.get(buffer, offset + MOST_SIGNIFICANT_BITS) != mostSignificantBits
+          || (long) LONGS.get(buffer, offset + LEAST_SIGNIFICANT_BITS) != leastSignificantBits) continue;
+
+        while (true) {
+          if ((stamp & WRITE_UNIT) != 0) {
+            Thread.onSpinWait();
+            stamp = (int) INTS.getAcquire(buffer, offset + STAMP);
+            continue;
+          }
+
+          var authorities = (long) LONGS.get(buffer, offset + AUTHORITIES);
+          var tokenVersion = (int) INTS.get(buffer, offset + TOKEN_VERSION);
+          var verifiedAt = (long) LONGS.get(buffer, offset + VERIFIED_AT);
+          VarHandle.loadLoadFence();
+
+          var after = (int) INTS.getAcquire(buffer, offset + STAMP);
+          if (after != stamp) {
+            stamp = after;
+            continue;
+          }
+
+          if ((stamp & STATE) != LIVE) return false;
+
+          into.enabled = (stamp & ENABLED) != 0;
+          into.authorities = authorities;
+          into.tokenVersion = tokenVersion;
+          into.verifiedAt = verifiedAt;
+          return true;
+        }
+      }
+    }
+
+    /**
+     * @return The slot of the record of the id, or -1 if there is none.
+     */
+    private int slotOf(UUID id) {
+      var slot = findSlot(id.getMostSignificantBits(), id.getLeastSignificantBits());
+
+      return (int) INTS.get(buffer, slot * RECORD_SIZE + STAMP) == EMPTY ? -1 : slot;
+    }
+
+    /**
+     * @return When the record in the slot was last verified, for writers.
+     */
+    private long verifiedAt(int slot) {
+      return (long) LONGS.get(buffer, slot * RECORD_SIZE + VERIFIED_AT);
+    }
+
+    /**
+     * @return The slot holding the id, or the empty slot where it belongs.
+     */
+    private int findSlot(long mostSignificantBits, long leastSignificantBits) {
+      var mask = capacity - 1;
+
+      for (var slot = hash(mostSignificantBits, leastSignificantBits) & mask; ; slot = (slot + 1) & mask) {
+        var offset = slot * RECORD_SIZE;
+
+        if ((int) INTS.get(buffer, offset + STAMP) == EMPTY) return slot;
+        if ((long) LONGS.get(buffer, offset + MOST_SIGNIFICANT_BITS) == mostSignificantBits
+          && (long) LONGS.get(buffer, offset + LEAST_SIGNIFICANT_BITS) == leastSignificantBits) return slot;
+      }
+    }
+
+    private void write(UUID id, boolean enabled, long authorities, int tokenVersion, int state, long verifiedAt) {
+      var slot = findSlot(id.getMostSignificantBits(), id.getLeastSignificantBits());
+      var offset = slot * RECORD_SIZE;
+      var stamp = (int) INTS.get(buffer, offset + STAMP);
+      var flags = state | (enabled ? ENABLED : 0);
+
+      if (stamp == EMPTY) {
+        // Readers skip the slot until the stamp is published, after the rest of the record.
+        LONGS.set(buffer, offset + MOST_SIGNIFICANT_BITS, id.getMostSignificantBits());
+        LONGS.set(buffer, offset + LEAST_SIGNIFICANT_BITS, id.getLeastSignificantBits());
+        LONGS.set(buffer, offset + AUTHORITIES, authorities);
+        INTS.set(buffer, offset + TOKEN_VERSION, tokenVersion);
+        LONGS.set(buffer, offset + VERIFIED_AT, verifiedAt);
+        INTS.setRelease(buffer, offset + STAMP, WRITE_UNIT * 2 | flags);
+
+        used++;
+        if (state == LIVE) live++;
+        return;
+      }
+
+      if ((stamp & STATE) == LIVE) live--;
+      if (state == LIVE) live++;
+
+      var writing = (stamp & ~(ENABLED | STATE)) + WRITE_UNIT;
+      INTS.setOpaque(buffer, offset + STAMP, writing | (stamp & (ENABLED | STATE)));
+      VarHandle.storeStoreFence();
+
+      LONGS.set(buffer, offset + AUTHORITIES, authorities);
+      INTS.set(buffer, offset + TOKEN_VERSION, tokenVersion);
+      LONGS.set(buffer, offset + VERIFIED_AT, verifiedAt);
+      INTS.setRelease(buffer, offset + STAMP, (writing + WRITE_UNIT) | flags);
+    }
+
+    /**
+     * @return A new table of the provided capacity, with the live records of this one.
+     */
+    private Table copy(Path directory, int capacity) {
+      var copy = create(directory, capacity);
+
+      for (var slot = 0; slot < this.capacity; slot++) {
+        var offset = slot * RECORD_SIZE;
+        var stamp = (int) INTS.get(buffer, offset + STAMP);
+        if ((stamp & STATE) != LIVE) continue;
+
+        var id = new UUID(
+          (long) LONGS.get(buffer, offset + MOST_SIGNIFICANT_BITS),
+          (long) LONGS.get(buffer, offset + LEAST_SIGNIFICANT_BITS)
+        );
+
+        copy.write(
+          id,
+          (stamp & ENABLED) != 0,
+          (long) LONGS.get(buffer, offset + AUTHORITIES),
+          (int) INTS.get(buffer, offset + TOKEN_VERSION),
+          LIVE,
+          (long) LONGS.get(buffer, offset + VERIFIED_AT)
+        );
+      }
+
+      return copy;
+    }
+
+    /**
+     * Removes the file. The mapping stays valid for readers still holding the table, until it is unmapped.
+     */
+    private void delete() {
+      try {
+        Files.deleteIfExists(file);
+      } catch (IOException e) {
+        logger.warn("Could not delete {}: {}", file, e.getMessage());
+      }
+    }
+
+  }
+
+}
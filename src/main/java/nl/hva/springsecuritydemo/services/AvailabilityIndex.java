@@ -0,0 +1,213 @@
+package nl.hva.springsecuritydemo.services;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import nl.hva.springsecuritydemo.dtos.user.Availability;
+import nl.hva.springsecuritydemo.exceptions.TooManyRequests;
+import nl.hva.springsecuritydemo.models.user.User;
+import nl.hva.springsecuritydemo.repositories.ShardedUserStore;
+import nl.hva.springsecuritydemo.repositories.UserChangeListener;
+import nl.hva.springsecuritydemo.utils.BloomFilter;
+import nl.hva.springsecuritydemo.utils.RateLimiter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static nl.hva.springsecuritydemo.models.user.UserLookup.emailKey;
+import static nl.hva.springsecuritydemo.models.user.UserLookup.usernameKey;
+
+
+/**
+ * Answers whether usernames and emails are still available, mostly without querying the database.
+ * <p>
+ * A Bloom filter holds the keys of the global username and email index. A value that is not in the filter is taken to
+ * be available, only possible hits are confirmed against the index. The filter is built on startup and follows the
+ * changes of the {@link ShardedUserStore}, while the keys created by other instances are read from the index every
+ * sync interval. Freed usernames and emails cannot be removed from it, so it is rebuilt periodically, and once more
+ * values have been added than it was sized for.
+ * <p>
+ * Every client has a rate limit, as the answers reveal which usernames and emails are taken.
+ */
+@Component
+public class AvailabilityIndex implements UserChangeListener {
+
+  private static final Logger logger = LoggerFactory.getLogger(AvailabilityIndex.class);
+
+  private static final int MIN_CAPACITY = 1 << 16;
+  // Keys created this long before the last sync are read again, for the clocks of instances and for late commits.
+  private static final Duration SYNC_OVERLAP = Duration.ofMinutes(1);
+
+  private final ShardedUserStore userStore;
+  private final double falsePositiveRate;
+  private final Duration rebuildInterval;
+  private final Duration syncInterval;
+  private final RateLimiter rateLimiter;
+  private final ScheduledExecutorService maintainer = Executors.newSingleThreadScheduledExecutor(
+    Thread.ofPlatform().name("availability-index").daemon().factory()
+  );
+
+  // The amount of keys added to the current filter, counting those added repeatedly.
+  private final AtomicLong added = new AtomicLong();
+  private final AtomicBoolean rebuildScheduled = new AtomicBoolean();
+
+  private volatile BloomFilter filter;
+  // The filter being built, that receives the changes made meanwhile as well.
+  private volatile BloomFilter building;
+  private volatile LocalDateTime syncedAt;
+
+  public AvailabilityIndex(
+    ShardedUserStore userStore,
+    @Value("${users.availability.false-positive-rate:0.01}") double falsePositiveRate,
+    @Value("${users.availability.rebuild-interval:6h}") Duration rebuildInterval,
+    @Value("${users.availability.sync-interval:1s}") Duration syncInterval,
+    @Value("${users.availability.rate:20}") long rate,
+    @Value("${users.availability.rate-interval:10s}") Duration rateInterval
+  ) {
+    this.userStore = userStore;
+    this.falsePositiveRate = falsePositiveRate;
+    this.rebuildInterval = rebuildInterval;
+    this.syncInterval = syncInterval;
+    this.rateLimiter = new RateLimiter(rate, rateInterval);
+  }
+
+  @PostConstruct
+  public void init() {
+    syncedAt = LocalDateTime.now();
+    rebuild();
+
+    maintainer.scheduleWithFixedDelay(
+      this::rebuild, rebuildInterval.toMillis(), rebuildInterval.toMillis(), TimeUnit.MILLISECONDS
+    );
+    maintainer.scheduleWithFixedDelay(
+      this::sync, syncInterval.toMillis(), syncInterval.toMillis(), TimeUnit.MILLISECONDS
+    );
+    maintainer.scheduleWithFixedDelay(rateLimiter::evictRefilled, 1, 1, TimeUnit.MINUTES);
+  }
+
+  @PreDestroy
+  public void close() {
+    maintainer.shutdownNow();
+  }
+
+  /**
+   * Tells whether the username and email are available, leaving out those that are null.
+   *
+   * @param client The client asking, whose rate limit is charged.
+   * @throws TooManyRequests When the client exceeded its rate limit.
+   */
+  public Availability check(Object client, String username, String email) {
+    var waitNanos = rateLimiter.tryAcquire(client, 1);
+    if (waitNanos > 0) throw new TooManyRequests(
+      "Too many availability checks.",
+      Math.max(1, TimeUnit.NANOSECONDS.toSeconds(waitNanos))
+    );
+
+    return new Availability(
+      username == null ? null : isAvailable(usernameKey(username), username, true),
+      email == null ? null : isAvailable(emailKey(email), email, false)
+    );
+  }
+
+  private boolean isAvailable(String key, String value, boolean isUsername) {
+    if (!filter.mightContain(key)) return true;
+
+    var taken = isUsername
+      ? userStore.findExistingUsernames(List.of(value))
+      : userStore.findExistingEmails(List.of(value));
+
+    return taken.isEmpty();
+  }
+
+  @Override
+  public void onSaved(User user) {
+    if (user.getUsername() != null) add(usernameKey(user.getUsername()));
+    if (user.getEmail() != null) add(emailKey(user.getEmail()));
+  }
+
+  /**
+   * The filter cannot forget the values of the user, they are confirmed against the index until the next rebuild.
+   */
+  @Override
+  public void onDeleted(User user) {
+  }
+
+  private void add(String key) {
+    filter.add(key);
+
+    var next = building;
+    if (next != null) next.add(key);
+
+    if (added.incrementAndGet() > filter.getCapacity() && rebuildScheduled.compareAndSet(false, true))
+      maintainer.execute(this::rebuild);
+  }
+
+  /**
+   * Adds the keys that other instances created since the last sync to the filter.
+   */
+  public void sync() {
+    var now = LocalDateTime.now();
+
+    try {
+      for (var key : userStore.findLookupKeysCreatedAfter(syncedAt.minus(SYNC_OVERLAP)))
+        if (!filter.mightContain(key)) add(key);
+
+      syncedAt = now;
+    } catch (RuntimeException e) {
+      logger.warn("Could not sync the availability filter, retrying later", e);
+    }
+  }
+
+  /**
+   * Builds a new filter from the index, sized for twice the amount of keys, and replaces the current one by it.
+   */
+  public synchronized void rebuild() {
+    if (building != null) return;
+    rebuildScheduled.set(false);
+
+    var start = System.nanoTime();
+    var current = filter;
+    var next = new BloomFilter(Math.max(MIN_CAPACITY, 2 * added.get()), falsePositiveRate);
+
+    try {
+      // Changes committed from now on are added by the listener, earlier ones are read from the index.
+      building = next;
+      var count = new AtomicLong();
+      userStore.forEachLookup(lookup -> {
+        next.add(lookup.getLookupKey());
+        count.incrementAndGet();
+      });
+
+      if (count.get() > next.getCapacity()) {
+        // Sized too small for the amount of keys, as the amount added since the last rebuild was not known yet.
+        added.set(count.get());
+        building = null;
+        rebuild();
+        return;
+      }
+
+      filter = next;
+      added.set(count.get());
+
+      logger.info(
+        "Built the availability filter of {} usernames and emails in {} ms",
+        count.get(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)
+      );
+    } catch (RuntimeException e) {
+      if (current == null) throw e;
+      logger.warn("Could not rebuild the availability filter, keeping the current one", e);
+    } finally {
+      if (building == next) building = null;
+    }
+  }
+
+}
@@ -0,0 +1,127 @@
+package nl.hva.springsecuritydemo.services;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import nl.hva.springsecuritydemo.exceptions.BadRequest;
+import nl.hva.springsecuritydemo.utils.BreachedHashCorpus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Rejects passwords that appear in a locally provisioned {@link BreachedHashCorpus}, without any network call.
+ * <p>
+ * The corpus file is checked for changes periodically. A replaced file is mapped and validated first, and then swapped
+ * in at once, so checks in flight keep using the previous corpus. When no file is configured, no password is rejected.
+ * <p>
+ * The file has to be replaced by renaming a new file over it, as {@link BreachedHashCorpus#convert} does. Copying over
+ * it or truncating it in place changes the mapped file, which crashes the JVM with SIGBUS on the next check.
+ */
+@Component
+public class BreachedPasswords {
+
+  private static final Logger logger = LoggerFactory.getLogger(BreachedPasswords.class);
+
+  public static final BadRequest BREACHED = new BadRequest("The password has appeared in a data breach.");
+
+  private final Path file;
+  private final Duration reloadInterval;
+  private final ScheduledExecutorService reloader = Executors.newSingleThreadScheduledExecutor(
+    Thread.ofPlatform().name("breached-passwords-reloader").daemon().factory()
+  );
+
+  private volatile BreachedHashCorpus corpus;
+  private String loadedVersion;
+
+  public BreachedPasswords(
+    @Value("${users.breached-passwords.file:}") String file,
+    @Value("${users.breached-passwords.reload-interval:1m}") Duration reloadInterval
+  ) {
+    this.file = StringUtils.hasText(file) ? Path.of(file) : null;
+    this.reloadInterval = reloadInterval;
+  }
+
+  @PostConstruct
+  public void init() {
+    if (file == null) return;
+
+    reload();
+    reloader.scheduleWithFixedDelay(
+      this::reload, reloadInterval.toMillis(), reloadInterval.toMillis(), TimeUnit.MILLISECONDS
+    );
+  }
+
+  @PreDestroy
+  public void close() {
+    reloader.shutdownNow();
+  }
+
+  /**
+   * Maps the corpus file again if it changed since it was last loaded. A file that is missing or invalid is logged,
+   * and leaves the current corpus in place.
+   */
+  public synchronized void reload() {
+    try {
+      var attributes = Files.readAttributes(file, BasicFileAttributes.class);
+      var version = Objects.requireNonNullElse(attributes.fileKey(), "")
+        + "@" + attributes.lastModifiedTime() + "#" + attributes.size();
+
+      if (version.equals(loadedVersion)) return;
+
+      corpus = BreachedHashCorpus.open(file);
+      loadedVersion = version;
+
+      logger.info("Loaded {} breached password hashes from {}", corpus.size(), file);
+    } catch (IOException e) {
+      logger.warn("Could not load the breached password corpus from {}: {}", file, e.toString());
+    }
+  }
+
+  /**
+   * @return Whether the password appears in the corpus, always false when no corpus is loaded.
+   */
+  public boolean isBreached(String password) {
+    var current = corpus;
+    return current != null && current.contains(sha1(password));
+  }
+
+  /**
+   * @throws BadRequest When the password appears in the corpus.
+   */
+  public void check(String password) {
+    if (isBreached(password)) throw BREACHED;
+  }
+
+  /**
+   * @return The amount of hashes in the loaded corpus, or -1 if none is loaded.
+   */
+  public long size() {
+    var current = corpus;
+    return current == null ? -1 : current.size();
+  }
+
+  private static byte[] sha1(String password) {
+    try {
+      return MessageDigest.getInstance("SHA-1").digest(password.getBytes(StandardCharsets.UTF_8));
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+}
@@ -0,0 +1,361 @@
+package nl.hva.springsecuritydemo.services;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import nl.hva.springsecuritydemo.models.user.User;
+import nl.hva.springsecuritydemo.models.user.UserAuthState;
+import nl.hva.springsecuritydemo.repositories.ShardedUserStore;
+import nl.hva.springsecuritydemo.repositories.UserChangeListener;
+import nl.hva.springsecuritydemo.repositories.UserRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.stream.Collectors;
+
+
+/**
+ * Counts the failed logins of every username in memory, and temporarily locks out the accounts that fail too often.
+ * <p>
+ * The failures are counted in a sliding window: the count of the previous window weighs in for the part of it that
+ * still overlaps. Counters are spread over striped maps, so concurrent logins of different usernames rarely contend.
+ * A stripe holds a limited amount of counters; once it is full, the half that is furthest from the threshold is
+ * forgotten, so a flood of unknown usernames cannot exhaust the memory nor push out the counters of attacked accounts.
+ * <p>
+ * Once a username reaches the threshold, its logins are refused without loading the user or hashing the password,
+ * and a background flush locks its account out until {@code users.lockout.duration} has passed, in a set-based
+ * statement per batch and shard. Failed logins therefore never write to the database themselves. The lockout expires
+ * by itself, so failed logins by others cannot lock an account for good; admins can unlock it earlier.
+ * <p>
+ * Usernames that do not belong to a user are refused until their count drops below the threshold again. Lockouts
+ * from before a restart are enforced by the authentication provider, which checks the lock before the password.
+ */
+@Component
+public class LoginAttempts implements UserChangeListener {
+
+  private static final Logger logger = LoggerFactory.getLogger(LoginAttempts.class);
+
+  private final ShardedUserStore userStore;
+  private final UserRepository users;
+  private final int threshold;
+  private final long windowNanos;
+  private final Duration duration;
+  private final Duration flushInterval;
+  private final int batchSize;
+  private final int countersPerStripe;
+  private final LongSupplier nanoTime;
+  private final Stripe[] stripes;
+  private final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(
+    Thread.ofPlatform().name("login-attempts-flusher").daemon().factory()
+  );
+
+  // Usernames that reached the threshold, waiting for their account to be locked out.
+  private final Set<String> pending = ConcurrentHashMap.newKeySet();
+  // The accounts that are locked out, by username.
+  private final Map<String, Lockout> lockedOut = new ConcurrentHashMap<>();
+
+  @Autowired
+  public LoginAttempts(
+    ShardedUserStore userStore,
+    UserRepository users,
+    @Value("${users.lockout.threshold:10}") int threshold,
+    @Value("${users.lockout.window:15m}") Duration window,
+    @Value("${users.lockout.duration:15m}") Duration duration,
+    @Value("${users.lockout.flush-interval:1s}") Duration flushInterval,
+    @Value("${users.lockout.batch-size:500}") int batchSize,
+    @Value("${users.lockout.stripes:64}") int stripes,
+    @Value("${users.lockout.max-counters:100000}") int maxCounters
+  ) {
+    this(userStore, users, threshold, window, duration, flushInterval, batchSize, stripes, maxCounters, System::nanoTime);
+  }
+
+  /**
+   * @param nanoTime The clock of the windows and lockouts, in nanoseconds like {@link System#nanoTime()}.
+   */
+  LoginAttempts(
+    ShardedUserStore userStore,
+    UserRepository users,
+    int threshold,
+    Duration window,
+    Duration duration,
+    Duration flushInterval,
+    int batchSize,
+    int stripes,
+    int maxCounters,
+    LongSupplier nanoTime
+  ) {
+    this.userStore = userStore;
+    this.users = users;
+    this.threshold = threshold;
+    this.windowNanos = window.toNanos();
+    this.duration = duration;
+    this.flushInterval = flushInterval;
+    this.batchSize = batchSize;
+    this.nanoTime = nanoTime;
+    this.stripes = new Stripe[Integer.highestOneBit(Math.max(1, stripes - 1)) << 1];
+    this.countersPerStripe = Math.max(2, maxCounters / this.stripes.length);
+    for (var i = 0; i < this.stripes.length; i++) this.stripes[i] = new Stripe();
+  }
+
+  @PostConstruct
+  public void init() {
+    flusher.scheduleWithFixedDelay(
+      this::flush, flushInterval.toMillis(), flushInterval.toMillis(), TimeUnit.MILLISECONDS
+    );
+    flusher.scheduleWithFixedDelay(
+      this::evictExpired, windowNanos, windowNanos, TimeUnit.NANOSECONDS
+    );
+  }
+
+  /**
+   * Locks out the accounts still pending, so no lockout is lost on shutdown.
+   */
+  @PreDestroy
+  public void close() {
+    flusher.shutdownNow();
+    flush();
+  }
+
+  /**
+   * @return Whether the logins of the username are refused, checked without touching the database.
+   */
+  public boolean isLockedOut(String username) {
+    var now = nanoTime.getAsLong();
+    var lockout = lockedOut.get(username);
+
+    if (lockout != null) {
+      if (lockout.until - now > 0) return true;
+      lockedOut.remove(username, lockout);
+    }
+
+    var stripe = stripeOf(username);
+    synchronized (stripe) {
+      var counter = stripe.counters.get(username);
+      return counter != null && counter.estimate(now) >= threshold;
+    }
+  }
+
+  /**
+   * Counts a failed login of the username, and schedules its account to be locked out once it reaches the threshold.
+   */
+  public void onFailure(String username) {
+    var stripe = stripeOf(username);
+    double estimate;
+
+    synchronized (stripe) {
+      var now = nanoTime.getAsLong();
+      var counter = stripe.counters.get(username);
+
+      if (counter == null) {
+        if (stripe.counters.size() >= countersPerStripe) stripe.evictFurthestFromThreshold(now);
+        counter = new Counter();
+        stripe.counters.put(username, counter);
+      }
+
+      estimate = counter.increment(now);
+    }
+
+    if (estimate >= threshold && !lockedOut.containsKey(username)) pending.add(username);
+  }
+
+  /**
+   * Forgets the failed logins of the username, after it logged in successfully.
+   */
+  public void onSuccess(String username) {
+    var stripe = stripeOf(username);
+    synchronized (stripe) {
+      stripe.counters.remove(username);
+    }
+  }
+
+  /**
+   * Locks out the accounts of the pending usernames, in batches, with a transaction per batch and shard. Usernames of a
+   * batch that failed are retried on the next flush.
+   */
+  public synchronized void flush() {
+    while (!pending.isEmpty()) {
+      var batch = pending.stream().limit(batchSize).toList();
+      batch.forEach(pending::remove);
+
+      try {
+        lockOut(batch);
+      } catch (RuntimeException e) {
+        pending.addAll(batch);
+        logger.warn("Could not lock out {} accounts after failed logins, retrying later", batch.size(), e);
+        return;
+      }
+    }
+  }
+
+  private void lockOut(List<String> usernames) {
+    var ids = userStore.findIdsByUsernames(usernames);
+    var now = LocalDateTime.now();
+    var until = now.plus(duration);
+    var lockedOutUntil = nanoTime.getAsLong() + duration.toNanos();
+    var locked = 0;
+
+    var idsByShard = ids.values().stream().collect(Collectors.groupingBy(userStore::shardOf));
+    for (var entry : idsByShard.entrySet()) {
+      var shardIds = entry.getValue();
+      locked += userStore.updateAll(entry.getKey(), shardIds, () -> users.lockOutAll(shardIds, until, now)).updated();
+    }
+
+    // The lockout refuses the logins from now on, so the account starts out without failures once it expires.
+    ids.forEach((username, id) -> {
+      lockedOut.put(username, new Lockout(id, lockedOutUntil));
+      onSuccess(username);
+    });
+    if (locked > 0) logger.info("Locked out {} accounts after failed logins until {}", locked, until);
+  }
+
+  /**
+   * Forgets the counters whose windows have both passed, as they would start out the same on the next failure, and the
+   * lockouts that expired.
+   */
+  public void evictExpired() {
+    var now = nanoTime.getAsLong();
+
+    for (var stripe : stripes) {
+      synchronized (stripe) {
+        stripe.counters.values().removeIf(counter -> counter.estimate(now) == 0);
+      }
+    }
+
+    lockedOut.values().removeIf(lockout -> lockout.until - now <= 0);
+  }
+
+  /**
+   * @return The amount of usernames whose failed logins are counted.
+   */
+  int counted() {
+    var counted = 0;
+    for (var stripe : stripes) {
+      synchronized (stripe) {
+        counted += stripe.counters.size();
+      }
+    }
+    return counted;
+  }
+
+  @Override
+  public void onSaved(User user) {
+    if (user.isAccountNonLocked() && user.getUsername() != null) release(user.getUsername());
+  }
+
+  @Override
+  public void onDeleted(User user) {
+    if (user.getUsername() != null) release(user.getUsername());
+  }
+
+  /**
+   * Releases the accounts that have been unlocked in bulk.
+   */
+  @Override
+  public void onAuthStatesChanged(List<UserAuthState> states) {
+    if (lockedOut.isEmpty()) return;
+
+    var unlocked = states.stream()
+      .filter(state -> state.nonLocked() && state.lockedOutUntil() == null)
+      .map(UserAuthState::id)
+      .collect(Collectors.toSet());
+
+    var usernames = new ArrayList<String>();
+    lockedOut.forEach((username, lockout) -> {
+      if (unlocked.contains(lockout.id)) usernames.add(username);
+    });
+    usernames.forEach(this::release);
+  }
+
+  private void release(String username) {
+    lockedOut.remove(username);
+    pending.remove(username);
+    onSuccess(username);
+  }
+
+  private Stripe stripeOf(String username) {
+    var hash = username.hashCode();
+    return stripes[(hash ^ hash >>> 16) & stripes.length - 1];
+  }
+
+  /**
+   * @param id    The id of the user whose account is locked out.
+   * @param until The {@link #nanoTime} at which the lockout expires.
+   */
+  private record Lockout(UUID id, long until) {
+  }
+
+  private class Stripe {
+
+    private final Map<String, Counter> counters = new HashMap<>();
+
+    /**
+     * Forgets the half of the counters with the lowest estimates, which are the least likely to reach the threshold.
+     * Sorting once per half a stripe of new usernames keeps the cost per failed login logarithmic.
+     */
+    private void evictFurthestFromThreshold(long now) {
+      var estimates = new HashMap<String, Double>();
+      counters.forEach((username, counter) -> estimates.put(username, counter.estimate(now)));
+
+      estimates.entrySet().stream()
+        .sorted(Map.Entry.comparingByValue(Comparator.naturalOrder()))
+        .limit(counters.size() / 2)
+        .map(Map.Entry::getKey)
+        .toList()
+        .forEach(counters::remove);
+    }
+
+  }
+
+  /**
+   * The failures of a username in the current and the previous window, guarded by its stripe.
+   */
+  private class Counter {
+
+    private long window = Long.MIN_VALUE;
+    private int previous;
+    private int current;
+
+    private double increment(long now) {
+      advance(now);
+      current++;
+      return weigh(now);
+    }
+
+    private double estimate(long now) {
+      advance(now);
+      return weigh(now);
+    }
+
+    private void advance(long now) {
+      var index = Math.floorDiv(now, windowNanos);
+      if (index == window) return;
+
+      previous = index == window + 1 ? current : 0;
+      current = 0;
+      window = index;
+    }
+
+    private double weigh(long now) {
+      var elapsed = Math.floorMod(now, windowNanos) / (double) windowNanos;
+      return previous * (1 - elapsed) + current;
+    }
+
+  }
+
+}
@@ -0,0 +1,80 @@
+package nl.hva.springsecuritydemo.services;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+
+/**
+ * A bounded cache of user ids that are known not to exist, such as those of deleted users that still hold a valid
+ * token. Entries expire after a short time, so a lookup of those ids can skip the database for a while.
+ * <p>
+ * All entries live equally long, so they expire in the order they were added. A queue keeps that order, so expired
+ * entries and, once the cache is full, the oldest ones are evicted from its head without scanning the cache.
+ */
+@Component
+public class MissingUserCache {
+
+  private final Map<UUID, Long> expiries = new ConcurrentHashMap<>();
+  // The entries in the order they were added, including those that have since been invalidated or marked again.
+  private final Queue<Entry> order = new ConcurrentLinkedQueue<>();
+  private final long ttlNanos;
+  private final int maxSize;
+
+  public MissingUserCache(
+    @Value("${users.missing-cache.ttl:30s}") Duration ttl,
+    @Value("${users.missing-cache.max-size:10000}") int maxSize
+  ) {
+    this.ttlNanos = ttl.toNanos();
+    this.maxSize = maxSize;
+  }
+
+  /**
+   * @return Whether the id is known to not belong to any user.
+   */
+  public boolean isMissing(UUID id) {
+    var expiry = expiries.get(id);
+    if (expiry == null) return false;
+
+    if (expiry - System.nanoTime() > 0) return true;
+
+    expiries.remove(id, expiry);
+    return false;
+  }
+
+  /**
+   * Remembers that the id does not belong to any user. Expired entries are evicted first, and when the cache is full,
+   * the oldest entry makes room.
+   */
+  public void markMissing(UUID id) {
+    var now = System.nanoTime();
+    var expiry = now + ttlNanos;
+
+    expiries.put(id, expiry);
+    order.add(new Entry(id, expiry));
+
+    for (var head = order.peek(); head != null; head = order.peek()) {
+      if (head.expiry - now > 0 && expiries.size() <= maxSize) break;
+
+      // Only removed while not marked again since, in which case a later entry of the queue holds its expiry.
+      if (order.remove(head)) expiries.remove(head.id, head.expiry);
+    }
+  }
+
+  /**
+   * Forgets that the id did not belong to any user, for instance because a user has been created with it.
+   */
+  public void invalidate(UUID id) {
+    expiries.remove(id);
+  }
+
+  private record Entry(UUID id, long expiry) {
+  }
+
+}
@@ -0,0 +1,197 @@
+package nl.hva.springsecuritydemo.services;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import nl.hva.springsecuritydemo.models.outbox.OutboxMessage;
+import nl.hva.springsecuritydemo.repositories.OutboxRepository;
+import nl.hva.springsecuritydemo.repositories.ShardedUserStore;
+import nl.hva.springsecuritydemo.services.mail.MailTransport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * Sends the emails of the outboxes of all shards, in the background.
+ * <p>
+ * Every run claims a batch of due messages per shard for the duration of a lease, so multiple instances do not send
+ * the same message, and a message claimed by a crashed instance is picked up again once its lease ends. Sent
+ * messages are deleted. Failed messages are retried with exponential backoff, and abandoned after too many attempts.
+ * Messages are delivered at least once.
+ */
+@Service
+public class OutboxDispatcher {
+
+  private static final Logger logger = LoggerFactory.getLogger(OutboxDispatcher.class);
+
+  private final ShardedUserStore userStore;
+  private final OutboxRepository outbox;
+  private final MailTransport transport;
+  private final Duration pollInterval;
+  private final int batchSize;
+  private final int maxAttempts;
+  private final Duration backoff;
+  private final Duration maxBackoff;
+  private final Duration lease;
+
+  private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(
+    Thread.ofPlatform().name("outbox-dispatcher").daemon().factory()
+  );
+  private final AtomicBoolean scheduled = new AtomicBoolean();
+
+  private final LongAdder sent = new LongAdder();
+  private final LongAdder failedAttempts = new LongAdder();
+  private final LongAdder totalLatencyMs = new LongAdder();
+  private final AtomicLong maxLatencyMs = new AtomicLong();
+
+  public OutboxDispatcher(
+    ShardedUserStore userStore,
+    OutboxRepository outbox,
+    MailTransport transport,
+    @Value("${users.outbox.poll-interval:5s}") Duration pollInterval,
+    @Value("${users.outbox.batch-size:50}") int batchSize,
+    @Value("${users.outbox.max-attempts:10}") int maxAttempts,
+    @Value("${users.outbox.backoff:10s}") Duration backoff,
+    @Value("${users.outbox.max-backoff:1h}") Duration maxBackoff,
+    @Value("${users.outbox.lease:1m}") Duration lease
+  ) {
+    this.userStore = userStore;
+    this.outbox = outbox;
+    this.transport = transport;
+    this.pollInterval = pollInterval;
+    this.batchSize = batchSize;
+    this.maxAttempts = maxAttempts;
+    this.backoff = backoff;
+    this.maxBackoff = maxBackoff;
+    this.lease = lease;
+  }
+
+  @PostConstruct
+  public void start() {
+    executor.scheduleWithFixedDelay(this::dispatch, pollInterval.toMillis(), pollInterval.toMillis(), TimeUnit.MILLISECONDS);
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    executor.shutdownNow();
+  }
+
+  /**
+   * Dispatches right away, instead of at the next poll, for messages that were just committed.
+   */
+  public void dispatchSoon() {
+    if (scheduled.compareAndSet(false, true)) executor.execute(() -> {
+      scheduled.set(false);
+      dispatch();
+    });
+  }
+
+  /**
+   * Sends the due messages of every shard, as long as full batches are claimed.
+   */
+  private void dispatch() {
+    try {
+      for (var shard : userStore.getShards())
+        while (dispatchBatch(shard) == batchSize) logger.debug("Outbox of {} has more due messages", shard);
+    } catch (RuntimeException e) {
+      logger.warn("Could not dispatch the outbox: {}", e.getMessage());
+    }
+  }
+
+  private int dispatchBatch(String shard) {
+    var claim = UUID.randomUUID();
+    var claimed = userStore.onShard(shard, () -> {
+      var now = Instant.now();
+      var due = outbox.findDueIds(now, Limit.of(batchSize));
+      if (due.isEmpty()) return List.<OutboxMessage>of();
+
+      outbox.claim(due, claim, now.plus(lease), now);
+      return outbox.findClaimed(claim);
+    });
+
+    for (var message : claimed) {
+      try {
+        transport.send(message.getRecipient(), message.getSubject(), message.getBody());
+      } catch (RuntimeException e) {
+        failedAttempts.increment();
+        userStore.onShard(shard, () -> reschedule(message, e));
+        continue;
+      }
+
+      userStore.onShard(shard, () -> {
+        outbox.deleteById(message.getId());
+        return null;
+      });
+
+      var latencyMs = Duration.between(message.getCreatedAt(), Instant.now()).toMillis();
+      sent.increment();
+      totalLatencyMs.add(latencyMs);
+      maxLatencyMs.accumulateAndGet(latencyMs, Math::max);
+    }
+
+    return claimed.size();
+  }
+
+  private OutboxMessage reschedule(OutboxMessage message, RuntimeException error) {
+    var attempts = message.getAttempts() + 1;
+    var delay = backoff.multipliedBy(1L << Math.min(attempts - 1, 30));
+    if (delay.compareTo(maxBackoff) > 0) delay = maxBackoff;
+
+    // Jitter spreads out retries of messages that failed together.
+    delay = delay.plusMillis(ThreadLocalRandom.current().nextLong(delay.toMillis() / 10 + 1));
+
+    message.setAttempts(attempts);
+    message.setNextAttemptAt(attempts >= maxAttempts ? null : Instant.now().plus(delay));
+    message.setClaimedBy(null);
+    message.setClaimedUntil(null);
+    message.setLastError(String.valueOf(error.getMessage()));
+
+    if (attempts >= maxAttempts)
+      logger.error("Abandoned email {} to {} after {} attempts: {}", message.getId(), message.getRecipient(), attempts, error.getMessage());
+    else
+      logger.warn("Could not send email {}, retrying in {}: {}", message.getId(), delay, error.getMessage());
+
+    return outbox.save(message);
+  }
+
+  /**
+   * @return The backlog, abandoned messages and age of the oldest pending message over all shards, and the amount,
+   * failed attempts and latency from commit to delivery of the messages sent by this instance.
+   */
+  public Map<String, Number> getMetrics() {
+    var pending = userStore.onEachShard(users -> outbox.countPending());
+    var abandoned = userStore.onEachShard(users -> outbox.countAbandoned());
+    var oldest = userStore.onEachShard(users -> outbox.findOldestPending()).values().stream()
+      .flatMap(Optional::stream)
+      .min(Instant::compareTo);
+
+    var metrics = new LinkedHashMap<String, Number>();
+    metrics.put("backlog", pending.values().stream().mapToLong(Long::longValue).sum());
+    metrics.put("abandoned", abandoned.values().stream().mapToLong(Long::longValue).sum());
+    metrics.put("oldestPendingAgeMs", oldest.map(created -> Duration.between(created, Instant.now()).toMillis()).orElse(0L));
+    metrics.put("sent", sent.sum());
+    metrics.put("failedAttempts", failedAttempts.sum());
+    metrics.put("averageLatencyMs", sent.sum() == 0 ? 0 : totalLatencyMs.sum() / sent.sum());
+    metrics.put("maxLatencyMs", maxLatencyMs.get());
+
+    return metrics;
+  }
+
+}
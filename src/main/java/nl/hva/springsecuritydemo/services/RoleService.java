@@ -1,29 +1,30 @@
 package nl.hva.springsecuritydemo.services;
 
 import jakarta.annotation.PostConstruct;
-import jakarta.transaction.Transactional;
 import lombok.RequiredArgsConstructor;
+import nl.hva.springsecuritydemo.exceptions.ResourceNotFound;
 import nl.hva.springsecuritydemo.models.user.User;
 import nl.hva.springsecuritydemo.models.user.UserRole;
 import nl.hva.springsecuritydemo.repositories.RoleRepository;
-import nl.hva.springsecuritydemo.repositories.UserRepository;
+import nl.hva.springsecuritydemo.repositories.ShardedUserStore;
 import org.springframework.stereotype.Service;
 
+import java.util.Optional;
 import java.util.UUID;
 import java.util.function.Supplier;
 
 import static nl.hva.springsecuritydemo.models.user.UserRole.ROLE_ADMIN_NAME;
+import static nl.hva.springsecuritydemo.models.user.UserRole.ROLE_GATEWAY_NAME;
 import static nl.hva.springsecuritydemo.models.user.UserRole.ROLE_PREFIX;
 import static nl.hva.springsecuritydemo.models.user.UserRole.ROLE_USER_NAME;
 
 
-@Transactional
 @Service
 @RequiredArgsConstructor
 public class RoleService {
 
   private final RoleRepository roleRepo;
-  private final UserRepository userRepo;
+  private final ShardedUserStore userStore;
 
   @PostConstruct
   public void init() {
@@ -35,24 +36,40 @@ public class RoleService {
       ROLE_PREFIX + ROLE_ADMIN_NAME,
       () -> roleRepo.save(new UserRole(ROLE_PREFIX + ROLE_ADMIN_NAME))
     );
+    checkIfRoleExists(
+      ROLE_PREFIX + ROLE_GATEWAY_NAME,
+      () -> roleRepo.save(new UserRole(ROLE_PREFIX + ROLE_GATEWAY_NAME))
+    );
+
+    // Users on every shard refer to the roles of the primary shard.
+    userStore.replicateRoles();
+  }
+
+  /**
+   * @return The role every registered user gets, to add before the user is stored.
+   */
+  public Optional<UserRole> findUserRole() {
+    return roleRepo.findByAuthorityEquals(ROLE_PREFIX + ROLE_USER_NAME);
   }
 
   public User addUserRoleToUserById(UUID userId) {
-    User user = userRepo.getReferenceById(userId);
+    User user = userStore.findById(userId)
+      .orElseThrow(() -> new ResourceNotFound(User.class.getSimpleName(), "id", userId.toString()));
 
     roleRepo.findByAuthorityEquals(ROLE_PREFIX + ROLE_USER_NAME)
       .ifPresent(user::addRole);
 
-    return userRepo.save(user);
+    return userStore.save(user);
   }
 
   public User addAdminRoleToUserById(UUID userId) {
-    User user = userRepo.getReferenceById(userId);
+    User user = userStore.findById(userId)
+      .orElseThrow(() -> new ResourceNotFound(User.class.getSimpleName(), "id", userId.toString()));
 
     roleRepo.findByAuthorityEquals(ROLE_PREFIX + ROLE_ADMIN_NAME)
       .ifPresent(user::addRole);
 
-    return userRepo.save(user);
+    return userStore.save(user);
   }
 
   private void checkIfRoleExists(
@@ -0,0 +1,159 @@
+package nl.hva.springsecuritydemo.services;
+
+import io.jsonwebtoken.Claims;
+import nl.hva.springsecuritydemo.config.authorities.AuthorityRegistry;
+import nl.hva.springsecuritydemo.dtos.token.TokenIntrospection;
+import nl.hva.springsecuritydemo.exceptions.TooManyRequests;
+import nl.hva.springsecuritydemo.utils.JWTUtil;
+import nl.hva.springsecuritydemo.utils.RateLimiter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static nl.hva.springsecuritydemo.utils.JWTUtil.JWT_CLAIM_KEY_TOKEN_TYPE;
+import static nl.hva.springsecuritydemo.utils.JWTUtil.JWT_CLAIM_KEY_TOKEN_TYPE_ACCESS;
+import static nl.hva.springsecuritydemo.utils.JWTUtil.JWT_CLAIM_KEY_TOKEN_TYPE_ACTIVATION;
+import static nl.hva.springsecuritydemo.utils.JWTUtil.JWT_CLAIM_KEY_TOKEN_TYPE_REFRESH;
+import static nl.hva.springsecuritydemo.utils.JWTUtil.JWT_CLAIM_KEY_TOKEN_VERSION;
+import static nl.hva.springsecuritydemo.utils.JWTUtil.JWT_CLAIM_KEY_USER_ID;
+
+
+/**
+ * Introspects tokens on behalf of gateways, with the same checks as the {@link nl.hva.springsecuritydemo.config.JWTFilter}
+ * applies to the tokens it authenticates.
+ * <p>
+ * Every caller has a quota of introspected tokens per interval, a batch costs one unit per token.
+ */
+@Service
+public class TokenIntrospectionService {
+
+  private final JWTUtil jwtUtil;
+  private final UserService userService;
+  private final AuthorityRegistry authorities;
+  private final RateLimiter quotas;
+  private final Duration maxCacheAge;
+
+  public TokenIntrospectionService(
+    JWTUtil jwtUtil,
+    UserService userService,
+    AuthorityRegistry authorities,
+    @Value("${users.introspection.quota:6000}") long quota,
+    @Value("${users.introspection.quota-interval:1m}") Duration quotaInterval,
+    @Value("${users.introspection.max-cache-age:30s}") Duration maxCacheAge
+  ) {
+    this.jwtUtil = jwtUtil;
+    this.userService = userService;
+    this.authorities = authorities;
+    this.quotas = new RateLimiter(quota, quotaInterval);
+    this.maxCacheAge = maxCacheAge;
+  }
+
+  /**
+   * Introspects the tokens, verifying their signatures one by one and reading the states of their users together, with
+   * a single query per shard for those that are not in the snapshot.
+   *
+   * @param caller The id of the user introspecting the tokens, whose quota is charged.
+   * @return The introspection of every token, in the order of the tokens.
+   * @throws TooManyRequests If the quota of the caller does not allow introspecting this many tokens.
+   */
+  public List<TokenIntrospection> introspectAll(UUID caller, List<String> tokens) {
+    acquireQuota(caller, tokens.size());
+
+    if (tokens.size() == 1) return List.of(introspect(tokens.getFirst()));
+
+    var verified = tokens.stream().map(this::verify).toList();
+    var states = userService.readAuthStates(verified.stream().filter(Objects::nonNull).map(Verified::userId).toList());
+
+    return verified.stream()
+      .map(token -> token == null ? TokenIntrospection.INACTIVE : introspect(token, states.get(token.userId)))
+      .toList();
+  }
+
+  /**
+   * @return How long the introspections may be cached: until the earliest expiry of the active tokens among them, but
+   * no longer than the maximum age, as tokens revoked in the meantime are still reported active by cached responses.
+   */
+  public Duration getCacheDurationOf(List<TokenIntrospection> introspections) {
+    var expiresAt = introspections.stream()
+      .filter(TokenIntrospection::active)
+      .mapToLong(TokenIntrospection::exp)
+      .min();
+
+    if (expiresAt.isEmpty()) return Duration.ZERO;
+
+    var untilExpiry = Duration.ofSeconds(Math.max(0, expiresAt.getAsLong() - System.currentTimeMillis() / 1000));
+    return untilExpiry.compareTo(maxCacheAge) < 0 ? untilExpiry : maxCacheAge;
+  }
+
+  private void acquireQuota(UUID caller, int tokens) {
+    var waitNanos = quotas.tryAcquire(caller, tokens);
+
+    if (waitNanos > 0) throw new TooManyRequests(
+      "The introspection quota is exhausted.",
+      Math.max(1, TimeUnit.NANOSECONDS.toSeconds(waitNanos))
+    );
+  }
+
+  /**
+   * Introspects a single token, without charging any quota.
+   */
+  public TokenIntrospection introspect(String token) {
+    var verified = verify(token);
+    if (verified == null) return TokenIntrospection.INACTIVE;
+
+    var state = new AuthSnapshot.Entry();
+    return introspect(verified, userService.readAuthState(verified.userId, state) ? state : null);
+  }
+
+  /**
+   * @return The claims of the token and the id of its user, or null if it is invalid or an activation token.
+   */
+  private Verified verify(String token) {
+    var claims = token == null ? null : jwtUtil.findClaimsOf(token);
+    if (claims == null || JWT_CLAIM_KEY_TOKEN_TYPE_ACTIVATION.equals(claims.get(JWT_CLAIM_KEY_TOKEN_TYPE)))
+      return null;
+
+    try {
+      return new Verified(claims, UUID.fromString(claims.get(JWT_CLAIM_KEY_USER_ID, String.class)));
+    } catch (RuntimeException e) {
+      return null;
+    }
+  }
+
+  /**
+   * @param state The state of the user of the token, or null if it does not exist.
+   */
+  private TokenIntrospection introspect(Verified token, AuthSnapshot.Entry state) {
+    var claims = token.claims;
+    var version = Objects.requireNonNullElse(claims.get(JWT_CLAIM_KEY_TOKEN_VERSION, Integer.class), 0);
+
+    if (state == null || version < state.getTokenVersion() || !state.isEnabled())
+      return TokenIntrospection.INACTIVE;
+
+    return new TokenIntrospection(
+      true,
+      token.userId.toString(),
+      authorities.toAuthoritySet(state.getAuthorities()).stream().map(GrantedAuthority::getAuthority).toList(),
+      claims.getExpiration().getTime() / 1000,
+      claims.getIssuedAt().getTime() / 1000,
+      claims.getIssuer(),
+      getTokenType(claims)
+    );
+  }
+
+  private static String getTokenType(Claims claims) {
+    return JWT_CLAIM_KEY_TOKEN_TYPE_REFRESH.equals(claims.get(JWT_CLAIM_KEY_TOKEN_TYPE))
+      ? JWT_CLAIM_KEY_TOKEN_TYPE_REFRESH
+      : JWT_CLAIM_KEY_TOKEN_TYPE_ACCESS;
+  }
+
+  private record Verified(Claims claims, UUID userId) {
+  }
+
+}
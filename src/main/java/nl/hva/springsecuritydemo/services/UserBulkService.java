@@ -0,0 +1,183 @@
+package nl.hva.springsecuritydemo.services;
+
+import nl.hva.springsecuritydemo.dtos.user.BulkMutationDto;
+import nl.hva.springsecuritydemo.dtos.user.BulkReport;
+import nl.hva.springsecuritydemo.exceptions.BadRequest;
+import nl.hva.springsecuritydemo.exceptions.ResourceNotFound;
+import nl.hva.springsecuritydemo.models.user.UserRole;
+import nl.hva.springsecuritydemo.repositories.RoleRepository;
+import nl.hva.springsecuritydemo.repositories.ShardedUserStore;
+import nl.hva.springsecuritydemo.repositories.UserRepository;
+import nl.hva.springsecuritydemo.utils.SecurityContextUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import static nl.hva.springsecuritydemo.models.user.UserRole.ROLE_PREFIX;
+import static org.springframework.util.StringUtils.hasText;
+
+
+/**
+ * Applies a change to a set of users at once, for admins, such as disabling a cohort of accounts.
+ * <p>
+ * The users are selected by their ids or by a filter, and changed by set-based statements in chunks of
+ * {@code users.bulk.chunk-size}, in a transaction per chunk on the shard of its users. Users are never loaded: the
+ * {@link AuthSnapshot} and the other listeners receive the resulting authentication state of every chunk. Disabling,
+ * locking and revoking a role raise the token version of the changed users, which revokes their tokens.
+ * <p>
+ * A filter needs at least one criterion, so a mutation never selects every user by accident. The admin applying a
+ * mutation is left out of it, so it cannot lock itself out.
+ */
+@Service
+public class UserBulkService {
+
+  private static final Logger logger = LoggerFactory.getLogger(UserBulkService.class);
+
+  private final ShardedUserStore userStore;
+  private final UserRepository users;
+  private final RoleRepository roleRepository;
+  private final int chunkSize;
+
+  public UserBulkService(
+    ShardedUserStore userStore,
+    UserRepository users,
+    RoleRepository roleRepository,
+    @Value("${users.bulk.chunk-size:500}") int chunkSize
+  ) {
+    this.userStore = userStore;
+    this.users = users;
+    this.roleRepository = roleRepository;
+    this.chunkSize = chunkSize;
+  }
+
+  /**
+   * Applies the mutation to the selected users, apart from the authenticated user. Chunks that have been applied stay
+   * applied when a later one fails.
+   *
+   * @throws BadRequest       When neither or both of ids and a filter are provided, the filter has no criteria, or the
+   *                          role is missing.
+   * @throws ResourceNotFound When the role does not exist.
+   */
+  public BulkReport apply(BulkMutationDto mutation) {
+    var hasIds = mutation.getIds() != null;
+    if (hasIds == (mutation.getFilter() != null)) throw new BadRequest("Provide either ids or a filter.");
+    if (!hasIds && mutation.getFilter().isEmpty()) throw new BadRequest("Provide at least one criterion of the filter.");
+
+    var start = System.nanoTime();
+    var statements = statementsOf(mutation);
+    var counts = new Counts();
+    var caller = SecurityContextUtil.getUserId();
+
+    if (hasIds) applyToIds(mutation.getIds(), caller, statements, counts);
+    else applyToFilter(mutation.getFilter(), caller, statements, counts);
+
+    var report = new BulkReport(counts.selected, counts.affected, (System.nanoTime() - start) / 1_000_000);
+
+    logger.info(
+      "Applied {} to {} users, changing {} in {} ms",
+      mutation.getAction(), report.selected(), report.affected(), report.durationMs()
+    );
+    return report;
+  }
+
+  /**
+   * The statements of a mutation, for a chunk of ids.
+   */
+  private interface Statements {
+
+    int execute(List<UUID> ids, LocalDateTime now);
+
+  }
+
+  private static final class Counts {
+
+    private long selected;
+    private long affected;
+
+  }
+
+  private Statements statementsOf(BulkMutationDto mutation) {
+    return switch (mutation.getAction()) {
+      case ENABLE -> users::enableAll;
+      case DISABLE -> users::disableAll;
+      case LOCK -> users::lockAll;
+      case UNLOCK -> users::unlockAll;
+      case GRANT -> {
+        var roleId = findRole(mutation.getRole()).getId();
+        yield (ids, now) -> {
+          users.touchAllWithoutRole(ids, roleId, now);
+          return userStore.grantRole(ids, roleId);
+        };
+      }
+      case REVOKE -> {
+        var roleId = findRole(mutation.getRole()).getId();
+        yield (ids, now) -> {
+          users.revokeTokensOfAllWithRole(ids, roleId, now);
+          return userStore.revokeRole(ids, roleId);
+        };
+      }
+    };
+  }
+
+  private UserRole findRole(String name) {
+    if (!hasText(name)) throw new BadRequest("Provide the role to grant or revoke.");
+
+    var authority = name.startsWith(ROLE_PREFIX) ? name : ROLE_PREFIX + name;
+    return roleRepository.findByAuthorityEquals(authority)
+      .orElseThrow(() -> new ResourceNotFound(UserRole.class.getSimpleName(), "authority", authority));
+  }
+
+  private void applyToIds(List<UUID> ids, UUID caller, Statements statements, Counts counts) {
+    var byShard = new LinkedHashSet<>(ids).stream()
+      .filter(id -> !id.equals(caller))
+      .collect(Collectors.groupingBy(userStore::shardOf));
+
+    byShard.forEach((shard, shardIds) -> {
+      for (var from = 0; from < shardIds.size(); from += chunkSize)
+        applyToChunk(shard, shardIds.subList(from, Math.min(shardIds.size(), from + chunkSize)), statements, counts);
+    });
+  }
+
+  /**
+   * Pages through the users of every shard that match the filter by ascending id, applying the statements to every
+   * page.
+   */
+  private void applyToFilter(BulkMutationDto.Filter filter, UUID caller, Statements statements, Counts counts) {
+    var authority = hasText(filter.role()) ? findRole(filter.role()).getAuthority() : null;
+
+    for (var shard : userStore.getShards()) {
+      UUID after = null;
+
+      while (true) {
+        var last = after;
+        var page = userStore.onShard(shard, () -> users.findIdsMatching(
+          last, filter.enabled(), filter.createdBefore(), filter.createdAfter(), authority, Limit.of(chunkSize)
+        ));
+        if (page.isEmpty()) break;
+
+        var ids = caller == null ? page : page.stream().filter(id -> !id.equals(caller)).toList();
+        applyToChunk(shard, ids, statements, counts);
+        if (page.size() < chunkSize) break;
+
+        after = page.getLast();
+      }
+    }
+  }
+
+  private void applyToChunk(String shard, List<UUID> ids, Statements statements, Counts counts) {
+    var now = LocalDateTime.now();
+    var result = userStore.updateAll(shard, ids, () -> statements.execute(ids, now));
+
+    counts.selected += result.selected();
+    counts.affected += result.updated();
+  }
+
+}
@@ -0,0 +1,347 @@
+package nl.hva.springsecuritydemo.services;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import nl.hva.springsecuritydemo.config.beans.DefaultPasswordEncoder;
+import nl.hva.springsecuritydemo.dtos.user.ImportReport;
+import nl.hva.springsecuritydemo.exceptions.BadRequest;
+import nl.hva.springsecuritydemo.models.user.User;
+import nl.hva.springsecuritydemo.models.user.UserRole;
+import nl.hva.springsecuritydemo.repositories.RoleRepository;
+import nl.hva.springsecuritydemo.repositories.ShardedUserStore;
+import nl.hva.springsecuritydemo.utils.CsvUtil;
+import nl.hva.springsecuritydemo.validators.EmailValidator;
+import nl.hva.springsecuritydemo.validators.PasswordValidator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static nl.hva.springsecuritydemo.models.user.UserRole.ROLE_PREFIX;
+import static nl.hva.springsecuritydemo.models.user.UserRole.ROLE_USER_NAME;
+import static org.springframework.util.StringUtils.hasText;
+
+
+/**
+ * Imports users in bulk from a stream of CSV or NDJSON rows, without reading the whole input into memory.
+ * <p>
+ * Rows are processed in batches. While the passwords of one batch are hashed in parallel on a bounded pool, the
+ * previous batch is inserted using JDBC batching, in a transaction per shard.
+ */
+@Service
+public class UserImportService {
+
+  public enum Format { CSV, NDJSON }
+
+  private static final Logger logger = LoggerFactory.getLogger(UserImportService.class);
+
+  private final ShardedUserStore userStore;
+  private final RoleRepository roleRepository;
+  private final PasswordEncoder encoder;
+  private final MissingUserCache missingUsers;
+  private final ObjectMapper objectMapper;
+  private final ForkJoinPool hashingPool;
+  private final int batchSize;
+
+  public UserImportService(
+    ShardedUserStore userStore,
+    RoleRepository roleRepository,
+    PasswordEncoder encoder,
+    MissingUserCache missingUsers,
+    ObjectMapper objectMapper,
+    @Value("${users.import.parallelism:#{T(java.lang.Runtime).getRuntime().availableProcessors()}}") int parallelism,
+    @Value("${users.import.batch-size:500}") int batchSize
+  ) {
+    this.userStore = userStore;
+    this.roleRepository = roleRepository;
+    this.encoder = encoder;
+    this.missingUsers = missingUsers;
+    this.objectMapper = objectMapper;
+    this.hashingPool = new ForkJoinPool(parallelism);
+    this.batchSize = batchSize;
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    hashingPool.shutdownNow();
+  }
+
+  /**
+   * Imports all rows of the input. A CSV input starts with a header naming its columns. Every row provides a
+   * username, an email and either a plain password or an Argon2 or BCrypt password hash.
+   *
+   * @param input  The rows to import.
+   * @param format The format of the rows.
+   * @return A report of the imported and failed rows.
+   */
+  public ImportReport importUsers(InputStream input, Format format) throws IOException {
+    var report = new ImportReport();
+    var started = System.nanoTime();
+    var role = roleRepository.findByAuthorityEquals(ROLE_PREFIX + ROLE_USER_NAME).orElseThrow();
+
+    try (var reader = new BufferedReader(new InputStreamReader(input, UTF_8))) {
+      var parser = format == Format.CSV ? new CsvParser(reader.readLine()) : new NdjsonParser();
+      var lineNumber = format == Format.CSV ? 1L : 0L;
+      var batch = new ArrayList<Row>(batchSize);
+      CompletableFuture<List<Row>> pending = null;
+      String line;
+
+      while ((line = reader.readLine()) != null) {
+        lineNumber++;
+        if (line.isBlank()) continue;
+
+        try {
+          batch.add(parser.parse(lineNumber, line));
+        } catch (IllegalArgumentException e) {
+          report.addError(lineNumber, e.getMessage());
+        }
+
+        if (batch.size() == batchSize) {
+          pending = pipeline(pending, batch, role, report, started);
+          batch = new ArrayList<>(batchSize);
+        }
+      }
+
+      if (!batch.isEmpty()) pending = pipeline(pending, batch, role, report, started);
+      if (pending != null) insert(pending.join(), role, report);
+    }
+
+    report.updateTiming(started);
+    logger.info("Imported {} users, {} rows failed, in {}ms", report.getImported(), report.getFailed(),
+      report.getDurationMs());
+
+    return report;
+  }
+
+  /**
+   * Starts hashing the provided batch, and inserts the previous one in the meantime.
+   */
+  private CompletableFuture<List<Row>> pipeline(
+    CompletableFuture<List<Row>> previous,
+    List<Row> batch,
+    UserRole role,
+    ImportReport report,
+    long started
+  ) {
+    var next = CompletableFuture.supplyAsync(() -> batch.parallelStream().map(this::prepare).toList(), hashingPool);
+
+    if (previous != null) {
+      insert(previous.join(), role, report);
+
+      report.updateTiming(started);
+      logger.info("Import progress: {} rows processed, {} failed, {} rows/s", report.getProcessed(),
+        report.getFailed(), Math.round(report.getRowsPerSecond()));
+    }
+
+    return next;
+  }
+
+  /**
+   * Validates the row and prepares its stored password, hashing the password if it is not hashed yet.
+   */
+  private Row prepare(Row row) {
+    if (!hasText(row.username)) return row.fail("Username not provided.");
+    if (!hasText(row.email) || !EmailValidator.isValidEmail(row.email)) return row.fail("Email is invalid.");
+
+    String password;
+    if (hasText(row.passwordHash)) {
+      password = DefaultPasswordEncoder.toStoredFormat(row.passwordHash);
+      if (password == null) return row.fail("Password hash format is not supported.");
+    } else if (hasText(row.password) && PasswordValidator.isValidPassword(row.password)) {
+      password = encoder.encode(row.password);
+    } else return row.fail("Password is invalid.");
+
+    row.encodedPassword = password;
+
+    return row;
+  }
+
+  /**
+   * Inserts the users of the valid rows that do not collide with each other or with existing users.
+   */
+  private void insert(List<Row> rows, UserRole role, ImportReport report) {
+    var usernames = new HashSet<String>();
+    var emails = new HashSet<String>();
+    var candidates = new ArrayList<Row>(rows.size());
+
+    for (var row : rows) {
+      if (row.error != null) report.addError(row.line, row.error);
+      else if (!usernames.add(row.username)) report.addError(row.line, "Username is duplicated in the input.");
+      else if (!emails.add(row.email)) report.addError(row.line, "Email is duplicated in the input.");
+      else candidates.add(row);
+    }
+
+    if (candidates.isEmpty()) return;
+
+    var existingUsernames = userStore.findExistingUsernames(usernames);
+    var existingEmails = userStore.findExistingEmails(emails);
+    var accepted = new ArrayList<Row>(candidates.size());
+
+    for (var row : candidates) {
+      if (existingUsernames.contains(row.username)) report.addError(row.line, "Username already exists.");
+      else if (existingEmails.contains(row.email)) report.addError(row.line, "Email already exists.");
+      else accepted.add(row);
+    }
+
+    List<Row> retried;
+    try {
+      var failed = userStore.createAll(accepted.stream().map(row -> row.toUser(role)).toList(), batchSize).stream()
+        .map(User::getId)
+        .collect(Collectors.toSet());
+
+      retried = accepted.stream().filter(row -> failed.contains(row.id)).toList();
+      report.addImported(accepted.size() - retried.size());
+      invalidate(accepted, failed);
+    } catch (RuntimeException e) {
+      retried = accepted;
+    }
+
+    // A concurrent insert or a failing shard may affect part of the batch, find out which rows one at a time.
+    for (var row : retried) {
+      try {
+        userStore.create(row.toUser(role));
+        report.addImported(1);
+        missingUsers.invalidate(row.id);
+      } catch (RuntimeException rowException) {
+        report.addError(row.line, "Could not be stored: " + rowException.getMessage());
+      }
+    }
+  }
+
+  private void invalidate(List<Row> rows, Set<UUID> failed) {
+    for (var row : rows)
+      if (!failed.contains(row.id)) missingUsers.invalidate(row.id);
+  }
+
+  /**
+   * A single row of input, as it moves through the import.
+   */
+  private static class Row {
+
+    private long line;
+    private String username;
+    private String email;
+    private String password;
+    private String passwordHash;
+
+    private String encodedPassword;
+    private UUID id;
+    private String error;
+
+    private Row fail(String message) {
+      error = message;
+      return this;
+    }
+
+    /**
+     * @return A new user for the row, whose id is remembered by the row.
+     */
+    private User toUser(UserRole role) {
+      var user = User.builder()
+        .username(username)
+        .email(email)
+        .password(encodedPassword)
+        .build();
+
+      user.addRole(role);
+      id = user.getId();
+
+      return user;
+    }
+
+  }
+
+  private interface RowParser {
+
+    Row parse(long line, String value);
+
+  }
+
+  /**
+   * Parses rows with the columns named in the header: username, email, password and passwordHash.
+   */
+  private static class CsvParser implements RowParser {
+
+    private final int username;
+    private final int email;
+    private final int password;
+    private final int passwordHash;
+
+    private CsvParser(String header) {
+      if (header == null) throw new BadRequest("The input is empty.");
+
+      var columns = CsvUtil.splitLine(header).stream().map(String::trim).toList();
+      username = columns.indexOf("username");
+      email = columns.indexOf("email");
+      password = columns.indexOf("password");
+      passwordHash = columns.indexOf("passwordHash");
+
+      if (username < 0 || email < 0 || (password < 0 && passwordHash < 0))
+        throw new BadRequest("The header requires username, email and password or passwordHash.");
+    }
+
+    @Override
+    public Row parse(long line, String value) {
+      var fields = CsvUtil.splitLine(value);
+      var row = new Row();
+
+      row.line = line;
+      row.username = field(fields, username);
+      row.email = field(fields, email);
+      row.password = field(fields, password);
+      row.passwordHash = field(fields, passwordHash);
+
+      return row;
+    }
+
+    private static String field(List<String> fields, int index) {
+      return index >= 0 && index < fields.size() ? fields.get(index).trim() : null;
+    }
+
+  }
+
+  /**
+   * Parses rows that are JSON objects with the fields username, email, password and passwordHash.
+   */
+  private class NdjsonParser implements RowParser {
+
+    @Override
+    public Row parse(long line, String value) {
+      try {
+        var json = objectMapper.readValue(value, JsonRow.class);
+        var row = new Row();
+
+        row.line = line;
+        row.username = json.username();
+        row.email = json.email();
+        row.password = json.password();
+        row.passwordHash = json.passwordHash();
+
+        return row;
+      } catch (JsonProcessingException e) {
+        throw new IllegalArgumentException("Invalid JSON: " + e.getOriginalMessage());
+      }
+    }
+
+  }
+
+  private record JsonRow(String username, String email, String password, String passwordHash) {
+  }
+
+}
@@ -0,0 +1,348 @@
+package nl.hva.springsecuritydemo.services;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import nl.hva.springsecuritydemo.dtos.user.UserSearchHit;
+import nl.hva.springsecuritydemo.models.user.User;
+import nl.hva.springsecuritydemo.models.user.UserLookup;
+import nl.hva.springsecuritydemo.repositories.ShardedUserStore;
+import nl.hva.springsecuritydemo.repositories.UserChangeListener;
+import nl.hva.springsecuritydemo.utils.FrontCodedSegment;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
+
+import static nl.hva.springsecuritydemo.models.user.UserLookup.emailKey;
+import static nl.hva.springsecuritydemo.models.user.UserLookup.usernameKey;
+
+
+/**
+ * An in-memory prefix index of all usernames and emails, for type-ahead search by admins.
+ * <p>
+ * The bulk of the index is a {@link FrontCodedSegment} of the keys of the global lookup index, built on startup. The
+ * changes of the {@link ShardedUserStore} are kept in a small sorted layer on top of it, that masks removed keys. Once
+ * the layer grows too large, it is frozen and merged into a new segment in the background, while a fresh layer takes
+ * the changes made meanwhile. Searches do not lock.
+ * <p>
+ * Prefixes are matched case-sensitively, like usernames and emails are looked up.
+ */
+@Component
+public class UserSearchIndex implements UserChangeListener {
+
+  private static final Logger logger = LoggerFactory.getLogger(UserSearchIndex.class);
+
+  public static final int MAX_LIMIT = 100;
+
+  private static final UUID REMOVED = new UUID(0, 0);
+
+  private final ShardedUserStore userStore;
+  private final int compactThreshold;
+  // Changes share the read lock, swapping the layers takes the write lock.
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+  private final AtomicBoolean compactionScheduled = new AtomicBoolean();
+  private final ExecutorService compactor = Executors.newSingleThreadExecutor(
+    Thread.ofPlatform().name("user-search-compactor").daemon().factory()
+  );
+
+  private volatile Generation generation = new Generation(FrontCodedSegment.EMPTY, null, new Layer());
+
+  /**
+   * Keys added or removed since the segment was built. A key that is in neither falls through to the layer below.
+   */
+  private record Layer(ConcurrentSkipListMap<String, UUID> added, Set<String> removed) {
+
+    private Layer() {
+      this(new ConcurrentSkipListMap<>(), ConcurrentHashMap.newKeySet());
+    }
+
+    /**
+     * @return The id of the key, {@link #REMOVED} if it was removed, or null if this layer does not know it.
+     */
+    private UUID find(String key) {
+      var id = added.get(key);
+      if (id != null) return id;
+
+      return removed.contains(key) ? REMOVED : null;
+    }
+
+    private int size() {
+      return added.size() + removed.size();
+    }
+
+  }
+
+  /**
+   * @param segment The entries as of the last compaction.
+   * @param frozen  The layer being merged into a new segment, if any.
+   * @param live    The layer receiving the changes.
+   */
+  private record Generation(FrontCodedSegment segment, Layer frozen, Layer live) {
+  }
+
+  public UserSearchIndex(
+    ShardedUserStore userStore,
+    @Value("${users.search.compact-threshold:10000}") int compactThreshold
+  ) {
+    this.userStore = userStore;
+    this.compactThreshold = compactThreshold;
+  }
+
+  @PostConstruct
+  public void init() {
+    var start = System.nanoTime();
+    var lookups = new ArrayList<UserLookup>();
+    userStore.forEachLookup(lookups::add);
+
+    load(lookups);
+
+    logger.info(
+      "Built the user search index of {} usernames and emails in {} ms, taking {} KB",
+      lookups.size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start),
+      generation.segment().memoryBytes() / 1024
+    );
+  }
+
+  @PreDestroy
+  public void close() {
+    compactor.shutdownNow();
+  }
+
+  /**
+   * Replaces the contents of the index by the provided entries of the lookup index.
+   */
+  public void load(List<UserLookup> lookups) {
+    var sorted = new ArrayList<>(lookups);
+    sorted.sort(Comparator.comparing(UserLookup::getLookupKey));
+
+    var builder = new FrontCodedSegment.Builder();
+    sorted.forEach(lookup -> builder.add(lookup.getLookupKey(), lookup.getUserId()));
+
+    lock.writeLock().lock();
+    try {
+      generation = new Generation(builder.build(), null, new Layer());
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Finds the users whose username or email starts with the prefix, in ascending order of the matched value.
+   *
+   * @param limit The maximum amount of hits, at most {@value MAX_LIMIT}.
+   */
+  public List<UserSearchHit> search(String prefix, int limit) {
+    limit = Math.clamp(limit, 1, MAX_LIMIT);
+
+    var current = generation;
+    var hits = new ArrayList<UserSearchHit>(2 * limit);
+
+    find(current, usernameKey(prefix), limit,
+      (key, id) -> hits.add(new UserSearchHit(id, UserLookup.valueOf(key), null)));
+    find(current, emailKey(prefix), limit,
+      (key, id) -> hits.add(new UserSearchHit(id, null, UserLookup.valueOf(key))));
+
+    hits.sort(Comparator.comparing(UserSearchHit::value));
+    return hits.size() > limit ? List.copyOf(hits.subList(0, limit)) : hits;
+  }
+
+  /**
+   * @return The amount of entries and bytes of the segment, and the amount of changes on top of it.
+   */
+  public Map<String, Number> getMetrics() {
+    var current = generation;
+
+    return Map.of(
+      "entries", current.segment().size(),
+      "bytes", current.segment().memoryBytes(),
+      "changes", current.live().size() + (current.frozen() == null ? 0 : current.frozen().size())
+    );
+  }
+
+  @Override
+  public void onSaved(User user) {
+    if (user.getUsername() != null) add(usernameKey(user.getUsername()), user.getId());
+    if (user.getEmail() != null) add(emailKey(user.getEmail()), user.getId());
+  }
+
+  @Override
+  public void onChanged(User previous, User user) {
+    if (previous.getUsername() != null && !previous.getUsername().equals(user.getUsername()))
+      remove(usernameKey(previous.getUsername()), user.getId());
+    if (previous.getEmail() != null && !previous.getEmail().equals(user.getEmail()))
+      remove(emailKey(previous.getEmail()), user.getId());
+
+    onSaved(user);
+  }
+
+  @Override
+  public void onDeleted(User user) {
+    if (user.getUsername() != null) remove(usernameKey(user.getUsername()), user.getId());
+    if (user.getEmail() != null) remove(emailKey(user.getEmail()), user.getId());
+  }
+
+  private void add(String key, UUID id) {
+    lock.readLock().lock();
+    try {
+      var live = generation.live();
+      live.added().put(key, id);
+      live.removed().remove(key);
+    } finally {
+      lock.readLock().unlock();
+    }
+
+    compactIfFull();
+  }
+
+  /**
+   * Removes the key, as far as it still belongs to the user.
+   */
+  private void remove(String key, UUID id) {
+    lock.readLock().lock();
+    try {
+      var current = generation;
+      if (!id.equals(resolve(current, key))) return;
+
+      current.live().added().remove(key);
+      current.live().removed().add(key);
+    } finally {
+      lock.readLock().unlock();
+    }
+
+    compactIfFull();
+  }
+
+  private void compactIfFull() {
+    if (generation.live().size() > compactThreshold && compactionScheduled.compareAndSet(false, true))
+      compactor.execute(this::compact);
+  }
+
+  /**
+   * Freezes the live layer, and merges it into a new segment.
+   */
+  private void compact() {
+    Generation frozen;
+
+    lock.writeLock().lock();
+    try {
+      compactionScheduled.set(false);
+      var current = generation;
+      if (current.frozen() != null) return;
+
+      frozen = new Generation(current.segment(), current.live(), new Layer());
+      generation = frozen;
+    } finally {
+      lock.writeLock().unlock();
+    }
+
+    var start = System.nanoTime();
+    var builder = new FrontCodedSegment.Builder();
+    var cursor = frozen.segment().seek("");
+    var changes = frozen.frozen().added().entrySet().iterator();
+    var hasEntry = cursor.next();
+    var change = changes.hasNext() ? changes.next() : null;
+
+    while (hasEntry || change != null) {
+      var comparison = !hasEntry ? 1 : change == null ? -1 : cursor.key().compareTo(change.getKey());
+
+      if (comparison >= 0) {
+        builder.add(change.getKey(), change.getValue());
+        change = changes.hasNext() ? changes.next() : null;
+      } else if (!frozen.frozen().removed().contains(cursor.key())) builder.add(cursor.key(), cursor.id());
+
+      if (comparison <= 0) hasEntry = cursor.next();
+    }
+
+    var segment = builder.build();
+
+    lock.writeLock().lock();
+    try {
+      generation = new Generation(segment, null, generation.live());
+    } finally {
+      lock.writeLock().unlock();
+    }
+
+    logger.debug(
+      "Merged {} changes into the user search index in {} ms",
+      frozen.frozen().size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)
+    );
+  }
+
+  /**
+   * @return The id the key currently belongs to, or null if it belongs to none.
+   */
+  private static UUID resolve(Generation current, String key) {
+    var id = current.live().find(key);
+    if (id == null && current.frozen() != null) id = current.frozen().find(key);
+    if (id != null) return id == REMOVED ? null : id;
+
+    var cursor = current.segment().seek(key);
+    return cursor.next() && cursor.key().equals(key) ? cursor.id() : null;
+  }
+
+  /**
+   * Passes the first keys starting with the prefix and their ids to the consumer, in ascending order, merging the
+   * segment with the layers on top of it.
+   */
+  private static void find(Generation current, String prefix, int limit, BiConsumer<String, UUID> consumer) {
+    var cursor = current.segment().seek(prefix);
+    var segmentKey = cursor.next() && cursor.key().startsWith(prefix) ? cursor.key() : null;
+    var frozen = current.frozen() == null ? null : tail(current.frozen(), prefix);
+    var live = tail(current.live(), prefix);
+    var frozenKey = next(frozen, prefix);
+    var liveKey = next(live, prefix);
+
+    for (var found = 0; found < limit; ) {
+      var key = min(segmentKey, min(frozenKey, liveKey));
+      if (key == null) return;
+
+      var id = current.live().find(key);
+      if (id == null && current.frozen() != null) id = current.frozen().find(key);
+      if (id == null && key.equals(segmentKey)) id = cursor.id();
+
+      if (id != null && id != REMOVED) {
+        consumer.accept(key, id);
+        found++;
+      }
+
+      if (key.equals(segmentKey)) segmentKey = cursor.next() && cursor.key().startsWith(prefix) ? cursor.key() : null;
+      if (key.equals(frozenKey)) frozenKey = next(frozen, prefix);
+      if (key.equals(liveKey)) liveKey = next(live, prefix);
+    }
+  }
+
+  private static Iterator<String> tail(Layer layer, String prefix) {
+    return layer.added().tailMap(prefix).keySet().iterator();
+  }
+
+  private static String next(Iterator<String> keys, String prefix) {
+    if (keys == null || !keys.hasNext()) return null;
+
+    var key = keys.next();
+    return key.startsWith(prefix) ? key : null;
+  }
+
+  private static String min(String a, String b) {
+    if (a == null) return b;
+    if (b == null) return a;
+    return a.compareTo(b) <= 0 ? a : b;
+  }
+
+}
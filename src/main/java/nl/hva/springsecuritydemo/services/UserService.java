@@ -1,15 +1,20 @@
 package nl.hva.springsecuritydemo.services;
 
-import jakarta.transaction.Transactional;
 import lombok.RequiredArgsConstructor;
+import nl.hva.springsecuritydemo.config.jfr.UserLookupEvent;
 import nl.hva.springsecuritydemo.dtos.user.RegisterDto;
 import nl.hva.springsecuritydemo.dtos.user.UpdateDto;
+import nl.hva.springsecuritydemo.exceptions.BadRequest;
 import nl.hva.springsecuritydemo.exceptions.ConflictException;
 import nl.hva.springsecuritydemo.exceptions.ResourceNotFound;
+import nl.hva.springsecuritydemo.exceptions.ServiceUnavailable;
 import nl.hva.springsecuritydemo.models.user.User;
-import nl.hva.springsecuritydemo.repositories.RoleRepository;
-import nl.hva.springsecuritydemo.repositories.UserRepository;
+import nl.hva.springsecuritydemo.models.user.UserAuthState;
+import nl.hva.springsecuritydemo.models.user.UserVersion;
+import nl.hva.springsecuritydemo.repositories.ShardedUserStore;
+import nl.hva.springsecuritydemo.utils.CircuitBreaker;
 import nl.hva.springsecuritydemo.utils.SecurityContextUtil;
+import org.springframework.data.repository.CrudRepository;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
@@ -17,76 +22,256 @@ import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.springframework.util.StringUtils;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.stream.Collectors;
 
 import static org.springframework.util.StringUtils.hasLength;
 import static org.springframework.util.StringUtils.hasText;
 
 
+/**
+ * Manages users, stored across shards by the {@link ShardedUserStore}, which runs every operation in a transaction on
+ * the shard of the user.
+ */
 @Service
-@Transactional
 @RequiredArgsConstructor
 public class UserService implements UserDetailsService {
 
-  private final UserRepository userRepository;
+  private final ShardedUserStore userStore;
   private final PasswordEncoder encoder;
-  private final RoleRepository roleRepository;
   private final RoleService roleService;
+  private final MissingUserCache missingUsers;
+  private final AuthSnapshot authSnapshot;
+  private final AccountActivation accountActivation;
+  private final OutboxDispatcher outboxDispatcher;
+  private final BreachedPasswords breachedPasswords;
 
   /**
    * Returns a user entity, with the provided userName if it exists, otherwise null.
    */
   public User findByUserName(String username) {
-    return hasLength(username) ? userRepository.findByUsername(username).orElse(null) : null;
+    return hasLength(username) ? userStore.findByUsername(username).orElse(null) : null;
   }
 
   public User findByEmail(String email) {
-    return userRepository.findByEmail(email)
+    return userStore.findByEmail(email)
       .orElseThrow(() -> new ResourceNotFound(User.class.getSimpleName(), "email", email));
   }
 
   public User findById(UUID id) {
-    return userRepository.findById(id)
+    return findOptionalById(id)
       .orElseThrow(() -> new ResourceNotFound(User.class.getSimpleName(), "id", id.toString()));
   }
 
+  /**
+   * Returns the user with the provided id, if it exists. Ids that recently turned out to be missing are answered
+   * without querying the database.
+   */
+  public Optional<User> findOptionalById(UUID id) {
+    var event = new UserLookupEvent();
+    event.begin();
+
+    if (missingUsers.isMissing(id)) {
+      if (event.shouldCommit()) commit(event, UserLookupEvent.BY_ID, true, false, 0);
+      return Optional.empty();
+    }
+
+    var start = System.nanoTime();
+    var user = userStore.findById(id);
+    if (user.isEmpty()) missingUsers.markMissing(id);
+
+    if (event.shouldCommit()) commit(event, UserLookupEvent.BY_ID, false, user.isPresent(), System.nanoTime() - start);
+    return user;
+  }
+
+  /**
+   * Reads the state authenticating the user needs from the {@link AuthSnapshot}. Users created by another instance are
+   * not in the snapshot yet, and those it has held for longer than its time to live may have been changed by another
+   * instance, so they are read from the database. While it is unavailable, the snapshot is trusted as it is.
+   *
+   * @return Whether the user exists.
+   * @throws ServiceUnavailable When the user is not in the snapshot and the database is unavailable.
+   */
+  public boolean readAuthState(UUID id, AuthSnapshot.Entry into) {
+    var event = new UserLookupEvent();
+    event.begin();
+
+    var cached = authSnapshot.read(id, into);
+    if (cached && authSnapshot.isFresh(into) || !cached && missingUsers.isMissing(id)) {
+      if (event.shouldCommit()) commit(event, UserLookupEvent.AUTH_STATE, true, cached, 0);
+      return cached;
+    }
+
+    var start = System.nanoTime();
+
+    try {
+      var states = userStore.findAuthStates(id);
+      authSnapshot.refresh(id, states, start);
+      if (states.isEmpty()) missingUsers.markMissing(id);
+    } catch (ServiceUnavailable e) {
+      if (!cached) throw e;
+    }
+
+    var found = authSnapshot.read(id, into);
+
+    if (event.shouldCommit()) commit(event, UserLookupEvent.AUTH_STATE, false, found, System.nanoTime() - start);
+    return found;
+  }
+
+  /**
+   * Reads the states of the users like {@link #readAuthState}, but loads those that must be read from the database
+   * with a single query per shard.
+   *
+   * @return The states of the users that exist, by id.
+   * @throws ServiceUnavailable When one of the users is not in the snapshot and the database is unavailable.
+   */
+  public Map<UUID, AuthSnapshot.Entry> readAuthStates(Collection<UUID> ids) {
+    var found = new HashMap<UUID, AuthSnapshot.Entry>();
+    var stale = new ArrayList<UUID>();
+
+    for (var id : new HashSet<>(ids)) {
+      var into = new AuthSnapshot.Entry();
+      var cached = authSnapshot.read(id, into);
+
+      if (cached) found.put(id, into);
+      if (cached && !authSnapshot.isFresh(into) || !cached && !missingUsers.isMissing(id)) stale.add(id);
+    }
+
+    if (stale.isEmpty()) return found;
+
+    var start = System.nanoTime();
+
+    try {
+      var states = userStore.findAuthStates(stale).stream().collect(Collectors.groupingBy(UserAuthState::id));
+
+      for (var id : stale) {
+        var userStates = states.getOrDefault(id, List.of());
+        authSnapshot.refresh(id, userStates, start);
+        if (userStates.isEmpty()) missingUsers.markMissing(id);
+      }
+    } catch (ServiceUnavailable e) {
+      if (!found.keySet().containsAll(stale)) throw e;
+      return found;
+    }
+
+    for (var id : stale) {
+      var into = new AuthSnapshot.Entry();
+      if (authSnapshot.read(id, into)) found.put(id, into);
+      else found.remove(id);
+    }
+
+    return found;
+  }
+
+  /**
+   * Returns the version of a user, with the provided userName if it exists, otherwise null.
+   */
+  public UserVersion findVersionByUserName(String username) {
+    return hasLength(username) ? userStore.findVersionByUsername(username).orElse(null) : null;
+  }
+
+  public UserVersion findVersionByEmail(String email) {
+    return userStore.findVersionByEmail(email)
+      .orElseThrow(() -> new ResourceNotFound(User.class.getSimpleName(), "email", email));
+  }
+
+  public UserVersion findVersionById(UUID id) {
+    return userStore.findVersionById(id)
+      .orElseThrow(() -> new ResourceNotFound(User.class.getSimpleName(), "id", id.toString()));
+  }
+
+  /**
+   * @return The amount of users stored by every shard, counted in parallel.
+   */
+  public Map<String, Long> countUsersByShard() {
+    return userStore.onEachShard(CrudRepository::count);
+  }
+
+  /**
+   * @return The state of the circuit breaker of every shard.
+   */
+  public Map<String, CircuitBreaker.State> getBreakerStates() {
+    return userStore.getBreakerStates();
+  }
 
   @Override
   public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
-    return userRepository
-      .findByUsername(username)
-      .orElseThrow(() -> new UsernameNotFoundException(
-        String.format("User with username - %s, not found", username)
-      ));
+    var event = new UserLookupEvent();
+    event.begin();
+
+    var start = System.nanoTime();
+    var user = userStore.findByUsername(username);
+
+    if (event.shouldCommit())
+      commit(event, UserLookupEvent.BY_USERNAME, false, user.isPresent(), System.nanoTime() - start);
+    return user.orElseThrow(() -> new UsernameNotFoundException(
+      String.format("User with username - %s, not found", username)
+    ));
   }
 
   /**
    * Creates a user based on the provided request.
    */
   public User create(RegisterDto req) {
-    this.userRepository.findByUsername(req.getUsername()).ifPresent(g -> {
+    // The store rejects taken usernames too, but this spares hashing the password.
+    if (!userStore.findExistingUsernames(List.of(req.getUsername())).isEmpty())
       throw new ConflictException("Username already exists.");
-    });
+    breachedPasswords.check(req.getPassword());
 
-    var user = this.userRepository.save(req.toUser(encoder));
+    var user = req.toUser(encoder);
+    roleService.findUserRole().ifPresent(user::addRole);
+    var activationMails = accountActivation.prepare(user);
 
-    return roleService.addUserRoleToUserById(user.getId());
+    // The role and activation email are committed along with the user, and the email is sent in the background.
+    var created = userStore.create(user, activationMails);
+    missingUsers.invalidate(created.getId());
+    if (!activationMails.isEmpty()) outboxDispatcher.dispatchSoon();
+
+    return created;
   }
 
 
+  /**
+   * Enables the user the activation token was issued for, unless its email or token version changed since, so a user
+   * disabled after its activation cannot activate itself again. Activating an enabled user is answered from the
+   * {@link AuthSnapshot}, without loading or storing it.
+   *
+   * @throws BadRequest When the token is invalid, or was issued for another email or an older token version.
+   */
+  public void activate(String token) {
+    var activation = accountActivation.verify(token);
+    var state = new AuthSnapshot.Entry();
+
+    if (readAuthState(activation.userId(), state) && state.isEnabled()) return;
+
+    var user = findById(activation.userId());
+    if (!user.getEmail().equals(activation.email()) || activation.tokenVersion() < user.getTokenVersion())
+      throw BadRequest.INVALID_TOKEN;
+
+    user.setEnabled(true);
+    userStore.save(user);
+  }
+
   public void remove(User user) {
-    this.userRepository.delete(user);
+    userStore.delete(user);
+    missingUsers.markMissing(user.getId());
   }
 
   public User update(UpdateDto updateDto) {
-    User user = SecurityContextUtil.getUser();
+    User user = findById(SecurityContextUtil.getUserId(false));
 
     updateUsernameIfPresent(updateDto, user);
     updateEmailIfPresent(updateDto, user);
     updatePasswordIfPresent(updateDto, user);
 
-    return userRepository.save(user);
+    return userStore.save(user);
   }
 
   private void updateUsernameIfPresent(UpdateDto updateDto, User user) {
@@ -101,8 +286,24 @@ public class UserService implements UserDetailsService {
       .ifPresent(user::setEmail);
   }
 
+  /**
+   * Changing the password revokes the tokens issued before, by raising the token version. Passwords known to be
+   * breached are rejected.
+   */
   private void updatePasswordIfPresent(UpdateDto updateDto, User user) {
-    if (hasText(updateDto.getPassword())) user.setPassword(encoder.encode(updateDto.getPassword()));
+    if (!hasText(updateDto.getPassword())) return;
+    breachedPasswords.check(updateDto.getPassword());
+
+    user.setPassword(encoder.encode(updateDto.getPassword()));
+    user.setTokenVersion(user.getTokenVersion() + 1);
+  }
+
+  private static void commit(UserLookupEvent event, String lookup, boolean cacheHit, boolean found, long databaseNanos) {
+    event.lookup = lookup;
+    event.cacheHit = cacheHit;
+    event.found = found;
+    event.databaseTime = databaseNanos;
+    event.commit();
   }
 
 }
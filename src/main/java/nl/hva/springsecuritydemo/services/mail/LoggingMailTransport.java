@@ -0,0 +1,19 @@
+package nl.hva.springsecuritydemo.services.mail;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Logs emails instead of sending them, for when no SMTP server is configured, such as during development.
+ */
+public class LoggingMailTransport implements MailTransport {
+
+  private static final Logger log = LoggerFactory.getLogger(LoggingMailTransport.class);
+
+  @Override
+  public void send(String recipient, String subject, String body) {
+    log.info("Email to {} - {}\n{}", recipient, subject, body);
+  }
+
+}
@@ -0,0 +1,15 @@
+package nl.hva.springsecuritydemo.services.mail;
+
+/**
+ * Delivers emails on behalf of the {@link nl.hva.springsecuritydemo.services.OutboxDispatcher}.
+ */
+public interface MailTransport {
+
+  /**
+   * Sends a plain text email.
+   *
+   * @throws RuntimeException When the email could not be delivered, after which it is retried.
+   */
+  void send(String recipient, String subject, String body);
+
+}
@@ -0,0 +1,31 @@
+package nl.hva.springsecuritydemo.services.mail;
+
+import org.springframework.mail.SimpleMailMessage;
+import org.springframework.mail.javamail.JavaMailSender;
+
+
+/**
+ * Sends emails through the SMTP server configured with {@code spring.mail.*}.
+ */
+public class SmtpMailTransport implements MailTransport {
+
+  private final JavaMailSender mailSender;
+  private final String from;
+
+  public SmtpMailTransport(JavaMailSender mailSender, String from) {
+    this.mailSender = mailSender;
+    this.from = from;
+  }
+
+  @Override
+  public void send(String recipient, String subject, String body) {
+    var message = new SimpleMailMessage();
+    message.setFrom(from);
+    message.setTo(recipient);
+    message.setSubject(subject);
+    message.setText(body);
+
+    mailSender.send(message);
+  }
+
+}
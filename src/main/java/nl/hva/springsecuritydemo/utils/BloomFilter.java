@@ -0,0 +1,84 @@
+package nl.hva.springsecuritydemo.utils;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+
+/**
+ * A Bloom filter of strings, that may answer that a string was added when it was not, but never the other way around.
+ * Strings cannot be removed. Adding and querying are thread-safe and lock-free.
+ * <p>
+ * The bit positions are derived from a single 64-bit hash of the string by double hashing.
+ */
+public class BloomFilter {
+
+  private static final double LN_2 = Math.log(2);
+
+  private final AtomicLongArray words;
+  private final long bits;
+  private final int hashes;
+  private final long capacity;
+
+  /**
+   * @param capacity          The amount of strings, up to which the rate of false positives is met.
+   * @param falsePositiveRate The rate at which strings that were not added are reported as added, between 0 and 1.
+   */
+  public BloomFilter(long capacity, double falsePositiveRate) {
+    var optimalBits = (long) Math.ceil(-capacity * Math.log(falsePositiveRate) / (LN_2 * LN_2));
+    var wordCount = Math.max(1, (optimalBits + 63) >>> 6);
+    if (wordCount > Integer.MAX_VALUE) throw new IllegalArgumentException("Capacity is too large: " + capacity);
+
+    this.words = new AtomicLongArray((int) wordCount);
+    this.bits = wordCount << 6;
+    this.hashes = Math.max(1, (int) Math.round((double) bits / capacity * LN_2));
+    this.capacity = capacity;
+  }
+
+  public long getCapacity() {
+    return capacity;
+  }
+
+  public void add(String value) {
+    var hash = hash(value);
+    var h1 = (int) hash;
+    var h2 = (int) (hash >>> 32);
+
+    for (var i = 0; i < hashes; i++) {
+      var bit = Integer.toUnsignedLong(h1 + i * h2) % bits;
+      var mask = 1L << bit;
+      var word = (int) (bit >>> 6);
+
+      if ((words.get(word) & mask) == 0) words.getAndAccumulate(word, mask, (a, b) -> a | b);
+    }
+  }
+
+  /**
+   * @return False if the value has certainly not been added, true if it may have been.
+   */
+  public boolean mightContain(String value) {
+    var hash = hash(value);
+    var h1 = (int) hash;
+    var h2 = (int) (hash >>> 32);
+
+    for (var i = 0; i < hashes; i++) {
+      var bit = Integer.toUnsignedLong(h1 + i * h2) % bits;
+      if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) return false;
+    }
+
+    return true;
+  }
+
+  /**
+   * FNV-1a over the characters, followed by the finalizer of MurmurHash3 to spread the bits of short strings.
+   */
+  private static long hash(String value) {
+    var hash = 0xcbf29ce484222325L;
+    for (var i = 0; i < value.length(); i++) hash = (hash ^ value.charAt(i)) * 0x100000001b3L;
+
+    hash ^= hash >>> 33;
+    hash *= 0xff51afd7ed558ccdL;
+    hash ^= hash >>> 33;
+    hash *= 0xc4ceb9fe1a85ec53L;
+    return hash ^ hash >>> 33;
+  }
+
+}
@@ -0,0 +1,241 @@
+package nl.hva.springsecuritydemo.utils;
+
+import java.io.BufferedReader;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.HexFormat;
+
+import static java.nio.file.StandardOpenOption.READ;
+
+
+/**
+ * A memory-mapped, sorted corpus of the SHA-1 hashes of breached passwords.
+ * <p>
+ * The file starts with a header of a magic number and the amount of hashes, followed by the raw 20-byte hashes in
+ * ascending unsigned order. Files larger than a single mapping are mapped in chunks of whole records. Searching
+ * compares the hash against the mapped records in place, without copying them to the heap.
+ * <p>
+ * The binary file is converted from a text dump of {@code HASH:COUNT} lines ordered by hash, such as the one of
+ * Have I Been Pwned, by running this class:
+ * <pre>
+ * java -cp target/classes nl.hva.springsecuritydemo.utils.BreachedHashCorpus pwned-passwords-sha1-ordered-by-hash.txt breached.bin [MIN_COUNT]
+ * </pre>
+ */
+public final class BreachedHashCorpus {
+
+  public static final int HASH_SIZE = 20;
+
+  private static final long MAGIC = 0x5348413142524348L; // "SHA1BRCH"
+  private static final int HEADER_SIZE = 16;
+
+  // Every mapped chunk holds 2^26 records, just over 1.3 GB.
+  private static final int CHUNK_SHIFT = 26;
+  private static final long CHUNK_MASK = (1L << CHUNK_SHIFT) - 1;
+
+  private final Path file;
+  private final long size;
+  private final MappedByteBuffer[] chunks;
+
+  private BreachedHashCorpus(Path file, long size, MappedByteBuffer[] chunks) {
+    this.file = file;
+    this.size = size;
+    this.chunks = chunks;
+  }
+
+  /**
+   * Maps the corpus in the provided file. The file must not be written to while it is mapped: truncating it makes
+   * reads of the mapping crash the JVM with SIGBUS. A new corpus is to be renamed over it instead, which leaves the
+   * mapped file intact until it is unmapped.
+   *
+   * @throws IOException When the file cannot be read, or is not a corpus of the expected length.
+   */
+  public static BreachedHashCorpus open(Path file) throws IOException {
+    try (var channel = FileChannel.open(file, READ)) {
+      var header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE).order(ByteOrder.BIG_ENDIAN);
+      var size = header.getLong(8);
+
+      if (header.getLong(0) != MAGIC || size < 0 || channel.size() != HEADER_SIZE + size * HASH_SIZE)
+        throw new IOException("Not a breached password corpus: " + file);
+
+      var chunks = new MappedByteBuffer[(int) ((size + CHUNK_MASK) >>> CHUNK_SHIFT)];
+      for (var i = 0; i < chunks.length; i++) {
+        var first = (long) i << CHUNK_SHIFT;
+        var records = Math.min(size - first, 1L << CHUNK_SHIFT);
+
+        chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE + first * HASH_SIZE, records * HASH_SIZE);
+      }
+
+      // The mappings stay valid after the channel is closed.
+      return new BreachedHashCorpus(file, size, chunks);
+    }
+  }
+
+  public Path getFile() {
+    return file;
+  }
+
+  /**
+   * @return The amount of hashes in the corpus.
+   */
+  public long size() {
+    return size;
+  }
+
+  /**
+   * Binary searches the corpus for the provided SHA-1 hash.
+   *
+   * @param hash The 20-byte hash to look for.
+   * @return Whether the corpus contains the hash.
+   */
+  public boolean contains(byte[] hash) {
+    var high = readLong(hash, 0);
+    var middle = readLong(hash, 8);
+    var low = readInt(hash, 16);
+
+    var from = 0L;
+    var to = size - 1;
+
+    while (from <= to) {
+      var mid = (from + to) >>> 1;
+      var chunk = chunks[(int) (mid >>> CHUNK_SHIFT)];
+      var offset = (int) (mid & CHUNK_MASK) * HASH_SIZE;
+
+      // The buffers are big-endian, so unsigned comparison of the words orders the hashes byte by byte.
+      var comparison = Long.compareUnsigned(chunk.getLong(offset), high);
+      if (comparison == 0) comparison = Long.compareUnsigned(chunk.getLong(offset + 8), middle);
+      if (comparison == 0) comparison = Integer.compareUnsigned(chunk.getInt(offset + 16), low);
+
+      if (comparison < 0) from = mid + 1;
+      else if (comparison > 0) to = mid - 1;
+      else return true;
+    }
+
+    return false;
+  }
+
+  /**
+   * Converts a text dump of {@code HASH:COUNT} lines in ascending order of hash into the binary format. Hashes seen
+   * fewer than {@code minCount} times are left out, lines without a count are always included.
+   * <p>
+   * The corpus is written to a temporary file next to the output, which is then renamed over it atomically, so a
+   * corpus that is mapped from the output meanwhile is never modified.
+   *
+   * @return The amount of hashes written.
+   * @throws IOException When reading or writing fails, or a line is malformed or out of order.
+   */
+  public static long convert(BufferedReader in, Path out, int minCount) throws IOException {
+    var temporary = Files.createTempFile(out.toAbsolutePath().getParent(), out.getFileName() + ".", ".tmp");
+
+    try {
+      var written = write(in, temporary, minCount);
+      Files.move(temporary, out, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+      return written;
+    } finally {
+      Files.deleteIfExists(temporary);
+    }
+  }
+
+  private static long write(BufferedReader in, Path out, int minCount) throws IOException {
+    var previous = new byte[HASH_SIZE];
+    var hash = new byte[HASH_SIZE];
+    var written = 0L;
+    var lineNumber = 0L;
+
+    try (var data = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(out), 1 << 16))) {
+      // The amount is filled in afterward.
+      data.writeLong(MAGIC);
+      data.writeLong(0);
+
+      String line;
+      while ((line = in.readLine()) != null) {
+        lineNumber++;
+        line = line.strip();
+        if (line.isEmpty()) continue;
+
+        var separator = line.indexOf(':');
+        var digits = separator < 0 ? line : line.substring(0, separator);
+
+        if (digits.length() != HASH_SIZE * 2) throw malformed(lineNumber, line);
+        if (separator >= 0 && minCount > 1 && parseCount(line.substring(separator + 1), lineNumber) < minCount)
+          continue;
+
+        try {
+          for (var i = 0; i < HASH_SIZE; i++) hash[i] = (byte) HexFormat.fromHexDigits(digits, i * 2, i * 2 + 2);
+        } catch (IllegalArgumentException e) {
+          throw malformed(lineNumber, line);
+        }
+
+        if (written > 0) {
+          var comparison = Arrays.compareUnsigned(previous, hash);
+          if (comparison == 0) continue;
+          if (comparison > 0) throw new IOException("Line " + lineNumber + " is not in ascending order of hash.");
+        }
+
+        data.write(hash);
+        System.arraycopy(hash, 0, previous, 0, HASH_SIZE);
+        written++;
+      }
+    }
+
+    try (var file = new RandomAccessFile(out.toFile(), "rw")) {
+      file.seek(8);
+      file.writeLong(written);
+    }
+
+    return written;
+  }
+
+  private static int parseCount(String count, long lineNumber) throws IOException {
+    try {
+      return Integer.parseInt(count.strip());
+    } catch (NumberFormatException e) {
+      throw malformed(lineNumber, count);
+    }
+  }
+
+  private static IOException malformed(long lineNumber, String line) {
+    return new IOException("Line " + lineNumber + " is not a SHA-1 hash with an optional count: " + line);
+  }
+
+  private static long readLong(byte[] bytes, int offset) {
+    var value = 0L;
+    for (var i = offset; i < offset + 8; i++) value = value << 8 | (bytes[i] & 0xFF);
+    return value;
+  }
+
+  private static int readInt(byte[] bytes, int offset) {
+    var value = 0;
+    for (var i = offset; i < offset + 4; i++) value = value << 8 | (bytes[i] & 0xFF);
+    return value;
+  }
+
+  /**
+   * Converts a text dump into a corpus file.
+   */
+  public static void main(String[] args) throws IOException {
+    if (args.length < 2) {
+      System.err.println("Usage: BreachedHashCorpus <HASH:COUNT text dump> <corpus file> [min count]");
+      System.exit(2);
+    }
+
+    var minCount = args.length > 2 ? Integer.parseInt(args[2]) : 1;
+    var start = System.nanoTime();
+
+    try (var in = Files.newBufferedReader(Path.of(args[0]), StandardCharsets.US_ASCII)) {
+      var written = convert(in, Path.of(args[1]), minCount);
+      System.out.printf("Wrote %d hashes to %s in %d s%n", written, args[1], (System.nanoTime() - start) / 1_000_000_000);
+    }
+  }
+
+}
@@ -0,0 +1,140 @@
+package nl.hva.springsecuritydemo.utils;
+
+import java.time.Duration;
+import java.util.function.BiConsumer;
+
+
+/**
+ * Stops calling a dependency that keeps failing or responding slowly, so callers fail fast instead of piling up.
+ * <p>
+ * The outcomes of the last calls are kept in a window. Once at least half a window of calls has been recorded and the
+ * share of failed or slow calls reaches the threshold, the breaker opens and rejects calls. After the open duration it
+ * lets a single call through: the breaker closes when it succeeds, and opens again when it does not.
+ * <p>
+ * Permitting a call while closed is a single volatile read.
+ */
+public class CircuitBreaker {
+
+  public enum State {CLOSED, OPEN, HALF_OPEN}
+
+  private final boolean[] window;
+  private final int minimumCalls;
+  private final double failureRateThreshold;
+  private final long slowCallNanos;
+  private final long openNanos;
+  private final BiConsumer<State, State> onTransition;
+
+  private volatile State state = State.CLOSED;
+
+  // Guarded by this.
+  private int next;
+  private int calls;
+  private int failures;
+  private long openedAt;
+  private boolean probing;
+
+  /**
+   * @param windowSize           The amount of last calls whose outcome is kept.
+   * @param failureRateThreshold The share of failed or slow calls that opens the breaker.
+   * @param slowCall             The duration after which a successful call counts as failed.
+   * @param openDuration         How long calls are rejected before one is let through.
+   * @param onTransition         Receives the previous and the new state on every change of state.
+   */
+  public CircuitBreaker(
+    int windowSize,
+    double failureRateThreshold,
+    Duration slowCall,
+    Duration openDuration,
+    BiConsumer<State, State> onTransition
+  ) {
+    this.window = new boolean[windowSize];
+    this.minimumCalls = Math.max(1, windowSize / 2);
+    this.failureRateThreshold = failureRateThreshold;
+    this.slowCallNanos = slowCall.toNanos();
+    this.openNanos = openDuration.toNanos();
+    this.onTransition = onTransition;
+  }
+
+  public State getState() {
+    return state;
+  }
+
+  /**
+   * Asks to make a call, whose outcome has to be recorded when permitted.
+   *
+   * @return 0 if the call is permitted, otherwise the nanoseconds after which it may be retried.
+   */
+  public long tryAcquire() {
+    if (state == State.CLOSED) return 0;
+
+    synchronized (this) {
+      var now = System.nanoTime();
+
+      if (state == State.OPEN) {
+        var remaining = openedAt + openNanos - now;
+        if (remaining > 0) return remaining;
+
+        transition(State.HALF_OPEN);
+      } else if (state == State.CLOSED) return 0;
+
+      if (probing) return slowCallNanos;
+
+      probing = true;
+      return 0;
+    }
+  }
+
+  /**
+   * Records a permitted call that completed, which counts as failed when it was slow.
+   */
+  public void onSuccess(long nanos) {
+    record(nanos >= slowCallNanos);
+  }
+
+  /**
+   * Records a permitted call that failed.
+   */
+  public void onFailure() {
+    record(true);
+  }
+
+  private synchronized void record(boolean failed) {
+    switch (state) {
+      case HALF_OPEN -> {
+        probing = false;
+        if (failed) open();
+        else close();
+      }
+      case CLOSED -> {
+        if (calls == window.length && window[next]) failures--;
+        if (calls < window.length) calls++;
+
+        window[next] = failed;
+        if (failed) failures++;
+        next = (next + 1) % window.length;
+
+        if (calls >= minimumCalls && failures >= failureRateThreshold * calls) open();
+      }
+      // Calls permitted before the breaker opened.
+      case OPEN -> {
+      }
+    }
+  }
+
+  private void open() {
+    openedAt = System.nanoTime();
+    transition(State.OPEN);
+  }
+
+  private void close() {
+    next = calls = failures = 0;
+    transition(State.CLOSED);
+  }
+
+  private void transition(State to) {
+    var from = state;
+    state = to;
+    onTransition.accept(from, to);
+  }
+
+}
@@ -0,0 +1,45 @@
+package nl.hva.springsecuritydemo.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+
+public class CsvUtil {
+
+  /**
+   * Splits a single line of CSV into its fields. Fields may be quoted with double quotes, in which a double quote is
+   * escaped by another double quote. Fields spanning several lines are not supported.
+   *
+   * @param line The line to split.
+   * @return The fields of the line.
+   * @throws IllegalArgumentException When a quoted field is not closed.
+   */
+  public static List<String> splitLine(String line) {
+    var fields = new ArrayList<String>();
+    var field = new StringBuilder();
+    var quoted = false;
+
+    for (var i = 0; i < line.length(); i++) {
+      var c = line.charAt(i);
+
+      if (quoted) {
+        if (c != '"') field.append(c);
+        else if (i + 1 < line.length() && line.charAt(i + 1) == '"') field.append(line.charAt(++i));
+        else quoted = false;
+      } else if (c == '"') quoted = true;
+      else if (c == ',') {
+        fields.add(field.toString());
+        field.setLength(0);
+      } else field.append(c);
+    }
+
+    if (quoted) throw new IllegalArgumentException("Unclosed quoted field.");
+
+    fields.add(field.toString());
+    return fields;
+  }
+
+  private CsvUtil() {
+  }
+
+}
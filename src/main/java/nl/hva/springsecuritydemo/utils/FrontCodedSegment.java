@@ -0,0 +1,218 @@
+package nl.hva.springsecuritydemo.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.UUID;
+
+
+/**
+ * An immutable, sorted map of strings to ids, compressed by front coding.
+ * <p>
+ * Keys are stored as UTF-8 in blocks of {@value BLOCK_SIZE}. The first key of a block is stored in full, every next
+ * key as the length of the prefix it shares with the previous key and the remaining bytes. Seeking binary searches the
+ * first keys of the blocks, and then scans a single block. Keys are ordered as by {@link String#compareTo}.
+ */
+public final class FrontCodedSegment {
+
+  public static final FrontCodedSegment EMPTY = new Builder().build();
+
+  private static final int BLOCK_SIZE = 16;
+
+  private final byte[] data;
+  private final int[] blocks;
+  private final long[] ids;
+  private final int size;
+
+  private FrontCodedSegment(byte[] data, int[] blocks, long[] ids, int size) {
+    this.data = data;
+    this.blocks = blocks;
+    this.ids = ids;
+    this.size = size;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  /**
+   * @return The bytes taken by the arrays of the segment.
+   */
+  public long memoryBytes() {
+    return data.length + 4L * blocks.length + 8L * ids.length;
+  }
+
+  /**
+   * @return A cursor at the first key that is not smaller than the provided one.
+   */
+  public Cursor seek(String from) {
+    // The last block whose first key is not larger than the searched one.
+    var low = 0;
+    var high = blocks.length - 1;
+    var block = 0;
+
+    while (low <= high) {
+      var mid = (low + high) >>> 1;
+
+      if (firstKey(mid).compareTo(from) <= 0) {
+        block = mid;
+        low = mid + 1;
+      } else high = mid - 1;
+    }
+
+    var cursor = new Cursor(block);
+    while (cursor.next()) if (cursor.key().compareTo(from) >= 0) return cursor.back();
+
+    return cursor;
+  }
+
+  /**
+   * @return The first key of the block, that is stored in full.
+   */
+  private String firstKey(int block) {
+    var offset = blocks[block] + 1;
+    var length = 0;
+
+    for (var shift = 0; ; shift += 7) {
+      var b = data[offset++];
+      length |= (b & 0x7F) << shift;
+      if (b >= 0) break;
+    }
+
+    return new String(data, offset, length, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Iterates the entries of the segment in order, reusing a buffer for the bytes of the keys.
+   */
+  public final class Cursor {
+
+    private byte[] buffer = new byte[64];
+    private int length;
+    private int index;
+    private int offset;
+    private String key;
+    private boolean pending;
+
+    private Cursor(int block) {
+      this.index = block * BLOCK_SIZE - 1;
+      this.offset = blocks.length == 0 ? 0 : blocks[block];
+    }
+
+    /**
+     * Moves to the next entry.
+     *
+     * @return Whether there is a next entry.
+     */
+    public boolean next() {
+      if (pending) {
+        pending = false;
+        return true;
+      }
+      if (index + 1 >= size) return false;
+
+      index++;
+      var shared = readVarInt();
+      var suffix = readVarInt();
+
+      if (shared + suffix > buffer.length) buffer = Arrays.copyOf(buffer, Math.max(shared + suffix, buffer.length * 2));
+      System.arraycopy(data, offset, buffer, shared, suffix);
+      offset += suffix;
+      length = shared + suffix;
+      key = null;
+
+      return true;
+    }
+
+    public String key() {
+      if (key == null) key = new String(buffer, 0, length, StandardCharsets.UTF_8);
+      return key;
+    }
+
+    public UUID id() {
+      return new UUID(ids[2 * index], ids[2 * index + 1]);
+    }
+
+    /**
+     * Makes the next call of {@link #next()} stay at the current entry.
+     */
+    private Cursor back() {
+      pending = true;
+      return this;
+    }
+
+    private int readVarInt() {
+      var value = 0;
+      for (var shift = 0; ; shift += 7) {
+        var b = data[offset++];
+        value |= (b & 0x7F) << shift;
+        if (b >= 0) return value;
+      }
+    }
+
+  }
+
+  /**
+   * Builds a segment from entries added in ascending order of key.
+   */
+  public static final class Builder {
+
+    private final ByteArrayOutputStream data = new ByteArrayOutputStream();
+    private int[] blocks = new int[16];
+    private long[] ids = new long[2 * BLOCK_SIZE];
+    private byte[] previous = new byte[0];
+    private String previousKey;
+    private int size;
+
+    /**
+     * @throws IllegalArgumentException When the key is not larger than the previous one.
+     */
+    public Builder add(String key, UUID id) {
+      if (previousKey != null && previousKey.compareTo(key) >= 0)
+        throw new IllegalArgumentException("Keys are not added in ascending order: " + key);
+
+      var bytes = key.getBytes(StandardCharsets.UTF_8);
+      var shared = 0;
+
+      if (size % BLOCK_SIZE == 0) {
+        if (size / BLOCK_SIZE == blocks.length) blocks = Arrays.copyOf(blocks, blocks.length * 2);
+        blocks[size / BLOCK_SIZE] = data.size();
+      } else {
+        var max = Math.min(bytes.length, previous.length);
+        while (shared < max && bytes[shared] == previous[shared]) shared++;
+      }
+
+      writeVarInt(shared);
+      writeVarInt(bytes.length - shared);
+      data.write(bytes, shared, bytes.length - shared);
+
+      if (2 * size + 2 > ids.length) ids = Arrays.copyOf(ids, ids.length * 2);
+      ids[2 * size] = id.getMostSignificantBits();
+      ids[2 * size + 1] = id.getLeastSignificantBits();
+
+      previous = bytes;
+      previousKey = key;
+      size++;
+      return this;
+    }
+
+    public FrontCodedSegment build() {
+      return new FrontCodedSegment(
+        data.toByteArray(),
+        Arrays.copyOf(blocks, (size + BLOCK_SIZE - 1) / BLOCK_SIZE),
+        Arrays.copyOf(ids, 2 * size),
+        size
+      );
+    }
+
+    private void writeVarInt(int value) {
+      while ((value & ~0x7F) != 0) {
+        data.write((value & 0x7F) | 0x80);
+        value >>>= 7;
+      }
+      data.write(value);
+    }
+
+  }
+
+}
@@ -3,12 +3,16 @@ package nl.hva.springsecuritydemo.utils;
 import io.jsonwebtoken.Claims;
 import io.jsonwebtoken.ExpiredJwtException;
 import io.jsonwebtoken.Jws;
+import io.jsonwebtoken.JwtBuilder;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.MalformedJwtException;
 import io.jsonwebtoken.UnsupportedJwtException;
+import io.jsonwebtoken.security.MacAlgorithm;
 import io.jsonwebtoken.security.SignatureException;
-import lombok.RequiredArgsConstructor;
 import lombok.SneakyThrows;
+import nl.hva.springsecuritydemo.config.jfr.TokenEvent;
 import nl.hva.springsecuritydemo.models.user.User;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -17,6 +21,7 @@ import org.springframework.stereotype.Component;
 
 import javax.crypto.SecretKey;
 import java.util.Date;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.UUID;
@@ -26,38 +31,95 @@ import java.util.UUID;
  * A utility to perform operations relating to JWT tokens.
  */
 @Component
-@RequiredArgsConstructor
 public class JWTUtil {
 
   public static final long JWT_ACCESS_DURATION_MS = 1000L * 60 * 60 * 2;  // 2 hours
   public static final long JWT_REFRESH_DURATION_MS = 1000L * 60 * 60 * 24 * 30 * 6;  // 6 months on average
+  public static final long JWT_ACTIVATION_DURATION_MS = 1000L * 60 * 60 * 48;  // 2 days
 
   public static final String JWT_TOKEN_PREFACE = "Bearer ";
 
   public static final String JWT_CLAIM_KEY_USER_ID = "user-id";
   public static final String JWT_CLAIM_KEY_USER_ROLES = "user-roles";
+  public static final String JWT_CLAIM_KEY_TOKEN_VERSION = "token-version";
   public static final String JWT_CLAIM_KEY_TOKEN_TYPE = "token-type";
   public static final String JWT_CLAIM_KEY_TOKEN_TYPE_REFRESH = "refresh";
+  public static final String JWT_CLAIM_KEY_TOKEN_TYPE_ACCESS = "access";
+  public static final String JWT_CLAIM_KEY_TOKEN_TYPE_ACTIVATION = "activation";
+  public static final String JWT_CLAIM_KEY_EMAIL = "email";
 
   private static final Logger log = LoggerFactory.getLogger(JWTUtil.class);
 
   private final SecretKey signingKey;
+  private final MacAlgorithm signingAlgorithm;
+  private final JwtParser parser;
 
   @Value("${jwt.issuer:MyOrganisation}")
   private String issuer;
 
   /**
-   * Parses the body of a JWT in string format, with the provided key, to a JWS object.
+   * @param signingAlgorithm The algorithm to sign tokens with, which also verifies tokens signed with its id.
+   */
+  public JWTUtil(SecretKey signingKey, MacAlgorithm signingAlgorithm) {
+    this.signingKey = signingKey;
+    this.signingAlgorithm = signingAlgorithm;
+    this.parser = Jwts.parser()
+      .verifyWith(signingKey)
+      .sig().add(signingAlgorithm).and()
+      .build();
+  }
+
+  /**
+   * Parses the body of a JWT in string format, verified with the signing key, to a JWS object.
    *
    * @param token A JWT in string format.
-   * @param key   Key used to decode the JWT.
    * @return The body of the JWT in a JWS object.
    */
-  private static Jws<Claims> parseToken(String token, SecretKey key) {
-    return Jwts.parser()
-      .verifyWith(key)
-      .build()
-      .parseSignedClaims(token);
+  private Jws<Claims> parseToken(String token) {
+    var event = new TokenEvent();
+    event.begin();
+
+    try {
+      var jws = parser.parseSignedClaims(token);
+
+      if (event.shouldCommit()) {
+        event.operation = TokenEvent.VERIFY;
+        event.tokenType = Objects.requireNonNullElse(
+          jws.getPayload().get(JWT_CLAIM_KEY_TOKEN_TYPE, String.class), JWT_CLAIM_KEY_TOKEN_TYPE_ACCESS
+        );
+        event.outcome = "valid";
+        event.commit();
+      }
+
+      return jws;
+    } catch (RuntimeException e) {
+      if (event.shouldCommit()) {
+        event.operation = TokenEvent.VERIFY;
+        event.outcome = TokenEvent.outcomeOf(e);
+        event.commit();
+      }
+
+      throw e;
+    }
+  }
+
+  /**
+   * Signs the claims of the builder into a compact JWT.
+   */
+  private String sign(JwtBuilder builder, String tokenType) {
+    var event = new TokenEvent();
+    event.begin();
+
+    var token = builder.signWith(signingKey, signingAlgorithm).compact();
+
+    if (event.shouldCommit()) {
+      event.operation = TokenEvent.SIGN;
+      event.tokenType = tokenType;
+      event.outcome = "signed";
+      event.commit();
+    }
+
+    return token;
   }
 
   public Map<String, String> generateTokensFor(User user) {
@@ -69,31 +131,50 @@ public class JWTUtil {
 
   @SneakyThrows
   private String generateAccessTokenFor(User user) {
-    return Jwts.builder()
+    var builder = Jwts.builder()
       .claim(JWT_CLAIM_KEY_USER_ID, user.getId())
       .claim(JWT_CLAIM_KEY_USER_ROLES, user.getAuthorities())
+      .claim(JWT_CLAIM_KEY_TOKEN_VERSION, user.getTokenVersion())
 
       .issuer(issuer)
       .issuedAt(new Date())
-      .expiration(new Date(System.currentTimeMillis() + JWT_ACCESS_DURATION_MS))
+      .expiration(new Date(System.currentTimeMillis() + JWT_ACCESS_DURATION_MS));
 
-      .signWith(signingKey)
-      .compact();
+    return sign(builder, JWT_CLAIM_KEY_TOKEN_TYPE_ACCESS);
   }
 
   @SneakyThrows
   private String generateRefreshTokenFor(User user) {
-    return Jwts.builder()
+    var builder = Jwts.builder()
       .claim(JWT_CLAIM_KEY_USER_ID, user.getId())
       .claim(JWT_CLAIM_KEY_USER_ROLES, user.getAuthorities())
+      .claim(JWT_CLAIM_KEY_TOKEN_VERSION, user.getTokenVersion())
       .claim(JWT_CLAIM_KEY_TOKEN_TYPE, JWT_CLAIM_KEY_TOKEN_TYPE_REFRESH)
 
       .issuer(issuer)
       .issuedAt(new Date())
-      .expiration(new Date(System.currentTimeMillis() + JWT_REFRESH_DURATION_MS))
+      .expiration(new Date(System.currentTimeMillis() + JWT_REFRESH_DURATION_MS));
+
+    return sign(builder, JWT_CLAIM_KEY_TOKEN_TYPE_REFRESH);
+  }
+
+  /**
+   * Generates a token that activates the account of the user, as long as its email and token version did not change.
+   * It does not authenticate requests.
+   */
+  @SneakyThrows
+  public String generateActivationTokenFor(User user) {
+    var builder = Jwts.builder()
+      .claim(JWT_CLAIM_KEY_USER_ID, user.getId())
+      .claim(JWT_CLAIM_KEY_EMAIL, user.getEmail())
+      .claim(JWT_CLAIM_KEY_TOKEN_VERSION, user.getTokenVersion())
+      .claim(JWT_CLAIM_KEY_TOKEN_TYPE, JWT_CLAIM_KEY_TOKEN_TYPE_ACTIVATION)
+
+      .issuer(issuer)
+      .issuedAt(new Date())
+      .expiration(new Date(System.currentTimeMillis() + JWT_ACTIVATION_DURATION_MS));
 
-      .signWith(signingKey)
-      .compact();
+    return sign(builder, JWT_CLAIM_KEY_TOKEN_TYPE_ACTIVATION);
   }
 
   /**
@@ -104,7 +185,7 @@ public class JWTUtil {
    */
   public boolean validate(String token) {
     try {
-      parseToken(token, signingKey);
+      parseToken(token);
 
       return true;
     } catch (SignatureException e) {
@@ -122,6 +203,19 @@ public class JWTUtil {
     return false;
   }
 
+  /**
+   * Verifies the token like {@link #validate(String)}, but quietly, for callers that expect invalid tokens.
+   *
+   * @return The claims of the token, or null if it is invalid.
+   */
+  public Claims findClaimsOf(String token) {
+    try {
+      return parseToken(token).getPayload();
+    } catch (JwtException | IllegalArgumentException e) {
+      return null;
+    }
+  }
+
   /**
    * Extracts the user object from the payload of the JWToken.
    *
@@ -129,21 +223,60 @@ public class JWTUtil {
    * @return the user object of the authenticated user.
    */
   public UUID getUserIdOf(String token) {
-    var uuidString = (String) parseToken(token, signingKey)
-      .getPayload()
-      .get(JWT_CLAIM_KEY_USER_ID);
+    return getUserIdOf(parseToken(token).getPayload());
+  }
+
+  /**
+   * @return The id of the user, from claims that have already been verified.
+   */
+  public UUID getUserIdOf(Claims claims) {
+    return UUID.fromString(claims.get(JWT_CLAIM_KEY_USER_ID, String.class));
+  }
+
+  /**
+   * @return The version of the credentials the token was issued for, 0 for tokens issued without one.
+   */
+  public int getTokenVersionOf(String token) {
+    return getTokenVersionOf(parseToken(token).getPayload());
+  }
 
-    return UUID.fromString(uuidString);
+  public int getTokenVersionOf(Claims claims) {
+    return Objects.requireNonNullElse(claims.get(JWT_CLAIM_KEY_TOKEN_VERSION, Integer.class), 0);
+  }
+
+  /**
+   * @return The names of the authorities the user had when the token was issued, which may be outdated.
+   */
+  public List<String> getAuthoritiesOf(String token) {
+    return getAuthoritiesOf(parseToken(token).getPayload());
+  }
+
+  public List<String> getAuthoritiesOf(Claims claims) {
+    var roles = claims.get(JWT_CLAIM_KEY_USER_ROLES, List.class);
+
+    if (roles == null) return List.of();
+
+    return ((List<?>) roles).stream()
+      .map(role -> role instanceof Map<?, ?> map ? map.get("authority") : null)
+      .filter(String.class::isInstance)
+      .map(String.class::cast)
+      .toList();
+  }
+
+  public boolean isActivationToken(String token) {
+    return isActivationToken(parseToken(token).getPayload());
+  }
+
+  public boolean isActivationToken(Claims claims) {
+    return JWT_CLAIM_KEY_TOKEN_TYPE_ACTIVATION.equals(claims.get(JWT_CLAIM_KEY_TOKEN_TYPE));
   }
 
   public boolean isRefreshToken(String token) {
-    return Objects
-      .requireNonNullElse(
-        parseToken(token, signingKey)
-          .getPayload()
-          .get(JWT_CLAIM_KEY_TOKEN_TYPE),
-        ""
-      ).equals(JWT_CLAIM_KEY_TOKEN_TYPE_REFRESH);
+    return isRefreshToken(parseToken(token).getPayload());
+  }
+
+  public boolean isRefreshToken(Claims claims) {
+    return JWT_CLAIM_KEY_TOKEN_TYPE_REFRESH.equals(claims.get(JWT_CLAIM_KEY_TOKEN_TYPE));
   }
 
 }
\ No newline at end of file
@@ -0,0 +1,116 @@
+package nl.hva.springsecuritydemo.utils;
+
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.MacAlgorithm;
+import io.jsonwebtoken.security.SecretKeyBuilder;
+import io.jsonwebtoken.security.SecureRequest;
+import io.jsonwebtoken.security.SignatureException;
+import io.jsonwebtoken.security.VerifySecureDigestRequest;
+
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+
+
+/**
+ * An HMAC algorithm of jjwt, that reuses {@link Mac} instances initialized with a single key.
+ * <p>
+ * Initializing a Mac hashes the key into the inner and outer pads, which jjwt does for every token it signs or
+ * verifies. Here, the Mac is initialized once, and clones of it are pooled. A clone carries the keyed state, and
+ * {@link Mac#doFinal()} resets a Mac to that state, so a pooled Mac is ready for the next token. Requests with any
+ * other key are delegated to the standard algorithm.
+ */
+public class PooledMacAlgorithm implements MacAlgorithm {
+
+  private static final int POOL_SIZE = 64;
+
+  private final MacAlgorithm standard;
+  private final SecretKey key;
+  private final Mac prototype;
+  private final Queue<Mac> pool = new ArrayBlockingQueue<>(POOL_SIZE);
+
+  /**
+   * @param standard The algorithm to reuse Macs for, and to delegate other keys to.
+   * @param key      The key to initialize the Macs with.
+   */
+  public PooledMacAlgorithm(MacAlgorithm standard, SecretKey key) {
+    this.standard = standard;
+    this.key = key;
+
+    try {
+      prototype = Mac.getInstance(key.getAlgorithm());
+      prototype.init(key);
+      prototype.clone();
+    } catch (GeneralSecurityException | CloneNotSupportedException e) {
+      throw new IllegalArgumentException("Key cannot be used for pooled " + standard.getId() + " Macs.", e);
+    }
+  }
+
+  @Override
+  public byte[] digest(SecureRequest<InputStream, SecretKey> request) {
+    if (request.getKey() != key) return standard.digest(request);
+
+    var mac = acquire();
+
+    try {
+      return mac.doFinal(request.getPayload().readAllBytes());
+    } catch (IOException e) {
+      throw new SignatureException("Unable to read the payload to sign.", e);
+    } finally {
+      pool.offer(mac);
+    }
+  }
+
+  @Override
+  public boolean verify(VerifySecureDigestRequest<SecretKey> request) {
+    if (request.getKey() != key) return standard.verify(request);
+
+    return MessageDigest.isEqual(digest(request), request.getDigest());
+  }
+
+  @Override
+  public SecretKeyBuilder key() {
+    return standard.key();
+  }
+
+  @Override
+  public int getKeyBitLength() {
+    return standard.getKeyBitLength();
+  }
+
+  @Override
+  public String getId() {
+    return standard.getId();
+  }
+
+  private Mac acquire() {
+    var mac = pool.poll();
+    if (mac != null) return mac;
+
+    try {
+      synchronized (prototype) {
+        return (Mac) prototype.clone();
+      }
+    } catch (CloneNotSupportedException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * @return The standard HMAC algorithm for a key, as created by {@link io.jsonwebtoken.security.Keys#hmacShaKeyFor}.
+   */
+  public static MacAlgorithm standardFor(SecretKey key) {
+    return switch (key.getAlgorithm()) {
+      case "HmacSHA256" -> Jwts.SIG.HS256;
+      case "HmacSHA384" -> Jwts.SIG.HS384;
+      case "HmacSHA512" -> Jwts.SIG.HS512;
+      default -> throw new IllegalArgumentException("Not an HMAC-SHA key: " + key.getAlgorithm());
+    };
+  }
+
+}
@@ -0,0 +1,70 @@
+package nl.hva.springsecuritydemo.utils;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+
+/**
+ * Limits the rate at which every key may acquire permits, with a token bucket per key that refills continuously. A
+ * key may use up a full interval worth of permits at once.
+ */
+public class RateLimiter {
+
+  private final Map<Object, Bucket> buckets = new ConcurrentHashMap<>();
+  private final double capacity;
+  private final double permitsPerNano;
+
+  public RateLimiter(long permitsPerInterval, Duration interval) {
+    this.capacity = permitsPerInterval;
+    this.permitsPerNano = permitsPerInterval / (double) interval.toNanos();
+  }
+
+  /**
+   * Acquires the permits for the key, if available.
+   *
+   * @return 0 if the permits were acquired, otherwise the nanoseconds until they will be available.
+   */
+  public long tryAcquire(Object key, long permits) {
+    var bucket = buckets.computeIfAbsent(key, k -> new Bucket(capacity, System.nanoTime()));
+
+    synchronized (bucket) {
+      var now = System.nanoTime();
+      bucket.available = Math.min(capacity, bucket.available + (now - bucket.refilledAt) * permitsPerNano);
+      bucket.refilledAt = now;
+
+      if (bucket.available >= permits) {
+        bucket.available -= permits;
+        return 0;
+      }
+
+      return (long) Math.ceil((permits - bucket.available) / permitsPerNano);
+    }
+  }
+
+  /**
+   * Forgets the keys whose bucket has refilled completely, as they would start out the same when acquiring again.
+   */
+  public void evictRefilled() {
+    var now = System.nanoTime();
+
+    buckets.values().removeIf(bucket -> {
+      synchronized (bucket) {
+        return bucket.available + (now - bucket.refilledAt) * permitsPerNano >= capacity;
+      }
+    });
+  }
+
+  private static class Bucket {
+
+    private double available;
+    private long refilledAt;
+
+    private Bucket(double available, long refilledAt) {
+      this.available = available;
+      this.refilledAt = refilledAt;
+    }
+
+  }
+
+}
@@ -0,0 +1,89 @@
+package nl.hva.springsecuritydemo.utils;
+
+import org.slf4j.Logger;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+
+/**
+ * Logs exceptions rate-limited per exception type, so a flood of identical failures cannot dominate CPU and log I/O.
+ * Every occurrence is counted, but only the first few per type within each interval are written to the log, together
+ * with the number of occurrences that were left out since the last written one.
+ */
+public class SampledLogger {
+
+  private final Logger logger;
+  private final int permitsPerInterval;
+  private final long intervalNanos;
+  private final Map<Class<?>, Counter> counters = new ConcurrentHashMap<>();
+
+  /**
+   * @param logger             The logger to write the sampled entries to.
+   * @param permitsPerInterval The amount of entries written per exception type within a single interval.
+   * @param intervalMillis     The length of an interval in milliseconds.
+   */
+  public SampledLogger(Logger logger, int permitsPerInterval, long intervalMillis) {
+    this.logger = logger;
+    this.permitsPerInterval = permitsPerInterval;
+    this.intervalNanos = intervalMillis * 1_000_000;
+  }
+
+  /**
+   * Counts the exception and logs it, when the rate limit of its type allows it. Only errors include a stack trace.
+   *
+   * @param e       The exception to log.
+   * @param error   Whether to log at ERROR level with a stack trace, rather than at WARN level without.
+   * @param pattern An SLF4J message pattern, the amount of suppressed occurrences is appended as last argument.
+   * @param args    The arguments of the pattern, only resolved when the entry is actually written.
+   */
+  public void log(Throwable e, boolean error, String pattern, Object... args) {
+    var counter = counters.computeIfAbsent(e.getClass(), type -> new Counter());
+    counter.total.increment();
+
+    if (!counter.tryAcquire(System.nanoTime())) {
+      counter.suppressed.increment();
+      return;
+    }
+
+    var arguments = new Object[args.length + (error ? 2 : 1)];
+    System.arraycopy(args, 0, arguments, 0, args.length);
+    arguments[args.length] = counter.suppressed.sumThenReset();
+    if (error) arguments[args.length + 1] = e;
+
+    if (error) logger.error(pattern + " ({} similar suppressed)", arguments);
+    else logger.warn(pattern + " ({} similar suppressed)", arguments);
+  }
+
+  /**
+   * @return The total amount of occurrences per exception type, by fully qualified class name, as exception types of
+   * different packages may share their simple name.
+   */
+  public Map<String, Long> getCounts() {
+    return counters.entrySet().stream()
+      .collect(Collectors.toMap(entry -> entry.getKey().getName(), entry -> entry.getValue().total.sum()));
+  }
+
+  private class Counter {
+
+    private final LongAdder total = new LongAdder();
+    private final LongAdder suppressed = new LongAdder();
+    private final AtomicLong intervalStart = new AtomicLong(System.nanoTime());
+    private final AtomicInteger permitsUsed = new AtomicInteger();
+
+    private boolean tryAcquire(long now) {
+      var start = intervalStart.get();
+
+      if (now - start >= intervalNanos && intervalStart.compareAndSet(start, now))
+        permitsUsed.set(0);
+
+      return permitsUsed.incrementAndGet() <= permitsPerInterval;
+    }
+
+  }
+
+}
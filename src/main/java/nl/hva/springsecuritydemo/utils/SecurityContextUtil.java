@@ -1,26 +1,44 @@
 package nl.hva.springsecuritydemo.utils;
 
+import nl.hva.springsecuritydemo.config.context.ScopedSecurityContextHolderStrategy;
 import nl.hva.springsecuritydemo.models.user.User;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 
 import java.util.Objects;
+import java.util.UUID;
 
 
 public class SecurityContextUtil {
 
+  /**
+   * Returns the authentication of the current request, without binding an empty context when there is none.
+   */
   public static Authentication getAuth() {
-    return SecurityContextHolder.getContext().getAuthentication();
+    var strategy = SecurityContextHolder.getContextHolderStrategy();
+
+    return strategy instanceof ScopedSecurityContextHolderStrategy scoped
+      ? scoped.getAuthentication()
+      : strategy.getContext().getAuthentication();
   }
 
-  public static User getUser() {
-    return getUser(true);
+  /**
+   * Returns the id of the authenticated user, whether it was authenticated by a token or by its credentials.
+   */
+  public static UUID getUserId() {
+    return getUserId(true);
   }
 
-  public static User getUser(boolean nullable) {
-    var currUser = getAuth() == null ? null : (User) getAuth().getPrincipal();
+  public static UUID getUserId(boolean nullable) {
+    var auth = getAuth();
+    var principal = auth == null ? null : auth.getPrincipal();
+    var userId = switch (principal) {
+      case UUID id -> id;
+      case User user -> user.getId();
+      case null, default -> null;
+    };
 
-    return nullable ? currUser : Objects.requireNonNull(currUser);
+    return nullable ? userId : Objects.requireNonNull(userId);
   }
 
   private SecurityContextUtil() {
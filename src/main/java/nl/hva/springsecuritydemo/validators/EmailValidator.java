@@ -0,0 +1,84 @@
+package nl.hva.springsecuritydemo.validators;
+
+import jakarta.validation.ConstraintValidator;
+import jakarta.validation.ConstraintValidatorContext;
+
+
+/**
+ * Validates email addresses in a single pass, with the same outcome as {@code @Email(regexp = EMAIL_REGEX)}.
+ * Unlike the backtracking regex, the time taken is linear in the length of the input, whatever the input.
+ */
+public class EmailValidator implements ConstraintValidator<ValidEmail, CharSequence> {
+
+  /**
+   * Maximum length of the part before the '@', as enforced by {@code @Email}.
+   */
+  private static final int MAX_LOCAL_PART_LENGTH = 64;
+  /**
+   * Maximum length of the part after the '@', as enforced by {@code @Email}.
+   */
+  private static final int MAX_DOMAIN_LENGTH = 255;
+  /**
+   * Maximum length of a single dot separated domain label, as enforced by {@code @Email}.
+   */
+  private static final int MAX_DOMAIN_LABEL_LENGTH = 63;
+
+  private static final String LOCAL_SPECIAL_CHARS = "!#$%&'*+/=?^_`{|}~-";
+
+  @Override
+  public boolean isValid(CharSequence value, ConstraintValidatorContext context) {
+    return value == null || isValidEmail(value);
+  }
+
+  /**
+   * Checks whether the provided value is a valid email address.
+   *
+   * @param value The value to check.
+   * @return Whether the value is a valid email address.
+   */
+  public static boolean isValidEmail(CharSequence value) {
+    var length = value.length();
+    var i = 0;
+
+    // User part: dot separated, non-empty atoms.
+    var atomLength = 0;
+    for (; i < length; i++) {
+      var c = value.charAt(i);
+
+      if (c == '@') break;
+      if (c == '.') {
+        if (atomLength == 0) return false;
+        atomLength = 0;
+      } else if (isAlphanumeric(c) || LOCAL_SPECIAL_CHARS.indexOf(c) >= 0) atomLength++;
+      else return false;
+    }
+
+    if (i == length || atomLength == 0 || i > MAX_LOCAL_PART_LENGTH) return false;
+    if (length - (i + 1) > MAX_DOMAIN_LENGTH) return false;
+
+    // Domain part: at least two dot separated labels, starting and ending with an alphanumeric character.
+    var labels = 0;
+    var labelLength = 0;
+    var previous = '@';
+    for (i++; i < length; i++) {
+      var c = value.charAt(i);
+
+      if (c == '.') {
+        if (labelLength == 0 || previous == '-') return false;
+        labels++;
+        labelLength = 0;
+      } else if (isAlphanumeric(c) || (c == '-' && labelLength > 0)) {
+        if (++labelLength > MAX_DOMAIN_LABEL_LENGTH) return false;
+      } else return false;
+
+      previous = c;
+    }
+
+    return labels > 0 && labelLength > 0 && previous != '-';
+  }
+
+  private static boolean isAlphanumeric(char c) {
+    return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9');
+  }
+
+}
@@ -0,0 +1,54 @@
+package nl.hva.springsecuritydemo.validators;
+
+import jakarta.validation.ConstraintValidator;
+import jakarta.validation.ConstraintValidatorContext;
+
+
+/**
+ * Validates passwords in a single pass, with the same outcome as {@code @Pattern(regexp = PASSWORD_REGEX)}.
+ * Unlike the stacked lookaheads of the regex, every character is inspected exactly once.
+ */
+public class PasswordValidator implements ConstraintValidator<ValidPassword, CharSequence> {
+
+  private static final int MIN_LENGTH = 8;
+
+  @Override
+  public boolean isValid(CharSequence value, ConstraintValidatorContext context) {
+    return value == null || isValidPassword(value);
+  }
+
+  /**
+   * Checks whether the provided value contains an uppercase letter, a lowercase letter and a digit, and is at least
+   * {@value MIN_LENGTH} characters long. Like the regex, line terminators are not allowed.
+   *
+   * @param value The value to check.
+   * @return Whether the value is a valid password.
+   */
+  public static boolean isValidPassword(CharSequence value) {
+    var length = value.length();
+    var codePoints = 0;
+    var hasUpper = false;
+    var hasLower = false;
+    var hasDigit = false;
+
+    for (var i = 0; i < length; codePoints++) {
+      var c = Character.codePointAt(value, i);
+      i += Character.charCount(c);
+
+      if (c >= 'A' && c <= 'Z') hasUpper = true;
+      else if (c >= 'a' && c <= 'z') hasLower = true;
+      else if (c >= '0' && c <= '9') hasDigit = true;
+      else if (isLineTerminator(c)) return false;
+    }
+
+    return hasUpper && hasLower && hasDigit && codePoints >= MIN_LENGTH;
+  }
+
+  /**
+   * @return Whether the code point is one of the line terminators that a regex '.' does not match.
+   */
+  private static boolean isLineTerminator(int c) {
+    return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+  }
+
+}
@@ -0,0 +1,31 @@
+package nl.hva.springsecuritydemo.validators;
+
+import jakarta.validation.Constraint;
+import jakarta.validation.Payload;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+import static java.lang.annotation.ElementType.FIELD;
+import static java.lang.annotation.ElementType.PARAMETER;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+
+/**
+ * The annotated string must be a valid email address, as specified by
+ * {@link nl.hva.springsecuritydemo.config.GenericConfig#EMAIL_REGEX}. {@code null} is considered valid.
+ */
+@Documented
+@Constraint(validatedBy = EmailValidator.class)
+@Target({FIELD, PARAMETER})
+@Retention(RUNTIME)
+public @interface ValidEmail {
+
+  String message() default "Is invalid.";
+
+  Class<?>[] groups() default {};
+
+  Class<? extends Payload>[] payload() default {};
+
+}
@@ -0,0 +1,31 @@
+package nl.hva.springsecuritydemo.validators;
+
+import jakarta.validation.Constraint;
+import jakarta.validation.Payload;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+import static java.lang.annotation.ElementType.FIELD;
+import static java.lang.annotation.ElementType.PARAMETER;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+
+/**
+ * The annotated string must be a strong enough password, as specified by
+ * {@link nl.hva.springsecuritydemo.config.GenericConfig#PASSWORD_REGEX}. {@code null} is considered valid.
+ */
+@Documented
+@Constraint(validatedBy = PasswordValidator.class)
+@Target({FIELD, PARAMETER})
+@Retention(RUNTIME)
+public @interface ValidPassword {
+
+  String message() default "Is invalid.";
+
+  Class<?>[] groups() default {};
+
+  Class<? extends Payload>[] payload() default {};
+
+}
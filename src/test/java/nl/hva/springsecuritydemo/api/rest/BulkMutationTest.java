@@ -0,0 +1,132 @@
+package nl.hva.springsecuritydemo.api.rest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import nl.hva.springsecuritydemo.dtos.user.RegisterDto;
+import nl.hva.springsecuritydemo.models.user.User;
+import nl.hva.springsecuritydemo.services.RoleService;
+import nl.hva.springsecuritydemo.services.UserService;
+import nl.hva.springsecuritydemo.utils.JWTUtil;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static nl.hva.springsecuritydemo.api.rest.AdminController.ADMIN_API_BASE;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+
+
+/**
+ * Applies bulk mutations as an admin, which must not select every user through an empty filter, nor change the admin
+ * applying them, and grants and revokes a role through the statements on the authorities table.
+ */
+@SpringBootTest(properties = {
+  "spring.datasource.url=jdbc:h2:mem:bulk-mutation;DB_CLOSE_DELAY=-1",
+  "users.activation.required=false"
+})
+@AutoConfigureMockMvc
+class BulkMutationTest {
+
+  private static final String BULK = ADMIN_API_BASE + "/users/bulk";
+
+  @Autowired
+  private MockMvc mvc;
+
+  @Autowired
+  private ObjectMapper objectMapper;
+
+  @Autowired
+  private UserService userService;
+
+  @Autowired
+  private RoleService roleService;
+
+  @Autowired
+  private JWTUtil jwtUtil;
+
+  private User admin;
+  private String bearer;
+  private final List<UUID> others = new ArrayList<>();
+
+  @BeforeEach
+  void createUsers() {
+    var suffix = UUID.randomUUID().toString().substring(0, 8);
+    admin = userService.create(new RegisterDto("admin" + suffix, "Password1", "admin" + suffix + "@hva.nl"));
+    admin = roleService.addAdminRoleToUserById(admin.getId());
+    bearer = "Bearer " + jwtUtil.generateTokensFor(admin).get("accessToken");
+
+    others.clear();
+    for (var i = 0; i < 3; i++)
+      others.add(userService.create(new RegisterDto("user" + i + suffix, "Password1", "user" + i + suffix + "@hva.nl")).getId());
+  }
+
+  @Test
+  void emptyFilterIsRejected() throws Exception {
+    assertEquals(400, perform("{\"action\":\"DISABLE\",\"filter\":{}}").getResponse().getStatus());
+    assertEquals(400, perform("{\"action\":\"DISABLE\",\"filter\":{\"role\":\"\"}}").getResponse().getStatus());
+    assertTrue(userService.findById(admin.getId()).isEnabled());
+  }
+
+  @Test
+  void callerIsLeftOut() throws Exception {
+    var report = report(perform("{\"action\":\"DISABLE\",\"filter\":{\"enabled\":true}}"));
+    assertTrue(report.get("affected").asLong() >= others.size());
+    assertTrue(userService.findById(admin.getId()).isEnabled());
+    for (var id : others) assertFalse(userService.findById(id).isEnabled());
+
+    report = report(perform("{\"action\":\"LOCK\",\"ids\":" + ids(admin.getId(), others.getFirst()) + "}"));
+    assertEquals(1, report.get("selected").asLong());
+    assertTrue(userService.findById(admin.getId()).isAccountNonLocked());
+  }
+
+  @Test
+  void grantsAndRevokesARole() throws Exception {
+    var report = report(perform("{\"action\":\"GRANT\",\"role\":\"ADMIN\",\"ids\":" + ids(others.toArray(UUID[]::new)) + "}"));
+    assertEquals(others.size(), report.get("affected").asLong());
+    for (var id : others) assertTrue(authoritiesOf(id).contains("ROLE_ADMIN"));
+
+    report = report(perform("{\"action\":\"GRANT\",\"role\":\"ADMIN\",\"ids\":" + ids(others.getFirst()) + "}"));
+    assertEquals(0, report.get("affected").asLong());
+
+    report = report(perform("{\"action\":\"REVOKE\",\"role\":\"ADMIN\",\"ids\":" + ids(others.toArray(UUID[]::new)) + "}"));
+    assertEquals(others.size(), report.get("affected").asLong());
+    for (var id : others) {
+      assertEquals(List.of("ROLE_USER"), authoritiesOf(id));
+      assertEquals(1, userService.findById(id).getTokenVersion());
+    }
+  }
+
+  private MvcResult perform(String body) throws Exception {
+    return mvc.perform(post(BULK)
+      .header(HttpHeaders.AUTHORIZATION, bearer)
+      .contentType(MediaType.APPLICATION_JSON)
+      .content(body)).andReturn();
+  }
+
+  private JsonNode report(MvcResult result) throws Exception {
+    assertEquals(200, result.getResponse().getStatus(), result.getResponse().getContentAsString());
+    return objectMapper.readTree(result.getResponse().getContentAsString());
+  }
+
+  private List<String> authoritiesOf(UUID id) {
+    return userService.findById(id).getAuthorities().stream().map(GrantedAuthority::getAuthority).sorted().toList();
+  }
+
+  private String ids(UUID... ids) throws Exception {
+    return objectMapper.writeValueAsString(ids);
+  }
+
+}
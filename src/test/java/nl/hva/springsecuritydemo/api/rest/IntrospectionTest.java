@@ -0,0 +1,114 @@
+package nl.hva.springsecuritydemo.api.rest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import nl.hva.springsecuritydemo.dtos.token.IntrospectDto;
+import nl.hva.springsecuritydemo.dtos.user.RegisterDto;
+import nl.hva.springsecuritydemo.repositories.ShardedUserStore;
+import nl.hva.springsecuritydemo.repositories.UserRepository;
+import nl.hva.springsecuritydemo.services.RoleService;
+import nl.hva.springsecuritydemo.services.UserService;
+import nl.hva.springsecuritydemo.utils.JWTUtil;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+import static nl.hva.springsecuritydemo.api.rest.IntrospectionController.INTROSPECT_API_BASE;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+
+
+/**
+ * Introspects tokens as a gateway, singly and in batches, against a snapshot that is never fresh, so the states of
+ * their users are read from the database. Checks the cache headers of the responses, and the quota of the gateway.
+ */
+@SpringBootTest(properties = {
+  "spring.datasource.url=jdbc:h2:mem:introspection;DB_CLOSE_DELAY=-1",
+  "users.activation.required=false",
+  "users.auth-snapshot.ttl=0s",
+  "users.introspection.quota=8",
+  "users.introspection.max-cache-age=10s"
+})
+@AutoConfigureMockMvc
+class IntrospectionTest {
+
+  @Autowired
+  private MockMvc mvc;
+
+  @Autowired
+  private ObjectMapper objectMapper;
+
+  @Autowired
+  private UserService userService;
+
+  @Autowired
+  private RoleService roleService;
+
+  @Autowired
+  private ShardedUserStore userStore;
+
+  @Autowired
+  private UserRepository users;
+
+  @Autowired
+  private JWTUtil jwtUtil;
+
+  @Test
+  void introspectsTokensWithinTheQuota() throws Exception {
+    var suffix = UUID.randomUUID().toString().substring(0, 8);
+    var gateway = userService.create(new RegisterDto("gateway" + suffix, "Password1", "gateway" + suffix + "@hva.nl"));
+    gateway = roleService.addAdminRoleToUserById(gateway.getId());
+    var bearer = "Bearer " + jwtUtil.generateTokensFor(gateway).get("accessToken");
+
+    var user = userService.create(new RegisterDto("user" + suffix, "Password1", "user" + suffix + "@hva.nl"));
+    var tokens = jwtUtil.generateTokensFor(user);
+    var disabled = userService.create(new RegisterDto("disabled" + suffix, "Password1", "disabled" + suffix + "@hva.nl"));
+    var disabledToken = jwtUtil.generateTokensFor(disabled).get("accessToken");
+
+    // Disabled without notifying the snapshot, so only the database knows.
+    var ids = List.of(disabled.getId());
+    userStore.onShard(userStore.shardOf(disabled.getId()), () -> users.disableAll(ids, LocalDateTime.now()));
+
+    var single = mvc.perform(post(INTROSPECT_API_BASE)
+      .header(HttpHeaders.AUTHORIZATION, bearer)
+      .contentType(MediaType.APPLICATION_FORM_URLENCODED)
+      .param("token", "not-a-token")).andReturn();
+    assertEquals(200, single.getResponse().getStatus());
+    assertEquals("no-store", single.getResponse().getHeader(HttpHeaders.CACHE_CONTROL));
+
+    var batch = batch(bearer, List.of(tokens.get("accessToken"), tokens.get("refreshToken"), disabledToken, "not-a-token"));
+    assertEquals(200, batch.getResponse().getStatus());
+    assertEquals("max-age=10, private", batch.getResponse().getHeader(HttpHeaders.CACHE_CONTROL));
+
+    var introspections = objectMapper.readTree(batch.getResponse().getContentAsString());
+    assertTrue(introspections.get(0).get("active").asBoolean());
+    assertEquals(user.getId().toString(), introspections.get(0).get("sub").asText());
+    assertEquals("refresh", introspections.get(1).get("token_type").asText());
+    assertFalse(introspections.get(2).get("active").asBoolean());
+    assertFalse(introspections.get(3).get("active").asBoolean());
+
+    // One token and a batch of four leave three of the eight.
+    var exhausted = batch(bearer, List.of(tokens.get("accessToken"), tokens.get("accessToken"), tokens.get("accessToken"), tokens.get("accessToken")));
+    assertEquals(429, exhausted.getResponse().getStatus());
+    assertNotNull(exhausted.getResponse().getHeader(HttpHeaders.RETRY_AFTER));
+  }
+
+  private MvcResult batch(String bearer, List<String> tokens) throws Exception {
+    return mvc.perform(post(INTROSPECT_API_BASE + "/batch")
+      .header(HttpHeaders.AUTHORIZATION, bearer)
+      .contentType(MediaType.APPLICATION_JSON)
+      .content(objectMapper.writeValueAsString(new IntrospectDto(tokens)))).andReturn();
+  }
+
+}
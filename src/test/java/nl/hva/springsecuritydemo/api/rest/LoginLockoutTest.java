@@ -0,0 +1,97 @@
+package nl.hva.springsecuritydemo.api.rest;
+
+import nl.hva.springsecuritydemo.dtos.user.BulkMutationDto;
+import nl.hva.springsecuritydemo.dtos.user.RegisterDto;
+import nl.hva.springsecuritydemo.models.user.User;
+import nl.hva.springsecuritydemo.services.LoginAttempts;
+import nl.hva.springsecuritydemo.services.UserBulkService;
+import nl.hva.springsecuritydemo.services.UserService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.List;
+import java.util.UUID;
+
+import static nl.hva.springsecuritydemo.api.rest.AuthenticateController.AUTH_API_BASE;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+
+
+/**
+ * Fails to log in until the threshold, flushes the lockout to the database, and logs in again once the lockout expired
+ * or an admin unlocked the account.
+ */
+@SpringBootTest(properties = {
+  "spring.datasource.url=jdbc:h2:mem:login-lockout;DB_CLOSE_DELAY=-1",
+  "users.activation.required=false",
+  "users.lockout.threshold=3",
+  "users.lockout.duration=1s",
+  "users.lockout.flush-interval=1h"
+})
+@AutoConfigureMockMvc
+class LoginLockoutTest {
+
+  @Autowired
+  private MockMvc mvc;
+
+  @Autowired
+  private UserService userService;
+
+  @Autowired
+  private UserBulkService userBulkService;
+
+  @Autowired
+  private LoginAttempts loginAttempts;
+
+  private User user;
+
+  @BeforeEach
+  void createUser() {
+    var username = "lockout" + UUID.randomUUID().toString().substring(0, 8);
+    user = userService.create(new RegisterDto(username, "Password1", username + "@hva.nl"));
+  }
+
+  @Test
+  void lockoutExpires() throws Exception {
+    lockOut();
+
+    Thread.sleep(1200);
+    assertEquals(202, login("Password1"));
+  }
+
+  @Test
+  void adminUnlocksALockout() throws Exception {
+    lockOut();
+
+    userBulkService.apply(new BulkMutationDto(BulkMutationDto.Action.UNLOCK, null, List.of(user.getId()), null));
+    assertEquals(202, login("Password1"));
+  }
+
+  private void lockOut() throws Exception {
+    for (var i = 0; i < 3; i++) assertEquals(401, login("Wrongpass1"));
+    assertEquals(403, login("Password1"));
+
+    loginAttempts.flush();
+
+    var locked = userService.findById(user.getId());
+    assertFalse(locked.isAccountNonLocked());
+    assertFalse(locked.isLockedByAdmin());
+    assertNotNull(locked.getLockedOutUntil());
+    assertEquals(403, login("Password1"));
+  }
+
+  private int login(String password) throws Exception {
+    return mvc.perform(post(AUTH_API_BASE + "/login")
+      .contentType(MediaType.APPLICATION_JSON)
+      .content("{\"username\":\"" + user.getUsername() + "\",\"password\":\"" + password + "\"}"))
+      .andReturn().getResponse().getStatus();
+  }
+
+}
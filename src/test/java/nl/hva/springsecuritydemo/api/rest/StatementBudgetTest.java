@@ -0,0 +1,138 @@
+package nl.hva.springsecuritydemo.api.rest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import nl.hva.springsecuritydemo.config.sql.StatementBudget;
+import nl.hva.springsecuritydemo.config.sql.StatementStats;
+import nl.hva.springsecuritydemo.config.sql.StatementStatsFilter;
+import nl.hva.springsecuritydemo.services.UserService;
+import nl.hva.springsecuritydemo.utils.JWTUtil;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.RequestBuilder;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.lang.reflect.Method;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+
+
+/**
+ * Requests every endpoint of the {@link AuthenticateController} and {@link UserController}, and fails when a request
+ * executes more JDBC statements than the {@link StatementBudget} of its endpoint.
+ */
+@SpringBootTest(properties = {
+  "spring.datasource.url=jdbc:h2:mem:statement-budget;DB_CLOSE_DELAY=-1",
+  "users.sql-stats.enabled=true"
+})
+@AutoConfigureMockMvc
+class StatementBudgetTest {
+
+  @Autowired
+  private MockMvc mvc;
+
+  @Autowired
+  private ObjectMapper objectMapper;
+
+  @Autowired
+  private UserService userService;
+
+  @Autowired
+  private JWTUtil jwtUtil;
+
+  private final Set<Method> requested = new HashSet<>();
+
+  @Test
+  void endpointsStayWithinTheirStatementBudget() throws Exception {
+    var tokens = objectMapper.readTree(perform(post("/api/v1/auth/register")
+      .contentType(MediaType.APPLICATION_JSON)
+      .content("{\"username\":\"budget\",\"password\":\"Password1\",\"email\":\"budget@hva.nl\"}")));
+    var bearer = "Bearer " + tokens.get("accessToken").asText();
+    var registered = userService.findById(jwtUtil.getUserIdOf(tokens.get("accessToken").asText()));
+
+    perform(get("/api/v1/auth/activate").param("token", jwtUtil.generateActivationTokenFor(registered)));
+
+    // Both values are taken, so both possible hits are confirmed against the lookup index.
+    perform(get("/api/v1/auth/availability").param("username", "budget").param("email", "budget@hva.nl"));
+
+    perform(post("/api/v1/auth/login")
+      .contentType(MediaType.APPLICATION_JSON)
+      .content("{\"username\":\"budget\",\"password\":\"Password1\"}"));
+    perform(post("/api/v1/auth/refresh")
+      .contentType(MediaType.TEXT_PLAIN)
+      .content(tokens.get("refreshToken").asText()));
+
+    var user = objectMapper.readTree(perform(get("/api/v1/user").header(HttpHeaders.AUTHORIZATION, bearer)));
+
+    perform(get("/api/v1/user/" + user.get("id").asText()).header(HttpHeaders.AUTHORIZATION, bearer));
+    perform(get("/api/v1/user/email/budget@hva.nl").header(HttpHeaders.AUTHORIZATION, bearer));
+    perform(get("/api/v1/user/username/budget").header(HttpHeaders.AUTHORIZATION, bearer));
+
+    var updated = objectMapper.readTree(perform(put("/api/v1/user")
+      .header(HttpHeaders.AUTHORIZATION, bearer)
+      .contentType(MediaType.APPLICATION_JSON)
+      .content("{\"username\":\"budget2\"}")));
+
+    perform(post("/api/v1/user/delete")
+      .header(HttpHeaders.AUTHORIZATION, "Bearer " + updated.get("accessToken").asText()));
+
+    assertEquals(getEndpoints(), requested, "Every endpoint is requested");
+  }
+
+  @Test
+  void endpointsDeclareAStatementBudget() {
+    for (var endpoint : getEndpoints())
+      assertNotNull(endpoint.getAnnotation(StatementBudget.class), endpoint + " declares a statement budget");
+  }
+
+  /**
+   * Performs the request, asserting it succeeded within the statement budget of its endpoint.
+   *
+   * @return The body of the response.
+   */
+  private String perform(RequestBuilder request) throws Exception {
+    var result = mvc.perform(request).andReturn();
+    var req = result.getRequest();
+    var handler = (HandlerMethod) req.getAttribute(HandlerMapping.BEST_MATCHING_HANDLER_ATTRIBUTE);
+    var stats = (StatementStats) req.getAttribute(StatementStatsFilter.STATS_ATTRIBUTE);
+    var budget = StatementStatsFilter.getBudget(req);
+    var endpoint = req.getMethod() + " " + req.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+
+    assertTrue(result.getResponse().getStatus() < 300, endpoint + " succeeds: " + result.getResponse().getStatus());
+    assertNotNull(budget, endpoint + " declares a statement budget");
+    assertTrue(
+      stats.getStatements() <= budget.value(),
+      endpoint + " executes " + stats.getStatements() + " statements, exceeding its budget of " + budget.value()
+    );
+
+    requested.add(handler.getMethod());
+    return result.getResponse().getContentAsString();
+  }
+
+  private static Set<Method> getEndpoints() {
+    var endpoints = new HashSet<Method>();
+
+    Stream.of(AuthenticateController.class, UserController.class)
+      .flatMap(controller -> Stream.of(controller.getDeclaredMethods()))
+      .filter(method -> AnnotatedElementUtils.hasAnnotation(method, RequestMapping.class))
+      .forEach(endpoints::add);
+
+    return endpoints;
+  }
+
+}
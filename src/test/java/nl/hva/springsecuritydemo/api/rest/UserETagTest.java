@@ -0,0 +1,66 @@
+package nl.hva.springsecuritydemo.api.rest;
+
+import nl.hva.springsecuritydemo.dtos.user.RegisterDto;
+import nl.hva.springsecuritydemo.services.RoleService;
+import nl.hva.springsecuritydemo.services.UserService;
+import nl.hva.springsecuritydemo.utils.JWTUtil;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+
+
+/**
+ * Requests a user conditionally with its ETag, which must no longer match once the user has been granted a role.
+ */
+@SpringBootTest(properties = {
+  "spring.datasource.url=jdbc:h2:mem:user-etag;DB_CLOSE_DELAY=-1",
+  "users.activation.required=false"
+})
+@AutoConfigureMockMvc
+class UserETagTest {
+
+  @Autowired
+  private MockMvc mvc;
+
+  @Autowired
+  private UserService userService;
+
+  @Autowired
+  private RoleService roleService;
+
+  @Autowired
+  private JWTUtil jwtUtil;
+
+  @Test
+  void grantingARoleChangesTheETag() throws Exception {
+    var user = userService.create(new RegisterDto("etag", "Password1", "etag@hva.nl"));
+    var bearer = "Bearer " + jwtUtil.generateTokensFor(user).get("accessToken");
+
+    var first = mvc.perform(get("/api/v1/user").header(HttpHeaders.AUTHORIZATION, bearer)).andReturn().getResponse();
+    assertEquals(200, first.getStatus());
+    var eTag = first.getHeader(HttpHeaders.ETAG);
+
+    var unchanged = mvc.perform(get("/api/v1/user")
+      .header(HttpHeaders.AUTHORIZATION, bearer)
+      .header(HttpHeaders.IF_NONE_MATCH, eTag)).andReturn().getResponse();
+    assertEquals(304, unchanged.getStatus());
+
+    // The ETag has the precision of a millisecond.
+    Thread.sleep(2);
+    roleService.addAdminRoleToUserById(user.getId());
+
+    var changed = mvc.perform(get("/api/v1/user")
+      .header(HttpHeaders.AUTHORIZATION, bearer)
+      .header(HttpHeaders.IF_NONE_MATCH, eTag)).andReturn().getResponse();
+    assertEquals(200, changed.getStatus());
+    assertNotEquals(eTag, changed.getHeader(HttpHeaders.ETAG));
+  }
+
+}
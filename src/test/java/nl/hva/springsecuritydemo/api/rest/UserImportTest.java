@@ -0,0 +1,214 @@
+package nl.hva.springsecuritydemo.api.rest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import nl.hva.springsecuritydemo.dtos.user.RegisterDto;
+import nl.hva.springsecuritydemo.repositories.ShardedUserStore;
+import nl.hva.springsecuritydemo.services.RoleService;
+import nl.hva.springsecuritydemo.services.UserService;
+import nl.hva.springsecuritydemo.utils.JWTUtil;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.security.crypto.argon2.Argon2PasswordEncoder;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import static nl.hva.springsecuritydemo.api.rest.AdminController.ADMIN_API_BASE;
+import static nl.hva.springsecuritydemo.api.rest.AuthenticateController.AUTH_API_BASE;
+import static nl.hva.springsecuritydemo.config.beans.DefaultPasswordEncoder.toStoredFormat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doReturn;
+import static org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder.BCryptVersion.$2B;
+import static org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder.BCryptVersion.$2Y;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+
+
+/**
+ * Imports small mixed inputs in batches of four as an admin, and checks the counts and errors of the report. Users with
+ * a foreign hash must be able to log in with their password. Rows that collide with a concurrent insert make the batch
+ * fail, after which its rows are stored one at a time.
+ */
+@SpringBootTest(properties = {
+  "spring.datasource.url=jdbc:h2:mem:user-import;DB_CLOSE_DELAY=-1",
+  "users.activation.required=false",
+  "users.import.batch-size=4"
+})
+@AutoConfigureMockMvc
+class UserImportTest {
+
+  private static final String IMPORT = ADMIN_API_BASE + "/users/import";
+
+  @Autowired
+  private MockMvc mvc;
+
+  @Autowired
+  private ObjectMapper objectMapper;
+
+  @Autowired
+  private UserService userService;
+
+  @Autowired
+  private RoleService roleService;
+
+  @Autowired
+  private JWTUtil jwtUtil;
+
+  @SpyBean
+  private ShardedUserStore userStore;
+
+  private String suffix;
+  private String bearer;
+
+  @BeforeEach
+  void createAdmin() {
+    suffix = UUID.randomUUID().toString().substring(0, 8);
+    var admin = userService.create(new RegisterDto("admin" + suffix, "Password1", "admin" + suffix + "@hva.nl"));
+    admin = roleService.addAdminRoleToUserById(admin.getId());
+    bearer = "Bearer " + jwtUtil.generateTokensFor(admin).get("accessToken");
+  }
+
+  @Test
+  void hashFormats() {
+    assertEquals("{bcrypt}$2a$10$hash", toStoredFormat("$2a$10$hash"));
+    assertEquals("{bcrypt}$2b$10$hash", toStoredFormat("$2b$10$hash"));
+    assertEquals("{bcrypt}$2y$10$hash", toStoredFormat("$2y$10$hash"));
+    assertEquals("{argon2}$argon2id$hash", toStoredFormat("$argon2id$hash"));
+    assertEquals("{bcrypt}$2a$10$hash", toStoredFormat("{bcrypt}$2a$10$hash"));
+    assertEquals("{argon2}$argon2i$hash", toStoredFormat("{argon2}$argon2i$hash"));
+    assertNull(toStoredFormat("$1$md5crypt"));
+    assertNull(toStoredFormat("{noop}Password1"));
+  }
+
+  @Test
+  void importsCsv() throws Exception {
+    var bcrypt = new BCryptPasswordEncoder();
+    var argon2 = Argon2PasswordEncoder.defaultsForSpringSecurity_v5_8();
+
+    var report = importUsers("text/csv", String.join("\n",
+      " email , passwordHash , username , password ",
+      "plain" + suffix + "@hva.nl,,plain" + suffix + ",Password1",
+      "bcrypt" + suffix + "@hva.nl," + bcrypt.encode("Password2") + ",bcrypt" + suffix + ",",
+      "bcrypt-y" + suffix + "@hva.nl," + new BCryptPasswordEncoder($2Y).encode("Password3") + ",bcrypt-y" + suffix + ",",
+      // Argon2 hashes contain commas, so they are quoted.
+      "argon2" + suffix + "@hva.nl,\"" + argon2.encode("Password4") + "\",argon2" + suffix + ",",
+      "prefixed" + suffix + "@hva.nl,{bcrypt}" + new BCryptPasswordEncoder($2B).encode("Password5") + ",prefixed" + suffix + ",",
+      "md5" + suffix + "@hva.nl,$1$md5crypt,md5" + suffix + ",",
+      "not-an-email,,invalid" + suffix + ",Password1",
+      "weak" + suffix + "@hva.nl,,weak" + suffix + ",short",
+      // The first batch has been stored by now.
+      "other" + suffix + "@hva.nl,,plain" + suffix + ",Password1",
+      "\"quoted" + suffix + "@hva.nl\",,\"say \"\"hi\"\" " + suffix + "\",\"Password1\"",
+      "again" + suffix + "@hva.nl,,\"say \"\"hi\"\" " + suffix + "\",Password1",
+      "unclosed" + suffix + "@hva.nl,,\"unclosed,Password1",
+      ""
+    ));
+
+    assertEquals(6, report.get("imported").asLong());
+    assertEquals(6, report.get("failed").asLong());
+    assertEquals(Map.of(
+      7L, "Password hash format is not supported.",
+      8L, "Email is invalid.",
+      9L, "Password is invalid.",
+      10L, "Username already exists.",
+      12L, "Username is duplicated in the input.",
+      13L, "Unclosed quoted field."
+    ), errorsOf(report));
+
+    assertEquals(202, login("bcrypt" + suffix, "Password2"));
+    assertEquals(202, login("bcrypt-y" + suffix, "Password3"));
+    assertEquals(202, login("argon2" + suffix, "Password4"));
+    assertEquals(202, login("prefixed" + suffix, "Password5"));
+    assertEquals(401, login("bcrypt" + suffix, "Password1"));
+
+    var quoted = "say \"hi\" " + suffix;
+    var id = userStore.findIdsByUsernames(List.of(quoted)).get(quoted);
+    assertEquals("quoted" + suffix + "@hva.nl", userService.findById(id).getEmail());
+  }
+
+  @Test
+  void importsNdjson() throws Exception {
+    userService.create(new RegisterDto("existing" + suffix, "Password1", "existing" + suffix + "@hva.nl"));
+
+    var report = importUsers(MediaType.APPLICATION_NDJSON_VALUE, String.join("\n",
+      json("json" + suffix, "json" + suffix + "@hva.nl"),
+      "{\"username\": ",
+      "",
+      json("other" + suffix, "existing" + suffix + "@hva.nl"),
+      "{\"email\":\"nameless" + suffix + "@hva.nl\",\"password\":\"Password1\"}"
+    ));
+
+    assertEquals(1, report.get("imported").asLong());
+    assertEquals(3, report.get("failed").asLong());
+
+    var errors = errorsOf(report);
+    assertEquals(Set.of(2L, 4L, 5L), errors.keySet());
+    assertTrue(errors.get(2L).startsWith("Invalid JSON"));
+    assertEquals("Email already exists.", errors.get(4L));
+    assertEquals("Username not provided.", errors.get(5L));
+    assertEquals(202, login("json" + suffix, "Password1"));
+  }
+
+  @Test
+  void batchesThatCollideAreStoredRowByRow() throws Exception {
+    userService.create(new RegisterDto("taken" + suffix, "Password1", "taken" + suffix + "@hva.nl"));
+
+    // As if the username was taken after the import checked it, so storing the batch fails as a whole.
+    doReturn(Set.of()).when(userStore).findExistingUsernames(any());
+
+    var report = importUsers(MediaType.APPLICATION_NDJSON_VALUE, String.join("\n",
+      json("first" + suffix, "first" + suffix + "@hva.nl"),
+      json("taken" + suffix, "other" + suffix + "@hva.nl"),
+      json("second" + suffix, "second" + suffix + "@hva.nl")
+    ));
+
+    assertEquals(2, report.get("imported").asLong());
+    assertEquals(1, report.get("failed").asLong());
+    assertTrue(errorsOf(report).get(2L).startsWith("Could not be stored"));
+    assertEquals(202, login("first" + suffix, "Password1"));
+    assertEquals(202, login("second" + suffix, "Password1"));
+  }
+
+  private JsonNode importUsers(String contentType, String body) throws Exception {
+    var response = mvc.perform(post(IMPORT)
+      .header(HttpHeaders.AUTHORIZATION, bearer)
+      .contentType(contentType)
+      .content(body)).andReturn().getResponse();
+
+    assertEquals(200, response.getStatus());
+    return objectMapper.readTree(response.getContentAsString());
+  }
+
+  private int login(String username, String password) throws Exception {
+    return mvc.perform(post(AUTH_API_BASE + "/login")
+      .contentType(MediaType.APPLICATION_JSON)
+      .content(objectMapper.writeValueAsString(Map.of("username", username, "password", password))))
+      .andReturn().getResponse().getStatus();
+  }
+
+  private static String json(String username, String email) {
+    return "{\"username\":\"" + username + "\",\"email\":\"" + email + "\",\"password\":\"Password1\"}";
+  }
+
+  private static Map<Long, String> errorsOf(JsonNode report) {
+    var errors = new HashMap<Long, String>();
+    report.get("errors").forEach(error -> errors.put(error.get("line").asLong(), error.get("message").asText()));
+
+    return errors;
+  }
+
+}
@@ -0,0 +1,243 @@
+package nl.hva.springsecuritydemo.api.ws;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.MacAlgorithm;
+import nl.hva.springsecuritydemo.dtos.user.BulkMutationDto;
+import nl.hva.springsecuritydemo.dtos.user.RegisterDto;
+import nl.hva.springsecuritydemo.models.user.User;
+import nl.hva.springsecuritydemo.repositories.ShardedUserStore;
+import nl.hva.springsecuritydemo.services.RoleService;
+import nl.hva.springsecuritydemo.services.UserBulkService;
+import nl.hva.springsecuritydemo.services.UserService;
+import nl.hva.springsecuritydemo.utils.JWTUtil;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketHttpHeaders;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.handler.TextWebSocketHandler;
+
+import javax.crypto.SecretKey;
+import java.net.URI;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static nl.hva.springsecuritydemo.api.ws.AccountSocketConfig.ACCOUNT_WS_PATH;
+import static nl.hva.springsecuritydemo.api.ws.AccountSocketHandler.LOGGED_OUT;
+import static nl.hva.springsecuritydemo.api.ws.AccountSocketHandler.TOKEN_EXPIRED;
+import static nl.hva.springsecuritydemo.api.ws.TokenHandshakeInterceptor.ACCESS_TOKEN_PARAM;
+import static nl.hva.springsecuritydemo.utils.JWTUtil.JWT_CLAIM_KEY_TOKEN_VERSION;
+import static nl.hva.springsecuritydemo.utils.JWTUtil.JWT_CLAIM_KEY_USER_ID;
+import static nl.hva.springsecuritydemo.utils.JWTUtil.JWT_TOKEN_PREFACE;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.boot.test.context.SpringBootTest.WebEnvironment.RANDOM_PORT;
+
+
+/**
+ * Connects to the account channel over a real port. Handshakes without a valid access token are rejected with 401.
+ * Connected users are told about role changes, and are logged out when disabled or when their password changes, or
+ * disconnected once their token expires.
+ */
+@SpringBootTest(webEnvironment = RANDOM_PORT, properties = {
+  "spring.datasource.url=jdbc:h2:mem:account-socket;DB_CLOSE_DELAY=-1",
+  "users.activation.required=false"
+})
+class AccountSocketTest {
+
+  private static final long TIMEOUT_SECONDS = 10;
+
+  @LocalServerPort
+  private int port;
+
+  @Value("${jwt.issuer:MyOrganisation}")
+  private String issuer;
+
+  @Autowired
+  private ObjectMapper objectMapper;
+
+  @Autowired
+  private UserService userService;
+
+  @Autowired
+  private UserBulkService userBulkService;
+
+  @Autowired
+  private RoleService roleService;
+
+  @Autowired
+  private ShardedUserStore userStore;
+
+  @Autowired
+  private JWTUtil jwtUtil;
+
+  @Autowired
+  private AccountSocketHandler handler;
+
+  @Autowired
+  private SecretKey signingKey;
+
+  @Autowired
+  private MacAlgorithm signingAlgorithm;
+
+  private final StandardWebSocketClient client = new StandardWebSocketClient();
+  private User user;
+
+  @BeforeEach
+  void createUser() {
+    var username = "socket" + UUID.randomUUID().toString().substring(0, 8);
+    user = userService.create(new RegisterDto(username, "Password1", username + "@hva.nl"));
+  }
+
+  @Test
+  void handshakesWithoutAnActiveAccessTokenAreRejected() {
+    var tokens = jwtUtil.generateTokensFor(user);
+
+    assertRejected(headers(null));
+    assertRejected(headers("not-a-token"));
+    assertRejected(headers(tokens.get("refreshToken")));
+
+    disable();
+    assertRejected(headers(tokens.get("accessToken")));
+  }
+
+  @Test
+  void disabledUsersAreLoggedOut() throws Exception {
+    var listener = new Listener();
+    connect(listener, jwtUtil.generateTokensFor(user).get("accessToken"));
+
+    disable();
+
+    assertEquals(AccountEvent.TYPE_LOGOUT, listener.next().get("type").asText());
+    assertEquals(LOGGED_OUT, listener.closed.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+  }
+
+  @Test
+  void usersAreLoggedOutWhenTheirPasswordChanges() throws Exception {
+    var listener = new Listener();
+    connect(listener, jwtUtil.generateTokensFor(user).get("accessToken"));
+
+    // As changing the password does, through the update endpoint.
+    var changed = userService.findById(user.getId());
+    changed.setTokenVersion(changed.getTokenVersion() + 1);
+    userStore.save(changed);
+
+    assertEquals(AccountEvent.TYPE_LOGOUT, listener.next().get("type").asText());
+    assertEquals(LOGGED_OUT, listener.closed.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+  }
+
+  @Test
+  void changedRolesArePushed() throws Exception {
+    var listener = new Listener();
+    connect(listener, jwtUtil.generateTokensFor(user).get("accessToken"));
+
+    roleService.addAdminRoleToUserById(user.getId());
+
+    var event = listener.next();
+    assertEquals(AccountEvent.TYPE_ROLES_CHANGED, event.get("type").asText());
+
+    var roles = objectMapper.convertValue(event.get("roles"), List.class);
+    assertTrue(roles.contains("ROLE_ADMIN"));
+    assertTrue(roles.contains("ROLE_USER"));
+  }
+
+  @Test
+  void connectionsCloseWhenTheirTokenExpires() throws Exception {
+    var token = Jwts.builder()
+      .claim(JWT_CLAIM_KEY_USER_ID, user.getId())
+      .claim(JWT_CLAIM_KEY_TOKEN_VERSION, user.getTokenVersion())
+      .issuer(issuer)
+      .issuedAt(new Date())
+      .expiration(new Date(System.currentTimeMillis() + 2000))
+      .signWith(signingKey, signingAlgorithm)
+      .compact();
+
+    // Browsers provide the token as query parameter.
+    var listener = new Listener();
+    var uri = URI.create("ws://localhost:" + port + ACCOUNT_WS_PATH + "?" + ACCESS_TOKEN_PARAM + "=" + token);
+    client.execute(listener, new WebSocketHttpHeaders(), uri).get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+    assertEquals(TOKEN_EXPIRED, listener.closed.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+  }
+
+  private void disable() {
+    userBulkService.apply(new BulkMutationDto(BulkMutationDto.Action.DISABLE, null, List.of(user.getId()), null));
+  }
+
+  private void connect(Listener listener, String token) throws Exception {
+    client.execute(listener, headers(token), uri()).get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    awaitConnected();
+  }
+
+  /**
+   * Waits until the server registered the connection, which it may do after the client completed the handshake.
+   */
+  private void awaitConnected() throws InterruptedException {
+    var deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT_SECONDS);
+    while (!handler.isConnected(user.getId())) {
+      assertTrue(System.nanoTime() < deadline, "Connection not registered.");
+      Thread.sleep(10);
+    }
+  }
+
+  private void assertRejected(WebSocketHttpHeaders headers) {
+    var e = assertThrows(ExecutionException.class,
+      () -> client.execute(new Listener(), headers, uri()).get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+    assertTrue(String.valueOf(e.getCause().getMessage()).contains("401"), e.getCause().getMessage());
+  }
+
+  private URI uri() {
+    return URI.create("ws://localhost:" + port + ACCOUNT_WS_PATH);
+  }
+
+  private static WebSocketHttpHeaders headers(String token) {
+    var headers = new WebSocketHttpHeaders();
+    if (token != null) headers.add(HttpHeaders.AUTHORIZATION, JWT_TOKEN_PREFACE + token);
+
+    return headers;
+  }
+
+  /**
+   * Collects the events and the close status of a connection.
+   */
+  private class Listener extends TextWebSocketHandler {
+
+    private final BlockingQueue<String> messages = new LinkedBlockingQueue<>();
+    private final CompletableFuture<CloseStatus> closed = new CompletableFuture<>();
+
+    @Override
+    protected void handleTextMessage(WebSocketSession session, TextMessage message) {
+      messages.add(message.getPayload());
+    }
+
+    @Override
+    public void afterConnectionClosed(WebSocketSession session, CloseStatus status) {
+      closed.complete(status);
+    }
+
+    private JsonNode next() throws Exception {
+      var message = messages.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+      assertTrue(message != null, "No event received.");
+
+      return objectMapper.readTree(message);
+    }
+
+  }
+
+}
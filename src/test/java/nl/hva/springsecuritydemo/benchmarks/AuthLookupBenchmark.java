@@ -0,0 +1,95 @@
+package nl.hva.springsecuritydemo.benchmarks;
+
+import nl.hva.springsecuritydemo.SpringSecurityDemoApplication;
+import nl.hva.springsecuritydemo.models.user.User;
+import nl.hva.springsecuritydemo.repositories.RoleRepository;
+import nl.hva.springsecuritydemo.repositories.ShardedUserStore;
+import nl.hva.springsecuritydemo.services.AuthSnapshot;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.ArrayList;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static nl.hva.springsecuritydemo.models.user.UserRole.ROLE_PREFIX;
+import static nl.hva.springsecuritydemo.models.user.UserRole.ROLE_USER_NAME;
+
+
+/**
+ * Compares looking up what authenticating a request needs about its user, by loading the User entity as the
+ * JWTFilter used to, with reading it from the AuthSnapshot. Run with {@code -prof gc} to compare allocations.
+ * <p>
+ * Run with: {@code java -cp target/test-classes:<test classpath> org.openjdk.jmh.Main AuthLookupBenchmark}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AuthLookupBenchmark {
+
+  private static final int USERS = 10_000;
+
+  private final UUID[] ids = new UUID[USERS];
+  private final AuthSnapshot.Entry entry = new AuthSnapshot.Entry();
+  private ConfigurableApplicationContext context;
+  private ShardedUserStore userStore;
+  private AuthSnapshot authSnapshot;
+  private int next;
+
+  @Setup
+  public void setUp() {
+    context = new SpringApplicationBuilder(SpringSecurityDemoApplication.class)
+      .run("--server.port=0", "--logging.level.root=warn", "--spring.datasource.url=jdbc:h2:mem:auth-benchmark;DB_CLOSE_DELAY=-1");
+
+    userStore = context.getBean(ShardedUserStore.class);
+    authSnapshot = context.getBean(AuthSnapshot.class);
+
+    var role = context.getBean(RoleRepository.class).findByAuthorityEquals(ROLE_PREFIX + ROLE_USER_NAME).orElseThrow();
+    var users = new ArrayList<User>(USERS);
+
+    for (var i = 0; i < USERS; i++) {
+      var user = User.builder().username("benchmark" + i).email("benchmark" + i + "@hva.nl").password("{noop}x").build();
+      user.addRole(role);
+
+      users.add(user);
+      ids[i] = user.getId();
+    }
+
+    userStore.createAll(users, 500);
+  }
+
+  @TearDown
+  public void tearDown() {
+    context.close();
+  }
+
+  @Benchmark
+  public boolean entity() {
+    return userStore.findById(nextId()).orElseThrow().isEnabled();
+  }
+
+  @Benchmark
+  public boolean snapshot() {
+    return authSnapshot.read(nextId(), entry) && entry.isEnabled();
+  }
+
+  private UUID nextId() {
+    next = (next + 1) % USERS;
+    return ids[next];
+  }
+
+}
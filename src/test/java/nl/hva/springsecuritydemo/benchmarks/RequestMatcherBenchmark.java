@@ -0,0 +1,98 @@
+package nl.hva.springsecuritydemo.benchmarks;
+
+import nl.hva.springsecuritydemo.config.matchers.PathTrieRequestMatcher;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.security.web.util.matcher.AntPathRequestMatcher;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Compares finding the first matching rule by evaluating AntPathRequestMatchers in order, as authorizeHttpRequests
+ * does, with a single lookup in the PathTrieRequestMatcher, for growing rule sets.
+ * <p>
+ * Run with: {@code java -cp target/test-classes:<test classpath> org.openjdk.jmh.Main RequestMatcherBenchmark}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RequestMatcherBenchmark {
+
+  @Param({"10", "100", "1000"})
+  private int rules;
+
+  private final List<AntPathRequestMatcher> antMatchers = new ArrayList<>();
+  private final PathTrieRequestMatcher trie = new PathTrieRequestMatcher();
+  private MockHttpServletRequest lastRuleRequest;
+  private MockHttpServletRequest unmatchedRequest;
+
+  @Setup
+  public void setUp() {
+    for (var i = 0; i < rules; i++) {
+      // A mix of the kinds of patterns a growing API declares.
+      var pattern = switch (i % 4) {
+        case 0 -> "/api/v1/resource" + i + "/**";
+        case 1 -> "/api/v1/resource" + i + "/*/details";
+        case 2 -> "/api/v2/resource" + i + "/{id}";
+        default -> "/static/resource" + i + "/*.css";
+      };
+
+      antMatchers.add(new AntPathRequestMatcher(pattern));
+      trie.add(pattern);
+    }
+
+    lastRuleRequest = request("/static/resource" + (rules - 1) + "/style.css");
+    unmatchedRequest = request("/api/v1/unknown/resource");
+  }
+
+  @Benchmark
+  public int antMatchersLastRule() {
+    return linearFirstMatch(lastRuleRequest);
+  }
+
+  @Benchmark
+  public int antMatchersUnmatched() {
+    return linearFirstMatch(unmatchedRequest);
+  }
+
+  @Benchmark
+  public int trieLastRule() {
+    return trie.firstMatch(lastRuleRequest);
+  }
+
+  @Benchmark
+  public int trieUnmatched() {
+    return trie.firstMatch(unmatchedRequest);
+  }
+
+  private int linearFirstMatch(MockHttpServletRequest request) {
+    for (var i = 0; i < antMatchers.size(); i++)
+      if (antMatchers.get(i).matches(request)) return i;
+
+    return -1;
+  }
+
+  private static MockHttpServletRequest request(String path) {
+    var request = new MockHttpServletRequest("GET", path);
+    request.setServletPath(path);
+
+    return request;
+  }
+
+}
@@ -0,0 +1,161 @@
+package nl.hva.springsecuritydemo.benchmarks;
+
+import nl.hva.springsecuritydemo.config.context.ScopedSecurityContextHolderStrategy;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.context.SecurityContextHolderStrategy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Compares the default thread local SecurityContextHolderStrategy with the scoped one, for the calls the filter chain
+ * of an authenticated request makes. Run with {@code -prof gc} to compare allocations per request.
+ * <p>
+ * The heap retained per request in flight is printed on setup: every request runs on its own virtual thread and waits
+ * while authenticated, and the heap taken by as many idle virtual threads is subtracted.
+ * <p>
+ * Run with: {@code java -cp target/test-classes:<test classpath> org.openjdk.jmh.Main SecurityContextBenchmark}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class SecurityContextBenchmark {
+
+  private static final int IN_FLIGHT = 100_000;
+
+  @Param({"thread-local", "scoped"})
+  private String strategy;
+
+  private final UUID userId = UUID.randomUUID();
+  private SecurityContextHolderStrategy holder;
+  private ScopedSecurityContextHolderStrategy scoped;
+
+  @Setup
+  public void setUp() throws InterruptedException {
+    if (strategy.equals("scoped")) {
+      holder = scoped = new ScopedSecurityContextHolderStrategy();
+    } else {
+      SecurityContextHolder.setStrategyName(SecurityContextHolder.MODE_THREADLOCAL);
+      holder = SecurityContextHolder.getContextHolderStrategy();
+    }
+
+    // The first round grows the structures of the scheduler of virtual threads.
+    heapTakenInFlight(true);
+    var idle = heapTakenInFlight(false);
+    var authenticated = heapTakenInFlight(true);
+
+    System.out.printf(
+      "%nSecurity context %s: %d bytes retained per request in flight%n",
+      strategy, (authenticated - idle) / IN_FLIGHT
+    );
+  }
+
+  @Benchmark
+  public Object request() {
+    if (scoped != null) {
+      try (var ignored = scoped.openScope()) {
+        return handle();
+      }
+    }
+
+    return handle();
+  }
+
+  /**
+   * The calls of the SecurityContextHolderFilter, JWTFilter and a controller reading the user id.
+   */
+  private Object handle() {
+    try {
+      authenticate();
+      return getAuthentication().getPrincipal();
+    } finally {
+      holder.clearContext();
+    }
+  }
+
+  private void authenticate() {
+    holder.setDeferredContext(holder::createEmptyContext);
+
+    var context = holder.createEmptyContext();
+    context.setAuthentication(new UsernamePasswordAuthenticationToken(userId, null, List.of()));
+    holder.setContext(context);
+
+    getAuthentication();
+  }
+
+  private Authentication getAuthentication() {
+    return scoped != null ? scoped.getAuthentication() : holder.getContext().getAuthentication();
+  }
+
+  /**
+   * @param authenticated Whether the virtual threads authenticate a request, in its scope if any, or only wait.
+   * @return The heap taken by the virtual threads while they wait.
+   */
+  private long heapTakenInFlight(boolean authenticated) throws InterruptedException {
+    var before = usedHeap();
+    var started = new CountDownLatch(IN_FLIGHT);
+    var release = new CountDownLatch(1);
+    var threads = new ArrayList<Thread>(IN_FLIGHT);
+
+    Runnable wait = () -> {
+      started.countDown();
+
+      try {
+        release.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    };
+
+    Runnable request = () -> {
+      try {
+        authenticate();
+        wait.run();
+      } finally {
+        holder.clearContext();
+      }
+    };
+
+    for (var i = 0; i < IN_FLIGHT; i++) {
+      threads.add(Thread.ofVirtual().start(!authenticated ? wait : scoped == null ? request : () -> {
+        try (var ignored = scoped.openScope()) {
+          request.run();
+        }
+      }));
+    }
+
+    started.await();
+    var taken = usedHeap() - before;
+
+    release.countDown();
+    for (var thread : threads) thread.join();
+    return taken;
+  }
+
+  private static long usedHeap() {
+    System.gc();
+    var runtime = Runtime.getRuntime();
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+
+}
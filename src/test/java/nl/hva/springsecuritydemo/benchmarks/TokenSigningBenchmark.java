@@ -0,0 +1,97 @@
+package nl.hva.springsecuritydemo.benchmarks;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtBuilder;
+import io.jsonwebtoken.JwtParser;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Keys;
+import io.jsonwebtoken.security.MacAlgorithm;
+import nl.hva.springsecuritydemo.config.beans.JWTSigningKey;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.crypto.SecretKey;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Compares the per-token cost of signing and verifying JWTs as jjwt does by default, with the passphrase as key and a
+ * new parser per token, with the derived key, pooled Macs and shared parser of the JWTUtil. Run with {@code -t 4} to
+ * include contention on the pool.
+ * <p>
+ * Run with: {@code java -cp target/test-classes:<test classpath> org.openjdk.jmh.Main TokenSigningBenchmark}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TokenSigningBenchmark {
+
+  /**
+   * As long as the passphrase of the dev profile.
+   */
+  private static final String PASS_PHRASE = "HvA is the best school ever. ".repeat(31);
+
+  private final UUID userId = UUID.randomUUID();
+  private SecretKey passPhraseKey;
+  private SecretKey derivedKey;
+  private MacAlgorithm pooledAlgorithm;
+  private JwtParser sharedParser;
+  private String token;
+
+  @Setup
+  public void setUp() {
+    passPhraseKey = Keys.hmacShaKeyFor(PASS_PHRASE.getBytes(StandardCharsets.UTF_16));
+
+    var signingKey = new JWTSigningKey();
+    ReflectionTestUtils.setField(signingKey, "passPhrase", PASS_PHRASE);
+    derivedKey = signingKey.getKey();
+    pooledAlgorithm = signingKey.getSigningAlgorithm(derivedKey);
+    sharedParser = Jwts.parser().verifyWith(derivedKey).sig().add(pooledAlgorithm).and().build();
+
+    token = standardSign();
+  }
+
+  @Benchmark
+  public String standardSign() {
+    return builder().signWith(passPhraseKey).compact();
+  }
+
+  @Benchmark
+  public String pooledSign() {
+    return builder().signWith(derivedKey, pooledAlgorithm).compact();
+  }
+
+  @Benchmark
+  public Claims standardVerify() {
+    return Jwts.parser().verifyWith(passPhraseKey).build().parseSignedClaims(token).getPayload();
+  }
+
+  @Benchmark
+  public Claims pooledVerify() {
+    return sharedParser.parseSignedClaims(token).getPayload();
+  }
+
+  private JwtBuilder builder() {
+    return Jwts.builder()
+      .claim("user-id", userId)
+      .issuer("HvA")
+      .issuedAt(new Date())
+      .expiration(new Date(System.currentTimeMillis() + 60_000));
+  }
+
+}
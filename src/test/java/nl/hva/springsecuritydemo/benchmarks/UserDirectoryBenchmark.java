@@ -0,0 +1,149 @@
+package nl.hva.springsecuritydemo.benchmarks;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.grpc.ManagedChannel;
+import io.grpc.ManagedChannelBuilder;
+import io.grpc.Metadata;
+import io.grpc.stub.MetadataUtils;
+import nl.hva.springsecuritydemo.SpringSecurityDemoApplication;
+import nl.hva.springsecuritydemo.api.grpc.GrpcServer;
+import nl.hva.springsecuritydemo.api.grpc.v1.GetUserRequest;
+import nl.hva.springsecuritydemo.api.grpc.v1.UserDirectoryGrpc;
+import nl.hva.springsecuritydemo.api.grpc.v1.VerifyTokenRequest;
+import nl.hva.springsecuritydemo.models.user.User;
+import nl.hva.springsecuritydemo.repositories.RoleRepository;
+import nl.hva.springsecuritydemo.repositories.ShardedUserStore;
+import nl.hva.springsecuritydemo.utils.JWTUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.HttpHeaders;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static nl.hva.springsecuritydemo.models.user.UserRole.ROLE_GATEWAY_NAME;
+import static nl.hva.springsecuritydemo.models.user.UserRole.ROLE_PREFIX;
+import static nl.hva.springsecuritydemo.models.user.UserRole.ROLE_USER_NAME;
+
+
+/**
+ * Compares resolving a user and verifying a token over gRPC with the REST user and introspection endpoints, as an
+ * internal service would, on the same running application. The REST responses are parsed into a JSON tree, like a
+ * client has to. Throughput shows the calls per millisecond of all threads, sample time their latency percentiles.
+ * <p>
+ * Run with: {@code java -cp target/test-classes:<test classpath> org.openjdk.jmh.Main UserDirectoryBenchmark}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(8)
+@Fork(1)
+public class UserDirectoryBenchmark {
+
+  private final ObjectMapper objectMapper = new ObjectMapper();
+  private ConfigurableApplicationContext context;
+  private HttpClient httpClient;
+  private ManagedChannel channel;
+  private UserDirectoryGrpc.UserDirectoryBlockingStub stub;
+  private String baseUrl;
+  private String bearer;
+  private String userId;
+  private String token;
+
+  @Setup
+  public void setUp() {
+    context = new SpringApplicationBuilder(SpringSecurityDemoApplication.class).run(
+      "--server.port=0",
+      "--users.grpc.port=0",
+      "--users.introspection.quota=1000000000",
+      "--logging.level.root=warn",
+      "--spring.datasource.url=jdbc:h2:mem:directory-benchmark;DB_CLOSE_DELAY=-1"
+    );
+
+    var roles = context.getBean(RoleRepository.class);
+    var gateway = User.builder().username("gateway").email("gateway@hva.nl").password("{noop}x").build();
+    var user = User.builder().username("benchmark").email("benchmark@hva.nl").password("{noop}x").build();
+
+    for (var roleName : List.of(ROLE_USER_NAME, ROLE_GATEWAY_NAME))
+      gateway.addRole(roles.findByAuthorityEquals(ROLE_PREFIX + roleName).orElseThrow());
+    user.addRole(roles.findByAuthorityEquals(ROLE_PREFIX + ROLE_USER_NAME).orElseThrow());
+    context.getBean(ShardedUserStore.class).createAll(List.of(gateway, user), 2);
+
+    var jwtUtil = context.getBean(JWTUtil.class);
+    bearer = JWTUtil.JWT_TOKEN_PREFACE + jwtUtil.generateTokensFor(gateway).get("accessToken");
+    token = jwtUtil.generateTokensFor(user).get("accessToken");
+    userId = user.getId().toString();
+
+    baseUrl = "http://localhost:" + ((WebServerApplicationContext) context).getWebServer().getPort();
+    httpClient = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+
+    var metadata = new Metadata();
+    metadata.put(Metadata.Key.of("authorization", Metadata.ASCII_STRING_MARSHALLER), bearer);
+    channel = ManagedChannelBuilder.forAddress("localhost", context.getBean(GrpcServer.class).getPort())
+      .usePlaintext()
+      .build();
+    stub = UserDirectoryGrpc.newBlockingStub(channel).withInterceptors(MetadataUtils.newAttachHeadersInterceptor(metadata));
+  }
+
+  @TearDown
+  public void tearDown() {
+    channel.shutdownNow();
+    context.close();
+  }
+
+  @Benchmark
+  public Object restGetUser() throws IOException, InterruptedException {
+    return send(HttpRequest.newBuilder(URI.create(baseUrl + "/api/v1/user/" + userId)).GET());
+  }
+
+  @Benchmark
+  public Object grpcGetUser() {
+    return stub.getUser(GetUserRequest.newBuilder().setId(userId).build());
+  }
+
+  @Benchmark
+  public Object restVerifyToken() throws IOException, InterruptedException {
+    return send(HttpRequest.newBuilder(URI.create(baseUrl + "/api/v1/introspect"))
+      .header(HttpHeaders.CONTENT_TYPE, "application/x-www-form-urlencoded")
+      .POST(HttpRequest.BodyPublishers.ofString("token=" + URLEncoder.encode(token, StandardCharsets.UTF_8))));
+  }
+
+  @Benchmark
+  public Object grpcVerifyToken() {
+    return stub.verifyToken(VerifyTokenRequest.newBuilder().setToken(token).build());
+  }
+
+  private JsonNode send(HttpRequest.Builder request) throws IOException, InterruptedException {
+    var response = httpClient.send(
+      request.header(HttpHeaders.AUTHORIZATION, bearer).build(),
+      HttpResponse.BodyHandlers.ofByteArray()
+    );
+
+    if (response.statusCode() != 200) throw new IllegalStateException("Request failed with " + response.statusCode());
+    return objectMapper.readTree(response.body());
+  }
+
+}
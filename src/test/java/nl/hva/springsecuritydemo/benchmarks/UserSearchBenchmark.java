@@ -0,0 +1,121 @@
+package nl.hva.springsecuritydemo.benchmarks;
+
+import nl.hva.springsecuritydemo.models.user.UserLookup;
+import nl.hva.springsecuritydemo.services.UserSearchIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static nl.hva.springsecuritydemo.models.user.UserLookup.emailKey;
+import static nl.hva.springsecuritydemo.models.user.UserLookup.usernameKey;
+
+
+/**
+ * Compares type-ahead searches on the UserSearchIndex with a TreeMap of the same keys, for a million users. The memory
+ * footprint of both is printed on setup: the arrays of the index, and the heap taken by the TreeMap.
+ * <p>
+ * Run with: {@code java -Xmx4g -cp target/test-classes:<test classpath> org.openjdk.jmh.Main UserSearchBenchmark}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class UserSearchBenchmark {
+
+  private static final int USERS = 1_000_000;
+  private static final int LIMIT = 10;
+  private static final String ALPHABET = "abcdefghijklmnopqrstuvwxyz";
+
+  @Param({"2", "4"})
+  private int prefixLength;
+
+  private final Random random = new Random(42);
+  private final String[] prefixes = new String[1024];
+  private UserSearchIndex index;
+  private TreeMap<String, UUID> treeMap;
+  private int next;
+
+  @Setup
+  public void setUp() {
+    var lookups = new ArrayList<UserLookup>(2 * USERS);
+    for (var i = 0; i < USERS; i++) {
+      var name = randomName(6 + random.nextInt(8)) + i;
+      var id = UUID.randomUUID();
+
+      lookups.add(new UserLookup(usernameKey(name), id));
+      lookups.add(new UserLookup(emailKey(name + "@hva.nl"), id));
+    }
+
+    index = new UserSearchIndex(null, 10_000);
+    index.load(lookups);
+
+    var before = usedHeap();
+    treeMap = new TreeMap<>();
+    lookups.forEach(lookup -> treeMap.put(
+      new String(lookup.getLookupKey()),
+      new UUID(lookup.getUserId().getMostSignificantBits(), lookup.getUserId().getLeastSignificantBits())
+    ));
+    var treeMapBytes = usedHeap() - before;
+
+    System.out.printf(
+      "%nUser search index: %d MB, TreeMap: %d MB, for %d keys%n",
+      index.getMetrics().get("bytes").longValue() >> 20, treeMapBytes >> 20, lookups.size()
+    );
+
+    for (var i = 0; i < prefixes.length; i++) prefixes[i] = randomName(prefixLength);
+  }
+
+  @Benchmark
+  public Object searchIndex() {
+    return index.search(nextPrefix(), LIMIT);
+  }
+
+  @Benchmark
+  public Object searchTreeMap() {
+    var prefix = nextPrefix();
+    var hits = new ArrayList<String>(2 * LIMIT);
+
+    for (var kind : List.of(usernameKey(prefix), emailKey(prefix)))
+      for (var key : treeMap.tailMap(kind).keySet()) {
+        if (!key.startsWith(kind) || hits.size() == 2 * LIMIT) break;
+        hits.add(UserLookup.valueOf(key));
+      }
+
+    hits.sort(null);
+    return hits.subList(0, Math.min(LIMIT, hits.size()));
+  }
+
+  private String nextPrefix() {
+    return prefixes[next++ & (prefixes.length - 1)];
+  }
+
+  private String randomName(int length) {
+    var name = new StringBuilder(length);
+    for (var i = 0; i < length; i++) name.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+    return name.toString();
+  }
+
+  private static long usedHeap() {
+    System.gc();
+    var runtime = Runtime.getRuntime();
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+
+}
@@ -0,0 +1,83 @@
+package nl.hva.springsecuritydemo.benchmarks;
+
+import nl.hva.springsecuritydemo.validators.EmailValidator;
+import nl.hva.springsecuritydemo.validators.PasswordValidator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import static nl.hva.springsecuritydemo.config.GenericConfig.EMAIL_REGEX;
+import static nl.hva.springsecuritydemo.config.GenericConfig.PASSWORD_REGEX;
+
+
+/**
+ * Compares the regex based validation of emails and passwords with the single-pass validators, on regular and
+ * adversarial inputs.
+ * <p>
+ * Run with: {@code java -cp target/test-classes:<test classpath> org.openjdk.jmh.Main ValidatorBenchmark}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ValidatorBenchmark {
+
+  private static final Pattern EMAIL_PATTERN = Pattern.compile(EMAIL_REGEX);
+  private static final Pattern PASSWORD_PATTERN = Pattern.compile(PASSWORD_REGEX);
+
+  @Param({"regular", "adversarial"})
+  private String kind;
+
+  @Param({"64", "4096"})
+  private int size;
+
+  private String email;
+  private String password;
+
+  @Setup
+  public void setUp() {
+    if (kind.equals("regular")) {
+      email = "a".repeat(Math.min(size, 64)) + "@example.com";
+      password = "Aa1" + "b".repeat(size);
+    } else {
+      // A domain without a dot, that forces the domain label groups to backtrack over every split.
+      email = "a@" + "a-".repeat(size / 2) + "!";
+      // Lookaheads that only find the missing digit after scanning the whole input.
+      password = "aA".repeat(size / 2) + "\n";
+    }
+  }
+
+  @Benchmark
+  public boolean emailRegex() {
+    return EMAIL_PATTERN.matcher(email).matches();
+  }
+
+  @Benchmark
+  public boolean emailScanner() {
+    return EmailValidator.isValidEmail(email);
+  }
+
+  @Benchmark
+  public boolean passwordRegex() {
+    return PASSWORD_PATTERN.matcher(password).matches();
+  }
+
+  @Benchmark
+  public boolean passwordScanner() {
+    return PasswordValidator.isValidPassword(password);
+  }
+
+}
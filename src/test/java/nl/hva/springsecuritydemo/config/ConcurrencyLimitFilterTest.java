@@ -0,0 +1,76 @@
+package nl.hva.springsecuritydemo.config;
+
+import jakarta.servlet.FilterChain;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.web.FilterChainProxy;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static nl.hva.springsecuritydemo.api.rest.AuthenticateController.AUTH_API_BASE;
+import static nl.hva.springsecuritydemo.api.rest.UserController.USER_API_BASE;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+/**
+ * Saturates the login partition with a request that is still in flight, so the next login is rejected without reaching
+ * the rest of the chain, while the user partition still admits requests. The filter must precede the JWTFilter in the
+ * security chain, so rejected requests do not have their token verified.
+ */
+@SpringBootTest(properties = {
+  "spring.datasource.url=jdbc:h2:mem:concurrency-limit;DB_CLOSE_DELAY=-1"
+})
+class ConcurrencyLimitFilterTest {
+
+  @Autowired
+  private FilterChainProxy filterChainProxy;
+
+  @Test
+  void saturatedPartitionIsRejected() throws Exception {
+    var filter = new ConcurrencyLimitFilter(1, 1, 1);
+    var reached = new AtomicInteger();
+    FilterChain next = (req, res) -> reached.incrementAndGet();
+
+    var rejected = new MockHttpServletResponse();
+    var admitted = new MockHttpServletResponse();
+
+    // The first login is in flight, while the others arrive.
+    filter.doFilter(request(AUTH_API_BASE + "/login"), new MockHttpServletResponse(), (req, res) -> {
+      filter.doFilter(request(AUTH_API_BASE + "/login"), rejected, next);
+      filter.doFilter(request(USER_API_BASE), admitted, next);
+    });
+
+    assertEquals(503, rejected.getStatus());
+    assertEquals("1", rejected.getHeader(HttpHeaders.RETRY_AFTER));
+    assertEquals(200, admitted.getStatus());
+    assertEquals(1, reached.get());
+
+    // Once released, the partition admits logins again.
+    var later = new MockHttpServletResponse();
+    filter.doFilter(request(AUTH_API_BASE + "/login"), later, next);
+    assertEquals(200, later.getStatus());
+    assertEquals(2, reached.get());
+  }
+
+  @Test
+  void filterPrecedesTheJWTFilter() {
+    var filters = filterChainProxy.getFilterChains().getFirst().getFilters();
+    var limit = filters.stream().filter(ConcurrencyLimitFilter.class::isInstance).findFirst().orElseThrow();
+    var token = filters.stream().filter(JWTFilter.class::isInstance).findFirst().orElseThrow();
+
+    assertTrue(filters.indexOf(limit) < filters.indexOf(token));
+  }
+
+  private static MockHttpServletRequest request(String uri) {
+    var request = new MockHttpServletRequest("POST", uri);
+    request.setServletPath(uri);
+
+    return request;
+  }
+
+}
@@ -0,0 +1,145 @@
+package nl.hva.springsecuritydemo.config;
+
+import nl.hva.springsecuritydemo.config.sharding.ShardRoutingDataSource;
+import nl.hva.springsecuritydemo.config.sql.FaultInjectingDataSource;
+import nl.hva.springsecuritydemo.dtos.user.RegisterDto;
+import nl.hva.springsecuritydemo.services.AuthSnapshot;
+import nl.hva.springsecuritydemo.services.RoleService;
+import nl.hva.springsecuritydemo.services.UserService;
+import nl.hva.springsecuritydemo.utils.JWTUtil;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.RequestBuilder;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static nl.hva.springsecuritydemo.config.sharding.ShardRoutingDataSource.PRIMARY;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+
+
+/**
+ * Slows down the database, and requests an endpoint that may authenticate by the claims of the token for users that
+ * are not in the {@link AuthSnapshot}, as if they were created by another instance. Once the circuit breaker opens,
+ * the requests no longer wait on the database, which bounds the 99th percentile of their latency.
+ */
+@SpringBootTest(properties = {
+  "spring.datasource.url=jdbc:h2:mem:degraded;DB_CLOSE_DELAY=-1",
+  "users.activation.required=false",
+  "users.circuit-breaker.window=6",
+  "users.circuit-breaker.slow-call=150ms",
+  "users.circuit-breaker.open-duration=1m",
+  "users.circuit-breaker.claims-only=GET /api/v1/admin/limits"
+})
+@AutoConfigureMockMvc
+class DegradedAuthenticationTest {
+
+  private static final Duration LATENCY = Duration.ofMillis(200);
+  private static final int USERS = 8;
+  private static final int REQUESTS = 500;
+
+  private static final FaultInjectingDataSource faults = new FaultInjectingDataSource();
+
+  @Autowired
+  private MockMvc mvc;
+
+  @Autowired
+  private UserService userService;
+
+  @Autowired
+  private RoleService roleService;
+
+  @Autowired
+  private AuthSnapshot authSnapshot;
+
+  @Autowired
+  private JWTUtil jwtUtil;
+
+  @TestConfiguration
+  static class Faults {
+
+    /**
+     * Routes the connections of the primary shard through the datasource that injects faults.
+     */
+    @Bean
+    static BeanPostProcessor injectFaults() {
+      return new BeanPostProcessor() {
+        @Override
+        public Object postProcessAfterInitialization(Object bean, String beanName) {
+          if (bean instanceof ShardRoutingDataSource shards) {
+            faults.setTargetDataSource(shards.getShard(PRIMARY));
+            shards.setDefaultTargetDataSource(faults);
+            shards.setTargetDataSources(Map.of(PRIMARY, faults));
+            shards.initialize();
+          }
+
+          return bean;
+        }
+      };
+    }
+
+  }
+
+  @AfterEach
+  void resetFaults() {
+    faults.reset();
+  }
+
+  @Test
+  void latencyStaysBoundedWhileTheDatabaseIsSlow() throws Exception {
+    var bearers = new ArrayList<String>();
+
+    for (var i = 0; i < USERS; i++) {
+      var user = userService.create(new RegisterDto("degraded" + i, "Password1", "degraded" + i + "@hva.nl"));
+      user = roleService.addAdminRoleToUserById(user.getId());
+
+      bearers.add("Bearer " + jwtUtil.generateTokensFor(user).get("accessToken"));
+      authSnapshot.onDeleted(user);
+    }
+
+    faults.inject(LATENCY, 0);
+
+    var nanos = new long[REQUESTS];
+    for (var i = 0; i < REQUESTS; i++) {
+      var start = System.nanoTime();
+      assertEquals(200, status(get("/api/v1/admin/limits").header(HttpHeaders.AUTHORIZATION, bearers.get(i % USERS))));
+      nanos[i] = System.nanoTime() - start;
+    }
+
+    Arrays.sort(nanos);
+    var p99 = Duration.ofNanos(nanos[REQUESTS * 99 / 100 - 1]);
+    assertTrue(p99.compareTo(LATENCY.dividedBy(2)) < 0, "The 99th percentile of " + p99 + " is bounded");
+
+    // Writes fail without waiting on the database, and so do requests that need it to authenticate.
+    for (var request : List.of(
+      put("/api/v1/user").header(HttpHeaders.AUTHORIZATION, bearers.getFirst())
+        .contentType(MediaType.APPLICATION_JSON)
+        .content("{\"username\":\"renamed\"}"),
+      get("/api/v1/user").header(HttpHeaders.AUTHORIZATION, bearers.getLast())
+    )) {
+      var executed = faults.getExecuted();
+      assertEquals(503, status(request));
+      assertEquals(executed, faults.getExecuted(), "No statements are executed");
+    }
+  }
+
+  private int status(RequestBuilder request) throws Exception {
+    return mvc.perform(request).andReturn().getResponse().getStatus();
+  }
+
+}
@@ -0,0 +1,70 @@
+package nl.hva.springsecuritydemo.config;
+
+import nl.hva.springsecuritydemo.dtos.user.RegisterDto;
+import nl.hva.springsecuritydemo.repositories.ShardedUserStore;
+import nl.hva.springsecuritydemo.repositories.UserRepository;
+import nl.hva.springsecuritydemo.services.AuthSnapshot;
+import nl.hva.springsecuritydemo.services.UserService;
+import nl.hva.springsecuritydemo.utils.JWTUtil;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+
+
+/**
+ * Disables a user in the database without notifying the listeners of this instance, as another instance would, and
+ * requests an endpoint with its token. Once its record in the {@link AuthSnapshot} has outlived its time to live, the
+ * token is rejected.
+ */
+@SpringBootTest(properties = {
+  "spring.datasource.url=jdbc:h2:mem:stale-snapshot;DB_CLOSE_DELAY=-1",
+  "users.activation.required=false",
+  "users.auth-snapshot.ttl=200ms"
+})
+@AutoConfigureMockMvc
+class StaleSnapshotTest {
+
+  @Autowired
+  private MockMvc mvc;
+
+  @Autowired
+  private UserService userService;
+
+  @Autowired
+  private ShardedUserStore userStore;
+
+  @Autowired
+  private UserRepository users;
+
+  @Autowired
+  private JWTUtil jwtUtil;
+
+  @Test
+  void revocationByAnotherInstanceIsHonouredAfterTheTimeToLive() throws Exception {
+    var user = userService.create(new RegisterDto("stale", "Password1", "stale@hva.nl"));
+    var bearer = "Bearer " + jwtUtil.generateTokensFor(user).get("accessToken");
+
+    assertEquals(200, status(bearer));
+
+    var ids = List.of(user.getId());
+    var disabled = userStore.onShard(userStore.shardOf(user.getId()), () -> users.disableAll(ids, LocalDateTime.now()));
+    assertEquals(1, disabled);
+
+    Thread.sleep(300);
+    assertEquals(401, status(bearer));
+  }
+
+  private int status(String bearer) throws Exception {
+    return mvc.perform(get("/api/v1/user").header(HttpHeaders.AUTHORIZATION, bearer)).andReturn().getResponse().getStatus();
+  }
+
+}
@@ -0,0 +1,79 @@
+package nl.hva.springsecuritydemo.config.authorities;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static nl.hva.springsecuritydemo.models.user.UserRole.ROLE_ADMIN_NAME;
+import static nl.hva.springsecuritydemo.models.user.UserRole.ROLE_GATEWAY_NAME;
+import static nl.hva.springsecuritydemo.models.user.UserRole.ROLE_PREFIX;
+import static nl.hva.springsecuritydemo.models.user.UserRole.ROLE_USER_NAME;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+/**
+ * Resolves the role hierarchy into masks, leaves unknown authorities out, and converts masks to authorities and back.
+ */
+class AuthorityRegistryTest {
+
+  private static final String USER = ROLE_PREFIX + ROLE_USER_NAME;
+  private static final String ADMIN = ROLE_PREFIX + ROLE_ADMIN_NAME;
+  private static final String GATEWAY = ROLE_PREFIX + ROLE_GATEWAY_NAME;
+
+  private final AuthorityRegistry registry = new AuthorityRegistry();
+
+  @Test
+  void adminImpliesUserAndGateway() {
+    var admin = registry.maskOf(ADMIN);
+
+    assertEquals(bit(ADMIN) | bit(USER) | bit(GATEWAY), admin);
+    assertEquals(bit(USER), registry.maskOf(USER));
+    assertEquals(bit(GATEWAY), registry.maskOf(GATEWAY));
+    assertEquals(Set.of(ADMIN, USER, GATEWAY), names(registry.toAuthoritySet(admin)));
+  }
+
+  @Test
+  void unknownAuthoritiesAreLeftOut() {
+    assertEquals(-1, registry.indexOf("ROLE_UNKNOWN"));
+    assertEquals(0, registry.maskOf("ROLE_UNKNOWN"));
+    assertEquals(registry.maskOf(USER), registry.maskOf(List.of(
+      new SimpleGrantedAuthority("ROLE_UNKNOWN"), new SimpleGrantedAuthority(USER)
+    )));
+  }
+
+  @Test
+  void authoritySetRoundTrips() {
+    var set = registry.toAuthoritySet(List.of(new SimpleGrantedAuthority(GATEWAY), new SimpleGrantedAuthority(USER)));
+
+    assertEquals(2, set.size());
+    assertEquals(Set.of(USER, GATEWAY), names(set));
+    assertTrue(set.contains(new SimpleGrantedAuthority(GATEWAY)));
+    assertFalse(set.contains(new SimpleGrantedAuthority(ADMIN)));
+    assertEquals(set.getMask(), registry.maskOf(set));
+    assertEquals(set.getMask(), registry.toAuthoritySet(set).getMask());
+  }
+
+  @Test
+  void registeredAuthoritiesGetTheirOwnBit() {
+    var index = registry.register("ROLE_AUDITOR");
+
+    assertEquals(index, registry.register("ROLE_AUDITOR"));
+    assertEquals(1L << index, registry.maskOf("ROLE_AUDITOR"));
+    assertEquals(0, registry.maskOf(ADMIN) & registry.maskOf("ROLE_AUDITOR"));
+  }
+
+  private long bit(String authority) {
+    return 1L << registry.indexOf(authority);
+  }
+
+  private static Set<String> names(AuthoritySet set) {
+    return set.stream().map(GrantedAuthority::getAuthority).collect(Collectors.toSet());
+  }
+
+}
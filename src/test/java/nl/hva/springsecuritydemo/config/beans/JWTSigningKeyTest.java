@@ -0,0 +1,44 @@
+package nl.hva.springsecuritydemo.config.beans;
+
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Keys;
+import nl.hva.springsecuritydemo.utils.PooledMacAlgorithm;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+
+/**
+ * Signs tokens with the key of the raw passphrase, as they were signed before it was hashed, and verifies them with
+ * the key of {@link JWTSigningKey} and its pooled algorithm, and the other way around. The long passphrase exceeds the
+ * block size of HMAC-SHA-512 in UTF-16, so its key is hashed; the short one is used as it is.
+ */
+class JWTSigningKeyTest {
+
+  private static final String LONG_PASSPHRASE =
+    "a passphrase that is long enough to exceed the block size of HMAC-SHA-512 once it has been encoded in UTF-16";
+
+  @ParameterizedTest
+  @ValueSource(strings = {LONG_PASSPHRASE, "a short passphrase"})
+  void keyVerifiesTokensSignedWithTheRawPassphrase(String passphrase) {
+    var signingKey = new JWTSigningKey();
+    ReflectionTestUtils.setField(signingKey, "passPhrase", passphrase);
+
+    var key = signingKey.getKey();
+    var algorithm = signingKey.getSigningAlgorithm(key);
+    var raw = Keys.hmacShaKeyFor(passphrase.getBytes(StandardCharsets.UTF_16));
+
+    var signedRaw = Jwts.builder().subject("raw").signWith(raw, PooledMacAlgorithm.standardFor(raw)).compact();
+    var parser = Jwts.parser().verifyWith(key).sig().add(algorithm).and().build();
+    assertEquals("raw", parser.parseSignedClaims(signedRaw).getPayload().getSubject());
+
+    var signed = Jwts.builder().subject("hashed").signWith(key, algorithm).compact();
+    var rawParser = Jwts.parser().verifyWith(raw).build();
+    assertEquals("hashed", rawParser.parseSignedClaims(signed).getPayload().getSubject());
+  }
+
+}
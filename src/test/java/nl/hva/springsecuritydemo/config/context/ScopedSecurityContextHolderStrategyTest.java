@@ -0,0 +1,80 @@
+package nl.hva.springsecuritydemo.config.context;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextImpl;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+
+/**
+ * Binds contexts in and outside scopes. An empty context that is handed out is bound, as by the default strategy, so
+ * changes made to it are kept.
+ */
+class ScopedSecurityContextHolderStrategyTest {
+
+  private final ScopedSecurityContextHolderStrategy strategy = new ScopedSecurityContextHolderStrategy();
+
+  @AfterEach
+  void clear() {
+    strategy.clearContext();
+  }
+
+  @Test
+  void deferredEmptyContextIsBoundLikeByTheDefaultStrategy() {
+    var authentication = new TestingAuthenticationToken("user", null);
+
+    strategy.getDeferredContext().get().setAuthentication(authentication);
+
+    assertSame(authentication, strategy.getContext().getAuthentication());
+    assertSame(strategy.getDeferredContext().get(), strategy.getContext());
+  }
+
+  @Test
+  void deferredContextIsResolvedOnce() {
+    var resolutions = new AtomicInteger();
+    strategy.setDeferredContext(() -> {
+      resolutions.incrementAndGet();
+      return new SecurityContextImpl(new TestingAuthenticationToken("user", null));
+    });
+
+    var context = strategy.getContext();
+    assertSame(context, strategy.getContext());
+    assertEquals("user", strategy.getAuthentication().getName());
+    assertEquals(1, resolutions.get());
+  }
+
+  @Test
+  void closingAScopeRestoresTheEnclosingBinding() {
+    var outer = new SecurityContextImpl(new TestingAuthenticationToken("outer", null));
+    strategy.setContext(outer);
+
+    try (var ignored = strategy.openScope()) {
+      assertNull(strategy.getAuthentication());
+
+      strategy.getDeferredContext().get().setAuthentication(new TestingAuthenticationToken("inner", null));
+      assertEquals("inner", strategy.getAuthentication().getName());
+    }
+
+    assertSame(outer, strategy.getContext());
+  }
+
+  @Test
+  void scopesCloseInnermostFirst() {
+    var outer = strategy.openScope();
+    var inner = strategy.openScope();
+
+    assertThrows(IllegalStateException.class, outer::close);
+
+    inner.close();
+    outer.close();
+    assertNull(strategy.getAuthentication());
+  }
+
+}
@@ -0,0 +1,81 @@
+package nl.hva.springsecuritydemo.config.limits;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+/**
+ * Admits requests up to the limit, and adapts the limit to synthetic latencies, by releasing requests with a start
+ * time in the past.
+ */
+class GradientConcurrencyLimitTest {
+
+  private static final long FAST = TimeUnit.MILLISECONDS.toNanos(1);
+  private static final long SLOW = TimeUnit.MILLISECONDS.toNanos(50);
+
+  @Test
+  void rejectsAtTheLimit() {
+    var limit = new GradientConcurrencyLimit("test", 2, 1, 10);
+
+    assertTrue(limit.tryAcquire());
+    assertTrue(limit.tryAcquire());
+    assertFalse(limit.tryAcquire());
+    assertEquals(2, limit.getInflight());
+
+    limit.release(System.nanoTime());
+    assertTrue(limit.tryAcquire());
+  }
+
+  @Test
+  void growsToTheMaximumWhileUsedAndShrinksToTheMinimumWhenLatencyGrows() {
+    var limit = new GradientConcurrencyLimit("test", 10, 8, 40);
+
+    for (var i = 0; i < 100; i++) {
+      saturate(limit, FAST);
+      assertTrue(limit.getLimit() <= 40);
+    }
+    assertEquals(40, limit.getLimit());
+
+    saturate(limit, SLOW);
+    var lowest = limit.getLimit();
+    assertTrue(lowest < 40);
+
+    // Halving the limit with every sample would go below the minimum, before the average adapts to the latency.
+    for (var i = 0; i < 50; i++) {
+      saturate(limit, SLOW);
+      lowest = Math.min(lowest, limit.getLimit());
+    }
+    assertEquals(8, lowest);
+  }
+
+  @Test
+  void growsOnlyWhileAtLeastHalfIsUsed() {
+    var limit = new GradientConcurrencyLimit("test", 10, 4, 40);
+
+    // Less than half of the limit in use leaves it as it is.
+    for (var i = 0; i < 100; i++) {
+      for (var j = 0; j < 4; j++) assertTrue(limit.tryAcquire());
+      for (var j = 0; j < 4; j++) limit.release(System.nanoTime() - FAST);
+    }
+    assertEquals(10, limit.getLimit());
+
+    saturate(limit, FAST);
+    assertTrue(limit.getLimit() > 10);
+  }
+
+  /**
+   * Admits as many requests as the limit allows, then releases them all with the provided latency.
+   */
+  private static void saturate(GradientConcurrencyLimit limit, long rttNanos) {
+    var admitted = 0;
+    while (limit.tryAcquire()) admitted++;
+
+    for (var i = 0; i < admitted; i++) limit.release(System.nanoTime() - rttNanos);
+  }
+
+}
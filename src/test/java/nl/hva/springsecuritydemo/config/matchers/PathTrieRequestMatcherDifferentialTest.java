@@ -0,0 +1,80 @@
+package nl.hva.springsecuritydemo.config.matchers;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpMethod;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.security.web.util.matcher.AntPathRequestMatcher;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+
+/**
+ * Checks that the trie finds the same first matching pattern as evaluating AntPathRequestMatchers in order.
+ */
+class PathTrieRequestMatcherDifferentialTest {
+
+  private static final String[] PATTERN_TOKENS = {"a", "b", "c", "*", "**", "a*", "?b", "{id}", "*.ico"};
+  private static final String[] PATH_TOKENS = {"a", "b", "c", "ab", "bb", "x", "f.ico"};
+  private static final String[] METHODS = {"GET", "POST"};
+
+  private final Random random = new Random(42);
+
+  @Test
+  void firstMatchEqualsAntPathRequestMatcherOrder() {
+    for (var ruleSet = 0; ruleSet < 300; ruleSet++) {
+      var trie = new PathTrieRequestMatcher();
+      var antMatchers = new ArrayList<AntPathRequestMatcher>();
+
+      for (var i = 0; i < 1 + random.nextInt(12); i++) {
+        var pattern = randomPattern();
+        var method = random.nextInt(4) == 0 ? HttpMethod.valueOf(METHODS[random.nextInt(METHODS.length)]) : null;
+
+        trie.add(method, pattern);
+        antMatchers.add(new AntPathRequestMatcher(pattern, method == null ? null : method.name()));
+      }
+
+      for (var i = 0; i < 200; i++) {
+        var request = new MockHttpServletRequest(METHODS[random.nextInt(METHODS.length)], null);
+        request.setServletPath(randomPath());
+
+        assertEquals(firstMatch(antMatchers, request), trie.firstMatch(request),
+          () -> "Mismatch for " + request.getServletPath() + " with " + antMatchers);
+      }
+    }
+  }
+
+  private static int firstMatch(List<AntPathRequestMatcher> matchers, MockHttpServletRequest request) {
+    for (var i = 0; i < matchers.size(); i++)
+      if (matchers.get(i).matches(request)) return i;
+
+    return -1;
+  }
+
+  private String randomPattern() {
+    var builder = new StringBuilder();
+
+    for (var i = 0; i < random.nextInt(5); i++) builder.append('/').append(random(PATTERN_TOKENS));
+    if (builder.isEmpty() || random.nextInt(5) == 0) builder.append('/');
+    if (builder.length() > 1 && random.nextInt(20) == 0) builder.deleteCharAt(0);
+
+    return builder.toString();
+  }
+
+  private String randomPath() {
+    var builder = new StringBuilder();
+
+    for (var i = 0; i < random.nextInt(6); i++) builder.append('/').append(random(PATH_TOKENS));
+    if (builder.isEmpty() || random.nextInt(5) == 0) builder.append('/');
+
+    return builder.toString();
+  }
+
+  private String random(String[] values) {
+    return values[random.nextInt(values.length)];
+  }
+
+}
@@ -0,0 +1,78 @@
+package nl.hva.springsecuritydemo.config.matchers;
+
+import nl.hva.springsecuritydemo.config.authorities.AuthorityRegistry;
+import nl.hva.springsecuritydemo.dtos.user.RegisterDto;
+import nl.hva.springsecuritydemo.services.RoleService;
+import nl.hva.springsecuritydemo.services.UserService;
+import nl.hva.springsecuritydemo.utils.JWTUtil;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.UUID;
+
+import static nl.hva.springsecuritydemo.api.rest.AdminController.ADMIN_API_BASE;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+
+
+/**
+ * Authorizes requests of users authenticated by their token, whose roles must be checked against the mask carried by
+ * their authentication, without converting their authorities again. The admin role implies the user role.
+ */
+@SpringBootTest(properties = {
+  "spring.datasource.url=jdbc:h2:mem:trie-authorization;DB_CLOSE_DELAY=-1",
+  "users.activation.required=false"
+})
+@AutoConfigureMockMvc
+class TrieAuthorizationManagerTest {
+
+  @Autowired
+  private MockMvc mvc;
+
+  @Autowired
+  private UserService userService;
+
+  @Autowired
+  private RoleService roleService;
+
+  @Autowired
+  private JWTUtil jwtUtil;
+
+  @SpyBean
+  private AuthorityRegistry authorities;
+
+  @Test
+  void rolesOfTokenUsersAreCheckedByTheirMask() throws Exception {
+    var suffix = UUID.randomUUID().toString().substring(0, 8);
+    var user = userService.create(new RegisterDto("user" + suffix, "Password1", "user" + suffix + "@hva.nl"));
+    var admin = userService.create(new RegisterDto("admin" + suffix, "Password1", "admin" + suffix + "@hva.nl"));
+    admin = roleService.addAdminRoleToUserById(admin.getId());
+
+    var userBearer = "Bearer " + jwtUtil.generateTokensFor(user).get("accessToken");
+    var adminBearer = "Bearer " + jwtUtil.generateTokensFor(admin).get("accessToken");
+
+    // Saving the users converted their authorities for the snapshot; only the requests are verified.
+    clearInvocations(authorities);
+
+    assertEquals(200, status(ADMIN_API_BASE + "/exceptions", adminBearer));
+    assertEquals(200, status("/api/v1/user", adminBearer));
+    assertEquals(200, status("/api/v1/user", userBearer));
+    assertEquals(403, status(ADMIN_API_BASE + "/exceptions", userBearer));
+
+    verify(authorities, never()).maskOf(anyCollection());
+  }
+
+  private int status(String path, String bearer) throws Exception {
+    return mvc.perform(get(path).header(HttpHeaders.AUTHORIZATION, bearer)).andReturn().getResponse().getStatus();
+  }
+
+}
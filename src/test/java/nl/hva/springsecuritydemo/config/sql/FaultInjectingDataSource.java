@@ -0,0 +1,106 @@
+package nl.hva.springsecuritydemo.config.sql;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * A datasource that delays the statements executed on its connections, and fails a share of them, to act like a
+ * database that is overloaded. Faults are only injected after {@link #inject}.
+ */
+public class FaultInjectingDataSource extends DelegatingDataSource {
+
+  private volatile long latencyNanos;
+  private volatile double errorRate;
+  private final AtomicLong executed = new AtomicLong();
+
+  public FaultInjectingDataSource() {
+  }
+
+  public FaultInjectingDataSource(DataSource target) {
+    super(target);
+  }
+
+  /**
+   * @param latency   The delay of every statement.
+   * @param errorRate The share of statements that fail after the delay, from 0 to 1.
+   */
+  public void inject(Duration latency, double errorRate) {
+    this.latencyNanos = latency.toNanos();
+    this.errorRate = errorRate;
+  }
+
+  public void reset() {
+    inject(Duration.ZERO, 0);
+  }
+
+  /**
+   * @return The amount of statements executed on the connections of this datasource.
+   */
+  public long getExecuted() {
+    return executed.get();
+  }
+
+  @Override
+  public Connection getConnection() throws SQLException {
+    return wrap(super.getConnection());
+  }
+
+  @Override
+  public Connection getConnection(String username, String password) throws SQLException {
+    return wrap(super.getConnection(username, password));
+  }
+
+  private Connection wrap(Connection connection) {
+    return (Connection) Proxy.newProxyInstance(
+      Connection.class.getClassLoader(),
+      new Class<?>[]{Connection.class},
+      (proxy, method, args) -> {
+        var result = invoke(connection, method, args);
+
+        return result instanceof Statement statement ? wrap(statement, method.getReturnType()) : result;
+      }
+    );
+  }
+
+  private Statement wrap(Statement statement, Class<?> type) {
+    return (Statement) Proxy.newProxyInstance(
+      Statement.class.getClassLoader(),
+      new Class<?>[]{type},
+      (proxy, method, args) -> {
+        if (method.getName().startsWith("execute")) injectFault();
+
+        return invoke(statement, method, args);
+      }
+    );
+  }
+
+  private void injectFault() throws SQLException, InterruptedException {
+    executed.incrementAndGet();
+    if (latencyNanos > 0) TimeUnit.NANOSECONDS.sleep(latencyNanos);
+
+    if (errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate)
+      throw new SQLTransientConnectionException("Injected fault");
+  }
+
+  private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+    try {
+      return method.invoke(target, args);
+    } catch (InvocationTargetException e) {
+      throw e.getCause();
+    }
+  }
+
+}
@@ -0,0 +1,117 @@
+package nl.hva.springsecuritydemo.repositories;
+
+import com.zaxxer.hikari.HikariDataSource;
+import nl.hva.springsecuritydemo.config.sharding.ShardRoutingDataSource;
+import nl.hva.springsecuritydemo.exceptions.ConflictException;
+import nl.hva.springsecuritydemo.models.user.User;
+import nl.hva.springsecuritydemo.models.user.UserLookup;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.repository.CrudRepository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static nl.hva.springsecuritydemo.config.sharding.ShardRoutingDataSource.PRIMARY;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+/**
+ * Partitions users across the primary and two extra in-memory H2 databases, and adds a fourth one. Restores the lookup
+ * index entries of users stored without them.
+ */
+@SpringBootTest(properties = {
+  "spring.datasource.url=jdbc:h2:mem:sharded-primary;DB_CLOSE_DELAY=-1",
+  "spring.datasource.hikari.maximum-pool-size=7",
+  "users.sharding.urls=jdbc:h2:mem:sharded-1;DB_CLOSE_DELAY=-1,jdbc:h2:mem:sharded-2;DB_CLOSE_DELAY=-1"
+})
+class ShardedUserStoreTest {
+
+  private static final int USERS = 300;
+
+  @Autowired
+  private ShardedUserStore userStore;
+
+  @Autowired
+  private RoleRepository roleRepository;
+
+  @Autowired
+  private UserLookupRepository lookups;
+
+  @Autowired
+  private ShardRoutingDataSource shards;
+
+  @Test
+  void partitionsUsersAndMovesThemToAnAddedShard() {
+    var role = roleRepository.findByAuthorityEquals("ROLE_USER").orElseThrow();
+    var created = new ArrayList<User>();
+
+    for (var i = 0; i < USERS; i++) {
+      var user = User.builder().username("sharded" + i).email("sharded" + i + "@hva.nl").password("{noop}x").build();
+      user.addRole(role);
+      created.add(userStore.create(user));
+    }
+
+    var before = userStore.onEachShard(CrudRepository::count);
+    assertEquals(3, before.size());
+    before.values().forEach(count -> assertTrue(count > 0, "Every shard stores users: " + before));
+
+    assertThrows(ConflictException.class, () -> userStore.create(
+      User.builder().username("sharded0").email("other@hva.nl").password("{noop}x").build()
+    ));
+
+    var moved = userStore.addShard("shard-3", DataSourceBuilder.create().url("jdbc:h2:mem:sharded-3;DB_CLOSE_DELAY=-1").build());
+    var after = userStore.onEachShard(CrudRepository::count);
+
+    assertTrue(moved > 0 && moved < USERS / 2, "Only part of the users move: " + after);
+    assertEquals(moved, after.get("shard-3"));
+    assertEquals(before.values().stream().mapToLong(Long::longValue).sum(), after.values().stream().mapToLong(Long::longValue).sum());
+
+    for (var user : created) {
+      var found = userStore.findByEmail(user.getEmail()).orElseThrow();
+
+      assertEquals(user.getId(), found.getId());
+      assertEquals(user.getCreatedAt(), found.getCreatedAt());
+      assertEquals(1, found.getAuthorities().size());
+    }
+
+    // Every user is stored on the shard the ring assigns it to, and only there.
+    userStore.onEachShard(UserRepository::findAllIds).forEach((shard, ids) -> {
+      for (UUID id : ids) assertEquals(userStore.shardOf(id), shard);
+    });
+
+    var user = userStore.findByUsername("sharded1").orElseThrow();
+    user.setUsername("renamed1");
+    userStore.save(user);
+
+    assertTrue(userStore.findByUsername("sharded1").isEmpty());
+    assertEquals(user.getId(), userStore.findByUsername("renamed1").orElseThrow().getId());
+
+    userStore.delete(user);
+    assertFalse(userStore.findById(user.getId()).isPresent());
+    assertTrue(userStore.findExistingEmails(java.util.List.of(user.getEmail())).isEmpty());
+  }
+
+  @Test
+  void backfillsMissingLookupsAndConfiguresThePoolOfEveryShard() {
+    for (var shard : List.of(PRIMARY, "shard-1", "shard-2"))
+      assertEquals(7, ((HikariDataSource) shards.getShard(shard)).getMaximumPoolSize(), shard + " is configured");
+
+    var user = userStore.create(User.builder().username("unindexed").email("unindexed@hva.nl").password("{noop}x").build());
+    var keys = List.of(UserLookup.usernameKey("unindexed"), UserLookup.emailKey("unindexed@hva.nl"));
+    userStore.onShard(PRIMARY, () -> lookups.deleteByKeys(keys, user.getId()));
+    assertTrue(userStore.findByUsername("unindexed").isEmpty());
+
+    assertEquals(2, userStore.backfillLookups());
+    assertEquals(user.getId(), userStore.findByUsername("unindexed").orElseThrow().getId());
+    assertEquals(user.getId(), userStore.findByEmail("unindexed@hva.nl").orElseThrow().getId());
+    assertEquals(0, userStore.backfillLookups());
+  }
+
+}
@@ -0,0 +1,52 @@
+package nl.hva.springsecuritydemo.services;
+
+import nl.hva.springsecuritydemo.dtos.user.BulkMutationDto;
+import nl.hva.springsecuritydemo.dtos.user.RegisterDto;
+import nl.hva.springsecuritydemo.exceptions.BadRequest;
+import nl.hva.springsecuritydemo.utils.JWTUtil;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+/**
+ * Activates a registered user, has an admin disable it, and replays the activation link, which must not enable it
+ * again.
+ */
+@SpringBootTest(properties = {
+  "spring.datasource.url=jdbc:h2:mem:activation;DB_CLOSE_DELAY=-1",
+  "users.activation.required=true"
+})
+class AccountActivationTest {
+
+  @Autowired
+  private UserService userService;
+
+  @Autowired
+  private UserBulkService userBulkService;
+
+  @Autowired
+  private JWTUtil jwtUtil;
+
+  @Test
+  void replayedActivationDoesNotEnableADisabledUser() {
+    var user = userService.create(new RegisterDto("activation", "Password1", "activation@hva.nl"));
+    var token = jwtUtil.generateActivationTokenFor(user);
+    assertFalse(userService.findById(user.getId()).isEnabled());
+
+    userService.activate(token);
+    assertTrue(userService.findById(user.getId()).isEnabled());
+
+    userBulkService.apply(new BulkMutationDto(BulkMutationDto.Action.DISABLE, null, List.of(user.getId()), null));
+
+    assertThrows(BadRequest.class, () -> userService.activate(token));
+    assertFalse(userService.findById(user.getId()).isEnabled());
+  }
+
+}
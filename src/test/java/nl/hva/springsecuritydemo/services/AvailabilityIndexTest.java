@@ -0,0 +1,53 @@
+package nl.hva.springsecuritydemo.services;
+
+import nl.hva.springsecuritydemo.models.user.UserLookup;
+import nl.hva.springsecuritydemo.repositories.ShardedUserStore;
+import nl.hva.springsecuritydemo.repositories.UserLookupRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.List;
+import java.util.UUID;
+
+import static nl.hva.springsecuritydemo.config.sharding.ShardRoutingDataSource.PRIMARY;
+import static nl.hva.springsecuritydemo.models.user.UserLookup.emailKey;
+import static nl.hva.springsecuritydemo.models.user.UserLookup.usernameKey;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+
+/**
+ * Takes a username and email in the global index without notifying the listeners of this instance, as another instance
+ * would, and checks that they are no longer available once the filter has synced.
+ */
+@SpringBootTest(properties = {
+  "spring.datasource.url=jdbc:h2:mem:availability;DB_CLOSE_DELAY=-1",
+  "users.availability.sync-interval=1h"
+})
+class AvailabilityIndexTest {
+
+  @Autowired
+  private AvailabilityIndex availabilityIndex;
+
+  @Autowired
+  private ShardedUserStore userStore;
+
+  @Autowired
+  private UserLookupRepository lookups;
+
+  @Test
+  void valuesTakenThroughAnotherInstanceAreUnavailable() {
+    var id = UUID.randomUUID();
+    userStore.onShard(PRIMARY, () -> lookups.saveAll(List.of(
+      new UserLookup(usernameKey("elsewhere"), id),
+      new UserLookup(emailKey("elsewhere@hva.nl"), id)
+    )));
+
+    availabilityIndex.sync();
+
+    var availability = availabilityIndex.check("test", "elsewhere", "elsewhere@hva.nl");
+    assertFalse(availability.username());
+    assertFalse(availability.email());
+  }
+
+}
@@ -0,0 +1,84 @@
+package nl.hva.springsecuritydemo.services;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+/**
+ * Counts failed logins against a clock that is moved by hand, through the threshold, across windows, and past the
+ * amount of usernames that may be counted.
+ */
+class LoginAttemptsTest {
+
+  private static final Duration WINDOW = Duration.ofSeconds(10);
+
+  private final AtomicLong clock = new AtomicLong();
+
+  private LoginAttempts attempts(int stripes, int maxCounters) {
+    return new LoginAttempts(
+      null, null, 3, WINDOW, WINDOW, Duration.ofHours(1), 500, stripes, maxCounters, clock::get
+    );
+  }
+
+  @Test
+  void refusesAtTheThreshold() {
+    var attempts = attempts(4, 1000);
+
+    attempts.onFailure("alice");
+    attempts.onFailure("alice");
+    assertFalse(attempts.isLockedOut("alice"));
+
+    attempts.onFailure("alice");
+    assertTrue(attempts.isLockedOut("alice"));
+    assertFalse(attempts.isLockedOut("bob"));
+
+    attempts.onSuccess("alice");
+    assertFalse(attempts.isLockedOut("alice"));
+  }
+
+  @Test
+  void previousWindowWeighsInForItsOverlap() {
+    var attempts = attempts(4, 1000);
+
+    for (var i = 0; i < 3; i++) attempts.onFailure("alice");
+    assertTrue(attempts.isLockedOut("alice"));
+
+    // Halfway the next window, the three failures count for one and a half.
+    clock.set(WINDOW.toNanos() * 3 / 2);
+    assertFalse(attempts.isLockedOut("alice"));
+
+    attempts.onFailure("alice");
+    assertFalse(attempts.isLockedOut("alice"));
+    attempts.onFailure("alice");
+    assertTrue(attempts.isLockedOut("alice"));
+
+    // Once both windows have passed, nothing is left to count.
+    clock.set(WINDOW.toNanos() * 3);
+    assertFalse(attempts.isLockedOut("alice"));
+    attempts.evictExpired();
+    assertEquals(0, attempts.counted());
+  }
+
+  @Test
+  void floodOfUsernamesKeepsTheCountersNearTheThreshold() {
+    var attempts = attempts(1, 8);
+
+    attempts.onFailure("alice");
+    attempts.onFailure("alice");
+
+    for (var i = 0; i < 1000; i++) {
+      attempts.onFailure("unknown" + i);
+      assertTrue(attempts.counted() <= 8);
+    }
+
+    attempts.onFailure("alice");
+    assertTrue(attempts.isLockedOut("alice"));
+  }
+
+}
@@ -0,0 +1,60 @@
+package nl.hva.springsecuritydemo.services;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+/**
+ * Marks more ids missing than the cache holds, which evicts the oldest, and lets entries expire.
+ */
+class MissingUserCacheTest {
+
+  @Test
+  void evictsTheOldestWhenFull() {
+    var cache = new MissingUserCache(Duration.ofMinutes(1), 3);
+    var ids = Stream.generate(UUID::randomUUID).limit(5).toList();
+
+    ids.forEach(cache::markMissing);
+
+    assertFalse(cache.isMissing(ids.get(0)));
+    assertFalse(cache.isMissing(ids.get(1)));
+    for (var id : ids.subList(2, 5)) assertTrue(cache.isMissing(id));
+  }
+
+  @Test
+  void markingAgainKeepsTheEntry() {
+    var cache = new MissingUserCache(Duration.ofMinutes(1), 2);
+    var first = UUID.randomUUID();
+    var second = UUID.randomUUID();
+
+    cache.markMissing(first);
+    cache.markMissing(second);
+    cache.invalidate(first);
+    cache.markMissing(first);
+
+    // The first entry of the queue is outdated, so the second id is the oldest.
+    cache.markMissing(UUID.randomUUID());
+
+    assertTrue(cache.isMissing(first));
+    assertFalse(cache.isMissing(second));
+  }
+
+  @Test
+  void entriesExpire() throws InterruptedException {
+    var cache = new MissingUserCache(Duration.ofMillis(20), 10);
+    var id = UUID.randomUUID();
+
+    cache.markMissing(id);
+    assertTrue(cache.isMissing(id));
+
+    Thread.sleep(40);
+    assertFalse(cache.isMissing(id));
+  }
+
+}
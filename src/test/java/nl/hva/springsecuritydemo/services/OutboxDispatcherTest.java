@@ -0,0 +1,164 @@
+package nl.hva.springsecuritydemo.services;
+
+import nl.hva.springsecuritydemo.dtos.user.RegisterDto;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+/**
+ * Registers users against an in-process SMTP server, which rejects the first attempts to deliver, and activates them
+ * through the link of the email that is eventually delivered.
+ */
+@SpringBootTest(properties = {
+  "spring.datasource.url=jdbc:h2:mem:outbox;DB_CLOSE_DELAY=-1",
+  "users.outbox.poll-interval=100ms",
+  "users.outbox.backoff=50ms"
+})
+class OutboxDispatcherTest {
+
+  private static final SmtpStandIn smtp = SmtpStandIn.start();
+
+  @Autowired
+  private UserService userService;
+
+  @Autowired
+  private OutboxDispatcher dispatcher;
+
+  @DynamicPropertySource
+  static void mailProperties(DynamicPropertyRegistry registry) {
+    registry.add("spring.mail.host", () -> "localhost");
+    registry.add("spring.mail.port", smtp::getPort);
+  }
+
+  @AfterAll
+  static void stopSmtp() throws IOException {
+    smtp.close();
+  }
+
+  @Test
+  void sendsActivationEmailWithRetriesAndActivatesThroughIt() throws Exception {
+    smtp.rejectNext(2);
+
+    var user = userService.create(new RegisterDto("outbox", "Password1", "outbox@hva.nl"));
+    assertFalse(userService.findById(user.getId()).isEnabled());
+
+    var mail = smtp.received.poll(10, TimeUnit.SECONDS);
+    assertNotNull(mail, "The activation email is delivered");
+    assertTrue(mail.contains("outbox@hva.nl"));
+
+    var link = Pattern.compile("activate\\?token=([\\w.=-]+)").matcher(mail.replace("=\r\n", ""));
+    assertTrue(link.find(), "The email contains an activation link");
+
+    userService.activate(link.group(1));
+    assertTrue(userService.findById(user.getId()).isEnabled());
+
+    var metrics = dispatcher.getMetrics();
+    assertEquals(0L, metrics.get("backlog"));
+    assertEquals(1L, metrics.get("sent"));
+    assertEquals(2L, metrics.get("failedAttempts"));
+  }
+
+  /**
+   * A minimal SMTP server, that rejects a configurable amount of deliveries with a transient error.
+   */
+  private static class SmtpStandIn implements AutoCloseable {
+
+    private final ServerSocket server;
+    private final AtomicInteger rejections = new AtomicInteger();
+    private final BlockingQueue<String> received = new LinkedBlockingQueue<>();
+
+    private SmtpStandIn(ServerSocket server) {
+      this.server = server;
+    }
+
+    static SmtpStandIn start() {
+      try {
+        var smtp = new SmtpStandIn(new ServerSocket(0));
+        Thread.ofPlatform().daemon().start(smtp::accept);
+        return smtp;
+      } catch (IOException e) {
+        throw new IllegalStateException(e);
+      }
+    }
+
+    int getPort() {
+      return server.getLocalPort();
+    }
+
+    void rejectNext(int deliveries) {
+      rejections.set(deliveries);
+    }
+
+    private void accept() {
+      while (!server.isClosed()) {
+        try (var socket = server.accept()) {
+          converse(socket);
+        } catch (IOException e) {
+          // The server was closed, or the client hung up.
+        }
+      }
+    }
+
+    private void converse(Socket socket) throws IOException {
+      var in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+      var out = new PrintWriter(socket.getOutputStream(), true, StandardCharsets.US_ASCII);
+      out.print("220 localhost\r\n");
+      out.flush();
+
+      for (var line = in.readLine(); line != null; line = in.readLine()) {
+        var command = line.toUpperCase();
+
+        if (command.startsWith("MAIL") && rejections.getAndUpdate(left -> Math.max(0, left - 1)) > 0) {
+          out.print("451 Try again later\r\n");
+        } else if (command.startsWith("DATA")) {
+          out.print("354 End data with <CR><LF>.<CR><LF>\r\n");
+          out.flush();
+
+          var data = new StringBuilder();
+          for (var dataLine = in.readLine(); dataLine != null && !dataLine.equals("."); dataLine = in.readLine())
+            data.append(dataLine).append("\r\n");
+
+          received.add(data.toString());
+          out.print("250 OK\r\n");
+        } else if (command.startsWith("QUIT")) {
+          out.print("221 Bye\r\n");
+          out.flush();
+          return;
+        } else {
+          out.print("250 OK\r\n");
+        }
+
+        out.flush();
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      server.close();
+    }
+
+  }
+
+}
@@ -0,0 +1,93 @@
+package nl.hva.springsecuritydemo.utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+/**
+ * Checks that a converted text dump finds exactly the hashes it contained, and that converting replaces the corpus
+ * file without modifying a mapped one.
+ */
+class BreachedHashCorpusTest {
+
+  @TempDir
+  Path directory;
+
+  @Test
+  void containsExactlyTheConvertedHashes() throws Exception {
+    var random = new Random(42);
+    var hashes = new byte[2000][BreachedHashCorpus.HASH_SIZE];
+    for (var hash : hashes) random.nextBytes(hash);
+    Arrays.sort(hashes, Arrays::compareUnsigned);
+
+    var hex = HexFormat.of().withUpperCase();
+    var dump = Arrays.stream(hashes).map(hash -> hex.formatHex(hash) + ":" + (1 + random.nextInt(5)))
+      .collect(Collectors.joining("\r\n"));
+
+    var file = directory.resolve("corpus.bin");
+    assertEquals(hashes.length, BreachedHashCorpus.convert(reader(dump), file, 1));
+
+    var corpus = BreachedHashCorpus.open(file);
+    assertEquals(hashes.length, corpus.size());
+
+    for (var hash : hashes) {
+      assertTrue(corpus.contains(hash));
+
+      var other = hash.clone();
+      other[BreachedHashCorpus.HASH_SIZE - 1] ^= 1;
+      assertEquals(Arrays.binarySearch(hashes, other, Arrays::compareUnsigned) >= 0, corpus.contains(other));
+    }
+
+    var password = MessageDigest.getInstance("SHA-1").digest("Password1".getBytes(StandardCharsets.UTF_8));
+    assertFalse(corpus.contains(password));
+  }
+
+  @Test
+  void skipsRareHashesAndRejectsUnorderedDumps() throws IOException {
+    var file = directory.resolve("corpus.bin");
+    var dump = "0000000000000000000000000000000000000001:3\n"
+      + "0000000000000000000000000000000000000002:1\n"
+      + "FFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFF:2\n";
+
+    assertEquals(2, BreachedHashCorpus.convert(reader(dump), file, 2));
+    var corpus = BreachedHashCorpus.open(file);
+    assertEquals(2, corpus.size());
+
+    var unordered = "FFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFF:2\n0000000000000000000000000000000000000001:3\n";
+    assertThrows(IOException.class, () -> BreachedHashCorpus.convert(reader(unordered), file, 1));
+    assertEquals(2, BreachedHashCorpus.open(file).size());
+
+    // A new corpus is renamed over the file, so the mapped one is left intact.
+    assertEquals(3, BreachedHashCorpus.convert(reader(dump), file, 1));
+    assertEquals(3, BreachedHashCorpus.open(file).size());
+    assertEquals(2, corpus.size());
+    assertTrue(corpus.contains(HexFormat.of().parseHex("FFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFF")));
+
+    try (var files = Files.list(directory)) {
+      assertEquals(List.of(file), files.toList());
+    }
+  }
+
+  private static BufferedReader reader(String dump) {
+    return new BufferedReader(new StringReader(dump));
+  }
+
+}
@@ -0,0 +1,31 @@
+package nl.hva.springsecuritydemo.utils;
+
+import org.junit.jupiter.api.Test;
+import org.slf4j.helpers.NOPLogger;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+
+/**
+ * Counts exceptions whose types share their simple name, such as the AccessDeniedException of Spring Security and of
+ * java.nio, separately.
+ */
+class SampledLoggerTest {
+
+  @Test
+  void typesWithTheSameSimpleNameAreCountedApart() {
+    var logger = new SampledLogger(NOPLogger.NOP_LOGGER, 1, 1000);
+
+    logger.log(new org.springframework.security.access.AccessDeniedException("denied"), false, "Denied");
+    logger.log(new org.springframework.security.access.AccessDeniedException("denied"), false, "Denied");
+    logger.log(new java.nio.file.AccessDeniedException("file"), true, "Denied");
+
+    assertEquals(Map.of(
+      org.springframework.security.access.AccessDeniedException.class.getName(), 2L,
+      java.nio.file.AccessDeniedException.class.getName(), 1L
+    ), logger.getCounts());
+  }
+
+}
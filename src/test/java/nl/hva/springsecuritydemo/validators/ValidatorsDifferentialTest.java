@@ -0,0 +1,85 @@
+package nl.hva.springsecuritydemo.validators;
+
+import jakarta.validation.Validation;
+import jakarta.validation.Validator;
+import jakarta.validation.constraints.Email;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import static nl.hva.springsecuritydemo.config.GenericConfig.EMAIL_REGEX;
+import static nl.hva.springsecuritydemo.config.GenericConfig.PASSWORD_REGEX;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+
+/**
+ * Checks that the single-pass validators accept and reject exactly what the regex based constraints did.
+ */
+class ValidatorsDifferentialTest {
+
+  private static final String EMAIL_ALPHABET = "aZ09.-@_+!~\"( é";
+  private static final String PASSWORD_ALPHABET = "aZ9 !.\n\r\u0085\u2028é😀";
+
+  private static Validator validator;
+
+  @BeforeAll
+  static void setUp() {
+    validator = Validation.buildDefaultValidatorFactory().getValidator();
+  }
+
+  @Test
+  void emailValidatorMatchesEmailConstraint() {
+    var inputs = new ArrayList<>(List.of(
+      "", "a@b", "a@b.c", "a.b@c.d", ".a@b.c", "a.@b.c", "a..b@c.d", "a@b..c", "a@-b.c", "a@b-.c", "a@b.c-",
+      "a@b.c.", "a@.b.c", "a@@b.c", "a@b@c.d", "a-b@c-d.e-f", "{|}~@x.y", "\"a\"@b.c", "a@[127.0.0.1]",
+      "a".repeat(64) + "@b.c", "a".repeat(65) + "@b.c",
+      "a@" + "b".repeat(63) + ".c", "a@" + "b".repeat(64) + ".c",
+      "a@" + "b.".repeat(127) + "c", "a@" + "b.".repeat(128) + "c"
+    ));
+    inputs.addAll(randomInputs(EMAIL_ALPHABET, 20_000, 12));
+
+    for (var input : inputs) {
+      var expected = validator.validate(new EmailHolder(input)).isEmpty();
+      assertEquals(expected, EmailValidator.isValidEmail(input), () -> "Mismatch for: " + input);
+    }
+  }
+
+  @Test
+  void passwordValidatorMatchesPasswordRegex() {
+    var pattern = Pattern.compile(PASSWORD_REGEX);
+    var inputs = new ArrayList<>(List.of(
+      "", "Password1", "password1", "PASSWORD1", "Password", "Passwo1", "Passw\n ord1", "😀😀aA1aaa",
+      "😀aA1aaa", "Password1\r\n", "Pass word1"
+    ));
+    inputs.addAll(randomInputs(PASSWORD_ALPHABET, 20_000, 12));
+
+    for (var input : inputs) {
+      var expected = pattern.matcher(input).matches();
+      assertEquals(expected, PasswordValidator.isValidPassword(input), () -> "Mismatch for: " + input);
+    }
+  }
+
+  private static List<String> randomInputs(String alphabet, int count, int maxLength) {
+    var random = new Random(42);
+    var inputs = new ArrayList<String>(count);
+    var codePoints = alphabet.codePoints().toArray();
+
+    for (var i = 0; i < count; i++) {
+      var builder = new StringBuilder();
+      var length = random.nextInt(maxLength + 1);
+
+      for (var j = 0; j < length; j++) builder.appendCodePoint(codePoints[random.nextInt(codePoints.length)]);
+      inputs.add(builder.toString());
+    }
+
+    return inputs;
+  }
+
+  private record EmailHolder(@Email(regexp = EMAIL_REGEX) String email) {
+  }
+
+}